@@ -0,0 +1,47 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.profile.StackProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC and stack profilers.
+ * <p>
+ * Without arguments every benchmark is run; otherwise each argument is a
+ * regular expression selecting benchmarks by name.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws RunnerException {
+		final OptionsBuilder options = new OptionsBuilder();
+		if (args.length == 0) {
+			options.include(BenchmarkMain.class.getPackage().getName() + "\\..*Benchmark");
+		}
+		for (String include : args) {
+			options.include(include);
+		}
+		final Options opt = options.addProfiler(GCProfiler.class).addProfiler(StackProfiler.class).build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building and rendering the example regular expressions in each
+ * dialect.
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuildBenchmark {
+
+	@Param({ "java", "vim" })
+	public String dialect;
+
+	private MonthDayYearRegEx monthDayYear;
+	private LinkRegEx link;
+	private RegExBuilderFactory factory;
+
+	@Setup
+	public void setUp() {
+		this.factory = "vim".equals(this.dialect) ? new VimRegExBuilderFactory() : new JRegExBuilderFactory();
+		this.monthDayYear = new MonthDayYearRegEx(this.factory);
+		this.link = new LinkRegEx(this.factory);
+	}
+
+	@Benchmark
+	public RegExBuilder buildMonthDayYear() {
+		return this.monthDayYear.create();
+	}
+
+	@Benchmark
+	public String renderMonthDayYear() {
+		return this.monthDayYear.create().toString();
+	}
+
+	@Benchmark
+	public RegExBuilder buildLink() {
+		return this.link.create();
+	}
+
+	@Benchmark
+	public String renderLink() {
+		return this.link.create().toString();
+	}
+
+	/**
+	 * Appends many small literals, escapes, and numbers to one builder, the
+	 * allocation-heavy path of rendering.
+	 */
+	@Benchmark
+	public String appendAndRender() {
+		final RegExBuilder builder = this.factory.createRegExBuilder();
+		for (int i = 0; i < 64; i++) {
+			builder.re("a.b").re(i).re(1.5).tab().re('$');
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures compiling the example regular expressions with and without the
+ * shared {@link PatternCache}.
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompileBenchmark {
+
+	private String monthDayYear;
+	private String link;
+	private LinkRegEx linkRegEx;
+
+	@Setup
+	public void setUp() {
+		final JRegExBuilderFactory factory = new JRegExBuilderFactory();
+		this.monthDayYear = new MonthDayYearRegEx(factory).create().toString();
+		this.linkRegEx = new LinkRegEx(factory);
+		this.link = this.linkRegEx.create().toString();
+	}
+
+	@Benchmark
+	public Pattern patternCompileMonthDayYear() {
+		return Pattern.compile(this.monthDayYear);
+	}
+
+	@Benchmark
+	public Pattern patternCompileLink() {
+		return Pattern.compile(this.link, Pattern.CASE_INSENSITIVE);
+	}
+
+	/**
+	 * Builds, renders, and compiles through the cache, as a hot path that
+	 * builds its regular expression on every call would.
+	 */
+	@Benchmark
+	public Pattern builderCompileLink() {
+		return this.linkRegEx.create().compile(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE);
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link RegExEngine}s on a search that fails, which every
+ * engine must scan to the end: {@link LinkRegEx} over an HTML page without a
+ * feed link, and {@code (a|b)*a(a|b){12}c} over random letters, whose DFA
+ * has thousands of states.
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EngineBenchmark {
+
+	@Param({ "JAVA", "NFA", "DFA" })
+	public RegExEngine engine;
+
+	private CompiledRegEx link;
+	private CompiledRegEx letters;
+	private String page;
+	private String text;
+
+	@Setup
+	public void setUp() {
+		final RegExBuilderFactory factory = new JRegExBuilderFactory(this.engine);
+		this.link = new LinkRegEx(factory).create().compileRegEx(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE);
+		final RegExBuilder aOrB = factory.createRegExBuilder().charClass("ab");
+		this.letters = factory.createRegExBuilder().zeroOrMore(aOrB).re("a").repeat(12, aOrB).re("c")
+				.compileRegEx();
+
+		final Random random = new Random(20090720L);
+		final StringBuilder page = new StringBuilder("<html><head>\n");
+		for (int i = 0; i < 200; i++) {
+			page.append("<link rel=\"stylesheet\" href=\"http://example.com/").append(i).append(".css\">\n");
+		}
+		this.page = page.append("</head><body></body></html>").toString();
+		final StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			text.append(random.nextBoolean() ? 'a' : 'b');
+		}
+		this.text = text.toString();
+	}
+
+	@Benchmark
+	public boolean findNoLink() {
+		return this.link.find(this.page);
+	}
+
+	@Benchmark
+	public boolean findNoLetters() {
+		return this.letters.find(this.text);
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures match throughput of the example regular expressions on generated
+ * corpora: HTML page heads for {@link LinkRegEx} and date strings for
+ * {@link MonthDayYearRegEx}.
+ * <p>
+ * The corpora are generated from a fixed seed so that runs are comparable.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatchBenchmark {
+
+	private static final String[] ATTRIBUTES = { " rel=\"alternate\"", " title=\"Feed\"", " media=\"screen\"",
+			" hreflang=\"en\"", " class=\"nav-link\"" };
+
+	private Pattern link;
+	private CompiledRegEx linkRegEx;
+	private Pattern monthDayYear;
+	private CompiledRegEx monthDayYearRegEx;
+	private String page;
+	private String[] dates;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		final JRegExBuilderFactory factory = new JRegExBuilderFactory();
+		final RegExBuilder linkBuilder = new LinkRegEx(factory).create();
+		this.link = linkBuilder.compile(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE);
+		this.linkRegEx = linkBuilder.compileRegEx(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE);
+		final RegExBuilder monthDayYearBuilder = new MonthDayYearRegEx(factory).create();
+		this.monthDayYear = monthDayYearBuilder.compile();
+		this.monthDayYearRegEx = monthDayYearBuilder.compileRegEx();
+
+		final Random random = new Random(20090720L);
+		final StringBuilder page = new StringBuilder("<html><head>\n");
+		for (int i = 0; i < 200; i++) {
+			page.append(i % 10 == 0 ? "<link" : "<meta");
+			for (int a = random.nextInt(3); a > 0; a--) {
+				page.append(ATTRIBUTES[random.nextInt(ATTRIBUTES.length)]);
+			}
+			if (i % 20 == 0) {
+				page.append(" type=\"application/rss+").append(random.nextBoolean() ? "xml" : "atom").append('"');
+			}
+			page.append(" href=\"http://example.com/").append(i).append("\">\n");
+		}
+		this.page = page.append("</head><body></body></html>").toString();
+
+		final String[] separators = { "/", "-", "." };
+		this.dates = new String[1024];
+		for (int i = 0; i < this.dates.length; i++) {
+			final String separator = separators[random.nextInt(separators.length)];
+			this.dates[i] = (1 + random.nextInt(13)) + separator + random.nextInt(32) + separator
+					+ (1600 + random.nextInt(500));
+		}
+	}
+
+	@Benchmark
+	public int findAllLinks() {
+		final Matcher matcher = this.link.matcher(this.page);
+		int count = 0;
+		while (matcher.find()) {
+			count++;
+		}
+		return count;
+	}
+
+	@Benchmark
+	public boolean findLink() {
+		return this.linkRegEx.find(this.page);
+	}
+
+	@Benchmark
+	public boolean matchDatePattern() {
+		return this.monthDayYear.matcher(this.dates[this.next++ & (this.dates.length - 1)]).matches();
+	}
+
+	@Benchmark
+	public boolean matchDateCompiledRegEx() {
+		return this.monthDayYearRegEx.matches(this.dates[this.next++ & (this.dates.length - 1)]);
+	}
+
+	/**
+	 * Matches from several threads at once to measure contention on the
+	 * pooled matchers.
+	 */
+	@Benchmark
+	@Threads(4)
+	public boolean matchDateCompiledRegExContended() {
+		return this.monthDayYearRegEx.matches(this.dates[(int) (Thread.currentThread().getId() & 1023)]);
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link BaseRegExBuilder#isRegExUnit(String)} and
+ * {@link BaseRegExBuilder#isOneGroup(String)} on large regular expressions,
+ * the scans appending raw text still relies on.
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegExUnitBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int length;
+
+	private String nestedGroup;
+	private String classes;
+
+	@Setup
+	public void setUp() {
+		final StringBuilder nested = new StringBuilder();
+		final int depth = this.length / 8;
+		for (int i = 0; i < depth; i++) {
+			nested.append("(?:a");
+		}
+		for (int i = 0; i < depth; i++) {
+			nested.append("b)");
+		}
+		this.nestedGroup = nested.toString();
+
+		final StringBuilder classes = new StringBuilder("[");
+		while (classes.length() < this.length) {
+			classes.append("a-z\\]\\[0-9");
+		}
+		this.classes = classes.append(']').toString();
+	}
+
+	@Benchmark
+	public boolean isRegExUnitNestedGroup() {
+		return BaseRegExBuilder.isRegExUnit(this.nestedGroup);
+	}
+
+	@Benchmark
+	public boolean isRegExUnitCharClass() {
+		return BaseRegExBuilder.isRegExUnit(this.classes);
+	}
+
+	@Benchmark
+	public boolean isOneGroupNestedGroup() {
+		return BaseRegExBuilder.isOneGroup(this.nestedGroup);
+	}
+}
@@ -0,0 +1,289 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.Arrays;
+
+/**
+ * Aho-Corasick automaton that finds occurrences of many strings in one pass
+ * <p>
+ * The trie of the strings is turned into a DFA: the transitions of every
+ * state, including those that follow failure links, are precomputed into a
+ * single dense table indexed by state and character class, where a class is
+ * one of the characters of the strings or "any other character". A search
+ * does one table lookup per character of the input, however many strings
+ * there are.
+ * </p>
+ * <p>
+ * Strings and input are compared char by char, after folding US-ASCII
+ * letters if case-insensitive. An automaton is immutable and thread-safe.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class AhoCorasick {
+
+	/**
+	 * Decides whether an occurrence of a string counts as a match
+	 */
+	interface Filter {
+		/**
+		 * Returns {@code true} if the occurrence of a string between
+		 * {@code start} and {@code end} of {@code input} is a match.
+		 */
+		boolean accept(CharSequence input, int start, int end);
+	}
+
+	private final boolean asciiFold;
+
+	/**
+	 * class of each Latin-1 character; class 0 is every character that is
+	 * not in a string
+	 */
+	private final int[] latin1 = new int[256];
+	private final char[] highChars;
+	private final int[] highClasses;
+	private final int classCount;
+
+	/**
+	 * next state by state and class, at {@code state * classCount + class}
+	 */
+	private final int[] delta;
+
+	/**
+	 * length of the string of each state
+	 */
+	private final int[] depth;
+
+	/**
+	 * lowest index of the strings equal to the string of each state, or -1
+	 */
+	private final int[] matchIndex;
+
+	/**
+	 * longest proper suffix state of each state that is a match, or -1
+	 */
+	private final int[] outLink;
+
+	/**
+	 * @param strings
+	 *            strings to find, none of them empty; the index of a string
+	 *            is its priority, lowest first
+	 * @param asciiFold
+	 *            {@code true} to match US-ASCII letters case-insensitively
+	 */
+	AhoCorasick(String[] strings, boolean asciiFold) {
+		this.asciiFold = asciiFold;
+		char[] chars = new char[16];
+		int charCount = 0;
+		int total = 0;
+		for (String string : strings) {
+			total += string.length();
+			for (int i = 0; i < string.length(); i++) {
+				if (charCount == chars.length) {
+					chars = Arrays.copyOf(chars, charCount * 2);
+				}
+				chars[charCount++] = fold(string.charAt(i));
+			}
+		}
+		Arrays.sort(chars, 0, charCount);
+		int classes = 1;
+		int highCount = 0;
+		char[] highChars = new char[charCount];
+		int[] highClasses = new int[charCount];
+		for (int i = 0; i < charCount; i++) {
+			char c = chars[i];
+			if (i > 0 && c == chars[i - 1]) {
+				continue;
+			}
+			if (c < this.latin1.length) {
+				this.latin1[c] = classes++;
+			} else {
+				highChars[highCount] = c;
+				highClasses[highCount++] = classes++;
+			}
+		}
+		this.highChars = Arrays.copyOf(highChars, highCount);
+		this.highClasses = Arrays.copyOf(highClasses, highCount);
+		this.classCount = classes;
+
+		// the trie, with -1 for missing children
+		int capacity = total + 1;
+		int[] delta = new int[capacity * classes];
+		Arrays.fill(delta, -1);
+		int[] depth = new int[capacity];
+		int[] matchIndex = new int[capacity];
+		Arrays.fill(matchIndex, -1);
+		int stateCount = 1;
+		for (int index = 0; index < strings.length; index++) {
+			String string = strings[index];
+			int state = 0;
+			for (int i = 0; i < string.length(); i++) {
+				int slot = state * classes + classOf(string.charAt(i));
+				if (delta[slot] < 0) {
+					depth[stateCount] = depth[state] + 1;
+					delta[slot] = stateCount++;
+				}
+				state = delta[slot];
+			}
+			if (matchIndex[state] < 0) {
+				matchIndex[state] = index;
+			}
+		}
+
+		// failure links, breadth first so that the transitions of a
+		// shallower state are complete when a deeper state copies them
+		int[] fail = new int[stateCount];
+		int[] outLink = new int[stateCount];
+		outLink[0] = -1;
+		int[] queue = new int[stateCount];
+		int head = 0;
+		int tail = 0;
+		for (int cls = 0; cls < classes; cls++) {
+			int child = delta[cls];
+			if (child < 0) {
+				delta[cls] = 0;
+			} else {
+				fail[child] = 0;
+				outLink[child] = -1;
+				queue[tail++] = child;
+			}
+		}
+		while (head < tail) {
+			int state = queue[head++];
+			for (int cls = 0; cls < classes; cls++) {
+				int slot = state * classes + cls;
+				int child = delta[slot];
+				int failed = delta[fail[state] * classes + cls];
+				if (child < 0) {
+					delta[slot] = failed;
+				} else {
+					fail[child] = failed;
+					outLink[child] = matchIndex[failed] >= 0 ? failed : outLink[failed];
+					queue[tail++] = child;
+				}
+			}
+		}
+		this.delta = Arrays.copyOf(delta, stateCount * classes);
+		this.depth = Arrays.copyOf(depth, stateCount);
+		this.matchIndex = Arrays.copyOf(matchIndex, stateCount);
+		this.outLink = outLink;
+	}
+
+	int stateCount() {
+		return this.depth.length;
+	}
+
+	private char fold(char c) {
+		return this.asciiFold && c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	private int classOf(char c) {
+		c = fold(c);
+		if (c < this.latin1.length) {
+			return this.latin1[c];
+		}
+		int i = Arrays.binarySearch(this.highChars, c);
+		return i >= 0 ? this.highClasses[i] : 0;
+	}
+
+	/**
+	 * Finds the leftmost-first match in {@code input} from {@code from}: the
+	 * accepted occurrence that starts first and, of those, the one of the
+	 * string with the lowest index, which is the match a backtracking
+	 * matcher finds for an alternation of the strings.
+	 *
+	 * @param input
+	 *            input to search
+	 * @param from
+	 *            index to search from
+	 * @param filter
+	 *            decides which occurrences are matches
+	 * @param span
+	 *            receives the start and the end of the match, or {@code null}
+	 *            to stop at the first match found, which is then not
+	 *            necessarily the leftmost-first one
+	 * @param budget
+	 *            budget charged one step per character read, or {@code null}
+	 * @return the index of the string matched, or -1 if there is no match
+	 * @throws MatchLimitExceededException
+	 *             if the search exceeds {@code budget}
+	 */
+	int find(CharSequence input, int from, Filter filter, int[] span, MatchBudget budget) {
+		final int classes = this.classCount;
+		final int end = input.length();
+		int bestStart = Integer.MAX_VALUE;
+		int bestEnd = -1;
+		int bestIndex = -1;
+		int state = 0;
+		for (int pos = from; pos < end; pos++) {
+			if (pos - this.depth[state] > bestStart) {
+				// Every occurrence still to come starts after the best one.
+				break;
+			}
+			if (budget != null) {
+				budget.step();
+			}
+			state = this.delta[state * classes + classOf(input.charAt(pos))];
+			for (int m = this.matchIndex[state] >= 0 ? state : this.outLink[state]; m >= 0; m = this.outLink[m]) {
+				int start = pos + 1 - this.depth[m];
+				int index = this.matchIndex[m];
+				if ((start < bestStart || start == bestStart && index < bestIndex)
+						&& filter.accept(input, start, pos + 1)) {
+					if (span == null) {
+						return index;
+					}
+					bestStart = start;
+					bestEnd = pos + 1;
+					bestIndex = index;
+				}
+			}
+		}
+		if (bestIndex >= 0) {
+			span[0] = bestStart;
+			span[1] = bestEnd;
+		}
+		return bestIndex;
+	}
+
+	/**
+	 * Returns {@code true} if an accepted occurrence of a string starts at
+	 * index 0 of {@code input} and, if {@code whole}, spans all of it,
+	 * charging {@code budget}, if not {@code null}, one step per character
+	 * read.
+	 */
+	boolean matchesPrefix(CharSequence input, Filter filter, boolean whole, MatchBudget budget) {
+		final int end = input.length();
+		int state = 0;
+		for (int pos = 0; pos < end; pos++) {
+			if (budget != null) {
+				budget.step();
+			}
+			int next = this.delta[state * this.classCount + classOf(input.charAt(pos))];
+			if (this.depth[next] != this.depth[state] + 1) {
+				// The transition follows a failure link: no string starts
+				// with the input read so far.
+				return false;
+			}
+			state = next;
+			if (this.matchIndex[state] >= 0 && (!whole || pos + 1 == end) && filter.accept(input, 0, pos + 1)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
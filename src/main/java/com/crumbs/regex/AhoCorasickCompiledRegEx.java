@@ -0,0 +1,177 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.crumbs.regex.RegExNode.Alternation;
+import com.crumbs.regex.RegExNode.Boundary;
+import com.crumbs.regex.RegExNode.Concat;
+import com.crumbs.regex.RegExNode.Escape;
+import com.crumbs.regex.RegExNode.Fragment;
+import com.crumbs.regex.RegExNode.Group;
+
+/**
+ * Compiled regular expression for an alternation of literals, matched by an
+ * {@link AhoCorasick} automaton
+ * <p>
+ * A backtracking matcher tries every branch of an alternation at every
+ * position, so a keyword list of <em>k</em> entries costs O(<em>k</em>) per
+ * character of the input. The automaton reads each character once instead.
+ * Zero-width assertions before and after the alternation, as in
+ * <tt>\b(?:foo|bar)\b</tt>, are checked on each occurrence the automaton
+ * finds.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class AhoCorasickCompiledRegEx extends CompiledRegEx implements AhoCorasick.Filter {
+
+	private final AhoCorasick automaton;
+	private final int[] leading;
+	private final int[] trailing;
+
+	private AhoCorasickCompiledRegEx(AhoCorasick automaton, int[] leading, int[] trailing, MatchLimit matchLimit) {
+		super(matchLimit);
+		this.automaton = automaton;
+		this.leading = leading;
+		this.trailing = trailing;
+	}
+
+	/**
+	 * Returns a compiled regular expression for {@code node} if it is an
+	 * alternation of literals, optionally between assertions.
+	 *
+	 * @param node
+	 *            expression tree
+	 * @param flags
+	 *            {@link Pattern} flags
+	 * @param matchLimit
+	 *            default limit of the matches
+	 * @return the compiled regular expression, or {@code null} if
+	 *         {@code node} is not an alternation of literals or the flags
+	 *         change how literals match beyond US-ASCII case folding
+	 */
+	static AhoCorasickCompiledRegEx of(RegExNode node, int flags, MatchLimit matchLimit) {
+		if ((flags & (Pattern.COMMENTS | Pattern.UNICODE_CASE)) != 0) {
+			return null;
+		}
+		RegExNode[] children = node instanceof Concat ? ((Concat) node).children : new RegExNode[] { node };
+		int first = 0;
+		int last = children.length - 1;
+		List<Integer> leading = new ArrayList<Integer>();
+		List<Integer> trailing = new ArrayList<Integer>();
+		while (first <= last && children[first] instanceof Boundary) {
+			leading.add(Integer.valueOf(ProgCompiler.assertionKind((Boundary) children[first++], flags)));
+		}
+		while (last >= first && children[last] instanceof Boundary) {
+			trailing.add(0, Integer.valueOf(ProgCompiler.assertionKind((Boundary) children[last--], flags)));
+		}
+		if (first != last || leading.contains(Integer.valueOf(-1)) || trailing.contains(Integer.valueOf(-1))) {
+			return null;
+		}
+		RegExNode alternation = unwrap(children[first]);
+		if (!(alternation instanceof Alternation)) {
+			return null;
+		}
+		RegExNode[] branches = ((Alternation) alternation).branches;
+		String[] strings = new String[branches.length];
+		for (int i = 0; i < branches.length; i++) {
+			StringBuilder text = new StringBuilder();
+			if (!appendLiteral(branches[i], text) || text.length() == 0) {
+				return null;
+			}
+			strings[i] = text.toString();
+		}
+		return new AhoCorasickCompiledRegEx(new AhoCorasick(strings, (flags & Pattern.CASE_INSENSITIVE) != 0),
+				toArray(leading), toArray(trailing), matchLimit);
+	}
+
+	/**
+	 * Returns the child of fragments and of groups that do not change flags.
+	 */
+	private static RegExNode unwrap(RegExNode node) {
+		while (true) {
+			if (node instanceof Fragment) {
+				node = ((Fragment) node).child;
+			} else if (node instanceof Group && (((Group) node).kind == Group.Kind.CAPTURE
+					|| ((Group) node).kind == Group.Kind.NO_CAPTURE)) {
+				node = ((Group) node).child;
+			} else {
+				return node;
+			}
+		}
+	}
+
+	/**
+	 * Appends the text {@code node} matches if it is made of literals.
+	 *
+	 * @return {@code false} if {@code node} is not made of literals
+	 */
+	private static boolean appendLiteral(RegExNode node, StringBuilder text) {
+		if (node instanceof Fragment) {
+			return appendLiteral(((Fragment) node).child, text);
+		} else if (node instanceof Concat) {
+			for (RegExNode child : ((Concat) node).children) {
+				if (!appendLiteral(child, text)) {
+					return false;
+				}
+			}
+			return true;
+		} else if (node instanceof Escape) {
+			text.appendCodePoint(((Escape) node).codePoint);
+			return true;
+		} else if (node.literalText() != null) {
+			text.append(node.literalText());
+			return true;
+		}
+		return false;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i).intValue();
+		}
+		return array;
+	}
+
+	@Override
+	public boolean accept(CharSequence input, int start, int end) {
+		for (int kind : this.leading) {
+			if (!Prog.assertion(kind, input, start)) {
+				return false;
+			}
+		}
+		for (int kind : this.trailing) {
+			if (!Prog.assertion(kind, input, end)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	boolean search(CharSequence input, PikeVM.Anchor anchor, MatchBudget budget) {
+		if (anchor == PikeVM.Anchor.UNANCHORED) {
+			return this.automaton.find(input, 0, this, null, budget) >= 0;
+		}
+		return this.automaton.matchesPrefix(input, this, anchor == PikeVM.Anchor.BOTH, budget);
+	}
+}
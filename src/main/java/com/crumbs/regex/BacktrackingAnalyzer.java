@@ -0,0 +1,867 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import com.crumbs.regex.BacktrackingRisk.Kind;
+import com.crumbs.regex.RegExNode.Alternation;
+import com.crumbs.regex.RegExNode.BackReference;
+import com.crumbs.regex.RegExNode.Boundary;
+import com.crumbs.regex.RegExNode.Comment;
+import com.crumbs.regex.RegExNode.Concat;
+import com.crumbs.regex.RegExNode.Flags;
+import com.crumbs.regex.RegExNode.Fragment;
+import com.crumbs.regex.RegExNode.Group;
+import com.crumbs.regex.RegExNode.Literal;
+import com.crumbs.regex.RegExNode.Quantifier;
+import com.crumbs.regex.RegExNode.Raw;
+
+/**
+ * Finds the parts of an expression tree on which a backtracking matcher can
+ * take more than linear time
+ * <p>
+ * The analyzer looks for text that a part of the tree matches in more and
+ * more ways as the text grows. It tries texts made of a pump repeated: each
+ * code point that stands for a character set or a literal of the part, such
+ * as <tt>a</tt> for <tt>(a+)+</tt> and <tt>0</tt> for <tt>\w+\d+</tt>, and,
+ * for a loop, a shortest text of its body and of each branch of the
+ * alternations in it, such as <tt>ab</tt> for <tt>(ab|[ab]b)*</tt>, which
+ * the other branches may match too. For each such pump <em>w</em>, it
+ * counts the ways each node matches the first <em>n</em> code points of
+ * <em>www</em>..., starting at each code point of <em>w</em>, for <em>n</em>
+ * up to {@link #MAX_LENGTH} repetitions of <em>w</em>, where two ways are as
+ * many as it needs to know:
+ * </p>
+ * <ul>
+ * <li>a loop without an upper bound, as in <tt>(a|aa)*</tt>, is an
+ * {@link Kind#EXPONENTIAL} risk if it matches some text in two ways;</li>
+ * <li>a loop with an upper bound, as in <tt>(.*a){5}</tt>, is a
+ * {@link Kind#POLYNOMIAL} risk if it matches some text in two ways and its
+ * body matches texts of any length;</li>
+ * <li>a sequence, as in <tt>\d+,?\d+</tt>, is a
+ * {@link Kind#POLYNOMIAL} risk if two of its parts match texts of any
+ * length and the parts between them match some text.</li>
+ * </ul>
+ * <p>
+ * Possessive loops and atomic groups match in one way. Back references and
+ * text appended verbatim match nothing, so the analyzer may miss a risk but
+ * does not report one that is not there. The witness of each risk is
+ * checked against the compiled pattern to find a suffix that makes the
+ * match fail.
+ * </p>
+ * <p>
+ * Since Java 9, {@code java.util.regex} remembers the positions at which a
+ * greedy loop without an upper bound failed, unless the loop is inside
+ * another quantifier or the regular expression has back references. A
+ * backtracking matcher then enters such a loop at most once per position,
+ * so the loop only costs as much as its body: polynomial time if the body
+ * matches texts of any length, as in <tt>(a+)+</tt>, and linear time
+ * otherwise, as in <tt>(a|aa)*</tt>. The {@link BacktrackingRisk#kind()
+ * kind} of such a risk is then {@link Kind#POLYNOMIAL} or
+ * {@link Kind#LINEAR}, while its
+ * {@link BacktrackingRisk#worstCaseKind() worst-case kind} stays
+ * {@link Kind#EXPONENTIAL}. The body of a linear loop is still searched for
+ * risks of its own.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see BacktrackingRisk
+ */
+final class BacktrackingAnalyzer {
+
+	/**
+	 * greatest length, in repetitions of the code point, of the texts whose
+	 * ways are counted
+	 */
+	static final int MAX_LENGTH = 32;
+
+	/**
+	 * greatest number of code points of a pump made of more than one
+	 */
+	private static final int MAX_PUMP = 16;
+
+	/**
+	 * whether {@code java.util.regex} remembers the positions at which a
+	 * greedy loop without an upper bound failed, as it does since Java 9
+	 */
+	static final boolean REMEMBERS_FAILED_LOOPS = !System.getProperty("java.specification.version", "1.")
+			.startsWith("1.");
+
+	/**
+	 * number of repetitions of the pump when a witness is checked
+	 */
+	private static final int CHECK_REPETITIONS = 8;
+
+	/**
+	 * code points tried, in order, as the suffix of a witness
+	 */
+	private static final String SUFFIXES = "!\n \u0000";
+
+	/**
+	 * code points that a sample of a set prefers to its least member
+	 */
+	private static final String SAMPLES = "a0A_ ";
+
+	private final Pattern pattern;
+	private final List<BacktrackingRisk> risks = new ArrayList<BacktrackingRisk>();
+
+	/**
+	 * whether {@code java.util.regex} may remember where the loops of the
+	 * pattern failed, which it does since Java 9 unless the pattern has back
+	 * references
+	 */
+	private final boolean remembers;
+
+	/**
+	 * {@link Pattern} flags in effect at the node being analyzed
+	 */
+	private int flags;
+
+	/**
+	 * number of quantifiers around the node being walked
+	 */
+	private int loops;
+
+	private BacktrackingAnalyzer(Pattern pattern, boolean remembers) {
+		this.pattern = pattern;
+		this.remembers = remembers;
+		this.flags = pattern.flags();
+	}
+
+	/**
+	 * Finds the backtracking risks of {@code node}.
+	 *
+	 * @param node
+	 *            expression tree
+	 * @param pattern
+	 *            pattern compiled from {@code node}, with the flags
+	 *            {@code node} is matched with
+	 * @return the risks in the order of the tree, outer parts first
+	 */
+	static List<BacktrackingRisk> analyze(RegExNode node, Pattern pattern) {
+		BacktrackingAnalyzer analyzer = new BacktrackingAnalyzer(pattern,
+				REMEMBERS_FAILED_LOOPS && !refersBack(node));
+		if ((pattern.flags() & Pattern.LITERAL) == 0) {
+			analyzer.walk(node, "");
+		}
+		return Collections.unmodifiableList(analyzer.risks);
+	}
+
+	/**
+	 * Returns {@code true} if {@code node} may have a back reference, which
+	 * stops {@code java.util.regex} from remembering where loops failed.
+	 */
+	private static boolean refersBack(RegExNode node) {
+		if (node instanceof BackReference || node instanceof Raw) {
+			return true;
+		} else if (node instanceof Fragment) {
+			return refersBack(((Fragment) node).child);
+		} else if (node instanceof Group) {
+			return refersBack(((Group) node).child);
+		} else if (node instanceof Quantifier) {
+			return refersBack(((Quantifier) node).child);
+		}
+		RegExNode[] children = node instanceof Concat ? ((Concat) node).children
+				: node instanceof Alternation ? ((Alternation) node).branches : new RegExNode[0];
+		for (RegExNode child : children) {
+			if (refersBack(child)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Looks for risks in {@code node} and its descendants.
+	 *
+	 * @param prefix
+	 *            text that leads a match up to {@code node}
+	 */
+	private void walk(RegExNode node, String prefix) {
+		if (node instanceof Fragment) {
+			walk(((Fragment) node).child, prefix);
+		} else if (node instanceof Concat) {
+			RegExNode[] children = ((Concat) node).children;
+			int saved = this.flags;
+			checkSequence(children, prefix);
+			this.flags = saved;
+			StringBuilder before = new StringBuilder(prefix);
+			for (RegExNode child : children) {
+				walk(child, before.toString());
+				before.append(sample(child));
+			}
+		} else if (node instanceof Alternation) {
+			int saved = this.flags;
+			for (RegExNode branch : ((Alternation) node).branches) {
+				this.flags = saved;
+				walk(branch, prefix);
+			}
+			this.flags = saved;
+		} else if (node instanceof Group) {
+			Group group = (Group) node;
+			int saved = this.flags;
+			if (group.kind == Group.Kind.FLAGS) {
+				this.flags = ProgCompiler.applyFlags(this.flags, group.flags);
+			}
+			walk(group.child, prefix);
+			this.flags = saved;
+		} else if (node instanceof Quantifier) {
+			Quantifier quantifier = (Quantifier) node;
+			int saved = this.flags;
+			boolean reported = checkLoop(quantifier, prefix);
+			this.flags = saved;
+			if (!reported) {
+				this.loops++;
+				walk(quantifier.child, prefix);
+				this.loops--;
+				this.flags = saved;
+			}
+		} else if (node instanceof Flags) {
+			this.flags = ProgCompiler.applyFlags(this.flags, ((Flags) node).mask);
+		}
+	}
+
+	/**
+	 * Reports {@code quantifier} if it matches some text in more than one
+	 * way.
+	 *
+	 * @return {@code true} if a risk was reported that {@code java.util.regex}
+	 *         takes more than linear time on, so that the body of the loop
+	 *         need not be walked
+	 */
+	private boolean checkLoop(Quantifier quantifier, String prefix) {
+		int max = max(quantifier);
+		if (quantifier.mode == Quantifier.Mode.POSSESSIVE || max == 0 || max == 1) {
+			return false;
+		}
+		int saved = this.flags;
+		int[] linearPump = null;
+		for (int[] pump : pumps(quantifier.child)) {
+			this.flags = saved;
+			int[][] ways = ways(quantifier, pump);
+			if (!isAmbiguous(ways)) {
+				continue;
+			}
+			this.flags = saved;
+			boolean unbounded = isUnbounded(ways(quantifier.child, pump));
+			Kind kind;
+			Kind worstCaseKind;
+			if (max != Quantifier.UNBOUNDED) {
+				if (!unbounded) {
+					// The body matches texts of a few lengths, so there are
+					// only a few ways.
+					continue;
+				}
+				kind = worstCaseKind = Kind.POLYNOMIAL;
+			} else if (this.remembers && this.loops == 0 && quantifier.mode == Quantifier.Mode.GREEDY) {
+				// Java enters the loop once per position, and an inner loop
+				// that is ambiguous on its own is not remembered.
+				if (!unbounded) {
+					// Another pump may still make the body slow.
+					if (linearPump == null) {
+						linearPump = pump;
+					}
+					continue;
+				}
+				this.flags = saved;
+				kind = hasAmbiguousLoop(quantifier.child, pump) ? Kind.EXPONENTIAL : Kind.POLYNOMIAL;
+				worstCaseKind = Kind.EXPONENTIAL;
+			} else {
+				kind = worstCaseKind = Kind.EXPONENTIAL;
+			}
+			this.flags = saved;
+			report(kind, worstCaseKind, quantifier, prefix, pump);
+			return true;
+		}
+		this.flags = saved;
+		if (linearPump != null) {
+			// The risks of the body are still worth finding.
+			report(Kind.LINEAR, Kind.EXPONENTIAL, quantifier, prefix, linearPump);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns {@code true} if a loop in {@code node} matches some text of
+	 * {@code pump} in more than one way.
+	 */
+	private boolean hasAmbiguousLoop(RegExNode node, int[] pump) {
+		if (node instanceof Fragment) {
+			return hasAmbiguousLoop(((Fragment) node).child, pump);
+		} else if (node instanceof Concat) {
+			for (RegExNode child : ((Concat) node).children) {
+				if (child instanceof Flags) {
+					this.flags = ProgCompiler.applyFlags(this.flags, ((Flags) child).mask);
+				} else if (hasAmbiguousLoop(child, pump)) {
+					return true;
+				}
+			}
+		} else if (node instanceof Alternation) {
+			int saved = this.flags;
+			for (RegExNode branch : ((Alternation) node).branches) {
+				this.flags = saved;
+				if (hasAmbiguousLoop(branch, pump)) {
+					return true;
+				}
+			}
+			this.flags = saved;
+		} else if (node instanceof Group) {
+			Group group = (Group) node;
+			int saved = this.flags;
+			if (group.kind == Group.Kind.FLAGS) {
+				this.flags = ProgCompiler.applyFlags(this.flags, group.flags);
+			}
+			boolean ambiguous = hasAmbiguousLoop(group.child, pump);
+			this.flags = saved;
+			return ambiguous;
+		} else if (node instanceof Quantifier) {
+			Quantifier quantifier = (Quantifier) node;
+			int saved = this.flags;
+			int max = max(quantifier);
+			if (quantifier.mode != Quantifier.Mode.POSSESSIVE && max != 0 && max != 1
+					&& isAmbiguousAnywhere(ways(quantifier, pump))) {
+				this.flags = saved;
+				return true;
+			}
+			this.flags = saved;
+			boolean ambiguous = hasAmbiguousLoop(quantifier.child, pump);
+			this.flags = saved;
+			return ambiguous;
+		}
+		return false;
+	}
+
+	/**
+	 * Reports the first two children of a sequence that match texts of any
+	 * length and can share one.
+	 */
+	private void checkSequence(RegExNode[] children, String prefix) {
+		int saved = this.flags;
+		TreeSet<Integer> candidates = new TreeSet<Integer>();
+		for (RegExNode child : children) {
+			candidates.addAll(candidates(child));
+		}
+		for (int c : candidates) {
+			this.flags = saved;
+			StringBuilder before = new StringBuilder(prefix);
+			int first = -1;
+			String firstPrefix = null;
+			int[] pump = { c };
+			for (int i = 0; i < children.length; i++) {
+				int[][] ways = ways(children[i], pump);
+				if (!matchesAny(ways)) {
+					// The loops before this child cannot share its text.
+					first = -1;
+				} else if (isUnbounded(ways)) {
+					if (first >= 0) {
+						List<RegExNode> run = new ArrayList<RegExNode>();
+						for (int j = first; j <= i; j++) {
+							run.add(children[j]);
+						}
+						report(Kind.POLYNOMIAL, Kind.POLYNOMIAL, Concat.of(run), firstPrefix, pump);
+						return;
+					}
+					first = i;
+					firstPrefix = before.toString();
+				}
+				before.append(sample(children[i]));
+			}
+		}
+	}
+
+	private void report(Kind kind, Kind worstCaseKind, RegExNode fragment, String prefix, int[] codePoints) {
+		String pump = new String(codePoints, 0, codePoints.length);
+		StringBuilder text = new StringBuilder(prefix);
+		for (int i = 0; i < CHECK_REPETITIONS; i++) {
+			text.append(pump);
+		}
+		String suffix = "";
+		for (int i = 0; i < SUFFIXES.length(); i++) {
+			String candidate = SUFFIXES.substring(i, i + 1);
+			if (!candidate.equals(pump) && !this.pattern.matcher(text + candidate).matches()) {
+				suffix = candidate;
+				break;
+			}
+		}
+		this.risks.add(new BacktrackingRisk(kind, worstCaseKind, fragment.toString(Dialect.JAVA), prefix, pump,
+				suffix));
+	}
+
+	/**
+	 * Returns the code points worth trying as the text of {@code node}: a
+	 * sample and the least member of each of its sets, and the first code
+	 * point of each of its literals.
+	 */
+	private TreeSet<Integer> candidates(RegExNode node) {
+		TreeSet<Integer> candidates = new TreeSet<Integer>();
+		addCandidates(node, candidates);
+		return candidates;
+	}
+
+	private void addCandidates(RegExNode node, TreeSet<Integer> candidates) {
+		if (node instanceof Fragment) {
+			addCandidates(((Fragment) node).child, candidates);
+		} else if (node instanceof Concat) {
+			for (RegExNode child : ((Concat) node).children) {
+				addCandidates(child, candidates);
+			}
+		} else if (node instanceof Alternation) {
+			for (RegExNode branch : ((Alternation) node).branches) {
+				addCandidates(branch, candidates);
+			}
+		} else if (node instanceof Group) {
+			addCandidates(((Group) node).child, candidates);
+		} else if (node instanceof Quantifier) {
+			addCandidates(((Quantifier) node).child, candidates);
+		} else if (node.literalText() != null) {
+			if (node.literalText().length() > 0) {
+				candidates.add(Integer.valueOf(node.literalText().codePointAt(0)));
+			}
+		} else if (node != RegExNode.EMPTY && !(node instanceof Boundary) && !(node instanceof Flags)
+				&& !(node instanceof Comment)) {
+			CodePointSet set = ProgCompiler.charSet(node, 0);
+			if (set != null && !set.isEmpty()) {
+				candidates.add(Integer.valueOf(sample(set)));
+				candidates.add(Integer.valueOf(set.min(0)));
+			}
+		}
+	}
+
+	/**
+	 * Returns the pumps worth trying as the text of the body {@code node} of
+	 * a loop: each code point of {@link #candidates(RegExNode)}, then a
+	 * shortest text of {@code node} and of each branch of its alternations.
+	 */
+	private List<int[]> pumps(RegExNode node) {
+		List<int[]> pumps = new ArrayList<int[]>();
+		for (int c : candidates(node)) {
+			pumps.add(new int[] { c });
+		}
+		int saved = this.flags;
+		Set<String> samples = new LinkedHashSet<String>();
+		samples.add(sample(node));
+		this.flags = saved;
+		addBranchSamples(node, samples);
+		this.flags = saved;
+		for (String sample : samples) {
+			int length = sample.codePointCount(0, sample.length());
+			if (length > 1 && length <= MAX_PUMP) {
+				int[] pump = new int[length];
+				for (int i = 0, j = 0; i < length; i++) {
+					pump[i] = sample.codePointAt(j);
+					j += Character.charCount(pump[i]);
+				}
+				pumps.add(pump);
+			}
+		}
+		return pumps;
+	}
+
+	private void addBranchSamples(RegExNode node, Set<String> samples) {
+		if (node instanceof Fragment) {
+			addBranchSamples(((Fragment) node).child, samples);
+		} else if (node instanceof Concat) {
+			for (RegExNode child : ((Concat) node).children) {
+				addBranchSamples(child, samples);
+			}
+		} else if (node instanceof Alternation) {
+			int saved = this.flags;
+			for (RegExNode branch : ((Alternation) node).branches) {
+				this.flags = saved;
+				samples.add(sample(branch));
+				this.flags = saved;
+				addBranchSamples(branch, samples);
+			}
+			this.flags = saved;
+		} else if (node instanceof Group) {
+			addBranchSamples(((Group) node).child, samples);
+		} else if (node instanceof Quantifier) {
+			addBranchSamples(((Quantifier) node).child, samples);
+		}
+	}
+
+	/**
+	 * Returns the number of ways {@code node} matches the texts made of
+	 * {@code pump} repeated, where element [<em>p</em>][<em>n</em>] counts
+	 * the ways of the <em>n</em> code points that start at code point
+	 * <em>p</em> of the pump, and 2 stands for two or more.
+	 */
+	private int[][] ways(RegExNode node, int[] pump) {
+		if (node == RegExNode.EMPTY || node instanceof Boundary || node instanceof Comment) {
+			return unit(pump);
+		} else if (node instanceof Fragment) {
+			return ways(((Fragment) node).child, pump);
+		} else if (node instanceof Concat) {
+			int[][] ways = unit(pump);
+			for (RegExNode child : ((Concat) node).children) {
+				ways = times(ways, ways(child, pump));
+			}
+			return ways;
+		} else if (node.literalText() != null) {
+			return literal(node, pump);
+		} else if (node instanceof Alternation) {
+			int saved = this.flags;
+			int[][] ways = none(pump);
+			for (RegExNode branch : ((Alternation) node).branches) {
+				this.flags = saved;
+				ways = plus(ways, ways(branch, pump));
+			}
+			this.flags = saved;
+			return ways;
+		} else if (node instanceof Group) {
+			return group((Group) node, pump);
+		} else if (node instanceof Quantifier) {
+			return quantifier((Quantifier) node, pump);
+		} else if (node instanceof Flags) {
+			this.flags = ProgCompiler.applyFlags(this.flags, ((Flags) node).mask);
+			return unit(pump);
+		} else if (node instanceof BackReference || node instanceof Raw) {
+			return none(pump);
+		}
+		CodePointSet set = ProgCompiler.charSet(node, this.flags);
+		int[][] ways = none(pump);
+		if (set != null) {
+			CodePointSet folded = ProgCompiler.caseFold(set, this.flags);
+			for (int p = 0; p < pump.length; p++) {
+				if (folded.contains(pump[p])) {
+					ways[p][1] = 1;
+				}
+			}
+		}
+		return ways;
+	}
+
+	private int[][] literal(RegExNode node, int[] pump) {
+		String text = node.literalText();
+		int[][] ways = none(pump);
+		int[] codePoints = new int[text.codePointCount(0, text.length())];
+		int length = 0;
+		for (int i = 0; i < text.length();) {
+			int d = text.codePointAt(i);
+			if ((this.flags & Pattern.COMMENTS) != 0 && node instanceof Literal
+					&& (Character.isWhitespace(d) || d == '#')) {
+				// Comments mode drops unescaped white space and comments.
+				return ways;
+			}
+			codePoints[length++] = d;
+			i += Character.charCount(d);
+		}
+		if (length > limit(pump)) {
+			return ways;
+		}
+		for (int p = 0; p < pump.length; p++) {
+			boolean matches = true;
+			for (int i = 0; i < length && matches; i++) {
+				int c = pump[(p + i) % pump.length];
+				matches = codePoints[i] == c
+						|| ProgCompiler.caseFold(CodePointSet.of(codePoints[i]), this.flags).contains(c);
+			}
+			if (matches) {
+				ways[p][length] = 1;
+			}
+		}
+		return ways;
+	}
+
+	private int[][] group(Group group, int[] pump) {
+		int saved = this.flags;
+		int[][] ways;
+		switch (group.kind) {
+		case CAPTURE:
+		case NO_CAPTURE:
+			ways = ways(group.child, pump);
+			break;
+		case ATOMIC:
+			ways = once(ways(group.child, pump));
+			break;
+		case FLAGS:
+			this.flags = ProgCompiler.applyFlags(this.flags, group.flags);
+			ways = ways(group.child, pump);
+			break;
+		default:
+			// Lookaround matches no text of its own.
+			ways = unit(pump);
+			break;
+		}
+		this.flags = saved;
+		return ways;
+	}
+
+	private int[][] quantifier(Quantifier quantifier, int[] pump) {
+		int min = min(quantifier);
+		int max = max(quantifier);
+		int limit = limit(pump);
+		int saved = this.flags;
+		int[][] body = ways(quantifier.child, pump);
+		this.flags = saved;
+		// An iteration past the minimum that matches nothing ends the loop.
+		int[][] extra = new int[pump.length][];
+		for (int p = 0; p < pump.length; p++) {
+			extra[p] = body[p].clone();
+			extra[p][0] = 0;
+		}
+		int[][] ways = unit(pump);
+		for (int i = 0; i < min && i < limit + 1; i++) {
+			ways = times(ways, body);
+		}
+		int[][] power = ways;
+		for (int i = min; (max == Quantifier.UNBOUNDED || i < max) && i < min + limit; i++) {
+			power = times(power, extra);
+			if (!matchesAnywhere(power)) {
+				// Every further power matches nothing too.
+				break;
+			}
+			ways = plus(ways, power);
+		}
+		return quantifier.mode == Quantifier.Mode.POSSESSIVE ? once(ways) : ways;
+	}
+
+	private static int min(Quantifier quantifier) {
+		switch (quantifier.form) {
+		case OPTIONAL:
+		case ZERO_OR_MORE:
+			return 0;
+		case ONE_OR_MORE:
+			return 1;
+		default:
+			return quantifier.min;
+		}
+	}
+
+	private static int max(Quantifier quantifier) {
+		switch (quantifier.form) {
+		case OPTIONAL:
+			return 1;
+		case ZERO_OR_MORE:
+		case ONE_OR_MORE:
+		case AT_LEAST:
+			return Quantifier.UNBOUNDED;
+		case EXACTLY:
+			return quantifier.min;
+		default:
+			return quantifier.max;
+		}
+	}
+
+	/**
+	 * Returns the greatest number of code points of the texts whose ways are
+	 * counted for {@code pump}.
+	 */
+	private static int limit(int[] pump) {
+		return MAX_LENGTH * pump.length;
+	}
+
+	private static int[][] none(int[] pump) {
+		return new int[pump.length][limit(pump) + 1];
+	}
+
+	private static int[][] unit(int[] pump) {
+		int[][] ways = none(pump);
+		for (int p = 0; p < pump.length; p++) {
+			ways[p][0] = 1;
+		}
+		return ways;
+	}
+
+	private static int[][] plus(int[][] a, int[][] b) {
+		int[][] sum = new int[a.length][a[0].length];
+		for (int p = 0; p < a.length; p++) {
+			for (int n = 0; n < a[p].length; n++) {
+				sum[p][n] = Math.min(a[p][n] + b[p][n], 2);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the ways of a text matched by {@code a} and then by {@code b},
+	 * which starts where the text of {@code a} ends.
+	 */
+	private static int[][] times(int[][] a, int[][] b) {
+		int period = a.length;
+		int limit = a[0].length - 1;
+		int[][] product = new int[period][limit + 1];
+		for (int p = 0; p < period; p++) {
+			for (int i = 0; i <= limit; i++) {
+				if (a[p][i] == 0) {
+					continue;
+				}
+				int[] next = b[(p + i) % period];
+				for (int j = 0; i + j <= limit; j++) {
+					if (next[j] != 0) {
+						product[p][i + j] = Math.min(product[p][i + j] + a[p][i] * next[j], 2);
+					}
+				}
+			}
+		}
+		return product;
+	}
+
+	/**
+	 * Returns {@code ways} with every text matched in one way, for a part
+	 * that is never backtracked into.
+	 */
+	private static int[][] once(int[][] ways) {
+		int[][] once = new int[ways.length][ways[0].length];
+		for (int p = 0; p < ways.length; p++) {
+			for (int n = 0; n < ways[p].length; n++) {
+				once[p][n] = Math.min(ways[p][n], 1);
+			}
+		}
+		return once;
+	}
+
+	/**
+	 * Returns {@code true} if some number of repetitions of the pump is
+	 * matched in more than one way.
+	 */
+	private static boolean isAmbiguous(int[][] ways) {
+		for (int n = 0; n < ways[0].length; n += ways.length) {
+			if (ways[0][n] > 1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns {@code true} if some text is matched in more than one way,
+	 * wherever in the pump it starts.
+	 */
+	private static boolean isAmbiguousAnywhere(int[][] ways) {
+		for (int[] phase : ways) {
+			for (int n = 0; n < phase.length; n++) {
+				if (phase[n] > 1) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean matchesAny(int[][] ways) {
+		for (int n = 0; n < ways[0].length; n++) {
+			if (ways[0][n] > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean matchesAnywhere(int[][] ways) {
+		for (int[] phase : ways) {
+			for (int n = 0; n < phase.length; n++) {
+				if (phase[n] > 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns {@code true} if texts of lengths up to {@link #MAX_LENGTH}
+	 * repetitions of the pump are matched as far as they are counted, which
+	 * only a loop without an upper bound does.
+	 */
+	private static boolean isUnbounded(int[][] ways) {
+		int limit = ways[0].length - 1;
+		for (int n = limit / 2 + 1; n <= limit; n++) {
+			if (ways[0][n] > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a shortest text {@code node} matches, or an empty string for
+	 * the parts whose matches are not known before matching.
+	 */
+	private String sample(RegExNode node) {
+		if (node instanceof Fragment) {
+			return sample(((Fragment) node).child);
+		} else if (node instanceof Concat) {
+			StringBuilder sample = new StringBuilder();
+			for (RegExNode child : ((Concat) node).children) {
+				sample.append(sample(child));
+			}
+			return sample.toString();
+		} else if (node.literalText() != null) {
+			return node.literalText();
+		} else if (node instanceof Alternation) {
+			int saved = this.flags;
+			String shortest = null;
+			for (RegExNode branch : ((Alternation) node).branches) {
+				this.flags = saved;
+				String sample = sample(branch);
+				if (shortest == null || sample.length() < shortest.length()) {
+					shortest = sample;
+				}
+			}
+			this.flags = saved;
+			return shortest;
+		} else if (node instanceof Group) {
+			Group group = (Group) node;
+			int saved = this.flags;
+			String sample = "";
+			if (group.kind == Group.Kind.FLAGS) {
+				this.flags = ProgCompiler.applyFlags(this.flags, group.flags);
+				sample = sample(group.child);
+			} else if (group.kind == Group.Kind.CAPTURE || group.kind == Group.Kind.NO_CAPTURE
+					|| group.kind == Group.Kind.ATOMIC) {
+				sample = sample(group.child);
+			}
+			this.flags = saved;
+			return sample;
+		} else if (node instanceof Quantifier) {
+			Quantifier quantifier = (Quantifier) node;
+			int saved = this.flags;
+			String child = sample(quantifier.child);
+			this.flags = saved;
+			StringBuilder sample = new StringBuilder();
+			for (int i = min(quantifier); i > 0; i--) {
+				sample.append(child);
+			}
+			return sample.toString();
+		} else if (node instanceof Flags) {
+			this.flags = ProgCompiler.applyFlags(this.flags, ((Flags) node).mask);
+			return "";
+		}
+		CodePointSet set = ProgCompiler.charSet(node, this.flags);
+		return set == null || set.isEmpty() ? "" : new String(Character.toChars(sample(set)));
+	}
+
+	/**
+	 * Returns a member of {@code set}, preferring one that is easy to read.
+	 */
+	private static int sample(CodePointSet set) {
+		for (int i = 0; i < SAMPLES.length(); i++) {
+			if (set.contains(SAMPLES.charAt(i))) {
+				return SAMPLES.charAt(i);
+			}
+		}
+		return set.min(0);
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.illegalOutsideSetArg;
+
+/**
+ * Part of a regular expression on which a backtracking matcher can take time
+ * that grows faster than linearly with the length of its input
+ * <p>
+ * A risk names the {@link #fragment() fragment} at fault and a witness: an
+ * input made of a {@link #prefix() prefix}, the {@link #pump() pump}
+ * repeated, and a {@link #suffix() suffix} that makes the match fail.
+ * Before it fails, a backtracking matcher tries every way the fragment can
+ * split the pumped text: a number of ways that grows exponentially with the
+ * repetitions for an {@link Kind#EXPONENTIAL} risk, and as a power of them
+ * for a {@link Kind#POLYNOMIAL} one.
+ * </p>
+ * <p>
+ * The {@link #kind() kind} of a risk is the growth on the
+ * {@code java.util.regex} of the running Java, which
+ * {@link RegExBuilder#compile(RegExMatchFlag...)} compiles for; it is the
+ * kind to act on. Since Java 9, {@code java.util.regex} remembers where some
+ * greedy loops failed, so a nested loop like <tt>(a+)+</tt> takes
+ * polynomial time there, and a loop of overlapping alternatives like
+ * <tt>(a|ab?)*</tt> takes {@link Kind#LINEAR linear} time. The
+ * {@link #worstCaseKind() worst-case kind} is the growth on a backtracking
+ * matcher that remembers nothing, such as {@code java.util.regex} before
+ * Java 9, which is exponential for both.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see RegExBuilder#backtrackingRisks(RegExMatchFlag...)
+ */
+public final class BacktrackingRisk {
+
+	/**
+	 * How fast the time of a failing match grows with the repetitions of the
+	 * pump, from slowest to fastest
+	 */
+	public enum Kind {
+		/**
+		 * linearly, as with a greedy loop of overlapping alternatives like
+		 * <tt>(a|ab?)*</tt> since Java 9, which is only a risk for matchers
+		 * that do not remember where the loop failed
+		 */
+		LINEAR,
+		/**
+		 * as a power of the repetitions, as with two adjacent loops like
+		 * <tt>\d+\d+</tt>, a counted loop like <tt>(.*a){5}</tt>, or, since
+		 * Java 9, a greedy nested loop like <tt>(a+)+</tt>
+		 */
+		POLYNOMIAL,
+		/**
+		 * exponentially, as with lazy nested loops like <tt>(a+)+?</tt> or,
+		 * inside another loop or before Java 9, a loop of overlapping
+		 * alternatives like <tt>(a|ab?)*</tt>
+		 */
+		EXPONENTIAL
+	}
+
+	private final Kind kind;
+	private final Kind worstCaseKind;
+	private final String fragment;
+	private final String prefix;
+	private final String pump;
+	private final String suffix;
+
+	BacktrackingRisk(Kind kind, Kind worstCaseKind, String fragment, String prefix, String pump, String suffix) {
+		this.kind = kind;
+		this.worstCaseKind = worstCaseKind;
+		this.fragment = fragment;
+		this.prefix = prefix;
+		this.pump = pump;
+		this.suffix = suffix;
+	}
+
+	/**
+	 * Returns how fast the time of a failing match grows on the
+	 * {@code java.util.regex} of the running Java.
+	 *
+	 * @return the kind of this risk
+	 */
+	public Kind kind() {
+		return this.kind;
+	}
+
+	/**
+	 * Returns how fast the time of a failing match grows on a backtracking
+	 * matcher that does not remember where loops failed, which is never
+	 * slower than the {@link #kind() kind}.
+	 *
+	 * @return the worst-case kind of this risk
+	 */
+	public Kind worstCaseKind() {
+		return this.worstCaseKind;
+	}
+
+	/**
+	 * Returns the fragment at fault, in the Java syntax of
+	 * {@link RegExBuilder#toString()}.
+	 *
+	 * @return the fragment at fault
+	 */
+	public String fragment() {
+		return this.fragment;
+	}
+
+	/**
+	 * Returns text that leads a match up to the {@link #fragment()}.
+	 *
+	 * @return the prefix of the witness
+	 */
+	public String prefix() {
+		return this.prefix;
+	}
+
+	/**
+	 * Returns text that the {@link #fragment()} matches in more than one
+	 * way when it is repeated.
+	 *
+	 * @return the pump of the witness
+	 */
+	public String pump() {
+		return this.pump;
+	}
+
+	/**
+	 * Returns text that makes the match of the witness fail, or an empty
+	 * string if none was found.
+	 *
+	 * @return the suffix of the witness
+	 */
+	public String suffix() {
+		return this.suffix;
+	}
+
+	/**
+	 * Returns an input that the regular expression does not match, after
+	 * trying the ways the {@link #fragment()} matches
+	 * {@code repetitions} copies of the {@link #pump()}.
+	 *
+	 * @param repetitions
+	 *            number of copies of the pump
+	 * @return the witness
+	 * @throws IllegalArgumentException
+	 *             if {@code repetitions} is negative
+	 */
+	public String attackString(int repetitions) {
+		if (repetitions < 0) {
+			throw illegalOutsideSetArg(int.class, "repetitions", Integer.valueOf(repetitions), "[0,\u221E)");
+		}
+		StringBuilder attack = new StringBuilder(this.prefix.length() + repetitions * this.pump.length()
+				+ this.suffix.length());
+		attack.append(this.prefix);
+		for (int i = 0; i < repetitions; i++) {
+			attack.append(this.pump);
+		}
+		return attack.append(this.suffix).toString();
+	}
+
+	@Override
+	public String toString() {
+		String kind = this.kind == this.worstCaseKind ? this.kind.toString()
+				: this.kind + " (" + this.worstCaseKind + ")";
+		return kind + " " + this.fragment + ": \"" + this.prefix + "\" + \"" + this.pump + "\"*n + \""
+				+ this.suffix + "\"";
+	}
+}
@@ -18,6 +18,13 @@ package com.crumbs.regex;
 import static com.crumbs.util.Logging.illegalNullArg;
 import static com.crumbs.util.Logging.illegalOutsideSetArg;
 
+import java.util.Arrays;
+
+import com.crumbs.regex.RegExNode.CharClass;
+import com.crumbs.regex.RegExNode.ClassRange;
+import com.crumbs.regex.RegExNode.ClassSet;
+import com.crumbs.regex.RegExNode.Concat;
+
 /**
  * Base class for {@link CharClassBuilder} realizations. This code is common to
  * many different regular-expression engines.
@@ -32,7 +39,7 @@ abstract class BaseCharClassBuilder extends BaseCommonBuilder<CharClassBuilder>
 			throw illegalOutsideSetArg( //
 					char.class, "min", new Character(min), "[0, max]=[0," + max + "]");
 		}
-		return u(min).u("-").t(max);
+		return add(new ClassRange(min, max));
 	}
 
 	@Override
@@ -57,4 +64,74 @@ abstract class BaseCharClassBuilder extends BaseCommonBuilder<CharClassBuilder>
 		}
 		return thiz();
 	}
+
+	@Override
+	public CharClassBuilder union(CharClassBuilder charClass) {
+		return setOperation(CharClass.Operator.UNION, charClass);
+	}
+
+	@Override
+	public CharClassBuilder intersection(CharClassBuilder charClass) {
+		return setOperation(CharClass.Operator.INTERSECTION, charClass);
+	}
+
+	@Override
+	public CharClassBuilder difference(CharClassBuilder charClass) {
+		return setOperation(CharClass.Operator.DIFFERENCE, charClass);
+	}
+
+	@Override
+	public CharClassBuilder negate() {
+		CodePointSet set = CharSets.members(toNode());
+		if (set == null) {
+			// [\x00-\x{10FFFF}&&[^members]]
+			return replace(Concat.of(Arrays.<RegExNode> asList(new ClassSet(CodePointSet.ALL),
+					raw(CharClass.Operator.DIFFERENCE.text), toNode(), raw("]"))));
+		}
+		return replace(new ClassSet(set.complement()));
+	}
+
+	private CharClassBuilder setOperation(CharClass.Operator operator, CharClassBuilder charClass) {
+		if (charClass == null) {
+			throw illegalNullArg(CharClassBuilder.class, "charClass");
+		}
+		RegExNode members = nodeOf(charClass);
+		CodePointSet set0 = CharSets.members(toNode());
+		CodePointSet set1 = CharSets.members(members);
+		if (set0 != null && set1 != null) {
+			return replace(new ClassSet(apply(set0, operator, set1)));
+		}
+		if (operator == CharClass.Operator.UNION) {
+			return add(members);
+		}
+		add(raw(operator.text));
+		add(members);
+		return add(raw("]"));
+	}
+
+	/**
+	 * Returns the result of a set operation.
+	 * 
+	 * @param set0
+	 *            left operand
+	 * @param operator
+	 *            {@link CharClass.Operator#UNION union},
+	 *            {@link CharClass.Operator#INTERSECTION intersection}, or
+	 *            {@link CharClass.Operator#DIFFERENCE difference}
+	 * @param set1
+	 *            right operand
+	 * @return the set of {@code set0} {@code operator} {@code set1}
+	 */
+	static CodePointSet apply(CodePointSet set0, CharClass.Operator operator, CodePointSet set1) {
+		switch (operator) {
+		case UNION:
+			return set0.union(set1);
+		case INTERSECTION:
+			return set0.intersection(set1);
+		case DIFFERENCE:
+			return set0.minus(set1);
+		default:
+			throw new IllegalArgumentException(operator.toString());
+		}
+	}
 }
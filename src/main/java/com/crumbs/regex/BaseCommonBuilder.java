@@ -21,9 +21,25 @@ import static java.lang.Character.toUpperCase;
 import static java.lang.Integer.toHexString;
 import static java.lang.Integer.toOctalString;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.crumbs.regex.RegExNode.ClassChar;
+import com.crumbs.regex.RegExNode.Concat;
+import com.crumbs.regex.RegExNode.Escape;
+import com.crumbs.regex.RegExNode.Property;
+import com.crumbs.regex.RegExNode.Raw;
+import com.crumbs.regex.RegExNode.Shorthand;
+
 /**
  * Abstract base class for those methods common to common to
  * {@link RegExBuilder} and {@link CharClassBuilder}
+ * <p>
+ * A builder is a sequence of immutable {@link RegExNode}s. Appending to the
+ * builder appends a node; the regular expression is rendered from the nodes
+ * in one pass the first time {@link #toString()} is called after the builder
+ * has changed.
+ * </p>
  * 
  * @author Chris Topher
  * @version 0.0, Sep 5, 2009
@@ -31,23 +47,25 @@ import static java.lang.Integer.toOctalString;
  */
 abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBuilder<B> {
 
-	private static final char[] charClassSpecialCharacters = //
-	new char[] { ']', '\\', '^', '-' };
+	private final List<RegExNode> nodes;
 
-	private final StringBuilder builder;
+	/**
+	 * {@link #nodes} as one node, or {@code null} if the builder has changed
+	 * since it was last computed
+	 */
+	private RegExNode node;
 
 	/**
-	 * Constructs a {@code CommonBuilderImpl} with the specified backing
-	 * {@code StringBuilder}.
-	 * <p>
-	 * {@code regEx} is assumed to be non-<tt>null</tt>.
-	 * </p>
-	 * 
-	 * @param builder
-	 *            backing string buffer used to build the regular expression
+	 * rendering of {@link #nodes}, or {@code null} if the builder has changed
+	 * since it was last rendered
+	 */
+	private String string;
+
+	/**
+	 * Constructs an empty {@code BaseCommonBuilder}.
 	 */
 	protected BaseCommonBuilder() {
-		this.builder = new StringBuilder();
+		this.nodes = new ArrayList<RegExNode>();
 	}
 
 	/**
@@ -60,6 +78,102 @@ abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBu
 	 */
 	protected abstract B thiz();
 
+	/**
+	 * Returns the syntax this builder renders.
+	 * 
+	 * @return the dialect of this builder
+	 */
+	Dialect dialect() {
+		return Dialect.JAVA;
+	}
+
+	/**
+	 * Appends {@code node} to the regular expression.
+	 * <p>
+	 * Empty nodes are not recorded so that, for example, appending an empty
+	 * builder leaves a builder that is one regular expression unit still one
+	 * unit.
+	 * </p>
+	 * 
+	 * @param node
+	 *            node to append to this regular expression
+	 * @return this {@code AbstractBuilder}
+	 */
+	final B add(RegExNode node) {
+		if (node != RegExNode.EMPTY) {
+			this.nodes.add(node);
+			changed();
+		}
+		return thiz();
+	}
+
+	/**
+	 * Replaces the regular expression built so far by {@code node}.
+	 * 
+	 * @param node
+	 *            node of the new regular expression
+	 * @return this {@code AbstractBuilder}
+	 */
+	final B replace(RegExNode node) {
+		this.nodes.clear();
+		changed();
+		return add(node);
+	}
+
+	/**
+	 * Forgets everything computed from the regular expression built so far.
+	 * <p>
+	 * Subclasses that remember more than the node and its rendering override
+	 * this method to forget it too.
+	 * </p>
+	 */
+	void changed() {
+		this.node = null;
+		this.string = null;
+	}
+
+	/**
+	 * Returns the regular expression built so far as one immutable node.
+	 * <p>
+	 * Later changes to this builder do not affect the returned node.
+	 * </p>
+	 * 
+	 * @return the tree of this builder
+	 */
+	final RegExNode toNode() {
+		if (this.node == null) {
+			this.node = Concat.of(this.nodes);
+		}
+		return this.node;
+	}
+
+	/**
+	 * Returns the tree of the specified builder.
+	 * <p>
+	 * Builders that are not {@code BaseCommonBuilder}s are included by their
+	 * string representation.
+	 * </p>
+	 * 
+	 * @param builder
+	 *            builder whose tree is returned
+	 * @return the tree of {@code builder}
+	 * @throws IllegalArgumentException
+	 *             if {@code builder} is {@code null}
+	 */
+	static RegExNode nodeOf(Object builder) {
+		if (builder == null) {
+			throw illegalNullArg(Object.class, "obj");
+		}
+		if (builder instanceof BaseCommonBuilder<?>) {
+			return ((BaseCommonBuilder<?>) builder).toNode();
+		}
+		return raw(builder.toString());
+	}
+
+	static RegExNode raw(String str) {
+		return str.isEmpty() ? RegExNode.EMPTY : new Raw(str);
+	}
+
 	/**
 	 * Appends {@code str} to the regular expression.
 	 * <p>
@@ -74,12 +188,7 @@ abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBu
 	 * @return this {@code AbstractBuilder}
 	 */
 	protected final B t(String str) {
-		this.builder.append(str);
-		return thiz();
-	}
-
-	protected BaseCommonBuilder<B> u(String str) {
-		return (BaseCommonBuilder<B>) t(str);
+		return add(raw(String.valueOf(str)));
 	}
 
 	/**
@@ -101,12 +210,7 @@ abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBu
 		if (obj == null) {
 			throw illegalNullArg(Object.class, "obj");
 		}
-		this.builder.append(obj.toString());
-		return thiz();
-	}
-
-	protected final BaseCommonBuilder<B> u(Object obj) {
-		return (BaseCommonBuilder<B>) t(obj);
+		return t(obj.toString());
 	}
 
 	/**
@@ -121,12 +225,7 @@ abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBu
 	 * @return this {@code AbstractBuilder}
 	 */
 	protected final B t(char character) {
-		this.builder.append(character);
-		return thiz();
-	}
-
-	protected final BaseCommonBuilder<B> u(char character) {
-		return (BaseCommonBuilder<B>) t(character);
+		return t(String.valueOf(character));
 	}
 
 	/**
@@ -141,17 +240,20 @@ abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBu
 	 * @return this {@code AbstractBuilder}
 	 */
 	protected final B t(int integer) {
-		this.builder.append(integer);
-		return thiz();
-	}
-
-	protected final BaseCommonBuilder<B> u(int integer) {
-		return (BaseCommonBuilder<B>) t(integer);
+		return t(Integer.toString(integer));
 	}
 
 	@Override
 	public final String toString() {
-		return this.builder.toString();
+		if (this.string == null) {
+			StringBuilder out = new StringBuilder();
+			Dialect dialect = dialect();
+			for (RegExNode n : this.nodes) {
+				n.render(dialect, out);
+			}
+			this.string = out.toString();
+		}
+		return this.string;
 	}
 
 	// ==========
@@ -160,37 +262,37 @@ abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBu
 
 	@Override
 	public B bell() {
-		return t("\\a");
+		return add(Escape.BELL);
 	}
 
 	@Override
 	public B tab() {
-		return t("\\t");
+		return add(Escape.TAB);
 	}
 
 	@Override
 	public B lineFeed() {
-		return t("\\n");
+		return add(Escape.LINE_FEED);
 	}
 
 	@Override
 	public B verticalTab() {
-		return t("\\v");
+		return add(Escape.VERTICAL_TAB);
 	}
 
 	@Override
 	public B formFeed() {
-		return t("\\f");
+		return add(Escape.FORM_FEED);
 	}
 
 	@Override
 	public B carriageReturn() {
-		return t("\\r");
+		return add(Escape.CARRIAGE_RETURN);
 	}
 
 	@Override
 	public B escape() {
-		return t("\\e");
+		return add(Escape.ESCAPE);
 	}
 
 	@Override
@@ -204,9 +306,9 @@ abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBu
 		// System.out.println(Character.isLetter('\u00ED'));
 
 		if ('A' <= c && c <= 'Z') {
-			return u("\\c").t(c);
+			return add(new Escape('c', c ^ 64));
 		} else if ('a' <= c && c <= 'z') {
-			return u("\\c").t(toUpperCase(c));
+			return add(new Escape('c', toUpperCase(c) ^ 64));
 		}
 		// \u222A is the union symbol
 		throw illegalOutsideSetArg( //
@@ -219,7 +321,7 @@ abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBu
 			throw illegalOutsideSetArg( //
 					int.class, "octal", toOctalString(octal), "[0 base 8,377 base 8] = [0 base 10,255 base 10]");
 		}
-		return u("\\0").t(toOctalString(octal));
+		return add(new Escape('0', octal, 8, 1));
 	}
 
 	@Override
@@ -229,8 +331,7 @@ abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBu
 					int.class, "hex", toHexString(hex).toUpperCase(), //
 					"[0x00,0xFF]=[0,255]");
 		}
-		t("\\x");
-		return pad(toHexString(hex).toUpperCase(), 2);
+		return add(new Escape('x', hex, 16, 2));
 	}
 
 	@Override
@@ -240,17 +341,7 @@ abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBu
 					int.class, "hex", toHexString(hex).toUpperCase(), //
 					"[0x0000,0xFFFF]=[0,65535]");
 		}
-		t("\\u");
-		return pad(toHexString(hex).toUpperCase(), 4);
-	}
-
-	private B pad(String hex, int length) {
-		int i = hex.length();
-		while (i < length) {
-			t("0");
-			i++;
-		}
-		return t(hex);
+		return add(new Escape('u', hex, 16, 4));
 	}
 
 	@Override
@@ -283,12 +374,18 @@ abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBu
 		return uppercaseP(category);
 	}
 
-	private B lowercaseP(Object propertyBlockOrScript) {
-		return u("\\p{").u(propertyBlockOrScript).t("}");
+	private B lowercaseP(Enum<?> propertyBlockOrScript) {
+		if (propertyBlockOrScript == null) {
+			throw illegalNullArg(Object.class, "obj");
+		}
+		return add(new Property(propertyBlockOrScript, false));
 	}
 
-	private B uppercaseP(Object propertyBlockOrScript) {
-		return u("\\P{").u(propertyBlockOrScript).t("}");
+	private B uppercaseP(Enum<?> propertyBlockOrScript) {
+		if (propertyBlockOrScript == null) {
+			throw illegalNullArg(Object.class, "obj");
+		}
+		return add(new Property(propertyBlockOrScript, true));
 	}
 
 	@Override
@@ -303,42 +400,35 @@ abstract class BaseCommonBuilder<B extends CommonBuilder<B>> implements CommonBu
 
 	@Override
 	public B digit() {
-		return t("\\d");
+		return add(Shorthand.DIGIT);
 	}
 
 	@Override
 	public B notDigit() {
-		return t("\\D");
+		return add(Shorthand.NOT_DIGIT);
 	}
 
 	@Override
 	public B whitespace() {
-		return t("\\s");
+		return add(Shorthand.WHITESPACE);
 	}
 
 	@Override
 	public B notWhitespace() {
-		return t("\\S");
+		return add(Shorthand.NOT_WHITESPACE);
 	}
 
 	@Override
 	public B wordCharacter() {
-		return t("\\w");
+		return add(Shorthand.WORD_CHARACTER);
 	}
 
 	@Override
 	public B notWordCharacter() {
-		return t("\\W");
+		return add(Shorthand.NOT_WORD_CHARACTER);
 	}
 
-	// TODO when should a special character be escaped?
 	protected void charClass(char c) {
-		for (char d : charClassSpecialCharacters) {
-			if (c == d) {
-				u("\\").t(c);
-				return;
-			}
-		}
-		t(c);
+		add(ClassChar.of(c));
 	}
 }
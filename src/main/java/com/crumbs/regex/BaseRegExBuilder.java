@@ -15,13 +15,38 @@
  */
 package com.crumbs.regex;
 
+import static com.crumbs.util.Logging.error;
 import static com.crumbs.util.Logging.illegalEmptyStringArg;
 import static com.crumbs.util.Logging.illegalNullArg;
 import static com.crumbs.util.Logging.illegalNullArrayItemArg;
 import static com.crumbs.util.Logging.illegalOutsideSetArg;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.crumbs.regex.RegExNode.Alternation;
+import com.crumbs.regex.RegExNode.BackReference;
+import com.crumbs.regex.RegExNode.Boundary;
+import com.crumbs.regex.RegExNode.CharClass;
+import com.crumbs.regex.RegExNode.CharLiteral;
+import com.crumbs.regex.RegExNode.ClassChar;
+import com.crumbs.regex.RegExNode.ClassRange;
+import com.crumbs.regex.RegExNode.ClassSet;
+import com.crumbs.regex.RegExNode.Comment;
+import com.crumbs.regex.RegExNode.Concat;
+import com.crumbs.regex.RegExNode.Flags;
+import com.crumbs.regex.RegExNode.Fragment;
+import com.crumbs.regex.RegExNode.Group;
+import com.crumbs.regex.RegExNode.Literal;
+import com.crumbs.regex.RegExNode.NumberLiteral;
+import com.crumbs.regex.RegExNode.Quantifier;
+import com.crumbs.regex.RegExNode.Quantifier.Form;
+import com.crumbs.regex.RegExNode.Quantifier.Mode;
+import com.crumbs.regex.RegExNode.Quote;
+import com.crumbs.regex.RegExNode.Shorthand;
 
 /**
  * Implementation of RegExBuilder.
@@ -36,21 +61,56 @@ import java.util.List;
  */
 abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implements RegExBuilder {
 
-	private static final String[] specialCharacters = //
-	new String[] { "\\", // must be first in the list because latter characters
-							// are escaped, and we don't want this to escape
-							// again
-			"[", "^", "$", ".", "|", "?", "*", "+", "(", ")", //
-			"{" // not really a special character, but Java thinks so
-	};
-
 	protected abstract BaseRegExBuilder newInstance();
 
-	@Override
-	protected BaseRegExBuilder u(String str) {
-		return (BaseRegExBuilder) t(str);
+	private RegExEngine engine = RegExEngine.JAVA;
+
+	/**
+	 * Sets the engine that {@link #compileRegEx(RegExMatchFlag...)} compiles
+	 * for.
+	 *
+	 * @param engine
+	 *            the engine, which is not {@code null}
+	 */
+	final void setEngine(RegExEngine engine) {
+		this.engine = engine;
+	}
+
+	private MatchLimit matchLimit = MatchLimit.NONE;
+
+	/**
+	 * Sets the default limit of the regular expressions that
+	 * {@link #compileRegEx(RegExMatchFlag...)} compiles.
+	 *
+	 * @param matchLimit
+	 *            the limit, which is not {@code null}
+	 */
+	final void setMatchLimit(MatchLimit matchLimit) {
+		this.matchLimit = matchLimit;
+	}
+
+	final MatchLimit matchLimit() {
+		return this.matchLimit;
 	}
 
+	/**
+	 * {@link #analysis(int) analyses} by {@link Pattern} flags, or
+	 * {@code null} if the builder has changed since any was computed
+	 */
+	private Map<Integer, RegExAnalysis> analyses;
+
+	/**
+	 * {@link #optimizedNode(int) optimized trees} by {@link Pattern} flags, or
+	 * {@code null} if the builder has changed since any was computed
+	 */
+	private Map<Integer, RegExNode> optimizedNodes;
+
+	/**
+	 * {@link #javaString(int) Java renderings} by {@link Pattern} flags, or
+	 * {@code null} if the builder has changed since any was computed
+	 */
+	private Map<Integer, String> javaStrings;
+
 	/**
 	 * Appends first {@code obj.toString()} and subsequently the string
 	 * representation of each object in {@code objN} to the regular expression.
@@ -78,70 +138,74 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 		return thiz();
 	}
 
-	BaseRegExBuilder u(Object obj, Object[] objN) {
-		return (BaseRegExBuilder) t(obj, objN);
-	}
-
 	/**
-	 * Appends {@code regEx.toString()} and subsequently the string
-	 * representation of each object in {@code regExN} to this regular
-	 * expression builder (wrapping the just appended text in a no-capture group
-	 * if necessary).
-	 * <p>
-	 * This method is only used by quantifier methods like
-	 * {@link #optional(RegExBuilder, RegExBuilder...)}. The regular expression
-	 * arguments combined are to be treated as one grouping so that methods like
-	 * {@link #optional(RegExBuilder, RegExBuilder...)} can apply the quantifier
-	 * to the entire grouping. If it is determined that the regular expression
-	 * arguments combined cannot be treated as one grouping, the regular
-	 * expression appended to this builder is surrounded by a no-capture group,
-	 * <tt>(?</tt><em>X</em><tt>)</tt> where <em>X</em> is the regular
-	 * expression arguments combined.
-	 * </p>
+	 * Returns the tree of {@code regEx} followed by the trees of each builder
+	 * in {@code regExN}.
 	 * 
 	 * @param regEx
-	 *            regular expression to be appended to this regular expression
+	 *            first regular expression
 	 * @param regExN
-	 *            array of regular expressions to be appended to this regular
-	 *            expression
-	 * @return
+	 *            array of regular expressions following {@code regEx}
+	 * @return the concatenation of the arguments
 	 * @throws IllegalArgumentException
 	 *             if any argument is {@code null} or if an item in
 	 *             {@code regExN} is {@code null}
 	 */
-	// TODO Give examples
-	RegExBuilder tGroup(RegExBuilder regEx, RegExBuilder[] regExN) {
+	static RegExNode nodeOf(RegExBuilder regEx, RegExBuilder[] regExN) {
 		if (regEx == null) {
 			throw illegalNullArg(RegExBuilder.class, "regEx");
 		}
 		if (regExN == null) {
 			throw illegalNullArg(RegExBuilder[].class, "regExN");
 		}
-
-		String str;
-
 		if (regExN.length == 0) {
-			str = regEx.toString();
-		} else {
-			StringBuilder builder = new StringBuilder(regEx.toString());
-			for (RegExBuilder item : regExN) {
-				if (item == null) {
-					throw illegalNullArrayItemArg(RegExBuilder[].class, "regExN");
-				}
-				builder.append(item.toString());
+			return nodeOf(regEx);
+		}
+		List<RegExNode> nodes = new ArrayList<RegExNode>(regExN.length + 1);
+		addNode(nodeOf(regEx), nodes);
+		for (RegExBuilder item : regExN) {
+			if (item == null) {
+				throw illegalNullArrayItemArg(RegExBuilder[].class, "regExN");
 			}
-			str = builder.toString();
+			addNode(nodeOf(item), nodes);
 		}
-		if (isRegExUnit(str)) {
-			t(str);
-		} else {
-			u("(?:").u(str).t(")");
+		return Concat.of(nodes);
+	}
+
+	private static void addNode(RegExNode node, List<RegExNode> nodes) {
+		if (node != RegExNode.EMPTY) {
+			nodes.add(node);
 		}
-		return thiz();
 	}
 
-	BaseRegExBuilder uGroup(RegExBuilder regEx, RegExBuilder[] regExN) {
-		return (BaseRegExBuilder) tGroup(regEx, regExN);
+	/**
+	 * Appends the tree of {@code regEx} and subsequently the tree of each
+	 * builder in {@code regExN} to this regular expression builder (wrapping
+	 * the just appended trees in a no-capture group if necessary).
+	 * <p>
+	 * The regular expression arguments combined are to be treated as one
+	 * grouping so that a quantifier can apply to the entire grouping. If the
+	 * regular expression arguments combined are not one
+	 * {@link RegExNode#isUnit() unit}, the regular expression appended to this
+	 * builder is surrounded by a no-capture group, <tt>(?:</tt><em>X</em>
+	 * <tt>)</tt> where <em>X</em> is the regular expression arguments
+	 * combined.
+	 * </p>
+	 * 
+	 * @param regEx
+	 *            regular expression to be appended to this regular expression
+	 * @param regExN
+	 *            array of regular expressions to be appended to this regular
+	 *            expression
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if any argument is {@code null} or if an item in
+	 *             {@code regExN} is {@code null}
+	 */
+	// TODO Give examples
+	RegExBuilder tGroup(RegExBuilder regEx, RegExBuilder[] regExN) {
+		RegExNode node = nodeOf(regEx, regExN);
+		return add(node.isUnit() ? node : new Group(Group.Kind.NO_CAPTURE, node));
 	}
 
 	/**
@@ -275,7 +339,32 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 
 	@Override
 	public RegExBuilder re(RegExBuilder regEx, RegExBuilder... regExN) {
-		return t(regEx, regExN);
+		return add(nodeOf(regEx, regExN));
+	}
+
+	@Override
+	public RegExBuilder fragment(RegExFragment fragment, RegExFragment... fragmentN) {
+		if (fragment == null) {
+			throw illegalNullArg(RegExFragment.class, "fragment");
+		}
+		if (fragmentN == null) {
+			throw illegalNullArg(RegExFragment[].class, "fragmentN");
+		}
+		for (RegExFragment item : fragmentN) {
+			if (item == null) {
+				throw illegalNullArrayItemArg(RegExFragment[].class, "fragmentN");
+			}
+		}
+		add(fragment.node());
+		for (RegExFragment item : fragmentN) {
+			add(item.node());
+		}
+		return thiz();
+	}
+
+	@Override
+	public RegExFragment freeze() {
+		return RegExFragment.freeze(toNode(), dialect());
 	}
 
 	/**
@@ -307,54 +396,47 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 		} else {
 			newString = obj.toString();
 		}
-		for (String specialChar : specialCharacters) {
-			newString = newString.replace(specialChar, "\\" + specialChar);
-		}
-		return t(newString);
+		return newString.isEmpty() ? thiz() : add(new Literal(newString));
 	}
 
 	@Override
 	public RegExBuilder re(byte number) {
-		return regEx(Byte.valueOf(number));
+		return add(new NumberLiteral(number));
 	}
 
 	@Override
 	public RegExBuilder re(short number) {
-		return regEx(Short.valueOf(number));
+		return add(new NumberLiteral(number));
 	}
 
 	@Override
 	public RegExBuilder re(int integer) {
-		return regEx(Integer.valueOf(integer));
+		return add(new NumberLiteral(integer));
 	}
 
 	@Override
 	public RegExBuilder re(long number) {
-		return regEx(Long.valueOf(number));
+		return add(new NumberLiteral(number));
 	}
 
 	@Override
 	public RegExBuilder re(float number) {
-		return regEx(Float.valueOf(number));
+		return add(new NumberLiteral(number));
 	}
 
 	@Override
 	public RegExBuilder re(double number) {
-		return regEx(Double.valueOf(number));
+		return add(new NumberLiteral(number));
 	}
 
 	@Override
 	public RegExBuilder re(boolean primitive) {
-		return regEx(Boolean.valueOf(primitive));
+		return add(primitive ? Literal.TRUE : Literal.FALSE);
 	}
 
 	@Override
 	public RegExBuilder re(char character) {
-		return regEx(Character.valueOf(character));
-	}
-
-	private RegExBuilder regEx(Object obj) {
-		return re(obj);
+		return add(CharLiteral.of(character));
 	}
 
 	@Override
@@ -362,12 +444,12 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 		if (obj == null) {
 			throw illegalNullArg(Object.class, "obj");
 		}
-		return t("\\Q" + obj.toString().replace("\\E", "\\\\E\\QE") + "\\E");
+		return add(new Quote(obj.toString()));
 	}
 
 	@Override
 	public RegExBuilder comment(String comment) {
-		return u("# ").u(comment).t(System.getProperty("line.separator"));
+		return add(new Comment(comment));
 	}
 
 	@Override
@@ -377,7 +459,7 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 
 	@Override
 	public RegExBuilder anyChar() {
-		return t(".");
+		return add(Shorthand.ANY_CHAR);
 	}
 
 	@Override
@@ -387,7 +469,7 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 					char.class, "min", new Character(min), //
 					"[0, max]=[0," + max + "]");
 		}
-		return u("[").u(min).u("-").u(max).t("]");
+		return add(new CharClass(false, new ClassRange(min, max)));
 	}
 
 	@Override
@@ -397,7 +479,7 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 					char.class, "min", new Character(min), //
 					"[0, max]=[0," + max + "]");
 		}
-		return u("[^").u(min).u("-").u(max).t("]");
+		return add(new CharClass(true, new ClassRange(min, max)));
 	}
 
 	@Override
@@ -405,13 +487,7 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 		if (cN == null) {
 			throw illegalNullArg(char[].class, "cN");
 		}
-		t("[");
-		charClass(c0);
-		charClass(c1);
-		for (char c : cN) {
-			charClass(c);
-		}
-		return t("]");
+		return add(new CharClass(false, classChars(c0, c1, cN)));
 	}
 
 	@Override
@@ -419,13 +495,17 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 		if (cN == null) {
 			throw illegalNullArg(char[].class, "cN");
 		}
-		t("[^");
-		charClass(c0);
-		charClass(c1);
+		return add(new CharClass(true, classChars(c0, c1, cN)));
+	}
+
+	private static RegExNode classChars(char c0, char c1, char[] cN) {
+		List<RegExNode> members = new ArrayList<RegExNode>(cN.length + 2);
+		members.add(ClassChar.of(c0));
+		members.add(ClassChar.of(c1));
 		for (char c : cN) {
-			charClass(c);
+			members.add(ClassChar.of(c));
 		}
-		return t("]");
+		return Concat.of(members);
 	}
 
 	@Override
@@ -436,11 +516,7 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 		if (str.isEmpty()) {
 			throw illegalEmptyStringArg("str");
 		}
-		t("[");
-		for (char c : str.toCharArray()) {
-			charClass(c);
-		}
-		return t("]");
+		return add(new CharClass(false, classChars(str)));
 	}
 
 	@Override
@@ -451,119 +527,140 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 		if (str.isEmpty()) {
 			throw illegalEmptyStringArg("str");
 		}
-		t("[^");
-		for (char c : str.toCharArray()) {
-			charClass(c);
+		return add(new CharClass(true, classChars(str)));
+	}
+
+	private static RegExNode classChars(String str) {
+		List<RegExNode> members = new ArrayList<RegExNode>(str.length());
+		for (int i = 0; i < str.length(); i++) {
+			members.add(ClassChar.of(str.charAt(i)));
 		}
-		return t("]");
+		return Concat.of(members);
 	}
 
 	@Override
 	public RegExBuilder charClass(CharClassBuilder charClass) {
-		return u("[").u(charClass).t("]");
+		return add(new CharClass(false, nodeOf(charClass)));
 	}
 
 	@Override
 	public RegExBuilder notCharClass(CharClassBuilder charClass) {
-		return u("[^").u(charClass).t("]");
+		return add(new CharClass(true, nodeOf(charClass)));
 	}
 
 	@Override
 	public RegExBuilder intersection(CharClassBuilder charClass0, CharClassBuilder charClass1) {
-		return u("[").u(charClass0).u("&&[").u(charClass1).t("]]");
+		return setOperation(charClass0, CharClass.Operator.INTERSECTION, charClass1);
 	}
 
 	@Override
 	public RegExBuilder union(CharClassBuilder charClass0, CharClassBuilder charClass1) {
-		return u("[").u(charClass0).u("[").u(charClass1).t("]]");
+		return setOperation(charClass0, CharClass.Operator.UNION, charClass1);
+	}
+
+	@Override
+	public RegExBuilder difference(CharClassBuilder charClass0, CharClassBuilder charClass1) {
+		return setOperation(charClass0, CharClass.Operator.DIFFERENCE, charClass1);
+	}
+
+	/**
+	 * Appends the character class of {@code operator} applied to two classes,
+	 * computed now if the sets of both classes are known.
+	 */
+	private RegExBuilder setOperation(CharClassBuilder charClass0, CharClass.Operator operator,
+			CharClassBuilder charClass1) {
+		RegExNode members0 = nodeOf(charClass0);
+		RegExNode members1 = nodeOf(charClass1);
+		CodePointSet set0 = CharSets.members(members0);
+		CodePointSet set1 = CharSets.members(members1);
+		if (set0 == null || set1 == null) {
+			return add(new CharClass(false, members0, operator, members1));
+		}
+		return add(charClass(BaseCharClassBuilder.apply(set0, operator, set1)));
+	}
+
+	/**
+	 * Returns a character class matching {@code set}.
+	 * <p>
+	 * There is no empty class, so the empty set is the negation of every
+	 * code point.
+	 * </p>
+	 */
+	static CharClass charClass(CodePointSet set) {
+		return set.isEmpty() ? new CharClass(true, new ClassSet(CodePointSet.ALL))
+				: new CharClass(false, new ClassSet(set));
 	}
 
 	@Override
 	public RegExBuilder matchLineStart() {
-		return t("^");
+		return add(Boundary.LINE_START);
 	}
 
 	@Override
 	public RegExBuilder matchLineEnd() {
-		return t("$");
+		return add(Boundary.LINE_END);
 	}
 
 	@Override
 	public RegExBuilder matchInputStart() {
-		return t("\\A");
+		return add(Boundary.INPUT_START);
 	}
 
 	@Override
 	public RegExBuilder matchInputEnd() {
-		return t("\\Z");
+		return add(Boundary.INPUT_END);
 	}
 
 	@Override
 	public RegExBuilder matchInputEndStrict() {
-		return t("\\z");
+		return add(Boundary.INPUT_END_STRICT);
 	}
 
 	@Override
 	public RegExBuilder wordBoundary() {
-		return t("\\b");
+		return add(Boundary.WORD_BOUNDARY);
 	}
 
 	@Override
 	public RegExBuilder notWordBoundary() {
-		return t("\\B");
+		return add(Boundary.NOT_WORD_BOUNDARY);
 	}
 
 	@Override
 	public RegExBuilder previousMatchEnd() {
-		return t("\\G");
+		return add(Boundary.PREVIOUS_MATCH_END);
 	}
 
-	@Override
-	public RegExBuilder optional(RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).t("?");
-	}
-
-	@Override
-	public RegExBuilder zeroOrMore(RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).t("*");
-	}
-
-	@Override
-	public RegExBuilder oneOrMore(RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).t("+");
+	/**
+	 * Appends the combined arguments quantified by the specified quantifier.
+	 * 
+	 * @param form
+	 *            how the quantifier is spelled
+	 * @param mode
+	 *            whether the quantifier is greedy, lazy, or possessive
+	 * @param min
+	 *            minimum number of repetitions
+	 * @param max
+	 *            maximum number of repetitions or
+	 *            {@link Quantifier#UNBOUNDED}
+	 * @param regEx
+	 *            first regular expression to quantify
+	 * @param regExN
+	 *            other regular expressions to quantify
+	 * @return this {@code RegExBuilder}
+	 */
+	private RegExBuilder quantify(Form form, Mode mode, int min, int max, RegExBuilder regEx, RegExBuilder[] regExN) {
+		return add(new Quantifier(nodeOf(regEx, regExN), form, mode, min, max));
 	}
 
-	protected RegExBuilder repeat(int nTimes) {
+	private static void checkRepeat(int nTimes) {
 		if (nTimes < 0) {
 			throw illegalOutsideSetArg( //
 					int.class, "nTimes", new Integer(nTimes), "[0,\u221E)");
 		}
-		return u("{").u(nTimes).t("}");
 	}
 
-	private BaseRegExBuilder uRepeat(int nTimes) {
-		return (BaseRegExBuilder) repeat(nTimes);
-	}
-
-	@Override
-	public RegExBuilder repeat(int nTimes, RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).repeat(nTimes);
-	}
-
-	protected RegExBuilder repeatAtLeast(int nTimes) {
-		return u("{").u(nTimes).t(",}");
-	}
-
-	private BaseRegExBuilder uRepeatAtLeast(int nTimes) {
-		return (BaseRegExBuilder) repeatAtLeast(nTimes);
-	}
-
-	@Override
-	public RegExBuilder repeatAtLeast(int nTimes, RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).repeatAtLeast(nTimes);
-	}
-
-	protected RegExBuilder repeat(int nTimes, int toMTimes) {
+	private static void checkRepeat(int nTimes, int toMTimes) {
 		if (nTimes < 0) {
 			throw illegalOutsideSetArg( //
 					int.class, "nTimes", new Integer(nTimes), "[0,\u221E)");
@@ -576,180 +673,334 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 			throw illegalOutsideSetArg( //
 					int.class, "nTimes", new Integer(nTimes), "[0,toMTimes]=[0," + toMTimes + "]");
 		}
-		return u("{").u(nTimes).u(",").u(toMTimes).t("}");
 	}
 
-	private BaseRegExBuilder uRepeat(int nTimes, int toMTimes) {
-		return (BaseRegExBuilder) repeat(nTimes, toMTimes);
+	@Override
+	public RegExBuilder optional(RegExBuilder regEx, RegExBuilder... regExN) {
+		return quantify(Form.OPTIONAL, Mode.GREEDY, 0, 1, regEx, regExN);
 	}
 
 	@Override
-	public RegExBuilder repeat(int atLeastNTimes, int atMostMTimes, RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).repeat(atLeastNTimes, atMostMTimes);
+	public RegExBuilder zeroOrMore(RegExBuilder regEx, RegExBuilder... regExN) {
+		return quantify(Form.ZERO_OR_MORE, Mode.GREEDY, 0, Quantifier.UNBOUNDED, regEx, regExN);
 	}
 
 	@Override
-	public RegExBuilder optionalLazy(RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).t("??");
+	public RegExBuilder oneOrMore(RegExBuilder regEx, RegExBuilder... regExN) {
+		return quantify(Form.ONE_OR_MORE, Mode.GREEDY, 1, Quantifier.UNBOUNDED, regEx, regExN);
 	}
 
 	@Override
-	public RegExBuilder zeroOrMoreLazy(RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).t("*?");
+	public RegExBuilder repeat(int nTimes, RegExBuilder regEx, RegExBuilder... regExN) {
+		checkRepeat(nTimes);
+		return quantify(Form.EXACTLY, Mode.GREEDY, nTimes, nTimes, regEx, regExN);
 	}
 
 	@Override
-	public RegExBuilder oneOrMoreLazy(RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).t("+?");
+	public RegExBuilder repeatAtLeast(int nTimes, RegExBuilder regEx, RegExBuilder... regExN) {
+		return quantify(Form.AT_LEAST, Mode.GREEDY, nTimes, Quantifier.UNBOUNDED, regEx, regExN);
 	}
 
-	private RegExBuilder repeatLazy(int nTimes) {
-		return uRepeat(nTimes).t("?");
+	@Override
+	public RegExBuilder repeat(int atLeastNTimes, int atMostMTimes, RegExBuilder regEx, RegExBuilder... regExN) {
+		checkRepeat(atLeastNTimes, atMostMTimes);
+		return quantify(Form.BETWEEN, Mode.GREEDY, atLeastNTimes, atMostMTimes, regEx, regExN);
 	}
 
 	@Override
-	public RegExBuilder repeatLazy(int nTimes, RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).repeatLazy(nTimes);
+	public RegExBuilder optionalLazy(RegExBuilder regEx, RegExBuilder... regExN) {
+		return quantify(Form.OPTIONAL, Mode.LAZY, 0, 1, regEx, regExN);
 	}
 
-	private RegExBuilder repeatAtLeastLazy(int nTimes) {
-		return uRepeatAtLeast(nTimes).t("?");
+	@Override
+	public RegExBuilder zeroOrMoreLazy(RegExBuilder regEx, RegExBuilder... regExN) {
+		return quantify(Form.ZERO_OR_MORE, Mode.LAZY, 0, Quantifier.UNBOUNDED, regEx, regExN);
 	}
 
 	@Override
-	public RegExBuilder repeatAtLeastLazy(int nTimes, RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).repeatAtLeastLazy(nTimes);
+	public RegExBuilder oneOrMoreLazy(RegExBuilder regEx, RegExBuilder... regExN) {
+		return quantify(Form.ONE_OR_MORE, Mode.LAZY, 1, Quantifier.UNBOUNDED, regEx, regExN);
+	}
+
+	@Override
+	public RegExBuilder repeatLazy(int nTimes, RegExBuilder regEx, RegExBuilder... regExN) {
+		checkRepeat(nTimes);
+		return quantify(Form.EXACTLY, Mode.LAZY, nTimes, nTimes, regEx, regExN);
 	}
 
-	private RegExBuilder repeatLazy(int nTimes, int toMTimes) {
-		return uRepeat(nTimes, toMTimes).t("?");
+	@Override
+	public RegExBuilder repeatAtLeastLazy(int nTimes, RegExBuilder regEx, RegExBuilder... regExN) {
+		return quantify(Form.AT_LEAST, Mode.LAZY, nTimes, Quantifier.UNBOUNDED, regEx, regExN);
 	}
 
 	@Override
 	public RegExBuilder repeatLazy(int atLeastNTimes, int atMostMTimes, RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).repeatLazy(atLeastNTimes, atMostMTimes);
+		checkRepeat(atLeastNTimes, atMostMTimes);
+		return quantify(Form.BETWEEN, Mode.LAZY, atLeastNTimes, atMostMTimes, regEx, regExN);
 	}
 
 	@Override
 	public RegExBuilder optionalPossessive(RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).t("?+");
+		return quantify(Form.OPTIONAL, Mode.POSSESSIVE, 0, 1, regEx, regExN);
 	}
 
 	@Override
 	public RegExBuilder zeroOrMorePossessive(RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).t("*+");
+		return quantify(Form.ZERO_OR_MORE, Mode.POSSESSIVE, 0, Quantifier.UNBOUNDED, regEx, regExN);
 	}
 
 	@Override
 	public RegExBuilder oneOrMorePossessive(RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).t("++");
-	}
-
-	private RegExBuilder repeatPossessive(int nTimes) {
-		return uRepeat(nTimes).t("+");
+		return quantify(Form.ONE_OR_MORE, Mode.POSSESSIVE, 1, Quantifier.UNBOUNDED, regEx, regExN);
 	}
 
 	@Override
 	public RegExBuilder repeatPossessive(int nTimes, RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).repeatPossessive(nTimes);
-	}
-
-	private RegExBuilder repeatAtLeastPossessive(int nTimes) {
-		return uRepeatAtLeast(nTimes).t("+");
+		checkRepeat(nTimes);
+		return quantify(Form.EXACTLY, Mode.POSSESSIVE, nTimes, nTimes, regEx, regExN);
 	}
 
 	@Override
 	public RegExBuilder repeatAtLeastPossessive(int nTimes, RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).repeatAtLeastPossessive(nTimes);
-	}
-
-	private RegExBuilder repeatPossessive(int nTimes, int toMTimes) {
-		return uRepeat(nTimes, toMTimes).t("+");
+		return quantify(Form.AT_LEAST, Mode.POSSESSIVE, nTimes, Quantifier.UNBOUNDED, regEx, regExN);
 	}
 
 	@Override
 	public RegExBuilder repeatPossessive(int atLeastNTimes, int atMostMTimes, RegExBuilder regEx,
 			RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).repeatPossessive(atLeastNTimes, atMostMTimes);
+		checkRepeat(atLeastNTimes, atMostMTimes);
+		return quantify(Form.BETWEEN, Mode.POSSESSIVE, atLeastNTimes, atMostMTimes, regEx, regExN);
 	}
 
 	@Override
 	public RegExBuilder group(RegExBuilder regEx, RegExBuilder... regExN) {
-		String str = newInstance().t(regEx, regExN).toString();
-		if (isOneGroup(str)) {
-			// If str is a no-capture group, do not include the no-capture
-			// symbology in the output.
-			if (str.startsWith("(?:")) {
-				str = str.substring(3, str.length() - 1);
-			}
+		RegExNode node = nodeOf(regEx, regExN);
+		if (node instanceof Fragment) {
+			// Look through a frozen fragment so that the output does not
+			// depend on whether the argument was frozen.
+			node = ((Fragment) node).child;
 		}
-		return u("(").u(str).t(")");
+		// If node is a no-capture group, do not include the no-capture
+		// symbology in the output.
+		if (node instanceof Group && ((Group) node).kind == Group.Kind.NO_CAPTURE) {
+			node = ((Group) node).child;
+		}
+		return add(new Group(Group.Kind.CAPTURE, node));
 	}
 
 	@Override
 	public RegExBuilder noCaptureGroup(RegExBuilder regEx, RegExBuilder... regExN) {
-		String str = newInstance().t(regEx, regExN).toString();
-		if (isOneGroup(str)) {
-			// If str is already a group, there is no need to surround it with a
-			// no-capture group.
-			return t(str);
+		RegExNode node = nodeOf(regEx, regExN);
+		if (node.isGroup()) {
+			// If node is already a group, there is no need to surround it with
+			// a no-capture group.
+			return add(node);
 		}
-		return u("(?:").u(str).t(")");
+		return add(new Group(Group.Kind.NO_CAPTURE, node));
 	}
 
 	@Override
 	public RegExBuilder turnOnOffMatchFlags(RegExMatchFlag flag, RegExMatchFlag... flagN) {
-		return u("(?").u(flagString(getFlags(flag, flagN))).t(")");
+		return add(new Flags(getFlags(flag, flagN)));
 	}
 
-	static private List<RegExMatchFlag> getFlags(RegExMatchFlag flag, RegExMatchFlag... flagN) {
+	/**
+	 * Returns the mask of flags turned on or off by the specified flags.
+	 * <p>
+	 * A flag cancels its {@link RegExMatchFlag#getOppositeFlag() opposite}
+	 * specified earlier.
+	 * </p>
+	 * 
+	 * @param flag
+	 *            first flag
+	 * @param flagN
+	 *            other flags
+	 * @return the flags as a mask (see {@link Flags#mask})
+	 * @throws IllegalArgumentException
+	 *             if any argument is {@code null}
+	 */
+	static private int getFlags(RegExMatchFlag flag, RegExMatchFlag... flagN) {
 		if (flag == null) {
 			throw illegalNullArg(RegExMatchFlag.class, "flag");
 		}
 		if (flagN == null) {
 			throw illegalNullArg(RegExMatchFlag[].class, "flagN");
 		}
-		List<RegExMatchFlag> flags = new ArrayList<RegExMatchFlag>(flagN.length + 1);
-		addFlag(flag, flags);
+		int mask = addFlag(flag, 0);
 		for (RegExMatchFlag f : flagN) {
-			addFlag(f, flags);
+			mask = addFlag(f, mask);
 		}
-		return flags;
+		return mask;
 	}
 
-	static private String flagString(List<RegExMatchFlag> flags) {
-		StringBuilder builder = new StringBuilder();
-		boolean hasOffFlag = false;
-		for (RegExMatchFlag flag : flags) {
-			if (flag.isOn()) {
-				builder.append(flag.toChar());
-			} else {
-				hasOffFlag = true;
-			}
+	static private int addFlag(RegExMatchFlag f, int mask) {
+		return (mask | Flags.bit(f)) & ~Flags.bit(f.getOppositeFlag());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Whatever the dialect of this builder, the pattern is compiled from the
+	 * Java rendering of the regular expression after {@link RegExOptimizer}
+	 * factors the common prefixes and suffixes of its alternations.
+	 * </p>
+	 */
+	@Override
+	public Pattern compile(RegExMatchFlag... flags) {
+		int patternFlags = patternFlags(flags);
+		return PatternCache.shared().compile(javaString(patternFlags), patternFlags);
+	}
+
+	@Override
+	public CompiledRegEx compileRegEx(RegExMatchFlag... flags) {
+		return this.engine.compile(this, patternFlags(flags));
+	}
+
+	@Override
+	public RegExAnalysis analyze(RegExMatchFlag... flags) {
+		return analysis(patternFlags(flags));
+	}
+
+	@Override
+	public List<BacktrackingRisk> backtrackingRisks(RegExMatchFlag... flags) {
+		int patternFlags = patternFlags(flags);
+		return BacktrackingAnalyzer.analyze(toNode(),
+				PatternCache.shared().compile(javaString(patternFlags), patternFlags));
+	}
+
+	@Override
+	public String asCode(String className, RegExMatchFlag... flags) {
+		int patternFlags = patternFlags(flags);
+		return DFASourceGenerator.generate(className, javaString(patternFlags), optimizedNode(patternFlags),
+				patternFlags);
+	}
+
+	/**
+	 * Returns the analysis of the tree of this builder for the specified
+	 * flags.
+	 *
+	 * @param flags
+	 *            {@link Pattern} flags the tree is compiled with
+	 * @return facts about the matches of the tree
+	 */
+	final RegExAnalysis analysis(int flags) {
+		if (this.analyses == null) {
+			this.analyses = new HashMap<Integer, RegExAnalysis>();
 		}
-		if (hasOffFlag) {
-			builder.append('-');
-			for (RegExMatchFlag flag : flags) {
-				if (!flag.isOn()) {
-					builder.append(flag.toChar());
-				} else {
-					hasOffFlag = true;
-				}
-			}
+		RegExAnalysis analysis = this.analyses.get(flags);
+		if (analysis == null) {
+			analysis = RegExAnalyzer.analyze(toNode(), flags);
+			this.analyses.put(flags, analysis);
+		}
+		return analysis;
+	}
+
+	/**
+	 * Returns the tree of this builder as rewritten by {@link RegExOptimizer}
+	 * for the specified flags.
+	 *
+	 * @param flags
+	 *            {@link Pattern} flags the tree is compiled with
+	 * @return the tree to compile
+	 */
+	final RegExNode optimizedNode(int flags) {
+		if (this.optimizedNodes == null) {
+			this.optimizedNodes = new HashMap<Integer, RegExNode>();
+		}
+		RegExNode optimized = this.optimizedNodes.get(flags);
+		if (optimized == null) {
+			optimized = RegExOptimizer.optimize(toNode(), flags);
+			this.optimizedNodes.put(flags, optimized);
 		}
-		return builder.toString();
+		return optimized;
 	}
 
-	static private void addFlag(RegExMatchFlag f, List<RegExMatchFlag> flags) {
-		if (!flags.contains(f)) {
-			flags.add(f);
+	/**
+	 * Returns the rendering of the {@link #optimizedNode(int) optimized} tree
+	 * of this builder in the {@link Dialect#JAVA Java} dialect, with the
+	 * quantifiers that {@link RegExOptimizer#possessify(RegExNode, int)}
+	 * proves need not backtrack made possessive.
+	 *
+	 * @param flags
+	 *            {@link Pattern} flags the tree is compiled with
+	 * @return the regular expression for {@link Pattern}
+	 */
+	final String javaString(int flags) {
+		if (this.javaStrings == null) {
+			this.javaStrings = new HashMap<Integer, String>();
+		}
+		String javaString = this.javaStrings.get(flags);
+		if (javaString == null) {
+			javaString = RegExOptimizer.possessify(optimizedNode(flags), flags).toString(Dialect.JAVA);
+			this.javaStrings.put(flags, javaString);
+		}
+		return javaString;
+	}
+
+	@Override
+	void changed() {
+		super.changed();
+		this.analyses = null;
+		this.optimizedNodes = null;
+		this.javaStrings = null;
+	}
+
+	/**
+	 * Returns the {@link Pattern} flags turned on by the specified flags.
+	 * <p>
+	 * As with {@link #turnOnOffMatchFlags(RegExMatchFlag, RegExMatchFlag...)},
+	 * a flag cancels its opposite specified earlier; flags turned off are
+	 * off by default.
+	 * </p>
+	 *
+	 * @param flags
+	 *            flags to turn on or off
+	 * @return flags for {@link Pattern#compile(String, int)}
+	 * @throws IllegalArgumentException
+	 *             if {@code flags} or one of its items is {@code null}
+	 */
+	static int patternFlags(RegExMatchFlag[] flags) {
+		if (flags == null) {
+			throw illegalNullArg(RegExMatchFlag[].class, "flags");
+		}
+		int mask = 0;
+		for (RegExMatchFlag f : flags) {
+			if (f == null) {
+				throw illegalNullArrayItemArg(RegExMatchFlag[].class, "flags");
+			}
+			mask = addFlag(f, mask);
+		}
+		int patternFlags = 0;
+		for (RegExMatchFlag f : RegExMatchFlag.values()) {
+			if (f.isOn() && (mask & Flags.bit(f)) != 0) {
+				patternFlags |= patternFlag(f);
+			}
+		}
+		return patternFlags;
+	}
+
+	static int patternFlag(RegExMatchFlag flag) {
+		switch (flag.toChar()) {
+		case 'd':
+			return Pattern.UNIX_LINES;
+		case 'i':
+			return Pattern.CASE_INSENSITIVE;
+		case 'x':
+			return Pattern.COMMENTS;
+		case 'm':
+			return Pattern.MULTILINE;
+		case 's':
+			return Pattern.DOTALL;
+		case 'u':
+			return Pattern.UNICODE_CASE;
+		default:
+			throw error();
 		}
-		flags.remove(f.getOppositeFlag());
 	}
 
 	@Override
 	public RegExBuilder atomicGroup(RegExBuilder regEx, RegExBuilder... regExN) {
-		return u("(?>").u(regEx, regExN).t(")");
+		return add(new Group(Group.Kind.ATOMIC, nodeOf(regEx, regExN)));
 	}
 
 	@Override
@@ -760,25 +1011,27 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 		if (regEx == null) {
 			throw illegalNullArg(RegExBuilder.class, "regEx");
 		}
-		return u("(?").u(flagString(getFlags(flag, flagN))).u(":").u(regEx).t(")");
+		return add(new Group(Group.Kind.FLAGS, nodeOf(regEx), getFlags(flag, flagN)));
 	}
 
 	@Override
 	public RegExBuilder orNoCaptureGroup(RegExBuilder regEx0, RegExBuilder regEx1, RegExBuilder... regExN) {
-		u("(?:").u(regEx0).u("|").t(regEx1);
-		for (RegExBuilder expression : regExN) {
-			u("|").t(expression);
-		}
-		return t(")");
+		return add(new Group(Group.Kind.NO_CAPTURE, alternation(regEx0, regEx1, regExN)));
 	}
 
 	@Override
 	public RegExBuilder orGroup(RegExBuilder regEx0, RegExBuilder regEx1, RegExBuilder... regExN) {
-		u("(").u(regEx0).u("|").t(regEx1);
-		for (RegExBuilder expression : regExN) {
-			u("|").t(expression);
+		return add(new Group(Group.Kind.CAPTURE, alternation(regEx0, regEx1, regExN)));
+	}
+
+	private static Alternation alternation(RegExBuilder regEx0, RegExBuilder regEx1, RegExBuilder[] regExN) {
+		RegExNode[] branches = new RegExNode[regExN.length + 2];
+		branches[0] = nodeOf(regEx0);
+		branches[1] = nodeOf(regEx1);
+		for (int i = 0; i < regExN.length; i++) {
+			branches[i + 2] = nodeOf(regExN[i]);
 		}
-		return t(")");
+		return new Alternation(branches);
 	}
 
 	@Override
@@ -786,31 +1039,26 @@ abstract class BaseRegExBuilder extends BaseCommonBuilder<RegExBuilder> implemen
 		if (captureGroup < 0) {
 			throw illegalOutsideSetArg(int.class, "group", new Integer(captureGroup), "[0,\u221E)");
 		}
-		if (captureGroup < 10) {
-			return u("\\").t(Integer.toString(captureGroup));
-		}
-		// Put in no-capture group when group >= 10 so that the backReference is
-		// treated as a group in #isOneOuterGrouping
-		return u("(?:\\").u(Integer.toString(captureGroup)).t(")");
+		return add(new BackReference(captureGroup));
 	}
 
 	@Override
 	public RegExBuilder positiveLookahead(RegExBuilder lookahead, RegExBuilder... lookaheadN) {
-		return u("(?=").u(lookahead, lookaheadN).t(")");
+		return add(new Group(Group.Kind.POSITIVE_LOOKAHEAD, nodeOf(lookahead, lookaheadN)));
 	}
 
 	@Override
 	public RegExBuilder negativeLookahead(RegExBuilder lookahead, RegExBuilder... lookaheadN) {
-		return u("(?!").u(lookahead, lookaheadN).t(")");
+		return add(new Group(Group.Kind.NEGATIVE_LOOKAHEAD, nodeOf(lookahead, lookaheadN)));
 	}
 
 	@Override
 	public RegExBuilder positiveLookbehind(RegExBuilder lookbehind, RegExBuilder... lookbehindN) {
-		return u("(?<=").u(lookbehind, lookbehindN).t(")");
+		return add(new Group(Group.Kind.POSITIVE_LOOKBEHIND, nodeOf(lookbehind, lookbehindN)));
 	}
 
 	@Override
 	public RegExBuilder negativeLookbehind(RegExBuilder lookbehind, RegExBuilder... lookbehindN) {
-		return u("(?<!").u(lookbehind, lookbehindN).t(")");
+		return add(new Group(Group.Kind.NEGATIVE_LOOKBEHIND, nodeOf(lookbehind, lookbehindN)));
 	}
 }
@@ -0,0 +1,277 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Bytes of UTF-8 text searched by a {@link Utf8DFA}, addressed by
+ * {@code long} offsets
+ * <p>
+ * Besides the bytes, an input answers the zero-width assertions of
+ * {@link Prog} at byte offsets, decoding only the few code points around the
+ * offset, with the meaning {@link Prog#assertion(int, CharSequence, int)}
+ * gives them on the decoded text. Malformed bytes decode to U+FFFD, as a
+ * decoder replacing them would.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+abstract class ByteInput {
+
+	/**
+	 * size of the regions a file is mapped in; a mapping cannot exceed
+	 * {@link Integer#MAX_VALUE} bytes
+	 */
+	static final int REGION_SIZE = 1 << 30;
+
+	/**
+	 * least code point of each encoded length; shorter encodings are
+	 * malformed
+	 */
+	private static final int[] MIN_CODE_POINTS = { 0, 0, 0x80, 0x800, 0x10000 };
+
+	/**
+	 * Returns the number of bytes of this input.
+	 *
+	 * @return the length of this input
+	 */
+	abstract long length();
+
+	/**
+	 * Returns a byte of this input.
+	 *
+	 * @param index
+	 *            offset of the byte, from 0 to {@link #length()} - 1
+	 * @return the byte, from 0 to 255
+	 */
+	abstract int get(long index);
+
+	/**
+	 * Returns an input over the remaining bytes of {@code buffer}.
+	 *
+	 * @param buffer
+	 *            bytes to search; offsets count from its position
+	 * @return the input
+	 */
+	static ByteInput of(ByteBuffer buffer) {
+		final ByteBuffer bytes = buffer.slice();
+		return new ByteInput() {
+			@Override
+			long length() {
+				return bytes.limit();
+			}
+
+			@Override
+			int get(long index) {
+				return bytes.get((int) index) & 0xFF;
+			}
+		};
+	}
+
+	/**
+	 * Returns an input over the bytes of a file, mapped read-only in regions
+	 * of {@link #REGION_SIZE} bytes.
+	 * <p>
+	 * Mapping only reserves address space; the operating system reads the
+	 * pages of the file as the search touches them.
+	 * </p>
+	 *
+	 * @param channel
+	 *            file to search
+	 * @return the input
+	 * @throws IOException
+	 *             if the file cannot be mapped
+	 */
+	static ByteInput of(FileChannel channel) throws IOException {
+		final long length = channel.size();
+		final ByteBuffer[] regions = new ByteBuffer[(int) ((length + REGION_SIZE - 1) / REGION_SIZE)];
+		for (int i = 0; i < regions.length; i++) {
+			long start = (long) i * REGION_SIZE;
+			regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, length - start));
+		}
+		if (regions.length == 1) {
+			return of(regions[0]);
+		}
+		return new ByteInput() {
+			@Override
+			long length() {
+				return length;
+			}
+
+			@Override
+			int get(long index) {
+				return regions[(int) (index / REGION_SIZE)].get((int) (index % REGION_SIZE)) & 0xFF;
+			}
+		};
+	}
+
+	/**
+	 * Returns {@code true} if assertion {@code kind} holds at {@code index}.
+	 *
+	 * @param kind
+	 *            one of the assertion constants of {@link Prog}
+	 * @param index
+	 *            offset between two code points
+	 * @return {@code true} if the assertion holds
+	 */
+	final boolean assertion(int kind, long index) {
+		long end = length();
+		switch (kind) {
+		case Prog.BEGIN_TEXT:
+			return index == 0;
+		case Prog.END_TEXT:
+			return index == end;
+		case Prog.END_TEXT_OR_TERMINATOR:
+			if (index == end) {
+				return true;
+			}
+			int decoded = decode(index);
+			int c = decoded < 0 ? ~decoded : decoded;
+			long after = index + (decoded < 0 ? 1 : length(c));
+			if (after == end) {
+				return Prog.isLineTerminator(c) && !(c == '\n' && index > 0 && get(index - 1) == '\r');
+			}
+			return after == end - 1 && c == '\r' && get(after) == '\n';
+		case Prog.END_TEXT_OR_TERMINATOR_UNIX:
+			return index == end || (index == end - 1 && get(index) == '\n');
+		case Prog.BEGIN_LINE:
+			if (index == end) {
+				return false;
+			}
+			if (index == 0) {
+				return true;
+			}
+			int before = codePointBefore(index);
+			return Prog.isLineTerminator(before) && !(before == '\r' && get(index) == '\n');
+		case Prog.BEGIN_LINE_UNIX:
+			return index < end && (index == 0 || get(index - 1) == '\n');
+		case Prog.END_LINE:
+			if (index == end) {
+				return true;
+			}
+			int next = codePointAt(index);
+			return Prog.isLineTerminator(next) && !(next == '\n' && index > 0 && get(index - 1) == '\r');
+		case Prog.END_LINE_UNIX:
+			return index == end || get(index) == '\n';
+		case Prog.WORD_BOUNDARY:
+			return isWordBefore(index) != isWordAt(index);
+		case Prog.NOT_WORD_BOUNDARY:
+			return isWordBefore(index) == isWordAt(index);
+		default:
+			throw new IllegalArgumentException(Integer.toString(kind));
+		}
+	}
+
+	private boolean isWordBefore(long index) {
+		if (index == 0) {
+			return false;
+		}
+		int c = codePointBefore(index);
+		return isWord(c)
+				|| (Character.getType(c) == Character.NON_SPACING_MARK && hasBaseCharacter(index - length(c)));
+	}
+
+	private boolean isWordAt(long index) {
+		if (index == length()) {
+			return false;
+		}
+		int c = codePointAt(index);
+		return isWord(c) || (Character.getType(c) == Character.NON_SPACING_MARK && hasBaseCharacter(index));
+	}
+
+	private static boolean isWord(int c) {
+		return c == '_' || Character.isLetterOrDigit(c);
+	}
+
+	/**
+	 * Returns {@code true} if the non-spacing marks ending at {@code index}
+	 * follow a letter or digit, which makes them part of a word.
+	 */
+	private boolean hasBaseCharacter(long index) {
+		for (long i = index; i > 0;) {
+			int c = codePointBefore(i);
+			if (Character.isLetterOrDigit(c)) {
+				return true;
+			}
+			if (Character.getType(c) != Character.NON_SPACING_MARK) {
+				return false;
+			}
+			i -= length(c);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of bytes of the encoding of {@code c}.
+	 */
+	private static int length(int c) {
+		return c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+	}
+
+	/**
+	 * Decodes the code point at {@code index}.
+	 *
+	 * @return the code point, or the complement of U+FFFD for a malformed
+	 *         byte, which decodes to U+FFFD and counts as one byte
+	 */
+	private int decode(long index) {
+		int b = get(index);
+		int length = b < 0x80 ? 1 : b < 0xC2 ? 0 : b < 0xE0 ? 2 : b < 0xF0 ? 3 : b < 0xF5 ? 4 : 0;
+		if (length == 1) {
+			return b;
+		} else if (length == 0 || index + length > length()) {
+			return ~0xFFFD;
+		}
+		int c = b & (0xFF >>> (length + 1));
+		for (int i = 1; i < length; i++) {
+			int next = get(index + i);
+			if ((next & 0xC0) != 0x80) {
+				return ~0xFFFD;
+			}
+			c = c << 6 | (next & 0x3F);
+		}
+		if (c < MIN_CODE_POINTS[length] || c > Character.MAX_CODE_POINT
+				|| (c >= 0xD800 && c <= 0xDFFF)) {
+			return ~0xFFFD;
+		}
+		return c;
+	}
+
+	private int codePointAt(long index) {
+		int c = decode(index);
+		return c < 0 ? ~c : c;
+	}
+
+	private int codePointBefore(long index) {
+		// A code point ends here if it starts at most four bytes back and
+		// decodes to exactly this many bytes.
+		for (int length = 1; length <= 4 && index - length >= 0; length++) {
+			int b = get(index - length);
+			if ((b & 0xC0) != 0x80) {
+				int c = decode(index - length);
+				if (c >= 0 && length(c) == length) {
+					return c;
+				}
+				break;
+			}
+		}
+		return 0xFFFD;
+	}
+}
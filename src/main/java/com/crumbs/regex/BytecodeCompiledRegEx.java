@@ -0,0 +1,105 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compiled regular expression matched by a DFA compiled to JVM bytecode
+ * <p>
+ * The first search with each anchoring builds every state of the DFA of that
+ * anchoring and compiles it with {@link BytecodeCompiler} to a class of its
+ * own; the searches that follow run the generated code. An automaton with
+ * more than {@link #MAX_STATES} states, or one that the compiler turns down,
+ * is matched by a {@link DFACompiledRegEx} instead, so every regular
+ * expression that the DFA supports can be compiled for this engine. Inputs
+ * that the {@link RegExAnalysis} of the regular expression rules out are
+ * rejected without a search.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see RegExEngine#BYTECODE
+ */
+final class BytecodeCompiledRegEx extends CompiledRegEx {
+
+	/**
+	 * maximum number of states of an automaton compiled to bytecode
+	 */
+	static final int MAX_STATES = 256;
+
+	/**
+	 * marks an anchoring whose automaton is not compiled
+	 */
+	private static final GeneratedDFA NOT_GENERATED = new GeneratedDFA() {
+		@Override
+		public boolean search(CharSequence input, LiteralPrefilter prefilter, MatchBudget budget) {
+			throw new AssertionError();
+		}
+	};
+
+	private final Prog prog;
+	private final LazyDFA.Alphabet alphabet;
+	private final RegExAnalysis analysis;
+	private final DFACompiledRegEx fallback;
+
+	/**
+	 * compiled automata by anchoring, built on first use
+	 */
+	private final AtomicReferenceArray<GeneratedDFA> generated = new AtomicReferenceArray<GeneratedDFA>(
+			PikeVM.Anchor.values().length);
+
+	BytecodeCompiledRegEx(Prog prog, RegExAnalysis analysis, MatchLimit matchLimit) {
+		super(matchLimit);
+		this.prog = prog;
+		this.alphabet = new LazyDFA.Alphabet(prog);
+		this.analysis = analysis;
+		this.fallback = new DFACompiledRegEx(prog, analysis, DFACompiledRegEx.DEFAULT_CACHE_BUDGET, matchLimit);
+	}
+
+	/**
+	 * Returns the compiled automaton of {@code anchor}, compiling it on first
+	 * use.
+	 *
+	 * @return the compiled automaton, or {@code null} if it is not compiled
+	 */
+	GeneratedDFA generated(PikeVM.Anchor anchor) {
+		GeneratedDFA dfa = this.generated.get(anchor.ordinal());
+		if (dfa == null) {
+			// Threads that race here compile the same automaton; the first
+			// one to finish wins.
+			DenseDFA dense = new LazyDFA(this.prog, this.alphabet, anchor, Long.MAX_VALUE, new DFAStats())
+					.materialize(MAX_STATES);
+			dfa = dense == null ? null : BytecodeCompiler.compile(dense);
+			this.generated.compareAndSet(anchor.ordinal(), null, dfa == null ? NOT_GENERATED : dfa);
+			dfa = this.generated.get(anchor.ordinal());
+		}
+		return dfa == NOT_GENERATED ? null : dfa;
+	}
+
+	@Override
+	boolean search(CharSequence input, PikeVM.Anchor anchor, MatchBudget budget) {
+		GeneratedDFA dfa = generated(anchor == PikeVM.Anchor.UNANCHORED && this.analysis.isAnchoredAtStart()
+				? PikeVM.Anchor.START : anchor);
+		if (dfa == null) {
+			return this.fallback.search(input, anchor, budget);
+		}
+		if (anchor == PikeVM.Anchor.BOTH ? this.analysis.rejectsMatch(input) : this.analysis.rejectsFind(input)) {
+			return false;
+		}
+		return dfa.search(input, this.prog.prefilter, budget);
+	}
+}
@@ -0,0 +1,373 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.regex.ClassFileWriter.ALOAD;
+import static com.crumbs.regex.ClassFileWriter.DUP;
+import static com.crumbs.regex.ClassFileWriter.GOTO;
+import static com.crumbs.regex.ClassFileWriter.IADD;
+import static com.crumbs.regex.ClassFileWriter.ICONST_0;
+import static com.crumbs.regex.ClassFileWriter.IFEQ;
+import static com.crumbs.regex.ClassFileWriter.IFGE;
+import static com.crumbs.regex.ClassFileWriter.IFNULL;
+import static com.crumbs.regex.ClassFileWriter.IF_ICMPGE;
+import static com.crumbs.regex.ClassFileWriter.IF_ICMPGT;
+import static com.crumbs.regex.ClassFileWriter.IF_ICMPLT;
+import static com.crumbs.regex.ClassFileWriter.IF_ICMPNE;
+import static com.crumbs.regex.ClassFileWriter.ILOAD;
+import static com.crumbs.regex.ClassFileWriter.INVOKEINTERFACE;
+import static com.crumbs.regex.ClassFileWriter.INVOKESPECIAL;
+import static com.crumbs.regex.ClassFileWriter.INVOKESTATIC;
+import static com.crumbs.regex.ClassFileWriter.INVOKEVIRTUAL;
+import static com.crumbs.regex.ClassFileWriter.IOR;
+import static com.crumbs.regex.ClassFileWriter.IRETURN;
+import static com.crumbs.regex.ClassFileWriter.ISTORE;
+import static com.crumbs.regex.ClassFileWriter.RETURN;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiler of a {@link DenseDFA} to a JVM class of its own, so that the JIT
+ * compiles each automaton to specialized machine code
+ * <p>
+ * The search is a single method with a block of straight-line code per
+ * state: the block checks for a match and the end of the input, reads a code
+ * point, and jumps to the block of the next state through a binary search on
+ * the bounds of the character classes, written as inline comparisons. States
+ * with pending assertions evaluate them and jump to the block of the resolved
+ * state through a <tt>tableswitch</tt>. There is no table to look up and no
+ * indirect call in the loop, so the JIT sees monomorphic code that it can
+ * keep in registers. The prefilter of the automaton is only used when it
+ * looks for a single prefix, the one case it scans faster than the code of
+ * the start state.
+ * </p>
+ * <p>
+ * The class is defined as a hidden class where the JVM supports them (Java
+ * 15 and later), so that it is unloaded with its automaton; earlier JVMs
+ * define it in this class's package for good. The JVM API is looked up
+ * reflectively, so this library still runs where it is missing, and an
+ * automaton is not compiled if neither API is there. HotSpot does not
+ * JIT-compile a method longer than 8000 bytes, and an interpreted search is
+ * slower than a {@link LazyDFA}, so an automaton whose search would be longer
+ * is not compiled either.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see BytecodeCompiledRegEx
+ */
+final class BytecodeCompiler {
+
+	/**
+	 * maximum number of bytes of code of a search, HotSpot's
+	 * <tt>HugeMethodLimit</tt>
+	 */
+	static final int MAX_CODE_LENGTH = 8000;
+
+	private static final String CLASS_NAME = "com/crumbs/regex/GeneratedDFA$";
+	private static final String SEARCH_DESCRIPTOR = "(Ljava/lang/CharSequence;Lcom/crumbs/regex/LiteralPrefilter;"
+			+ "Lcom/crumbs/regex/MatchBudget;)Z";
+
+	// local variables of the search
+	private static final int INPUT = 1;
+	private static final int PREFILTER = 2;
+	private static final int BUDGET = 3;
+	private static final int POS = 4;
+	private static final int END = 5;
+	private static final int C = 6;
+	private static final int MASK = 7;
+
+	private static final AtomicInteger CLASS_COUNT = new AtomicInteger();
+
+	/**
+	 * <tt>Lookup.defineHiddenClass(byte[], boolean, ClassOption...)</tt>, or
+	 * {@code null}
+	 */
+	private static final Method DEFINE_HIDDEN_CLASS;
+	private static final Object NO_OPTIONS;
+
+	/**
+	 * <tt>Lookup.defineClass(byte[])</tt>, or {@code null}
+	 */
+	private static final Method DEFINE_CLASS;
+
+	static {
+		Method defineHiddenClass = null;
+		Object noOptions = null;
+		Method defineClass = null;
+		try {
+			Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+			noOptions = Array.newInstance(option, 0);
+			defineHiddenClass = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class,
+					boolean.class, noOptions.getClass());
+		} catch (ReflectiveOperationException e) {
+			// before Java 15
+		}
+		try {
+			defineClass = MethodHandles.Lookup.class.getMethod("defineClass", byte[].class);
+		} catch (ReflectiveOperationException e) {
+			// before Java 9
+		}
+		DEFINE_HIDDEN_CLASS = defineHiddenClass;
+		NO_OPTIONS = noOptions;
+		DEFINE_CLASS = defineClass;
+	}
+
+	private BytecodeCompiler() {
+	}
+
+	/**
+	 * Compiles {@code dfa} to a class and returns an instance of it.
+	 *
+	 * @param dfa
+	 *            automaton to compile
+	 * @return the compiled search, or {@code null} if the search would be too
+	 *         long or the JVM cannot define classes at run time
+	 */
+	static GeneratedDFA compile(DenseDFA dfa) {
+		byte[] classFile = generate(dfa, CLASS_NAME + CLASS_COUNT.incrementAndGet());
+		if (classFile == null) {
+			return null;
+		}
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			Class<?> generated;
+			if (DEFINE_HIDDEN_CLASS != null) {
+				generated = ((MethodHandles.Lookup) DEFINE_HIDDEN_CLASS.invoke(lookup, classFile, Boolean.TRUE,
+						NO_OPTIONS)).lookupClass();
+			} else if (DEFINE_CLASS != null) {
+				generated = (Class<?>) DEFINE_CLASS.invoke(lookup, (Object) classFile);
+			} else {
+				return null;
+			}
+			return (GeneratedDFA) generated.getConstructor().newInstance();
+		} catch (InvocationTargetException e) {
+			// A class file that the JVM rejects is a bug of this compiler.
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the class file of the compiled search of {@code dfa}, a class
+	 * that implements {@link GeneratedDFA}.
+	 *
+	 * @param name
+	 *            internal name of the class
+	 * @return the class file, or {@code null} if the search would be longer
+	 *         than {@link #MAX_CODE_LENGTH}
+	 */
+	static byte[] generate(DenseDFA dfa, String name) {
+		ClassFileWriter writer = new ClassFileWriter();
+		ClassFileWriter.Code init = writer.newCode();
+		init.var(ALOAD, 0);
+		init.invoke(INVOKESPECIAL, writer.methodRef("java/lang/Object", "<init>", "()V"), 0);
+		init.op(RETURN);
+		writer.addMethod("<init>", "()V", init, 1, 1);
+
+		ClassFileWriter.Code code = writer.newCode();
+		int indexOf = writer.methodRef("com/crumbs/regex/LiteralPrefilter", "indexOf", "(Ljava/lang/CharSequence;I)I");
+		int assertion = writer.methodRef("com/crumbs/regex/Prog", "assertion", "(ILjava/lang/CharSequence;I)Z");
+		int step = writer.methodRef("com/crumbs/regex/MatchBudget", "step", "()V");
+		int length = writer.interfaceMethodRef("java/lang/CharSequence", "length", "()I");
+		int charAt = writer.interfaceMethodRef("java/lang/CharSequence", "charAt", "(I)C");
+		int codePointAt = writer.methodRef("java/lang/Character", "codePointAt", "(Ljava/lang/CharSequence;I)I");
+		int charCount = writer.methodRef("java/lang/Character", "charCount", "(I)I");
+
+		final boolean both = dfa.anchor == PikeVM.Anchor.BOTH;
+		final int[] kinds = dfa.alphabet.kinds;
+		final int n = dfa.stateCount();
+		// entered[s]: block of state s; resolved[s]: block of state s once
+		// its assertions are resolved
+		int[] entered = new int[n];
+		int[] resolved = new int[n];
+		for (int s = 0; s < n; s++) {
+			entered[s] = code.newLabel();
+			resolved[s] = code.newLabel();
+		}
+		int[] lows = new int[dfa.alphabet.classCount()];
+		int[] targets = new int[lows.length];
+
+		code.op(ICONST_0);
+		code.var(ISTORE, POS);
+		code.var(ALOAD, INPUT);
+		code.invoke(INVOKEINTERFACE, length, 0);
+		code.var(ISTORE, END);
+		code.op(ICONST_0);
+		code.var(ISTORE, C);
+		code.op(ICONST_0);
+		code.var(ISTORE, MASK);
+		for (int s = 0; s < n; s++) {
+			code.place(entered[s]);
+			if (s == 0 && dfa.prefilter != null && dfa.prefilter.prefixCount() == 1) {
+				// Only the start state is left, so skip to where a match can
+				// start. Several prefixes are scanned no faster than the block
+				// of the start state runs, and the call would cost more than
+				// it saves each time the search comes back to the start state.
+				int found = code.newLabel();
+				code.var(ALOAD, PREFILTER);
+				code.jump(IFNULL, found);
+				code.var(ALOAD, PREFILTER);
+				code.var(ALOAD, INPUT);
+				code.var(ILOAD, POS);
+				code.invoke(INVOKEVIRTUAL, indexOf, 0);
+				code.op(DUP);
+				code.var(ISTORE, POS);
+				code.jump(IFGE, found);
+				code.op(ICONST_0);
+				code.op(IRETURN);
+				code.place(found);
+			}
+			if (dfa.resolved[s] != null) {
+				code.op(ICONST_0);
+				code.var(ISTORE, MASK);
+				for (int i = 0; i < kinds.length; i++) {
+					int fails = code.newLabel();
+					code.push(kinds[i]);
+					code.var(ALOAD, INPUT);
+					code.var(ILOAD, POS);
+					code.invoke(INVOKESTATIC, assertion, 0);
+					code.jump(IFEQ, fails);
+					code.var(ILOAD, MASK);
+					code.push(1 << i);
+					code.op(IOR);
+					code.var(ISTORE, MASK);
+					code.place(fails);
+				}
+				int[] labels = new int[dfa.resolved[s].length];
+				for (int mask = 0; mask < labels.length; mask++) {
+					labels[mask] = resolved[dfa.resolved[s][mask]];
+				}
+				code.var(ILOAD, MASK);
+				code.tableSwitch(labels, labels[0]);
+			}
+			code.place(resolved[s]);
+			if (dfa.match[s]) {
+				if (!both) {
+					code.push(1);
+					code.op(IRETURN);
+					continue;
+				}
+				int notAtEnd = code.newLabel();
+				code.var(ILOAD, POS);
+				code.var(ILOAD, END);
+				code.jump(IF_ICMPNE, notAtEnd);
+				code.push(1);
+				code.op(IRETURN);
+				code.place(notAtEnd);
+			}
+			if (dfa.next[s] == null) {
+				code.op(ICONST_0);
+				code.op(IRETURN);
+				continue;
+			}
+			int more = code.newLabel();
+			code.var(ILOAD, POS);
+			code.var(ILOAD, END);
+			code.jump(IF_ICMPLT, more);
+			code.op(ICONST_0);
+			code.op(IRETURN);
+			code.place(more);
+
+			int unlimited = code.newLabel();
+			code.var(ALOAD, BUDGET);
+			code.jump(IFNULL, unlimited);
+			code.var(ALOAD, BUDGET);
+			code.invoke(INVOKEVIRTUAL, step, 0);
+			code.place(unlimited);
+
+			// c = input.charAt(pos++), and the whole code point if c is a
+			// high surrogate
+			int read = code.newLabel();
+			code.var(ALOAD, INPUT);
+			code.var(ILOAD, POS);
+			code.invoke(INVOKEINTERFACE, charAt, 1);
+			code.var(ISTORE, C);
+			code.iinc(POS, 1);
+			code.var(ILOAD, C);
+			code.push(Character.MIN_HIGH_SURROGATE);
+			code.jump(IF_ICMPLT, read);
+			code.var(ILOAD, C);
+			code.push(Character.MAX_HIGH_SURROGATE);
+			code.jump(IF_ICMPGT, read);
+			code.iinc(POS, -1);
+			code.var(ALOAD, INPUT);
+			code.var(ILOAD, POS);
+			code.invoke(INVOKESTATIC, codePointAt, 0);
+			code.var(ISTORE, C);
+			code.var(ILOAD, POS);
+			code.var(ILOAD, C);
+			code.invoke(INVOKESTATIC, charCount, 0);
+			code.op(IADD);
+			code.var(ISTORE, POS);
+			code.place(read);
+
+			// classes with the same next state make up a range
+			int ranges = 0;
+			for (int cls = 0; cls < lows.length; cls++) {
+				int target = dfa.next[s][cls];
+				if (ranges == 0 || targets[ranges - 1] != target) {
+					lows[ranges] = dfa.alphabet.representative(cls);
+					targets[ranges++] = target;
+				}
+			}
+			dispatch(code, lows, targets, 0, ranges - 1, entered);
+			if (code.length() > MAX_CODE_LENGTH) {
+				return null;
+			}
+		}
+		if (code.length() > MAX_CODE_LENGTH || !writer.addMethod("search", SEARCH_DESCRIPTOR, code, 3, 8)) {
+			return null;
+		}
+		return writer.toByteArray(name, "java/lang/Object", "com/crumbs/regex/GeneratedDFA");
+	}
+
+	/**
+	 * Writes a binary search for the range of code point <tt>c</tt> among
+	 * ranges {@code from} to {@code to}, which jumps to the block of the
+	 * range's target.
+	 *
+	 * @param lows
+	 *            first code point of each range, in increasing order
+	 * @param targets
+	 *            target state of each range
+	 * @param labels
+	 *            labels of the blocks by state
+	 */
+	private static void dispatch(ClassFileWriter.Code code, int[] lows, int[] targets, int from, int to,
+			int[] labels) {
+		if (from == to) {
+			code.jump(GOTO, labels[targets[from]]);
+			return;
+		}
+		int mid = (from + to + 1) >>> 1;
+		int high = code.newLabel();
+		code.var(ILOAD, C);
+		code.push(lows[mid]);
+		code.jump(IF_ICMPGE, high);
+		dispatch(code, lows, targets, from, mid - 1, labels);
+		code.place(high);
+		dispatch(code, lows, targets, mid, to, labels);
+	}
+}
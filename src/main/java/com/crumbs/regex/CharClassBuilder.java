@@ -58,4 +58,57 @@ public interface CharClassBuilder extends CommonBuilder<CharClassBuilder> {
 	 * @return {@code this} CharClassBuilder
 	 */
 	CharClassBuilder str(String str);
+
+	/**
+	 * Adds the characters of {@code charClass} to this character class.
+	 * <p>
+	 * Character classes are sets of code points, so the set operations of
+	 * this interface are computed when they are called: this character class
+	 * is replaced by the fewest characters and ranges matching the result.
+	 * The sets of shorthands like <tt>\d</tt> and properties like
+	 * <tt>\p{L}</tt> are the ones {@code java.util.regex} gives them without
+	 * match flags; case-insensitive matching applies to the result. When
+	 * either class contains text appended verbatim, whose set is not known,
+	 * Java's nested class notation is appended instead.
+	 * </p>
+	 * 
+	 * @param charClass
+	 *            character class whose characters are added
+	 * @return {@code this} CharClassBuilder
+	 * @throws IllegalArgumentException
+	 *             if {@code charClass} is {@code null}
+	 */
+	CharClassBuilder union(CharClassBuilder charClass);
+
+	/**
+	 * Removes the characters that are not in {@code charClass} from this
+	 * character class (see {@link #union(CharClassBuilder)}).
+	 * 
+	 * @param charClass
+	 *            character class of the characters to keep
+	 * @return {@code this} CharClassBuilder
+	 * @throws IllegalArgumentException
+	 *             if {@code charClass} is {@code null}
+	 */
+	CharClassBuilder intersection(CharClassBuilder charClass);
+
+	/**
+	 * Removes the characters of {@code charClass} from this character class
+	 * (see {@link #union(CharClassBuilder)}).
+	 * 
+	 * @param charClass
+	 *            character class of the characters to remove
+	 * @return {@code this} CharClassBuilder
+	 * @throws IllegalArgumentException
+	 *             if {@code charClass} is {@code null}
+	 */
+	CharClassBuilder difference(CharClassBuilder charClass);
+
+	/**
+	 * Replaces this character class by the code points it does not match
+	 * (see {@link #union(CharClassBuilder)}).
+	 * 
+	 * @return {@code this} CharClassBuilder
+	 */
+	CharClassBuilder negate();
 }
\ No newline at end of file
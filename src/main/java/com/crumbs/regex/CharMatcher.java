@@ -0,0 +1,183 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled membership test of a {@link CodePointSet}
+ * <p>
+ * Engines test a character class once per character of the input, and most
+ * input is US-ASCII or Latin-1. A matcher answers for those code points with
+ * one bit of two {@code long}s for US-ASCII and a 256-bit table for Latin-1,
+ * and only searches the ranges of its set for code points above U+00FF.
+ * </p>
+ * <p>
+ * Sets with many ranges, like Unicode categories and scripts, would need a
+ * long search for every code point above U+00FF. A matcher of such a set
+ * instead keeps a two-stage bitmap like {@link UnicodeTables}: each chunk of
+ * 256 code points maps to one of the distinct 256-bit chunk bitmaps, so a
+ * test reads two arrays whatever the code point.
+ * </p>
+ * <p>
+ * Matchers are immutable and shared: {@link CodePointSet#matcher()} compiles
+ * one per set, so the sets of predefined classes like <tt>\p{Alpha}</tt>,
+ * which {@link CharSets} keeps, have one matcher used by every program.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class CharMatcher {
+
+	/**
+	 * greatest number of ranges above U+00FF to search rather than to put in
+	 * a two-stage bitmap
+	 */
+	private static final int MAX_SEARCHED_RANGES = 16;
+
+	/**
+	 * members U+0000 to U+003F
+	 */
+	private final long ascii0;
+
+	/**
+	 * members U+0040 to U+007F
+	 */
+	private final long ascii1;
+
+	/**
+	 * members U+0000 to U+00FF, one bit per code point
+	 */
+	private final long[] latin1 = new long[4];
+
+	/**
+	 * inclusive bounds of the ranges above U+00FF, as in
+	 * {@link CodePointSet}
+	 */
+	private final int[] ranges;
+
+	/**
+	 * number of the bitmap in {@link #chunks} of each chunk of 256 code
+	 * points, or {@code null} to search {@link #ranges}
+	 */
+	private final char[] index;
+
+	/**
+	 * distinct chunk bitmaps, four {@code long}s each
+	 */
+	private final long[] chunks;
+
+	CharMatcher(CodePointSet set) {
+		int first = set.rangeCount();
+		for (int r = 0; r < set.rangeCount(); r++) {
+			int min = set.min(r);
+			int max = set.max(r);
+			for (int c = min; c <= Math.min(max, 0xFF); c++) {
+				this.latin1[c >>> 6] |= 1L << c;
+			}
+			if (max > 0xFF && first == set.rangeCount()) {
+				first = r;
+			}
+		}
+		this.ascii0 = this.latin1[0];
+		this.ascii1 = this.latin1[1];
+		int[] ranges = new int[2 * (set.rangeCount() - first)];
+		for (int r = first; r < set.rangeCount(); r++) {
+			ranges[2 * (r - first)] = Math.max(set.min(r), 0x100);
+			ranges[2 * (r - first) + 1] = set.max(r);
+		}
+		this.ranges = ranges;
+		if (ranges.length / 2 > MAX_SEARCHED_RANGES) {
+			this.index = new char[(Character.MAX_CODE_POINT + 1) >>> 8];
+			this.chunks = bitmaps(set, this.index);
+		} else {
+			this.index = null;
+			this.chunks = null;
+		}
+	}
+
+	private static long[] bitmaps(CodePointSet set, char[] index) {
+		Map<LongBuffer, Integer> numbers = new HashMap<LongBuffer, Integer>();
+		long[] chunks = new long[4 * 16];
+		int count = 0;
+		int r = 0;
+		for (int i = 0; i < index.length; i++) {
+			int base = i << 8;
+			long[] bits = new long[4];
+			while (r < set.rangeCount() && set.max(r) < base) {
+				r++;
+			}
+			for (int s = r; s < set.rangeCount() && set.min(s) <= base + 0xFF; s++) {
+				int min = Math.max(set.min(s), base) - base;
+				int max = Math.min(set.max(s), base + 0xFF) - base;
+				for (int c = min; c <= max; c++) {
+					bits[c >>> 6] |= 1L << c;
+				}
+			}
+			LongBuffer key = LongBuffer.wrap(bits);
+			Integer number = numbers.get(key);
+			if (number == null) {
+				number = Integer.valueOf(count++);
+				numbers.put(key, number);
+				if (4 * count > chunks.length) {
+					chunks = Arrays.copyOf(chunks, 2 * chunks.length);
+				}
+				System.arraycopy(bits, 0, chunks, 4 * number.intValue(), 4);
+			}
+			index[i] = (char) number.intValue();
+		}
+		return Arrays.copyOf(chunks, 4 * count);
+	}
+
+	/**
+	 * Returns {@code true} if {@code codePoint} is a member of the set of this
+	 * matcher.
+	 *
+	 * @param codePoint
+	 *            code point to test
+	 * @return {@code true} if the set contains {@code codePoint}
+	 */
+	boolean matches(int codePoint) {
+		if (codePoint < 0x40) {
+			return (this.ascii0 & (1L << codePoint)) != 0;
+		} else if (codePoint < 0x80) {
+			return (this.ascii1 & (1L << codePoint)) != 0;
+		} else if (codePoint <= 0xFF) {
+			return (this.latin1[codePoint >>> 6] & (1L << codePoint)) != 0;
+		} else if (this.index != null) {
+			return (this.chunks[4 * this.index[codePoint >>> 8] + ((codePoint >>> 6) & 3)] & (1L << codePoint)) != 0;
+		}
+		int[] r = this.ranges;
+		int lo = 0;
+		int hi = r.length / 2 - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (codePoint < r[2 * mid]) {
+				hi = mid - 1;
+			} else if (codePoint > r[2 * mid + 1]) {
+				lo = mid + 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import com.crumbs.regex.RegExNode.ClassChar;
+import com.crumbs.regex.RegExNode.ClassRange;
+import com.crumbs.regex.RegExNode.ClassSet;
+import com.crumbs.regex.RegExNode.Concat;
+import com.crumbs.regex.RegExNode.Escape;
+import com.crumbs.regex.RegExNode.Fragment;
+import com.crumbs.regex.RegExNode.Property;
+import com.crumbs.regex.RegExNode.Shorthand;
+
+/**
+ * Code point sets of the predefined character classes, with the meaning
+ * {@code java.util.regex} gives them
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class CharSets {
+
+	static final CodePointSet DIGIT = CodePointSet.range('0', '9');
+
+	static final CodePointSet WHITESPACE = new CodePointSet.Builder().add('\t', '\r').add(' ').build();
+
+	static final CodePointSet WORD = new CodePointSet.Builder().add('a', 'z').add('A', 'Z').add('_').add('0', '9')
+			.build();
+
+	/**
+	 * characters that end a line: <tt>\n</tt>, <tt>\r</tt>, next line
+	 * (U+0085), and the line and paragraph separators (U+2028 and U+2029)
+	 */
+	static final CodePointSet LINE_TERMINATORS = new CodePointSet.Builder().add('\n').add('\r').add(0x85)
+			.add(0x2028, 0x2029).build();
+
+	static final CodePointSet NOT_LINE_TERMINATORS = LINE_TERMINATORS.complement();
+
+	static final CodePointSet NOT_LINE_FEED = CodePointSet.of('\n').complement();
+
+	private static final ConcurrentMap<Enum<?>, CodePointSet> properties = new ConcurrentHashMap<Enum<?>, CodePointSet>();
+
+	private CharSets() {
+	}
+
+	/**
+	 * Returns the set of a shorthand other than <tt>.</tt>, whose set depends
+	 * on match flags.
+	 *
+	 * @param shorthand
+	 *            a shorthand like <tt>\d</tt>
+	 * @return the set of code points matched by {@code shorthand}
+	 */
+	static CodePointSet shorthand(Shorthand shorthand) {
+		if (shorthand == Shorthand.DIGIT) {
+			return DIGIT;
+		} else if (shorthand == Shorthand.NOT_DIGIT) {
+			return DIGIT.complement();
+		} else if (shorthand == Shorthand.WHITESPACE) {
+			return WHITESPACE;
+		} else if (shorthand == Shorthand.NOT_WHITESPACE) {
+			return WHITESPACE.complement();
+		} else if (shorthand == Shorthand.WORD_CHARACTER) {
+			return WORD;
+		} else if (shorthand == Shorthand.NOT_WORD_CHARACTER) {
+			return WORD.complement();
+		}
+		throw new IllegalArgumentException(shorthand.toString());
+	}
+
+	/**
+	 * Returns the set of code points matched by the members of a character
+	 * class before case folding.
+	 *
+	 * @param members
+	 *            members of a character class, as built by a
+	 *            {@link CharClassBuilder}
+	 * @return the set of code points of {@code members}, or {@code null} if a
+	 *         member, like text appended verbatim, has no set known when the
+	 *         pattern is built
+	 */
+	static CodePointSet members(RegExNode members) {
+		if (members == RegExNode.EMPTY) {
+			return CodePointSet.EMPTY;
+		} else if (members instanceof Concat) {
+			CodePointSet.Builder builder = new CodePointSet.Builder();
+			for (RegExNode member : ((Concat) members).children) {
+				CodePointSet set = members(member);
+				if (set == null) {
+					return null;
+				}
+				builder.add(set);
+			}
+			return builder.build();
+		} else if (members instanceof Fragment) {
+			return members(((Fragment) members).child);
+		} else if (members instanceof ClassSet) {
+			return ((ClassSet) members).set;
+		} else if (members instanceof ClassChar) {
+			return CodePointSet.of(((ClassChar) members).c);
+		} else if (members instanceof ClassRange) {
+			return CodePointSet.range(((ClassRange) members).min, ((ClassRange) members).max);
+		} else if (members instanceof Escape) {
+			return CodePointSet.of(((Escape) members).codePoint);
+		} else if (members instanceof Shorthand && members != Shorthand.ANY_CHAR) {
+			return shorthand((Shorthand) members);
+		} else if (members instanceof Property) {
+			return property((Property) members);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the set of a <tt>\p{</tt><em>name</em><tt>}</tt> property.
+	 * <p>
+	 * The set is computed once per property from the two-stage
+	 * {@link UnicodeTables}. POSIX classes, which only have US-ASCII members,
+	 * come from {@link POSIXCharacterClass#set()} instead.
+	 * </p>
+	 *
+	 * @param property
+	 *            a property, block, POSIX class, or script
+	 * @return the set of code points matched by {@code property}
+	 * @throws UnsupportedOperationException
+	 *             if Java does not know the block of {@code property}
+	 */
+	static CodePointSet property(Property property) {
+		CodePointSet set = properties.get(property.property);
+		if (set == null) {
+			set = compute(property.property);
+			CodePointSet existing = properties.putIfAbsent(property.property, set);
+			if (existing != null) {
+				set = existing;
+			}
+		}
+		return property.negated ? set.complement() : set;
+	}
+
+	private static CodePointSet compute(Enum<?> property) {
+		if (property instanceof POSIXCharacterClass) {
+			return ((POSIXCharacterClass) property).set();
+		} else if (property instanceof UnicodeCharacterProperty) {
+			return UnicodeTables.categories((UnicodeCharacterProperty) property);
+		} else if (property instanceof UnicodeScript) {
+			return UnicodeTables.script((UnicodeScript) property);
+		}
+		return UnicodeTables.block((UnicodeBlock) property);
+	}
+
+	/**
+	 * Lazily computed case-folding classes: each array lists code points
+	 * that match each other case-insensitively
+	 */
+	private static final class UnicodeFolding {
+		static final int[][] classes = compute();
+
+		private static int[][] compute() {
+			// Java compares case-insensitive characters by
+			// toLowerCase(toUpperCase(c)), so that is the key of each class.
+			Map<Integer, int[]> byKey = new HashMap<Integer, int[]>();
+			for (int c = Character.MIN_CODE_POINT; c <= Character.MAX_CODE_POINT; c++) {
+				int key = Character.toLowerCase(Character.toUpperCase(c));
+				if (key != c) {
+					int[] members = byKey.get(key);
+					members = members == null ? new int[] { key, c } : Arrays.copyOf(members, members.length + 1);
+					members[members.length - 1] = c;
+					byKey.put(key, members);
+				}
+			}
+			return byKey.values().toArray(new int[byKey.size()][]);
+		}
+	}
+
+	/**
+	 * Returns {@code set} together with every code point that matches one of
+	 * its members case-insensitively.
+	 *
+	 * @param set
+	 *            set to close under case folding
+	 * @param unicode
+	 *            {@code true} to fold all of Unicode as with
+	 *            {@link Pattern#UNICODE_CASE}; {@code false} to fold only
+	 *            US-ASCII letters
+	 * @return the case-insensitive closure of {@code set}
+	 */
+	static CodePointSet caseFold(CodePointSet set, boolean unicode) {
+		if (set.isEmpty()) {
+			return set;
+		}
+		CodePointSet.Builder builder = new CodePointSet.Builder().add(set);
+		if (!unicode) {
+			for (int i = 0; i < set.rangeCount(); i++) {
+				addAsciiFolding(set.min(i), set.max(i), 'a', 'z', 'A' - 'a', builder);
+				addAsciiFolding(set.min(i), set.max(i), 'A', 'Z', 'a' - 'A', builder);
+			}
+			return builder.build();
+		}
+		for (int[] members : UnicodeFolding.classes) {
+			for (int member : members) {
+				if (set.contains(member)) {
+					for (int other : members) {
+						builder.add(other);
+					}
+					break;
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	private static void addAsciiFolding(int min, int max, int from, int to, int delta,
+			CodePointSet.Builder builder) {
+		int lo = Math.max(min, from);
+		int hi = Math.min(max, to);
+		if (lo <= hi) {
+			builder.add(lo + delta, hi + delta);
+		}
+	}
+}
@@ -0,0 +1,437 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writer of the few class files that the bytecode backends generate: a final
+ * class with a constant pool, public methods, and no fields or attributes
+ * besides the code of its methods
+ * <p>
+ * Class files are of version 49 (Java 5), the last one that the JVM verifies
+ * by type inference, so that methods need no stack map frames. Methods are
+ * written with a {@link Code}, whose jumps go to labels and are linked when
+ * the method is added.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see BytecodeCompiler
+ */
+final class ClassFileWriter {
+
+	static final int ICONST_0 = 0x03;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC = 0x12;
+	static final int LDC_W = 0x13;
+	static final int ILOAD = 0x15;
+	static final int ALOAD = 0x19;
+	static final int ISTORE = 0x36;
+	static final int DUP = 0x59;
+	static final int IADD = 0x60;
+	static final int IOR = 0x80;
+	static final int IINC = 0x84;
+	static final int IFEQ = 0x99;
+	static final int IFGE = 0x9c;
+	static final int IF_ICMPNE = 0xa0;
+	static final int IF_ICMPLT = 0xa1;
+	static final int IF_ICMPGE = 0xa2;
+	static final int IF_ICMPGT = 0xa3;
+	static final int GOTO = 0xa7;
+	static final int TABLESWITCH = 0xaa;
+	static final int IRETURN = 0xac;
+	static final int RETURN = 0xb1;
+	static final int INVOKEVIRTUAL = 0xb6;
+	static final int INVOKESPECIAL = 0xb7;
+	static final int INVOKESTATIC = 0xb8;
+	static final int INVOKEINTERFACE = 0xb9;
+	static final int IFNULL = 0xc6;
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	/**
+	 * maximum number of bytes of code of a method
+	 */
+	static final int MAX_CODE_LENGTH = 65535;
+
+	/**
+	 * Code of a method
+	 * <p>
+	 * Labels are numbers handed out by {@link #newLabel()}; a jump to a label
+	 * may come before the label is placed.
+	 * </p>
+	 */
+	final class Code {
+		private byte[] bytes = new byte[256];
+		private int length;
+		private int[] labels = new int[16];
+		private int labelCount;
+
+		/**
+		 * jumps to link: position of the instruction, position of its offset,
+		 * size of its offset, and label
+		 */
+		private int[] jumps = new int[64];
+		private int jumpCount;
+
+		/**
+		 * Returns the number of bytes of code written so far.
+		 *
+		 * @return the length of the code
+		 */
+		int length() {
+			return this.length;
+		}
+
+		int newLabel() {
+			if (this.labelCount == this.labels.length) {
+				this.labels = Arrays.copyOf(this.labels, this.labels.length * 2);
+			}
+			this.labels[this.labelCount] = -1;
+			return this.labelCount++;
+		}
+
+		void place(int label) {
+			this.labels[label] = this.length;
+		}
+
+		void op(int opcode) {
+			u1(opcode);
+		}
+
+		/**
+		 * Writes an instruction on local variable {@code index}, such as
+		 * {@link #ILOAD}.
+		 */
+		void var(int opcode, int index) {
+			u1(opcode);
+			u1(index);
+		}
+
+		void iinc(int index, int delta) {
+			u1(IINC);
+			u1(index);
+			u1(delta);
+		}
+
+		/**
+		 * Pushes the int {@code value} with the shortest instruction.
+		 */
+		void push(int value) {
+			if (value >= -1 && value <= 5) {
+				u1(ICONST_0 + value);
+			} else if (value == (byte) value) {
+				u1(BIPUSH);
+				u1(value);
+			} else if (value == (short) value) {
+				u1(SIPUSH);
+				u2(value);
+			} else {
+				int index = integer(value);
+				if (index < 256) {
+					u1(LDC);
+					u1(index);
+				} else {
+					u1(LDC_W);
+					u2(index);
+				}
+			}
+		}
+
+		/**
+		 * Writes an invocation of the method of constant pool entry
+		 * {@code method}.
+		 *
+		 * @param argSlots
+		 *            number of slots of the arguments, for
+		 *            {@link #INVOKEINTERFACE}
+		 */
+		void invoke(int opcode, int method, int argSlots) {
+			u1(opcode);
+			u2(method);
+			if (opcode == INVOKEINTERFACE) {
+				u1(argSlots + 1);
+				u1(0);
+			}
+		}
+
+		/**
+		 * Writes a branch, such as {@link #GOTO} or {@link #IFEQ}, to
+		 * {@code label}.
+		 */
+		void jump(int opcode, int label) {
+			addJump(this.length, this.length + 1, 2, label);
+			u1(opcode);
+			u2(0);
+		}
+
+		/**
+		 * Writes a {@link #TABLESWITCH} on the values from 0 to
+		 * {@code labels.length - 1}.
+		 */
+		void tableSwitch(int[] labels, int defaultLabel) {
+			int at = this.length;
+			u1(TABLESWITCH);
+			while (this.length % 4 != 0) {
+				u1(0);
+			}
+			addJump(at, this.length, 4, defaultLabel);
+			u4(0);
+			u4(0);
+			u4(labels.length - 1);
+			for (int label : labels) {
+				addJump(at, this.length, 4, label);
+				u4(0);
+			}
+		}
+
+		private void addJump(int at, int offsetAt, int size, int label) {
+			if (this.jumpCount + 4 > this.jumps.length) {
+				this.jumps = Arrays.copyOf(this.jumps, this.jumps.length * 2);
+			}
+			this.jumps[this.jumpCount++] = at;
+			this.jumps[this.jumpCount++] = offsetAt;
+			this.jumps[this.jumpCount++] = size;
+			this.jumps[this.jumpCount++] = label;
+		}
+
+		/**
+		 * Fills in the offsets of the jumps.
+		 *
+		 * @return {@code false} if an offset does not fit its jump
+		 */
+		private boolean link() {
+			for (int i = 0; i < this.jumpCount; i += 4) {
+				int offset = this.labels[this.jumps[i + 3]] - this.jumps[i];
+				int at = this.jumps[i + 1];
+				if (this.jumps[i + 2] == 2) {
+					if (offset != (short) offset) {
+						return false;
+					}
+					this.bytes[at] = (byte) (offset >> 8);
+					this.bytes[at + 1] = (byte) offset;
+				} else {
+					this.bytes[at] = (byte) (offset >> 24);
+					this.bytes[at + 1] = (byte) (offset >> 16);
+					this.bytes[at + 2] = (byte) (offset >> 8);
+					this.bytes[at + 3] = (byte) offset;
+				}
+			}
+			return true;
+		}
+
+		private void u1(int value) {
+			if (this.length == this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+			}
+			this.bytes[this.length++] = (byte) value;
+		}
+
+		private void u2(int value) {
+			u1(value >> 8);
+			u1(value);
+		}
+
+		private void u4(int value) {
+			u2(value >> 16);
+			u2(value);
+		}
+	}
+
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(this.pool);
+	private final Map<String, Integer> entries = new HashMap<String, Integer>();
+	private int poolCount = 1;
+
+	private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+	private final DataOutputStream methodsOut = new DataOutputStream(this.methods);
+	private int methodCount;
+
+	/**
+	 * Returns the constant pool entry of {@code value}, adding it if it is
+	 * not in the pool.
+	 */
+	int utf8(String value) {
+		Integer index = this.entries.get("U" + value);
+		if (index == null) {
+			try {
+				this.poolOut.writeByte(CONSTANT_UTF8);
+				this.poolOut.writeUTF(value);
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+			index = add("U" + value);
+		}
+		return index.intValue();
+	}
+
+	int integer(int value) {
+		Integer index = this.entries.get("I" + value);
+		if (index == null) {
+			try {
+				this.poolOut.writeByte(CONSTANT_INTEGER);
+				this.poolOut.writeInt(value);
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+			index = add("I" + value);
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * Returns the constant pool entry of the class of internal name
+	 * {@code name}, such as <tt>java/lang/Object</tt>.
+	 */
+	int classRef(String name) {
+		return ref(CONSTANT_CLASS, "C" + name, utf8(name), -1);
+	}
+
+	int methodRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+	}
+
+	int interfaceMethodRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+	}
+
+	private int memberRef(int tag, String owner, String name, String descriptor) {
+		int nameAndType = ref(CONSTANT_NAME_AND_TYPE, "N" + name + ' ' + descriptor, utf8(name), utf8(descriptor));
+		return ref(tag, tag + owner + '.' + name + ' ' + descriptor, classRef(owner), nameAndType);
+	}
+
+	/**
+	 * Returns the constant pool entry of {@code tag} that refers to entries
+	 * {@code first} and {@code second}, or to {@code first} alone if
+	 * {@code second} is negative.
+	 */
+	private int ref(int tag, String key, int first, int second) {
+		Integer index = this.entries.get(key);
+		if (index == null) {
+			try {
+				this.poolOut.writeByte(tag);
+				this.poolOut.writeShort(first);
+				if (second >= 0) {
+					this.poolOut.writeShort(second);
+				}
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+			index = add(key);
+		}
+		return index.intValue();
+	}
+
+	private Integer add(String key) {
+		Integer index = Integer.valueOf(this.poolCount++);
+		this.entries.put(key, index);
+		return index;
+	}
+
+	Code newCode() {
+		return new Code();
+	}
+
+	/**
+	 * Adds a public method.
+	 *
+	 * @return {@code false} if the code is too long for a method
+	 */
+	boolean addMethod(String name, String descriptor, Code code, int maxStack, int maxLocals) {
+		if (code.length > MAX_CODE_LENGTH || !code.link()) {
+			return false;
+		}
+		try {
+			this.methodsOut.writeShort(ACC_PUBLIC);
+			this.methodsOut.writeShort(utf8(name));
+			this.methodsOut.writeShort(utf8(descriptor));
+			this.methodsOut.writeShort(1);
+			this.methodsOut.writeShort(utf8("Code"));
+			this.methodsOut.writeInt(12 + code.length);
+			this.methodsOut.writeShort(maxStack);
+			this.methodsOut.writeShort(maxLocals);
+			this.methodsOut.writeInt(code.length);
+			this.methodsOut.write(code.bytes, 0, code.length);
+			this.methodsOut.writeShort(0);
+			this.methodsOut.writeShort(0);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		this.methodCount++;
+		return true;
+	}
+
+	/**
+	 * Returns the class file of a public final class.
+	 *
+	 * @param name
+	 *            internal name of the class
+	 * @param superName
+	 *            internal name of its superclass
+	 * @param interfaces
+	 *            internal names of the interfaces it implements
+	 * @return the class file
+	 */
+	byte[] toByteArray(String name, String superName, String... interfaces) {
+		int thisClass = classRef(name);
+		int superClass = classRef(superName);
+		List<Integer> interfaceRefs = new ArrayList<Integer>();
+		for (String i : interfaces) {
+			interfaceRefs.add(Integer.valueOf(classRef(i)));
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(49);
+			out.writeShort(this.poolCount);
+			this.pool.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(interfaceRefs.size());
+			for (Integer i : interfaceRefs) {
+				out.writeShort(i.intValue());
+			}
+			out.writeShort(0);
+			out.writeShort(this.methodCount);
+			this.methods.writeTo(out);
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		return bytes.toByteArray();
+	}
+}
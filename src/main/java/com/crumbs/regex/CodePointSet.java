@@ -0,0 +1,294 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of Unicode code points stored as sorted ranges
+ * <p>
+ * The ranges are disjoint and not adjacent, so two sets are equal exactly
+ * when their ranges are equal, and membership is a binary search over the
+ * range bounds.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class CodePointSet {
+
+	static final CodePointSet EMPTY = new CodePointSet(new int[0]);
+
+	static final CodePointSet ALL = new CodePointSet(new int[] { Character.MIN_CODE_POINT,
+			Character.MAX_CODE_POINT });
+
+	/**
+	 * inclusive bounds of the ranges: {@code ranges[2 * i]} to
+	 * {@code ranges[2 * i + 1]}
+	 */
+	private final int[] ranges;
+
+	/**
+	 * compiled membership test, or {@code null} until {@link #matcher()} is
+	 * first called; racing threads compile equal matchers
+	 */
+	private CharMatcher matcher;
+
+	private CodePointSet(int[] ranges) {
+		this.ranges = ranges;
+	}
+
+	/**
+	 * Returns the set of one code point.
+	 *
+	 * @param codePoint
+	 *            the only member of the set
+	 * @return a set of {@code codePoint}
+	 */
+	static CodePointSet of(int codePoint) {
+		return new CodePointSet(new int[] { codePoint, codePoint });
+	}
+
+	/**
+	 * Returns the set of code points from {@code min} to {@code max}
+	 * inclusive.
+	 *
+	 * @param min
+	 *            smallest member
+	 * @param max
+	 *            largest member
+	 * @return a set of the range or {@link #EMPTY} if {@code min > max}
+	 */
+	static CodePointSet range(int min, int max) {
+		return min > max ? EMPTY : new CodePointSet(new int[] { min, max });
+	}
+
+	/**
+	 * Accumulates ranges in any order and builds their union.
+	 */
+	static final class Builder {
+		private int[] ranges = new int[16];
+		private int size;
+
+		Builder add(int codePoint) {
+			return add(codePoint, codePoint);
+		}
+
+		Builder add(int min, int max) {
+			if (min > max) {
+				return this;
+			}
+			if (this.size + 2 > this.ranges.length) {
+				this.ranges = Arrays.copyOf(this.ranges, this.ranges.length * 2);
+			}
+			this.ranges[this.size++] = min;
+			this.ranges[this.size++] = max;
+			return this;
+		}
+
+		Builder add(CodePointSet set) {
+			for (int i = 0; i < set.ranges.length; i += 2) {
+				add(set.ranges[i], set.ranges[i + 1]);
+			}
+			return this;
+		}
+
+		CodePointSet build() {
+			int n = this.size / 2;
+			if (n == 0) {
+				return EMPTY;
+			}
+			// Sort ranges by their lower bound: pack each range into a long
+			// so that one primitive sort orders them.
+			long[] packed = new long[n];
+			for (int i = 0; i < n; i++) {
+				packed[i] = ((long) this.ranges[2 * i] << 32) | (this.ranges[2 * i + 1] & 0xFFFFFFFFL);
+			}
+			Arrays.sort(packed);
+			int[] merged = new int[2 * n];
+			int m = 0;
+			for (long range : packed) {
+				int min = (int) (range >>> 32);
+				int max = (int) range;
+				if (m > 0 && min <= merged[m - 1] + 1) {
+					merged[m - 1] = Math.max(merged[m - 1], max);
+				} else {
+					merged[m++] = min;
+					merged[m++] = max;
+				}
+			}
+			return new CodePointSet(m == merged.length ? merged : Arrays.copyOf(merged, m));
+		}
+	}
+
+	boolean isEmpty() {
+		return this.ranges.length == 0;
+	}
+
+	/**
+	 * Returns the number of ranges in this set.
+	 *
+	 * @return the number of disjoint, non-adjacent ranges
+	 */
+	int rangeCount() {
+		return this.ranges.length / 2;
+	}
+
+	int min(int range) {
+		return this.ranges[2 * range];
+	}
+
+	int max(int range) {
+		return this.ranges[2 * range + 1];
+	}
+
+	/**
+	 * Returns the number of code points in this set.
+	 *
+	 * @return the size of this set
+	 */
+	int size() {
+		int size = 0;
+		for (int i = 0; i < this.ranges.length; i += 2) {
+			size += this.ranges[i + 1] - this.ranges[i] + 1;
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the only member of this set or -1 if this set does not have
+	 * exactly one member.
+	 *
+	 * @return the only member or -1
+	 */
+	int single() {
+		return this.ranges.length == 2 && this.ranges[0] == this.ranges[1] ? this.ranges[0] : -1;
+	}
+
+	/**
+	 * Returns the compiled membership test of this set, which engines use on
+	 * every character of their input.
+	 *
+	 * @return the matcher of this set
+	 */
+	CharMatcher matcher() {
+		CharMatcher matcher = this.matcher;
+		if (matcher == null) {
+			matcher = new CharMatcher(this);
+			this.matcher = matcher;
+		}
+		return matcher;
+	}
+
+	boolean contains(int codePoint) {
+		int[] r = this.ranges;
+		int lo = 0;
+		int hi = r.length / 2 - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (codePoint < r[2 * mid]) {
+				hi = mid - 1;
+			} else if (codePoint > r[2 * mid + 1]) {
+				lo = mid + 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	CodePointSet union(CodePointSet other) {
+		if (other.isEmpty()) {
+			return this;
+		}
+		if (isEmpty()) {
+			return other;
+		}
+		return new Builder().add(this).add(other).build();
+	}
+
+	CodePointSet complement() {
+		int[] r = this.ranges;
+		Builder builder = new Builder();
+		int next = Character.MIN_CODE_POINT;
+		for (int i = 0; i < r.length; i += 2) {
+			builder.add(next, r[i] - 1);
+			next = r[i + 1] + 1;
+		}
+		builder.add(next, Character.MAX_CODE_POINT);
+		return builder.build();
+	}
+
+	CodePointSet intersection(CodePointSet other) {
+		int[] a = this.ranges;
+		int[] b = other.ranges;
+		Builder builder = new Builder();
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length) {
+			int min = Math.max(a[i], b[j]);
+			int max = Math.min(a[i + 1], b[j + 1]);
+			builder.add(min, max);
+			if (a[i + 1] < b[j + 1]) {
+				i += 2;
+			} else {
+				j += 2;
+			}
+		}
+		return builder.build();
+	}
+
+	CodePointSet minus(CodePointSet other) {
+		return intersection(other.complement());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CodePointSet)) {
+			return false;
+		}
+		return Arrays.equals(this.ranges, ((CodePointSet) obj).ranges);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(this.ranges);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder("[");
+		for (int i = 0; i < this.ranges.length; i += 2) {
+			appendCodePoint(this.ranges[i], out);
+			if (this.ranges[i + 1] != this.ranges[i]) {
+				out.append('-');
+				appendCodePoint(this.ranges[i + 1], out);
+			}
+		}
+		return out.append(']').toString();
+	}
+
+	private static void appendCodePoint(int codePoint, StringBuilder out) {
+		if (codePoint > 0x20 && codePoint < 0x7F) {
+			out.append((char) codePoint);
+		} else {
+			out.append("\\x{").append(Integer.toHexString(codePoint).toUpperCase()).append('}');
+		}
+	}
+}
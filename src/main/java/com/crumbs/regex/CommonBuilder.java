@@ -655,10 +655,39 @@ interface CommonBuilder<B extends CommonBuilder<B>> {
 	 */
 	B notUnicode(UnicodeCharacterProperty category);
 
-	// TODO documentation
+	/**
+	 * Appends <tt>\p{</tt><em>script</em><tt>}</tt> to the regular expression.
+	 * <p>
+	 * <tt>\p{</tt><em>script</em><tt>}</tt> matches any character of the
+	 * specified Unicode script, as given by
+	 * {@link Character.UnicodeScript#of(int)}. {@code java.util.regex} knows a
+	 * script by its name prefixed with <tt>Is</tt>, like <tt>\p{IsLatin}</tt>
+	 * or <tt>\p{IsOld_Italic}</tt>.
+	 * </p>
+	 * 
+	 * @param category
+	 *            a script of Unicode characters
+	 * @return {@code this} RegExBuilder or a {@code new} one
+	 * @throws IllegalArgumentException
+	 *             if {@code category} is {@code null}
+	 * @see #notUnicode(UnicodeScript)
+	 */
 	B unicode(UnicodeScript category);
 
-	// TODO documentation
+	/**
+	 * Appends <tt>\P{</tt><em>script</em><tt>}</tt> to the regular expression.
+	 * <p>
+	 * <tt>\P{</tt><em>script</em><tt>}</tt> matches any character except one
+	 * of the specified Unicode script.
+	 * </p>
+	 * 
+	 * @param category
+	 *            a script of Unicode characters
+	 * @return {@code this} RegExBuilder or a {@code new} one
+	 * @throws IllegalArgumentException
+	 *             if {@code category} is {@code null}
+	 * @see #unicode(UnicodeScript)
+	 */
 	B notUnicode(UnicodeScript category);
 
 	// ===========================
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.illegalNullArg;
+
+/**
+ * Compiled regular expression that is safe to use from many threads at once
+ * <p>
+ * Unlike {@link java.util.regex.Matcher}, a compiled regular expression keeps
+ * no state between calls, so one instance can be shared by every thread that
+ * needs it.
+ * </p>
+ * <p>
+ * Each method can be given a {@link MatchLimit} that bounds the work of the
+ * call; a call that exceeds it throws a {@link MatchLimitExceededException}.
+ * The methods without a limit use {@link #matchLimit()}, which the factory
+ * of the regular expression sets.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see RegExBuilder#compileRegEx(RegExMatchFlag...)
+ */
+public abstract class CompiledRegEx {
+
+	private final MatchLimit matchLimit;
+
+	CompiledRegEx(MatchLimit matchLimit) {
+		this.matchLimit = matchLimit;
+	}
+
+	/**
+	 * Returns the limit of the methods that are not given one.
+	 *
+	 * @return the default limit, {@link MatchLimit#NONE} unless the factory
+	 *         of this regular expression set one
+	 */
+	public final MatchLimit matchLimit() {
+		return this.matchLimit;
+	}
+
+	/**
+	 * Returns {@code true} if the entire {@code input} matches this regular
+	 * expression.
+	 *
+	 * @param input
+	 *            character sequence to match
+	 * @return {@code true} if the entire input matches
+	 * @throws IllegalArgumentException
+	 *             if {@code input} is {@code null}
+	 * @throws MatchLimitExceededException
+	 *             if the match exceeds {@link #matchLimit()}
+	 * @see java.util.regex.Matcher#matches()
+	 */
+	public final boolean matches(CharSequence input) {
+		return search(input, PikeVM.Anchor.BOTH, this.matchLimit);
+	}
+
+	/**
+	 * Returns {@code true} if the entire {@code input} matches this regular
+	 * expression within {@code limit}.
+	 *
+	 * @param input
+	 *            character sequence to match
+	 * @param limit
+	 *            limit on the work of the match
+	 * @return {@code true} if the entire input matches
+	 * @throws IllegalArgumentException
+	 *             if {@code input} or {@code limit} is {@code null}
+	 * @throws MatchLimitExceededException
+	 *             if the match exceeds {@code limit}
+	 */
+	public final boolean matches(CharSequence input, MatchLimit limit) {
+		return search(input, PikeVM.Anchor.BOTH, limit);
+	}
+
+	/**
+	 * Returns {@code true} if some subsequence of {@code input} matches this
+	 * regular expression.
+	 *
+	 * @param input
+	 *            character sequence to search
+	 * @return {@code true} if a match is found
+	 * @throws IllegalArgumentException
+	 *             if {@code input} is {@code null}
+	 * @throws MatchLimitExceededException
+	 *             if the search exceeds {@link #matchLimit()}
+	 * @see java.util.regex.Matcher#find()
+	 */
+	public final boolean find(CharSequence input) {
+		return search(input, PikeVM.Anchor.UNANCHORED, this.matchLimit);
+	}
+
+	/**
+	 * Returns {@code true} if some subsequence of {@code input} matches this
+	 * regular expression within {@code limit}.
+	 *
+	 * @param input
+	 *            character sequence to search
+	 * @param limit
+	 *            limit on the work of the search
+	 * @return {@code true} if a match is found
+	 * @throws IllegalArgumentException
+	 *             if {@code input} or {@code limit} is {@code null}
+	 * @throws MatchLimitExceededException
+	 *             if the search exceeds {@code limit}
+	 */
+	public final boolean find(CharSequence input, MatchLimit limit) {
+		return search(input, PikeVM.Anchor.UNANCHORED, limit);
+	}
+
+	/**
+	 * Returns {@code true} if a prefix of {@code input} matches this regular
+	 * expression.
+	 *
+	 * @param input
+	 *            character sequence to match
+	 * @return {@code true} if a prefix of the input matches
+	 * @throws IllegalArgumentException
+	 *             if {@code input} is {@code null}
+	 * @throws MatchLimitExceededException
+	 *             if the match exceeds {@link #matchLimit()}
+	 * @see java.util.regex.Matcher#lookingAt()
+	 */
+	public final boolean lookingAt(CharSequence input) {
+		return search(input, PikeVM.Anchor.START, this.matchLimit);
+	}
+
+	/**
+	 * Returns {@code true} if a prefix of {@code input} matches this regular
+	 * expression within {@code limit}.
+	 *
+	 * @param input
+	 *            character sequence to match
+	 * @param limit
+	 *            limit on the work of the match
+	 * @return {@code true} if a prefix of the input matches
+	 * @throws IllegalArgumentException
+	 *             if {@code input} or {@code limit} is {@code null}
+	 * @throws MatchLimitExceededException
+	 *             if the match exceeds {@code limit}
+	 */
+	public final boolean lookingAt(CharSequence input, MatchLimit limit) {
+		return search(input, PikeVM.Anchor.START, limit);
+	}
+
+	private boolean search(CharSequence input, PikeVM.Anchor anchor, MatchLimit limit) {
+		if (input == null) {
+			throw illegalNullArg(CharSequence.class, "input");
+		}
+		if (limit == null) {
+			throw illegalNullArg(MatchLimit.class, "limit");
+		}
+		return search(input, anchor, limit.start());
+	}
+
+	/**
+	 * Searches {@code input} for a match.
+	 *
+	 * @param input
+	 *            character sequence to search; not {@code null}
+	 * @param anchor
+	 *            how much of the input the match must span
+	 * @param budget
+	 *            budget of the search, or {@code null} if it has no limit
+	 * @return {@code true} if a match is found
+	 * @throws MatchLimitExceededException
+	 *             if the search exceeds {@code budget}
+	 */
+	abstract boolean search(CharSequence input, PikeVM.Anchor anchor, MatchBudget budget);
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.illegalOutsideSetArg;
+
+/**
+ * Compiled regular expression matched by a lazily built DFA with a bounded
+ * state cache
+ * <p>
+ * Each search runs on a {@link LazyDFA} taken from a pool, so a thread never
+ * waits for another, and each cached automaton holds at most
+ * {@link #cacheBudget()} bytes of states. When an automaton's cache is full
+ * it is flushed and the search goes on; when a search keeps flushing the
+ * cache without making progress, it falls back on the NFA, which needs no
+ * cache. Either way, a search takes time linear in the length of the input.
+ * Inputs that the {@link RegExAnalysis} of the regular expression rules out
+ * are rejected without a search.
+ * </p>
+ * <p>
+ * The counters of this class add up the caches of all the automata of this
+ * regular expression.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see RegExEngine#DFA
+ */
+public final class DFACompiledRegEx extends CompiledRegEx {
+
+	/**
+	 * default budget of a state cache in bytes
+	 */
+	public static final long DEFAULT_CACHE_BUDGET = 1L << 20;
+
+	private final Prog prog;
+	private final LazyDFA.Alphabet alphabet;
+	private final RegExAnalysis analysis;
+	private final long cacheBudget;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final SlotPool<LazyDFA>[] automata = new SlotPool[PikeVM.Anchor.values().length];
+	private final SlotPool<PikeVM> machines = new SlotPool<PikeVM>();
+
+	private final DFAStats stats = new DFAStats();
+
+	DFACompiledRegEx(Prog prog, RegExAnalysis analysis, long cacheBudget, MatchLimit matchLimit) {
+		this(prog, new LazyDFA.Alphabet(prog), analysis, cacheBudget, matchLimit);
+	}
+
+	private DFACompiledRegEx(Prog prog, LazyDFA.Alphabet alphabet, RegExAnalysis analysis, long cacheBudget,
+			MatchLimit matchLimit) {
+		super(matchLimit);
+		this.prog = prog;
+		this.alphabet = alphabet;
+		this.analysis = analysis;
+		this.cacheBudget = cacheBudget;
+		for (int i = 0; i < this.automata.length; i++) {
+			this.automata[i] = new SlotPool<LazyDFA>();
+		}
+	}
+
+	/**
+	 * Returns this regular expression with an empty state cache of the
+	 * specified budget per automaton and the same {@link #matchLimit()}.
+	 *
+	 * @param cacheBudget
+	 *            maximum number of bytes of states each automaton caches
+	 * @return a new compiled regular expression
+	 * @throws IllegalArgumentException
+	 *             if {@code cacheBudget} is not positive
+	 */
+	public DFACompiledRegEx withCacheBudget(long cacheBudget) {
+		if (cacheBudget <= 0) {
+			throw illegalOutsideSetArg(long.class, "cacheBudget", Long.valueOf(cacheBudget), "[1,\u221E)");
+		}
+		return new DFACompiledRegEx(this.prog, this.alphabet, this.analysis, cacheBudget, matchLimit());
+	}
+
+	/**
+	 * Returns the maximum number of bytes of states each automaton caches.
+	 *
+	 * @return the cache budget
+	 */
+	public long cacheBudget() {
+		return this.cacheBudget;
+	}
+
+	/**
+	 * Returns roughly how many bytes of states are cached.
+	 *
+	 * @return the size of the caches
+	 */
+	public long cacheSize() {
+		return this.stats.cacheSize.get();
+	}
+
+	/**
+	 * Returns how many states are cached.
+	 *
+	 * @return the number of cached states
+	 */
+	public long stateCount() {
+		return this.stats.stateCount.get();
+	}
+
+	/**
+	 * Returns how many times a full cache was flushed.
+	 *
+	 * @return the number of flushes
+	 */
+	public long flushCount() {
+		return this.stats.flushCount.get();
+	}
+
+	/**
+	 * Returns how many searches fell back on the NFA because the cache
+	 * thrashed.
+	 *
+	 * @return the number of fallbacks
+	 */
+	public long fallbackCount() {
+		return this.stats.fallbackCount.get();
+	}
+
+	@Override
+	boolean search(CharSequence input, PikeVM.Anchor anchor, MatchBudget budget) {
+		if (anchor == PikeVM.Anchor.BOTH ? this.analysis.rejectsMatch(input) : this.analysis.rejectsFind(input)) {
+			return false;
+		}
+		if (anchor == PikeVM.Anchor.UNANCHORED && this.analysis.isAnchoredAtStart()) {
+			// A match can only start at the start of the input.
+			anchor = PikeVM.Anchor.START;
+		}
+		SlotPool<LazyDFA> pool = this.automata[anchor.ordinal()];
+		LazyDFA automaton = pool.poll();
+		if (automaton == null) {
+			automaton = new LazyDFA(this.prog, this.alphabet, anchor, this.cacheBudget, this.stats);
+		}
+		int result;
+		try {
+			result = automaton.search(input, budget);
+		} finally {
+			if (!pool.offer(automaton)) {
+				automaton.discard();
+			}
+		}
+		if (result != LazyDFA.GAVE_UP) {
+			return result == 1;
+		}
+		this.stats.fallbackCount.incrementAndGet();
+		PikeVM machine = this.machines.poll();
+		if (machine == null) {
+			machine = new PikeVM(this.prog);
+		}
+		try {
+			return machine.search(input, 0, input.length(), anchor, null, budget);
+		} finally {
+			this.machines.offer(machine);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DFACompiledRegEx[budget=" + this.cacheBudget + ", " + this.stats + "]";
+	}
+}
@@ -0,0 +1,494 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.getString;
+import static com.crumbs.util.Logging.illegalArg;
+import static com.crumbs.util.Logging.illegalNullArg;
+
+/**
+ * Generator of the Java source of a class that matches a regular expression
+ * with tables built ahead of time, for
+ * {@link RegExBuilder#asCode(String, RegExMatchFlag...)}
+ * <p>
+ * The class holds the {@link DenseDFA}s of the three anchorings of the
+ * {@link Prog} of the regular expression: one for <tt>matches</tt>, one for <tt>lookingAt</tt> and one
+ * for <tt>find</tt>. Their states share one numbering and their transitions
+ * one table, encoded as string literals that the class turns into
+ * <tt>char</tt> arrays when it is initialized, which takes no parsing. The
+ * zero-width assertions the program uses are copied from
+ * {@link Prog#assertion(int, CharSequence, int)}. The class depends on
+ * nothing but <tt>java.lang</tt> and <tt>java.util</tt>.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class DFASourceGenerator {
+
+	/**
+	 * maximum number of states of the automaton of each anchoring
+	 */
+	static final int MAX_STATES = 4096;
+
+	/**
+	 * state number that stands for no state
+	 */
+	private static final char NONE = 0xFFFF;
+
+	/**
+	 * maximum number of characters of a string literal, which keeps it far
+	 * from the class file limit of 65535 bytes
+	 */
+	private static final int MAX_PART_LENGTH = 4096;
+
+	/**
+	 * number of columns of a string literal after which a table goes on to
+	 * the next line
+	 */
+	private static final int MAX_LINE_LENGTH = 88;
+
+	private DFASourceGenerator() {
+	}
+
+	/**
+	 * Returns the source of a class that matches {@code node}.
+	 *
+	 * @param className
+	 *            fully qualified name of the class
+	 * @param pattern
+	 *            rendering of {@code node} that
+	 *            {@link java.util.regex.Pattern} compiles
+	 * @param node
+	 *            tree of the regular expression
+	 * @param flags
+	 *            {@link java.util.regex.Pattern} flags of the regular
+	 *            expression
+	 * @return the source of a compilation unit
+	 * @throws IllegalArgumentException
+	 *             if {@code className} is {@code null} or not a class name
+	 * @throws UnsupportedOperationException
+	 *             if {@link RegExEngine#DFA} does not support a construct of
+	 *             {@code node}, or if the automaton of an anchoring has more
+	 *             than {@link #MAX_STATES} states
+	 */
+	static String generate(String className, String pattern, RegExNode node, int flags) {
+		if (className == null) {
+			throw illegalNullArg(String.class, "className");
+		}
+		if (!isClassName(className)) {
+			throw illegalArg("illegal.argument.class.name", className);
+		}
+		final Prog prog = ProgCompiler.compile(node, flags, RegExEngine.DFA.name());
+		final LazyDFA.Alphabet alphabet = new LazyDFA.Alphabet(prog);
+		final PikeVM.Anchor[] anchors = { PikeVM.Anchor.BOTH, PikeVM.Anchor.START, PikeVM.Anchor.UNANCHORED };
+		final DenseDFA[] dfas = new DenseDFA[anchors.length];
+		final int[] starts = new int[anchors.length];
+		int stateCount = 0;
+		for (int i = 0; i < anchors.length; i++) {
+			dfas[i] = new LazyDFA(prog, alphabet, anchors[i], Long.MAX_VALUE, new DFAStats())
+					.materialize(MAX_STATES);
+			if (dfas[i] == null) {
+				throw new UnsupportedOperationException(getString("dfa.too.many.states", String.valueOf(MAX_STATES)));
+			}
+			starts[i] = stateCount;
+			stateCount += dfas[i].stateCount();
+		}
+		final int classCount = alphabet.classCount();
+		final int maskCount = 1 << alphabet.kinds.length;
+		final StringBuilder match = new StringBuilder(stateCount);
+		final StringBuilder next = new StringBuilder(stateCount * classCount);
+		final StringBuilder resolved = new StringBuilder(stateCount * maskCount);
+		for (int i = 0; i < dfas.length; i++) {
+			DenseDFA dfa = dfas[i];
+			for (int s = 0; s < dfa.stateCount(); s++) {
+				match.append(dfa.match[s] ? '\1' : '\0');
+				for (int cls = 0; cls < classCount; cls++) {
+					next.append(dfa.next[s] == null ? NONE : (char) (starts[i] + dfa.next[s][cls]));
+				}
+				for (int mask = 0; mask < maskCount; mask++) {
+					resolved.append(dfa.resolved[s] == null ? NONE : (char) (starts[i] + dfa.resolved[s][mask]));
+				}
+			}
+		}
+		final StringBuilder latin1 = new StringBuilder(256);
+		for (int c = 0; c < 256; c++) {
+			latin1.append((char) alphabet.classOf(c));
+		}
+		final StringBuilder bounds = new StringBuilder(2 * classCount);
+		for (int cls = 0; cls < classCount; cls++) {
+			int bound = alphabet.representative(cls);
+			bounds.append((char) (bound >>> 16)).append((char) bound);
+		}
+
+		final int dot = className.lastIndexOf('.');
+		final String simpleName = className.substring(dot + 1);
+		final boolean assertions = alphabet.kinds.length > 0;
+		final Source out = new Source();
+		out.line("// Generated by com.crumbs.regex.RegExBuilder.asCode(String, RegExMatchFlag...); do not edit.");
+		if (dot >= 0) {
+			out.line("package " + className.substring(0, dot) + ";");
+		}
+		out.line("");
+		out.line("import java.util.Arrays;");
+		out.line("");
+		out.line("/**");
+		out.line(" * Matcher of {@link #PATTERN} with {@link #FLAGS}, by DFAs built when this");
+		out.line(" * class was generated");
+		out.line(" * <p>");
+		out.line(" * Matching takes time linear in the length of the input, and this class");
+		out.line(" * compiles no regular expression when it is initialized.");
+		out.line(" * </p>");
+		out.line(" */");
+		out.line("public final class " + simpleName + " {");
+		out.line("");
+		out.line("\t/**");
+		out.line("\t * regular expression, as {@link java.util.regex.Pattern} compiles it");
+		out.line("\t */");
+		out.line("\tpublic static final String PATTERN = " + literal(pattern) + ";");
+		out.line("");
+		out.line("\t/**");
+		out.line("\t * {@link java.util.regex.Pattern} flags of {@link #PATTERN}");
+		out.line("\t */");
+		out.line("\tpublic static final int FLAGS = " + flags + ";");
+		out.line("");
+		out.line("\tprivate static final char NONE = 0xFFFF;");
+		out.line("\tprivate static final int CLASS_COUNT = " + classCount + ";");
+		if (assertions) {
+			out.line("\tprivate static final int MASK_COUNT = " + maskCount + ";");
+		}
+		out.line("");
+		out.line("\t// classes of code points below 256, and first code point of each class");
+		out.table("LATIN1", latin1);
+		out.table("BOUNDS", bounds);
+		out.line("");
+		out.line("\t// 1 for the states that hold a match");
+		out.table("MATCH", match);
+		out.line("");
+		out.line("\t// next states by state and class, all NONE for the states a search ends in");
+		out.table("NEXT", next);
+		if (assertions) {
+			out.line("");
+			out.line("\t// resolved states by state and mask of the assertions that hold, NONE for the");
+			out.line("\t// states without pending assertions");
+			out.table("RESOLVED", resolved);
+		}
+		out.line("");
+		out.line("\tprivate static final int[] CLASS_BOUNDS = ints(BOUNDS);");
+		out.line("");
+		out.line("\tprivate " + simpleName + "() {");
+		out.line("\t}");
+		out.line("");
+		out.line("\t/**");
+		out.line("\t * Returns {@code true} if the whole input matches.");
+		out.line("\t */");
+		out.line("\tpublic static boolean matches(CharSequence input) {");
+		out.line("\t\treturn search(input, " + starts[0] + ", true);");
+		out.line("\t}");
+		out.line("");
+		out.line("\t/**");
+		out.line("\t * Returns {@code true} if a prefix of the input matches.");
+		out.line("\t */");
+		out.line("\tpublic static boolean lookingAt(CharSequence input) {");
+		out.line("\t\treturn search(input, " + starts[1] + ", false);");
+		out.line("\t}");
+		out.line("");
+		out.line("\t/**");
+		out.line("\t * Returns {@code true} if a part of the input matches.");
+		out.line("\t */");
+		out.line("\tpublic static boolean find(CharSequence input) {");
+		out.line("\t\treturn search(input, " + starts[2] + ", false);");
+		out.line("\t}");
+		out.line("");
+		out.line("\tprivate static boolean search(CharSequence input, int state, boolean both) {");
+		out.line("\t\tfinal int end = input.length();");
+		out.line("\t\tint pos = 0;");
+		out.line("\t\twhile (true) {");
+		if (assertions) {
+			out.line("\t\t\tif (RESOLVED[state * MASK_COUNT] != NONE) {");
+			out.line("\t\t\t\tstate = RESOLVED[state * MASK_COUNT + mask(input, pos)];");
+			out.line("\t\t\t}");
+		}
+		out.line("\t\t\tif (MATCH[state] != 0 && (!both || pos == end)) {");
+		out.line("\t\t\t\treturn true;");
+		out.line("\t\t\t}");
+		out.line("\t\t\tint row = state * CLASS_COUNT;");
+		out.line("\t\t\tif (pos >= end || NEXT[row] == NONE) {");
+		out.line("\t\t\t\treturn false;");
+		out.line("\t\t\t}");
+		out.line("\t\t\tint c = Character.codePointAt(input, pos);");
+		out.line("\t\t\tstate = NEXT[row + (c < LATIN1.length ? LATIN1[c] : classOf(c))];");
+		out.line("\t\t\tpos += Character.charCount(c);");
+		out.line("\t\t}");
+		out.line("\t}");
+		out.line("");
+		out.line("\tprivate static int classOf(int c) {");
+		out.line("\t\tint i = Arrays.binarySearch(CLASS_BOUNDS, c);");
+		out.line("\t\treturn i >= 0 ? i : -i - 2;");
+		out.line("\t}");
+		if (assertions) {
+			assertions(out, alphabet.kinds);
+		}
+		out.line("");
+		out.line("\tprivate static char[] chars(String... parts) {");
+		out.line("\t\tStringBuilder chars = new StringBuilder();");
+		out.line("\t\tfor (String part : parts) {");
+		out.line("\t\t\tchars.append(part);");
+		out.line("\t\t}");
+		out.line("\t\treturn chars.toString().toCharArray();");
+		out.line("\t}");
+		out.line("");
+		out.line("\tprivate static int[] ints(char[] chars) {");
+		out.line("\t\tint[] ints = new int[chars.length / 2];");
+		out.line("\t\tfor (int i = 0; i < ints.length; i++) {");
+		out.line("\t\t\tints[i] = chars[2 * i] << 16 | chars[2 * i + 1];");
+		out.line("\t\t}");
+		out.line("\t\treturn ints;");
+		out.line("\t}");
+		out.line("}");
+		return out.toString();
+	}
+
+	/**
+	 * Writes the mask of the assertions that hold and the assertions of
+	 * {@code kinds}, as {@link Prog#assertion(int, CharSequence, int)} and
+	 * its helpers have them.
+	 */
+	private static void assertions(Source out, int[] kinds) {
+		boolean lines = false;
+		boolean words = false;
+		out.line("");
+		out.line("\tprivate static int mask(CharSequence input, int index) {");
+		out.line("\t\tfinal int end = input.length();");
+		out.line("\t\tint mask = 0;");
+		for (int i = 0; i < kinds.length; i++) {
+			String condition;
+			switch (kinds[i]) {
+			case Prog.BEGIN_TEXT:
+				condition = "index == 0";
+				break;
+			case Prog.END_TEXT:
+				condition = "index == end";
+				break;
+			case Prog.END_TEXT_OR_TERMINATOR:
+				condition = "isEndTextOrTerminator(input, index, end)";
+				lines = true;
+				break;
+			case Prog.END_TEXT_OR_TERMINATOR_UNIX:
+				condition = "index == end || (index == end - 1 && input.charAt(index) == '\\n')";
+				break;
+			case Prog.BEGIN_LINE:
+				condition = "isBeginLine(input, index, end)";
+				lines = true;
+				break;
+			case Prog.BEGIN_LINE_UNIX:
+				condition = "index < end && (index == 0 || input.charAt(index - 1) == '\\n')";
+				break;
+			case Prog.END_LINE:
+				condition = "isEndLine(input, index, end)";
+				lines = true;
+				break;
+			case Prog.END_LINE_UNIX:
+				condition = "index == end || input.charAt(index) == '\\n'";
+				break;
+			case Prog.WORD_BOUNDARY:
+				condition = "isWordBefore(input, index) != isWordAt(input, index)";
+				words = true;
+				break;
+			default:
+				condition = "isWordBefore(input, index) == isWordAt(input, index)";
+				words = true;
+				break;
+			}
+			out.line("\t\tif (" + condition + ") {");
+			out.line("\t\t\tmask |= " + (1 << i) + ";");
+			out.line("\t\t}");
+		}
+		out.line("\t\treturn mask;");
+		out.line("\t}");
+		if (lines) {
+			for (int kind : kinds) {
+				if (kind == Prog.END_TEXT_OR_TERMINATOR) {
+					out.line("");
+					out.line("\tprivate static boolean isEndTextOrTerminator(CharSequence input, int index,");
+					out.line("\t\t\tint end) {");
+					out.line("\t\tif (index == end) {");
+					out.line("\t\t\treturn true;");
+					out.line("\t\t}");
+					out.line("\t\tif (index == end - 1) {");
+					out.line("\t\t\tchar c = input.charAt(index);");
+					out.line("\t\t\treturn isLineTerminator(c)");
+					out.line("\t\t\t\t\t&& !(c == '\\n' && index > 0 && input.charAt(index - 1) == '\\r');");
+					out.line("\t\t}");
+					out.line("\t\treturn index == end - 2 && input.charAt(index) == '\\r'");
+					out.line("\t\t\t\t&& input.charAt(index + 1) == '\\n';");
+					out.line("\t}");
+				} else if (kind == Prog.BEGIN_LINE) {
+					out.line("");
+					out.line("\tprivate static boolean isBeginLine(CharSequence input, int index, int end) {");
+					out.line("\t\tif (index == end) {");
+					out.line("\t\t\treturn false;");
+					out.line("\t\t}");
+					out.line("\t\tif (index == 0) {");
+					out.line("\t\t\treturn true;");
+					out.line("\t\t}");
+					out.line("\t\tchar before = input.charAt(index - 1);");
+					out.line("\t\treturn isLineTerminator(before)");
+					out.line("\t\t\t\t&& !(before == '\\r' && input.charAt(index) == '\\n');");
+					out.line("\t}");
+				} else if (kind == Prog.END_LINE) {
+					out.line("");
+					out.line("\tprivate static boolean isEndLine(CharSequence input, int index, int end) {");
+					out.line("\t\tif (index == end) {");
+					out.line("\t\t\treturn true;");
+					out.line("\t\t}");
+					out.line("\t\tchar next = input.charAt(index);");
+					out.line("\t\treturn isLineTerminator(next)");
+					out.line("\t\t\t\t&& !(next == '\\n' && index > 0 && input.charAt(index - 1) == '\\r');");
+					out.line("\t}");
+				}
+			}
+			out.line("");
+			out.line("\tprivate static boolean isLineTerminator(int c) {");
+			out.line("\t\treturn c == '\\n' || c == '\\r' || c == 0x85 || (c | 1) == 0x2029;");
+			out.line("\t}");
+		}
+		if (words) {
+			out.line("");
+			out.line("\tprivate static boolean isWord(int c) {");
+			out.line("\t\treturn c == '_' || Character.isLetterOrDigit(c);");
+			out.line("\t}");
+			out.line("");
+			out.line("\tprivate static boolean isWordBefore(CharSequence input, int index) {");
+			out.line("\t\tif (index == 0) {");
+			out.line("\t\t\treturn false;");
+			out.line("\t\t}");
+			out.line("\t\tint c = Character.codePointBefore(input, index);");
+			out.line("\t\treturn isWord(c) || (Character.getType(c) == Character.NON_SPACING_MARK");
+			out.line("\t\t\t\t&& hasBaseCharacter(input, index - Character.charCount(c)));");
+			out.line("\t}");
+			out.line("");
+			out.line("\tprivate static boolean isWordAt(CharSequence input, int index) {");
+			out.line("\t\tif (index == input.length()) {");
+			out.line("\t\t\treturn false;");
+			out.line("\t\t}");
+			out.line("\t\tint c = Character.codePointAt(input, index);");
+			out.line("\t\treturn isWord(c)");
+			out.line("\t\t\t\t|| (Character.getType(c) == Character.NON_SPACING_MARK");
+			out.line("\t\t\t\t\t\t&& hasBaseCharacter(input, index));");
+			out.line("\t}");
+			out.line("");
+			out.line("\tprivate static boolean hasBaseCharacter(CharSequence input, int index) {");
+			out.line("\t\tfor (int i = index; i > 0;) {");
+			out.line("\t\t\tint c = Character.codePointBefore(input, i);");
+			out.line("\t\t\tif (Character.isLetterOrDigit(c)) {");
+			out.line("\t\t\t\treturn true;");
+			out.line("\t\t\t}");
+			out.line("\t\t\tif (Character.getType(c) != Character.NON_SPACING_MARK) {");
+			out.line("\t\t\t\treturn false;");
+			out.line("\t\t\t}");
+			out.line("\t\t\ti -= Character.charCount(c);");
+			out.line("\t\t}");
+			out.line("\t\treturn false;");
+			out.line("\t}");
+		}
+	}
+
+	/**
+	 * Returns {@code true} if {@code name} is a fully qualified Java class
+	 * name, such as <tt>com.example.Dates</tt>.
+	 */
+	private static boolean isClassName(String name) {
+		for (String part : name.split("\\.", -1)) {
+			if (part.isEmpty() || !Character.isJavaIdentifierStart(part.charAt(0))) {
+				return false;
+			}
+			for (int i = 1; i < part.length(); i++) {
+				if (!Character.isJavaIdentifierPart(part.charAt(i))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns {@code value} as a Java string literal of ASCII characters.
+	 */
+	static String literal(CharSequence value) {
+		StringBuilder out = new StringBuilder(value.length() + 2);
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			escape(out, value.charAt(i));
+		}
+		return out.append('"').toString();
+	}
+
+	/**
+	 * Appends {@code c} as it is written in a Java string literal of ASCII
+	 * characters.
+	 */
+	private static void escape(StringBuilder out, char c) {
+		if (c == '"' || c == '\\') {
+			out.append('\\').append(c);
+		} else if (c >= 0x20 && c < 0x7F) {
+			out.append(c);
+		} else if (c < 0x100) {
+			// An octal escape, since a Unicode escape of a line terminator
+			// would end the literal.
+			out.append('\\').append((char) ('0' + (c >> 6))).append((char) ('0' + (c >> 3 & 7)))
+					.append((char) ('0' + (c & 7)));
+		} else {
+			out.append("\\u").append(Integer.toHexString(c | 0x10000).substring(1));
+		}
+	}
+
+	/**
+	 * Source being written, one line at a time
+	 */
+	private static final class Source {
+		private final StringBuilder out = new StringBuilder();
+
+		void line(String line) {
+			this.out.append(line).append('\n');
+		}
+
+		/**
+		 * Writes a <tt>char[]</tt> constant holding {@code chars}, in string
+		 * literals of at most {@link #MAX_PART_LENGTH} characters.
+		 */
+		void table(String name, CharSequence chars) {
+			this.out.append("\tprivate static final char[] ").append(name).append(" = chars(\n\t\t\t\"");
+			int line = this.out.length();
+			for (int i = 0; i < chars.length(); i++) {
+				if (i > 0 && i % MAX_PART_LENGTH == 0) {
+					this.out.append("\",\n\t\t\t\"");
+					line = this.out.length();
+				} else if (this.out.length() - line >= MAX_LINE_LENGTH) {
+					this.out.append("\"\n\t\t\t+ \"");
+					line = this.out.length();
+				}
+				escape(this.out, chars.charAt(i));
+			}
+			this.out.append("\");\n");
+		}
+
+		@Override
+		public String toString() {
+			return this.out.toString();
+		}
+	}
+}
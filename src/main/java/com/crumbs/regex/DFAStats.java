@@ -0,0 +1,48 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the state caches of a group of {@link LazyDFA}s
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class DFAStats {
+
+	final AtomicLong cacheSize = new AtomicLong();
+	final AtomicLong stateCount = new AtomicLong();
+	final AtomicLong flushCount = new AtomicLong();
+	final AtomicLong fallbackCount = new AtomicLong();
+
+	void cacheGrew(long bytes, int states) {
+		this.cacheSize.addAndGet(bytes);
+		this.stateCount.addAndGet(states);
+	}
+
+	void cacheFlushed(long bytes, int states) {
+		cacheGrew(-bytes, -states);
+		this.flushCount.incrementAndGet();
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + this.cacheSize + ", states=" + this.stateCount + ", flushes=" + this.flushCount
+				+ ", fallbacks=" + this.fallbackCount;
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+/**
+ * Deterministic automaton with every state a search can reach built ahead of
+ * time, by {@link LazyDFA#materialize(int)}
+ * <p>
+ * States are numbered from 0, the start state. A search enters a state when
+ * it consumes a code point; if the state has assertions pending, it resolves
+ * them against the assertions that hold at the current position and moves to
+ * the resolved state, from which it consumes the next code point. A dense
+ * automaton searches the same way as the {@link LazyDFA} it was built from,
+ * without a cache to miss, and is the input of the backends that turn an
+ * automaton into code, such as {@link BytecodeCompiler}, or into an image,
+ * such as {@link PrecompiledDFA}.
+ * </p>
+ * <p>
+ * A dense automaton is immutable, and thread-safe.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class DenseDFA {
+
+	/**
+	 * classes of the code points and assertion kinds of the transitions
+	 */
+	final LazyDFA.Alphabet alphabet;
+	final PikeVM.Anchor anchor;
+
+	/**
+	 * prefilter to skip to where a match can start while in the start state,
+	 * or {@code null}
+	 */
+	final LiteralPrefilter prefilter;
+
+	/**
+	 * whether each state holds a match
+	 */
+	final boolean[] match;
+
+	/**
+	 * indexes of the expressions whose match each state holds, for programs
+	 * compiled by {@link ProgCompiler#compileSet(RegExNode[], int, String)}
+	 */
+	final int[][] matches;
+
+	/**
+	 * resolved states of each state by mask of the assertions that hold, or
+	 * {@code null} for states without pending assertions
+	 */
+	final int[][] resolved;
+
+	/**
+	 * next states of each state by class of the consumed code point, or
+	 * {@code null} for states a search ends in
+	 */
+	final int[][] next;
+
+	DenseDFA(LazyDFA.Alphabet alphabet, PikeVM.Anchor anchor, LiteralPrefilter prefilter, boolean[] match,
+			int[][] matches, int[][] resolved, int[][] next) {
+		this.alphabet = alphabet;
+		this.anchor = anchor;
+		this.prefilter = prefilter;
+		this.match = match;
+		this.matches = matches;
+		this.resolved = resolved;
+		this.next = next;
+	}
+
+	/**
+	 * Returns the number of states.
+	 *
+	 * @return the number of states
+	 */
+	int stateCount() {
+		return this.match.length;
+	}
+
+	/**
+	 * Searches {@code input} with the anchoring of this automaton.
+	 *
+	 * @param input
+	 *            input to search
+	 * @param budget
+	 *            budget charged one step per code point read, or {@code null}
+	 * @return {@code true} if there is a match
+	 * @throws MatchLimitExceededException
+	 *             if the search exceeds {@code budget}
+	 */
+	boolean search(CharSequence input, MatchBudget budget) {
+		final int end = input.length();
+		final boolean both = this.anchor == PikeVM.Anchor.BOTH;
+		int pos = 0;
+		int state = 0;
+		while (true) {
+			if (state == 0 && this.prefilter != null) {
+				pos = this.prefilter.indexOf(input, pos);
+				if (pos < 0) {
+					return false;
+				}
+			}
+			if (this.resolved[state] != null) {
+				state = this.resolved[state][this.alphabet.mask(input, pos)];
+			}
+			if (this.match[state] && (!both || pos == end)) {
+				return true;
+			}
+			if (pos >= end || this.next[state] == null) {
+				return false;
+			}
+			if (budget != null) {
+				budget.step();
+			}
+			int c = Character.codePointAt(input, pos);
+			state = this.next[state][this.alphabet.classOf(c)];
+			pos += Character.charCount(c);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import com.crumbs.regex.RegExNode.Quantifier;
+
+/**
+ * Syntax of a particular regular-expression engine.
+ * <p>
+ * The expression tree built by a {@link RegExBuilder} does not depend on the
+ * engine the regular expression is meant for; only the rendering of the tree
+ * does. Each dialect renders those constructs that the engines spell
+ * differently.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see RegExNode#render(Dialect, StringBuilder)
+ */
+abstract class Dialect {
+
+	/**
+	 * Dialect of Java's {@code java.util.regex} library
+	 */
+	static final Dialect JAVA = new Dialect(0) {
+		@Override
+		void quantifier(Quantifier quantifier, StringBuilder out) {
+			symbolOrCount(quantifier, "?", "+", "{", out);
+		}
+	};
+
+	/**
+	 * Dialect of Vim's regular expressions
+	 * <p>
+	 * Greedy <tt>?</tt> and <tt>+</tt> become <tt>\=</tt> and <tt>\+</tt>, and
+	 * counted repetitions use <tt>\{</tt>.
+	 * </p>
+	 */
+	static final Dialect VIM = new Dialect(1) {
+		@Override
+		void quantifier(Quantifier quantifier, StringBuilder out) {
+			if (quantifier.mode == Quantifier.Mode.GREEDY) {
+				symbolOrCount(quantifier, "\\=", "\\+", "\\{", out);
+			} else {
+				symbolOrCount(quantifier, "?", "+", "\\{", out);
+			}
+		}
+	};
+
+	/**
+	 * number of dialects; indexes run from 0 to {@code COUNT - 1}
+	 */
+	static final int COUNT = 2;
+
+	/**
+	 * position of this dialect in per-dialect caches
+	 */
+	final int index;
+
+	private Dialect(int index) {
+		this.index = index;
+	}
+
+	/**
+	 * Appends the quantifier metacharacters of {@code quantifier} (but not the
+	 * quantified expression) to {@code out}.
+	 *
+	 * @param quantifier
+	 *            quantifier to render
+	 * @param out
+	 *            buffer receiving the rendering
+	 */
+	abstract void quantifier(Quantifier quantifier, StringBuilder out);
+
+	static void symbolOrCount(Quantifier quantifier, String optional, String oneOrMore, String openCount,
+			StringBuilder out) {
+		switch (quantifier.form) {
+		case OPTIONAL:
+			out.append(optional);
+			break;
+		case ZERO_OR_MORE:
+			out.append('*');
+			break;
+		case ONE_OR_MORE:
+			out.append(oneOrMore);
+			break;
+		case EXACTLY:
+			out.append(openCount).append(quantifier.min).append('}');
+			break;
+		case AT_LEAST:
+			out.append(openCount).append(quantifier.min).append(",}");
+			break;
+		case BETWEEN:
+			out.append(openCount).append(quantifier.min).append(',').append(quantifier.max).append('}');
+			break;
+		}
+		switch (quantifier.mode) {
+		case LAZY:
+			out.append('?');
+			break;
+		case POSSESSIVE:
+			out.append('+');
+			break;
+		default:
+			break;
+		}
+	}
+}
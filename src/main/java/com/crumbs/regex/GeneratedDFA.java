@@ -0,0 +1,42 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+/**
+ * Search of a {@link DenseDFA} compiled to a class of its own by
+ * {@link BytecodeCompiler}
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+interface GeneratedDFA {
+
+	/**
+	 * Searches {@code input} the way {@link DenseDFA#search(CharSequence,
+	 * MatchBudget)} does.
+	 *
+	 * @param input
+	 *            input to search
+	 * @param prefilter
+	 *            prefilter of the automaton, or {@code null}
+	 * @param budget
+	 *            budget charged one step per code point read, or {@code null}
+	 * @return {@code true} if there is a match
+	 * @throws MatchLimitExceededException
+	 *             if the search exceeds {@code budget}
+	 */
+	boolean search(CharSequence input, LiteralPrefilter prefilter, MatchBudget budget);
+}
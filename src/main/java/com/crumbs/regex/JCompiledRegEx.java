@@ -0,0 +1,159 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled regular expression backed by Java's {@code java.util.regex}
+ * library
+ * <p>
+ * Matchers are reused through a {@link SlotPool}: a call takes a matcher out
+ * of the pool, resets it to its input, and offers it back when done.
+ * </p>
+ * <p>
+ * When every match starts with one of a few literal prefixes,
+ * {@link #find(CharSequence)} searches for the prefixes first and starts the
+ * matcher at the first of them; otherwise, it starts the matcher at the
+ * first character a match can start with. Neither is done for regular
+ * expressions with <tt>\G</tt>, which matches where the matcher starts.
+ * Inputs that the {@link RegExAnalysis} of the regular expression rules out
+ * are rejected without a matcher.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class JCompiledRegEx extends CompiledRegEx {
+
+	private final Pattern pattern;
+	private final LiteralPrefilter prefilter;
+	private final RegExAnalysis analysis;
+	private final SlotPool<Matcher> matchers = new SlotPool<Matcher>();
+
+	/**
+	 * @param prefilter
+	 *            prefilter for the literal prefixes of the matches of
+	 *            {@code pattern}, or {@code null}
+	 * @param analysis
+	 *            facts about the matches of {@code pattern}
+	 * @param matchLimit
+	 *            default limit of the matches
+	 */
+	JCompiledRegEx(Pattern pattern, LiteralPrefilter prefilter, RegExAnalysis analysis, MatchLimit matchLimit) {
+		super(matchLimit);
+		this.pattern = pattern;
+		this.prefilter = prefilter;
+		this.analysis = analysis;
+	}
+
+	/**
+	 * Returns the pattern this regular expression matches with.
+	 *
+	 * @return the compiled pattern
+	 */
+	Pattern pattern() {
+		return this.pattern;
+	}
+
+	private Matcher acquire(CharSequence input) {
+		Matcher matcher = this.matchers.poll();
+		return matcher == null ? this.pattern.matcher(input) : matcher.reset(input);
+	}
+
+	private void release(Matcher matcher) {
+		// Drop the reference to the input so that the pool does not keep
+		// large inputs reachable.
+		matcher.reset("");
+		this.matchers.offer(matcher);
+	}
+
+	@Override
+	boolean search(CharSequence input, PikeVM.Anchor anchor, MatchBudget budget) {
+		if (anchor == PikeVM.Anchor.BOTH ? this.analysis.rejectsMatch(input) : this.analysis.rejectsFind(input)) {
+			return false;
+		}
+		int from = 0;
+		// Matcher.find(int) makes \G match at the index it starts at.
+		if (anchor == PikeVM.Anchor.UNANCHORED && !this.analysis.isAnchoredAtStart()
+				&& !this.analysis.hasPreviousMatchEnd()) {
+			if (this.prefilter != null) {
+				from = this.prefilter.indexOf(input, 0);
+			} else if (!this.analysis.startsWithAny()) {
+				from = this.analysis.indexOfFirst(input, 0);
+			}
+			if (from < 0) {
+				return false;
+			}
+		}
+		Matcher matcher = acquire(budget == null ? input : new BudgetedInput(input, budget));
+		try {
+			switch (anchor) {
+			case BOTH:
+				return matcher.matches();
+			case START:
+				return matcher.lookingAt();
+			default:
+				if (this.analysis.isAnchoredAtStart()) {
+					// A match can only start at the start of the input.
+					return matcher.lookingAt();
+				}
+				return from == 0 ? matcher.find() : matcher.find(from);
+			}
+		} finally {
+			release(matcher);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.pattern.pattern();
+	}
+
+	/**
+	 * Input that charges a {@link MatchBudget} one step for each character
+	 * a matcher reads, so that a matcher that backtracks over the input again
+	 * and again runs out of steps
+	 */
+	private static final class BudgetedInput implements CharSequence {
+		private final CharSequence input;
+		private final MatchBudget budget;
+
+		BudgetedInput(CharSequence input, MatchBudget budget) {
+			this.input = input;
+			this.budget = budget;
+		}
+
+		public int length() {
+			return this.input.length();
+		}
+
+		public char charAt(int index) {
+			this.budget.step();
+			return this.input.charAt(index);
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return this.input.subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return this.input.toString();
+		}
+	}
+}
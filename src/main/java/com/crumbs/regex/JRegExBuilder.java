@@ -33,16 +33,6 @@ public class JRegExBuilder extends BaseRegExBuilder {
 		return this;
 	}
 
-	@Override
-	public JRegExBuilder unicode(UnicodeScript category) {
-		throw new UnsupportedOperationException();
-	}
-
-	@Override
-	public JRegExBuilder notUnicode(UnicodeScript category) {
-		throw new UnsupportedOperationException();
-	}
-
 	@Override
 	public String asCode() {
 		final StringBuilder builder = new StringBuilder();
@@ -15,15 +15,68 @@
  */
 package com.crumbs.regex;
 
+import static com.crumbs.util.Logging.illegalNullArg;
+
 /**
  * @author Chris Topher
  * @version 0.0, May 13, 2012
  */
 public class JRegExBuilderFactory implements RegExBuilderFactory {
 
+	private final RegExEngine engine;
+	private final MatchLimit matchLimit;
+
+	/**
+	 * Creates a factory whose regular-expression builders compile for
+	 * {@link RegExEngine#JAVA}.
+	 */
+	public JRegExBuilderFactory() {
+		this(RegExEngine.JAVA);
+	}
+
+	/**
+	 * Creates a factory whose regular-expression builders compile for the
+	 * specified engine.
+	 *
+	 * @param engine
+	 *            engine for {@link RegExBuilder#compileRegEx(RegExMatchFlag...)}
+	 * @throws IllegalArgumentException
+	 *             if {@code engine} is {@code null}
+	 */
+	public JRegExBuilderFactory(RegExEngine engine) {
+		this(engine, MatchLimit.NONE);
+	}
+
+	/**
+	 * Creates a factory whose regular-expression builders compile for the
+	 * specified engine, with the specified default limit on each match.
+	 *
+	 * @param engine
+	 *            engine for {@link RegExBuilder#compileRegEx(RegExMatchFlag...)}
+	 * @param matchLimit
+	 *            limit of the {@link CompiledRegEx} methods that are not given
+	 *            one
+	 * @throws IllegalArgumentException
+	 *             if {@code engine} or {@code matchLimit} is {@code null}
+	 * @see CompiledRegEx#matchLimit()
+	 */
+	public JRegExBuilderFactory(RegExEngine engine, MatchLimit matchLimit) {
+		if (engine == null) {
+			throw illegalNullArg(RegExEngine.class, "engine");
+		}
+		if (matchLimit == null) {
+			throw illegalNullArg(MatchLimit.class, "matchLimit");
+		}
+		this.engine = engine;
+		this.matchLimit = matchLimit;
+	}
+
 	@Override
 	public RegExBuilder createRegExBuilder() {
-		return new JRegExBuilder();
+		JRegExBuilder builder = new JRegExBuilder();
+		builder.setEngine(this.engine);
+		builder.setMatchLimit(this.matchLimit);
+		return builder;
 	}
 
 	@Override
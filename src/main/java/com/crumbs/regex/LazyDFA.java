@@ -0,0 +1,669 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deterministic automaton built from a {@link Prog} one state at a time, as
+ * the input needs it
+ * <p>
+ * A state is the set of NFA instructions that a {@link PikeVM} would run at
+ * some position, so a search that finds every transition it needs in the
+ * cache reads each code point once and does a single array lookup per code
+ * point. States and transitions are built on a cache miss and kept until the
+ * cache reaches its budget; the cache is then flushed and the search goes on
+ * with an empty cache. A search that keeps flushing the cache without making
+ * progress gives up, so that the caller can fall back on the NFA.
+ * </p>
+ * <p>
+ * Zero-width assertions are resolved lazily: a state keeps the assertions it
+ * is waiting on, and before a code point is consumed the state is resolved
+ * against the assertions that hold at the current position. Only whether
+ * there is a match is computed, so states are unordered sets of
+ * instructions.
+ * </p>
+ * <p>
+ * An automaton is not thread-safe.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see DFACompiledRegEx
+ */
+final class LazyDFA {
+
+	/**
+	 * search result when the search gave up because the cache thrashed
+	 */
+	static final int GAVE_UP = -1;
+
+	/**
+	 * A search gives up if the cache is flushed a second time before it
+	 * consumed this many code points per state of the flushed cache.
+	 */
+	private static final int MIN_CODE_POINTS_PER_STATE = 10;
+
+	/**
+	 * Partition of the code points into classes that no instruction of a
+	 * program tells apart, plus the assertions the program uses; shared by
+	 * every automaton of the program
+	 */
+	static final class Alphabet {
+		private final int[] starts;
+		private final int[] latin1 = new int[256];
+
+		/**
+		 * assertion kinds used by the program; bit <em>i</em> of a mask stands
+		 * for {@code kinds[i]}
+		 */
+		final int[] kinds;
+
+		Alphabet(Prog prog) {
+			int[] bounds = new int[16];
+			int n = 0;
+			bounds[n++] = 0;
+			boolean[] used = new boolean[Prog.NOT_WORD_BOUNDARY + 1];
+			for (int pc = 0; pc < prog.size(); pc++) {
+				if (prog.op[pc] == Prog.CHAR) {
+					if (n + 2 > bounds.length) {
+						bounds = Arrays.copyOf(bounds, bounds.length * 2);
+					}
+					bounds[n++] = prog.arg[pc];
+					bounds[n++] = prog.arg[pc] + 1;
+				} else if (prog.op[pc] == Prog.SET) {
+					CodePointSet set = prog.sets[prog.arg[pc]];
+					for (int i = 0; i < set.rangeCount(); i++) {
+						if (n + 2 > bounds.length) {
+							bounds = Arrays.copyOf(bounds, bounds.length * 2);
+						}
+						bounds[n++] = set.min(i);
+						bounds[n++] = set.max(i) + 1;
+					}
+				} else if (prog.op[pc] == Prog.ASSERT) {
+					used[prog.arg[pc]] = true;
+				}
+			}
+			Arrays.sort(bounds, 0, n);
+			int m = 0;
+			for (int i = 0; i < n; i++) {
+				if (bounds[i] <= Character.MAX_CODE_POINT && (m == 0 || bounds[i] != bounds[m - 1])) {
+					bounds[m++] = bounds[i];
+				}
+			}
+			this.starts = Arrays.copyOf(bounds, m);
+			for (int c = 0; c < this.latin1.length; c++) {
+				this.latin1[c] = search(c);
+			}
+			int kindCount = 0;
+			for (boolean u : used) {
+				kindCount += u ? 1 : 0;
+			}
+			this.kinds = new int[kindCount];
+			for (int kind = 0, i = 0; kind < used.length; kind++) {
+				if (used[kind]) {
+					this.kinds[i++] = kind;
+				}
+			}
+		}
+
+		int classCount() {
+			return this.starts.length;
+		}
+
+		int classOf(int c) {
+			return c < this.latin1.length ? this.latin1[c] : search(c);
+		}
+
+		private int search(int c) {
+			int i = Arrays.binarySearch(this.starts, c);
+			return i >= 0 ? i : -i - 2;
+		}
+
+		/**
+		 * Returns a code point of class {@code cls}.
+		 */
+		int representative(int cls) {
+			return this.starts[cls];
+		}
+
+		/**
+		 * Returns the mask of the assertions that hold at {@code index}.
+		 */
+		int mask(CharSequence input, int index) {
+			int mask = 0;
+			for (int i = 0; i < this.kinds.length; i++) {
+				if (Prog.assertion(this.kinds[i], input, index)) {
+					mask |= 1 << i;
+				}
+			}
+			return mask;
+		}
+
+		int bit(int kind) {
+			for (int i = 0; i < this.kinds.length; i++) {
+				if (this.kinds[i] == kind) {
+					return 1 << i;
+				}
+			}
+			throw new IllegalArgumentException(Integer.toString(kind));
+		}
+	}
+
+	/**
+	 * Set of instructions: {@link Prog#CHAR}, {@link Prog#SET} and
+	 * {@link Prog#MATCH} instructions, and {@link Prog#ASSERT} instructions
+	 * that are not resolved yet
+	 */
+	private static final class State {
+		final int[] pcs;
+		final boolean match;
+
+		/**
+		 * indexes of the expressions whose {@link Prog#MATCH} is in the set
+		 */
+		final int[] matches;
+		final boolean pending;
+		final int hash;
+
+		/**
+		 * next states by class of the consumed code point; for states without
+		 * pending assertions
+		 */
+		State[] next;
+
+		/**
+		 * resolved states by mask of the assertions that hold; for states with
+		 * pending assertions
+		 */
+		State[] resolved;
+
+		State(int[] pcs, Prog prog) {
+			this.pcs = pcs;
+			int[] matches = new int[pcs.length];
+			int matchCount = 0;
+			boolean pending = false;
+			for (int pc : pcs) {
+				if (prog.op[pc] == Prog.MATCH) {
+					matches[matchCount++] = prog.arg[pc];
+				}
+				pending |= prog.op[pc] == Prog.ASSERT;
+			}
+			this.match = matchCount > 0;
+			this.matches = Arrays.copyOf(matches, matchCount);
+			this.pending = pending;
+			this.hash = Arrays.hashCode(pcs);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof State && Arrays.equals(this.pcs, ((State) obj).pcs);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+	private final Prog prog;
+	private final Alphabet alphabet;
+	private final PikeVM.Anchor anchor;
+	private final long budget;
+	private final DFAStats stats;
+
+	private final Map<State, State> states = new HashMap<State, State>();
+	private long size;
+	private State start;
+	private int flushes;
+
+	/**
+	 * position of the search at the last flush, or -1
+	 */
+	private int lastFlush;
+	private int statesAtLastFlush;
+	private int pos;
+
+	// scratch space of closure
+	private final int[] dense;
+	private final int[] sparse;
+	private int count;
+	private int[] stack;
+
+	/**
+	 * @param stats
+	 *            counters this automaton updates
+	 */
+	LazyDFA(Prog prog, Alphabet alphabet, PikeVM.Anchor anchor, long budget, DFAStats stats) {
+		this.prog = prog;
+		this.alphabet = alphabet;
+		this.anchor = anchor;
+		this.budget = budget;
+		this.stats = stats;
+		this.dense = new int[prog.size()];
+		this.sparse = new int[prog.size()];
+		this.stack = new int[Math.max(16, prog.size())];
+	}
+
+	/**
+	 * Returns the number of bytes this automaton's cache holds, roughly.
+	 *
+	 * @return the size of the cache
+	 */
+	long size() {
+		return this.size;
+	}
+
+	/**
+	 * Searches {@code input} with the anchoring of this automaton.
+	 *
+	 * @param input
+	 *            input to search
+	 * @param budget
+	 *            budget charged one step per code point read, or {@code null}
+	 * @return 1 if there is a match, 0 if there is none, and {@link #GAVE_UP}
+	 *         if the search gave up
+	 * @throws MatchLimitExceededException
+	 *             if the search exceeds {@code budget}
+	 */
+	int search(CharSequence input, MatchBudget budget) {
+		final int end = input.length();
+		final boolean both = this.anchor == PikeVM.Anchor.BOTH;
+		final LiteralPrefilter prefilter = this.anchor == PikeVM.Anchor.UNANCHORED ? this.prog.prefilter : null;
+		State state = begin();
+		while (true) {
+			if (state == this.start && prefilter != null) {
+				// Only the start state is left, so skip to where a match
+				// can start.
+				this.pos = prefilter.indexOf(input, this.pos);
+				if (this.pos < 0) {
+					return 0;
+				}
+			}
+			State resolved = state.pending ? resolve(state, this.alphabet.mask(input, this.pos)) : state;
+			if (resolved == null) {
+				return GAVE_UP;
+			}
+			if (resolved.match && (!both || this.pos == end)) {
+				return 1;
+			}
+			if (this.pos >= end || resolved.pcs.length == 0) {
+				return 0;
+			}
+			if (budget != null) {
+				budget.step();
+			}
+			state = advance(resolved, input);
+			if (state == null) {
+				return GAVE_UP;
+			}
+		}
+	}
+
+	/**
+	 * Searches {@code input} for the matches of every expression of a program
+	 * compiled by {@link ProgCompiler#compileSet(RegExNode[], int, String)},
+	 * reading the input once; the automaton must be
+	 * {@link PikeVM.Anchor#UNANCHORED unanchored}.
+	 *
+	 * @param input
+	 *            input to search
+	 * @param matched
+	 *            receives {@code true} at the index of each expression with a
+	 *            match
+	 * @return the number of expressions with a match, or {@link #GAVE_UP} if
+	 *         the search gave up
+	 */
+	int searchAll(CharSequence input, boolean[] matched) {
+		final int end = input.length();
+		final LiteralPrefilter prefilter = this.prog.prefilter;
+		int found = 0;
+		State state = begin();
+		while (true) {
+			if (state == this.start && prefilter != null) {
+				this.pos = prefilter.indexOf(input, this.pos);
+				if (this.pos < 0) {
+					return found;
+				}
+			}
+			State resolved = state.pending ? resolve(state, this.alphabet.mask(input, this.pos)) : state;
+			if (resolved == null) {
+				return GAVE_UP;
+			}
+			for (int index : resolved.matches) {
+				if (!matched[index]) {
+					matched[index] = true;
+					if (++found == matched.length) {
+						return found;
+					}
+				}
+			}
+			if (this.pos >= end) {
+				return found;
+			}
+			state = advance(resolved, input);
+			if (state == null) {
+				return GAVE_UP;
+			}
+		}
+	}
+
+	/**
+	 * Builds every state that a search can reach, for a {@link DenseDFA}; the
+	 * automaton must have an unlimited cache budget.
+	 * <p>
+	 * A state is entered when a code point is consumed, and stepped from once
+	 * its assertions are resolved. The same state can be both, so the
+	 * transitions of each part are built only for the states that play it.
+	 * </p>
+	 *
+	 * @param maxStates
+	 *            maximum number of states
+	 * @return the dense automaton, or {@code null} if it would have more than
+	 *         {@code maxStates} states
+	 */
+	DenseDFA materialize(int maxStates) {
+		return materialize(maxStates, false);
+	}
+
+	/**
+	 * Builds every state that a search can reach, as
+	 * {@link #materialize(int)} does.
+	 *
+	 * @param maxStates
+	 *            maximum number of states
+	 * @param pastMatches
+	 *            {@code true} to step from the states that hold a match, as
+	 *            {@link #searchAll(CharSequence, boolean[])} does to find the
+	 *            matches of every expression of a set
+	 * @return the dense automaton, or {@code null} if it would have more than
+	 *         {@code maxStates} states
+	 */
+	DenseDFA materialize(int maxStates, boolean pastMatches) {
+		final boolean both = this.anchor == PikeVM.Anchor.BOTH || pastMatches;
+		final Map<State, Integer> ids = new HashMap<State, Integer>();
+		final List<State> order = new ArrayList<State>();
+		final List<int[]> resolved = new ArrayList<int[]>();
+		final List<int[]> next = new ArrayList<int[]>();
+		// work items: 2 * id to enter a state, 2 * id + 1 to step from it
+		final Deque<Integer> work = new ArrayDeque<Integer>();
+		final BitSet queued = new BitSet();
+		ids.put(begin(), Integer.valueOf(0));
+		order.add(this.start);
+		resolved.add(null);
+		next.add(null);
+		work.push(Integer.valueOf(0));
+		queued.set(0);
+		while (!work.isEmpty()) {
+			int item = work.pop().intValue();
+			boolean entering = (item & 1) == 0;
+			State state = order.get(item >> 1);
+			int[] targets;
+			if (entering && !state.pending) {
+				// Entering a state without assertions is stepping from it.
+				targets = null;
+			} else if (!entering && (state.pcs.length == 0 || state.match && !both)) {
+				// A search ends in this state.
+				continue;
+			} else {
+				targets = new int[entering ? 1 << this.alphabet.kinds.length : this.alphabet.classCount()];
+				(entering ? resolved : next).set(item >> 1, targets);
+			}
+			for (int i = 0; i < (targets == null ? 1 : targets.length); i++) {
+				int target = item >> 1;
+				if (targets != null) {
+					State t = entering ? resolve(state, i) : step(state, i);
+					Integer id = ids.get(t);
+					if (id == null) {
+						if (order.size() == maxStates) {
+							return null;
+						}
+						id = Integer.valueOf(order.size());
+						ids.put(t, id);
+						order.add(t);
+						resolved.add(null);
+						next.add(null);
+					}
+					target = targets[i] = id.intValue();
+				}
+				int targetItem = entering ? 2 * target + 1 : 2 * target;
+				if (!queued.get(targetItem)) {
+					queued.set(targetItem);
+					work.push(Integer.valueOf(targetItem));
+				}
+			}
+		}
+		boolean[] match = new boolean[order.size()];
+		int[][] matches = new int[match.length][];
+		for (int id = 0; id < match.length; id++) {
+			match[id] = order.get(id).match;
+			matches[id] = order.get(id).matches;
+		}
+		return new DenseDFA(this.alphabet, this.anchor,
+				this.anchor == PikeVM.Anchor.UNANCHORED ? this.prog.prefilter : null, match, matches,
+				resolved.toArray(new int[match.length][]), next.toArray(new int[match.length][]));
+	}
+
+	/**
+	 * Starts a search at the beginning of the input.
+	 *
+	 * @return the start state
+	 */
+	private State begin() {
+		this.lastFlush = -1;
+		this.pos = 0;
+		if (this.start == null) {
+			this.count = 0;
+			addClosure(0, false, 0);
+			this.start = intern();
+		}
+		return this.start;
+	}
+
+	/**
+	 * Consumes the code point at the current position.
+	 *
+	 * @param resolved
+	 *            state at the current position, with its assertions resolved
+	 * @return the next state, or {@code null} if the search gave up
+	 */
+	private State advance(State resolved, CharSequence input) {
+		int c = Character.codePointAt(input, this.pos);
+		int cls = this.alphabet.classOf(c);
+		State next = resolved.next == null ? null : resolved.next[cls];
+		if (next == null) {
+			next = step(resolved, cls);
+		}
+		this.pos += Character.charCount(c);
+		return next;
+	}
+
+	/**
+	 * Resolves the assertions of {@code state} against those in {@code mask}.
+	 *
+	 * @return the resolved state, or {@code null} if the search gave up
+	 */
+	private State resolve(State state, int mask) {
+		if (state.resolved != null && state.resolved[mask] != null) {
+			return state.resolved[mask];
+		}
+		this.count = 0;
+		for (int pc : state.pcs) {
+			addClosure(pc, true, mask);
+		}
+		int flushes = this.flushes;
+		State resolved = intern();
+		if (resolved != null && flushes == this.flushes) {
+			// A flush drops every state, so only a state that survived it
+			// can record the transition.
+			if (state.resolved == null) {
+				state.resolved = new State[1 << this.alphabet.kinds.length];
+			}
+			state.resolved[mask] = resolved;
+		}
+		return resolved;
+	}
+
+	private State step(State state, int cls) {
+		final int[] op = this.prog.op;
+		final int[] arg = this.prog.arg;
+		int c = this.alphabet.representative(cls);
+		this.count = 0;
+		for (int pc : state.pcs) {
+			if (op[pc] == Prog.CHAR ? arg[pc] == c : op[pc] == Prog.SET && this.prog.matchers[arg[pc]].matches(c)) {
+				addClosure(pc + 1, false, 0);
+			}
+		}
+		if (this.anchor == PikeVM.Anchor.UNANCHORED) {
+			addClosure(0, false, 0);
+		}
+		int flushes = this.flushes;
+		State next = intern();
+		if (next != null && flushes == this.flushes) {
+			if (state.next == null) {
+				state.next = new State[this.alphabet.classCount()];
+			}
+			state.next[cls] = next;
+		}
+		return next;
+	}
+
+	/**
+	 * Adds the instructions reachable from {@code pc0} without consuming
+	 * input to the scratch set.
+	 *
+	 * @param resolving
+	 *            {@code true} to follow the assertions in {@code mask} and
+	 *            drop the others, {@code false} to keep assertions pending
+	 */
+	private void addClosure(int pc0, boolean resolving, int mask) {
+		final int[] op = this.prog.op;
+		final int[] arg = this.prog.arg;
+		int[] stack = this.stack;
+		int top = 0;
+		stack[top++] = pc0;
+		while (top > 0) {
+			int pc = stack[--top];
+			int i = this.sparse[pc];
+			if (i < this.count && this.dense[i] == pc) {
+				continue;
+			}
+			this.sparse[pc] = this.count;
+			this.dense[this.count++] = pc;
+			if (top + 2 > stack.length) {
+				stack = this.stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			switch (op[pc]) {
+			case Prog.JMP:
+				stack[top++] = arg[pc];
+				break;
+			case Prog.SPLIT:
+				stack[top++] = this.prog.arg2[pc];
+				stack[top++] = arg[pc];
+				break;
+			case Prog.SAVE:
+				stack[top++] = pc + 1;
+				break;
+			case Prog.ASSERT:
+				if (resolving && (mask & this.alphabet.bit(arg[pc])) != 0) {
+					stack[top++] = pc + 1;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the state of the instructions in the scratch set, building it
+	 * if it is not in the cache.
+	 *
+	 * @return the state, or {@code null} if the search gave up
+	 */
+	private State intern() {
+		final int[] op = this.prog.op;
+		int n = 0;
+		int[] pcs = new int[this.count];
+		for (int i = 0; i < this.count; i++) {
+			int pc = this.dense[i];
+			if (op[pc] == Prog.CHAR || op[pc] == Prog.SET || op[pc] == Prog.MATCH || op[pc] == Prog.ASSERT) {
+				pcs[n++] = pc;
+			}
+		}
+		pcs = Arrays.copyOf(pcs, n);
+		Arrays.sort(pcs);
+		State state = new State(pcs, this.prog);
+		State cached = this.states.get(state);
+		if (cached != null) {
+			return cached;
+		}
+		long cost = cost(state);
+		if (this.size + cost > this.budget && !this.states.isEmpty() && !flush()) {
+			return null;
+		}
+		this.states.put(state, state);
+		this.size += cost;
+		this.stats.cacheGrew(cost, 1);
+		return state;
+	}
+
+	/**
+	 * Returns roughly how many bytes {@code state} takes in the cache with
+	 * all of its transitions.
+	 */
+	private long cost(State state) {
+		long cost = 96 + 4L * state.pcs.length;
+		return cost + 8L * (state.pending ? 1 << this.alphabet.kinds.length : this.alphabet.classCount());
+	}
+
+	/**
+	 * Empties the cache.
+	 *
+	 * @return {@code false} if the search should give up instead
+	 */
+	private boolean flush() {
+		if (this.lastFlush >= 0
+				&& this.pos - this.lastFlush < (long) MIN_CODE_POINTS_PER_STATE * this.statesAtLastFlush) {
+			return false;
+		}
+		this.lastFlush = this.pos;
+		this.statesAtLastFlush = this.states.size();
+		this.stats.cacheFlushed(this.size, this.states.size());
+		this.states.clear();
+		this.size = 0;
+		this.start = null;
+		this.flushes++;
+		return true;
+	}
+
+	/**
+	 * Empties the cache for good, when the automaton is dropped.
+	 */
+	void discard() {
+		this.stats.cacheGrew(-this.size, -this.states.size());
+		this.states.clear();
+		this.size = 0;
+		this.start = null;
+	}
+}
@@ -0,0 +1,559 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.crumbs.regex.RegExNode.Alternation;
+import com.crumbs.regex.RegExNode.Boundary;
+import com.crumbs.regex.RegExNode.Comment;
+import com.crumbs.regex.RegExNode.Concat;
+import com.crumbs.regex.RegExNode.Flags;
+import com.crumbs.regex.RegExNode.Fragment;
+import com.crumbs.regex.RegExNode.Group;
+import com.crumbs.regex.RegExNode.Literal;
+import com.crumbs.regex.RegExNode.Quantifier;
+
+/**
+ * Finds where a match of a {@link Prog} can start by searching for the
+ * literal prefixes every match begins with
+ * <p>
+ * The prefixes are read off the program: starting from its first
+ * instruction, each {@link Prog#CHAR} and each {@link Prog#SET} of a few code
+ * points extends the prefixes that reach it, until a path meets an
+ * instruction that matches too many code points or the set would grow too
+ * large. Case-insensitive literals and small character classes thus become a
+ * few alternative prefixes. Zero-width assertions are skipped, which can
+ * only make the prefixes match more positions, never fewer. For
+ * {@link RegExEngine#JAVA}, which runs no program, the prefixes are read off
+ * the expression tree in the same way.
+ * </p>
+ * <p>
+ * A search for the prefixes uses {@link String#indexOf(String, int)} when
+ * there is one prefix and the input is a {@link String}, and the
+ * Horspool algorithm for a set of patterns otherwise: the input is read
+ * through a window as long as the shortest prefix, and the last character
+ * of the window decides how far the window may safely slide.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class LiteralPrefilter {
+
+	/**
+	 * most prefixes kept; beyond that the prefixes are cut short
+	 */
+	static final int MAX_PREFIXES = 64;
+
+	/**
+	 * most characters of a prefix
+	 */
+	static final int MAX_LENGTH = 16;
+
+	/**
+	 * most code points of a set expanded into alternative prefixes
+	 */
+	static final int MAX_SET_SIZE = 8;
+
+	private final String[] prefixes;
+	private final int minLength;
+
+	/**
+	 * shift of the Horspool window by the last character in it, hashed into
+	 * 256 buckets, each with the smallest shift of its characters
+	 */
+	private final int[] shifts = new int[256];
+
+	/**
+	 * whether some prefix starts with a character of the bucket
+	 */
+	private final boolean[] firsts = new boolean[256];
+
+	private LiteralPrefilter(String[] prefixes) {
+		this.prefixes = prefixes;
+		int minLength = Integer.MAX_VALUE;
+		for (String prefix : prefixes) {
+			minLength = Math.min(minLength, prefix.length());
+		}
+		this.minLength = minLength;
+		Arrays.fill(this.shifts, minLength);
+		for (String prefix : prefixes) {
+			this.firsts[prefix.charAt(0) & 0xFF] = true;
+			for (int i = 0; i < minLength - 1; i++) {
+				int bucket = prefix.charAt(i) & 0xFF;
+				this.shifts[bucket] = Math.min(this.shifts[bucket], minLength - 1 - i);
+			}
+		}
+	}
+
+	/**
+	 * Returns a prefilter for the prefixes of {@code prog}.
+	 *
+	 * @param prog
+	 *            program whose matches are searched for
+	 * @return the prefilter, or {@code null} if some match may begin without
+	 *         a literal prefix
+	 */
+	static LiteralPrefilter of(Prog prog) {
+		String[] prefixes = prefixes(prog);
+		return prefixes == null ? null : new LiteralPrefilter(prefixes);
+	}
+
+	/**
+	 * Returns a prefilter for the prefixes of the matches of {@code node} as
+	 * {@code java.util.regex} matches its Java rendering.
+	 * <p>
+	 * The prefixes are read off the tree the way {@link #of(Prog)} reads them
+	 * off a program, without compiling one. Constructs that no program
+	 * expresses, such as back references and text appended verbatim, end
+	 * the prefixes that reach them, and lookaround is skipped like the other
+	 * zero-width assertions.
+	 * </p>
+	 *
+	 * @param node
+	 *            expression tree whose matches are searched for
+	 * @param flags
+	 *            {@link Pattern} flags the tree is compiled with
+	 * @return the prefilter, or {@code null} if some match may begin without
+	 *         a literal prefix
+	 */
+	static LiteralPrefilter of(RegExNode node, int flags) {
+		if ((flags & (Pattern.LITERAL | Pattern.CANON_EQ)) != 0) {
+			return null;
+		}
+		TreePrefixes tree = new TreePrefixes(flags);
+		Set<String> start = new LinkedHashSet<String>();
+		start.add("");
+		tree.done.addAll(tree.extend(node, start));
+		if (tree.done.isEmpty() || tree.done.contains("")) {
+			return null;
+		}
+		String[] prefixes = minimize(tree.done);
+		return prefixes.length > MAX_PREFIXES ? null : new LiteralPrefilter(prefixes);
+	}
+
+	/**
+	 * Returns the literal prefixes of {@code prog}, none of which is a prefix
+	 * of another, or {@code null} if some match may begin without one.
+	 */
+	static String[] prefixes(Prog prog) {
+		Set<String> done = new LinkedHashSet<String>();
+		List<Integer> pcs = new ArrayList<Integer>();
+		List<String> texts = new ArrayList<String>();
+		closure(prog, 0, "", pcs, texts, new HashSet<String>(), done);
+		while (!pcs.isEmpty()) {
+			List<Integer> nextPcs = new ArrayList<Integer>();
+			List<String> nextTexts = new ArrayList<String>();
+			Set<String> reached = new HashSet<String>();
+			boolean tooMany = false;
+			for (int i = 0; i < pcs.size() && !tooMany; i++) {
+				int pc = pcs.get(i).intValue();
+				String text = texts.get(i);
+				int[] codePoints = literalCodePoints(prog, pc);
+				if (codePoints == null || text.length() >= MAX_LENGTH) {
+					done.add(text);
+					continue;
+				}
+				for (int c : codePoints) {
+					closure(prog, pc + 1, text + new String(Character.toChars(c)), nextPcs, nextTexts, reached, done);
+				}
+				tooMany = done.size() + distinct(nextTexts) > MAX_PREFIXES;
+			}
+			if (tooMany) {
+				// Keep the prefixes found so far and stop extending them.
+				done.addAll(texts);
+				break;
+			}
+			pcs = nextPcs;
+			texts = nextTexts;
+		}
+		if (done.contains("")) {
+			return null;
+		}
+		return minimize(done);
+	}
+
+	private static int distinct(List<String> texts) {
+		return new LinkedHashSet<String>(texts).size();
+	}
+
+	/**
+	 * Returns the code points matched by the instruction at {@code pc}, or
+	 * {@code null} if it does not match a few code points.
+	 */
+	private static int[] literalCodePoints(Prog prog, int pc) {
+		if (prog.op[pc] == Prog.CHAR) {
+			return new int[] { prog.arg[pc] };
+		}
+		if (prog.op[pc] != Prog.SET) {
+			return null;
+		}
+		CodePointSet set = prog.sets[prog.arg[pc]];
+		if (set.size() > MAX_SET_SIZE) {
+			return null;
+		}
+		int[] codePoints = new int[set.size()];
+		int n = 0;
+		for (int i = 0; i < set.rangeCount(); i++) {
+			for (int c = set.min(i); c <= set.max(i); c++) {
+				codePoints[n++] = c;
+			}
+		}
+		return codePoints;
+	}
+
+	/**
+	 * Follows the instructions from {@code pc0} that consume no input and
+	 * adds the consuming instructions reached, each with {@code text}, to
+	 * {@code pcs} and {@code texts} unless {@code reached} already has them;
+	 * reaching {@link Prog#MATCH} completes {@code text}.
+	 */
+	private static void closure(Prog prog, int pc0, String text, List<Integer> pcs, List<String> texts,
+			Set<String> reached, Set<String> done) {
+		boolean[] seen = new boolean[prog.size()];
+		int[] stack = new int[prog.size() + 1];
+		int top = 0;
+		stack[top++] = pc0;
+		while (top > 0) {
+			int pc = stack[--top];
+			if (seen[pc]) {
+				continue;
+			}
+			seen[pc] = true;
+			switch (prog.op[pc]) {
+			case Prog.JMP:
+				stack[top++] = prog.arg[pc];
+				break;
+			case Prog.SPLIT:
+				stack[top++] = prog.arg2[pc];
+				stack[top++] = prog.arg[pc];
+				break;
+			case Prog.SAVE:
+			case Prog.ASSERT:
+				stack[top++] = pc + 1;
+				break;
+			case Prog.MATCH:
+				done.add(text);
+				break;
+			default:
+				if (reached.add(pc + ":" + text)) {
+					pcs.add(Integer.valueOf(pc));
+					texts.add(text);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Drops each prefix that starts with another prefix, since a match of
+	 * the longer one starts with the shorter one anyway.
+	 */
+	private static String[] minimize(Set<String> prefixes) {
+		String[] sorted = prefixes.toArray(new String[prefixes.size()]);
+		Arrays.sort(sorted);
+		List<String> kept = new ArrayList<String>();
+		for (String prefix : sorted) {
+			// Sorting puts a prefix right before the strings that start
+			// with it.
+			if (kept.isEmpty() || !prefix.startsWith(kept.get(kept.size() - 1))) {
+				kept.add(prefix);
+			}
+		}
+		return kept.toArray(new String[kept.size()]);
+	}
+
+	/**
+	 * Reads the prefixes off an expression tree: each node extends the open
+	 * prefixes that reach it, and a prefix is done once it cannot be
+	 * extended.
+	 */
+	private static final class TreePrefixes {
+		final Set<String> done = new LinkedHashSet<String>();
+
+		/**
+		 * {@link Pattern} flags in effect at the node being read, which
+		 * change as {@link ProgCompiler} changes them
+		 */
+		private int flags;
+
+		TreePrefixes(int flags) {
+			this.flags = flags;
+		}
+
+		/**
+		 * Returns the prefixes that reach the end of {@code node} from the
+		 * prefixes of {@code open}, which is left as is.
+		 */
+		Set<String> extend(RegExNode node, Set<String> open) {
+			if (open.isEmpty() || node == RegExNode.EMPTY || node instanceof Boundary || node instanceof Comment) {
+				return open;
+			} else if (node instanceof Fragment) {
+				return extend(((Fragment) node).child, open);
+			} else if (node instanceof Concat) {
+				Set<String> prefixes = open;
+				for (RegExNode child : ((Concat) node).children) {
+					prefixes = extend(child, prefixes);
+				}
+				return prefixes;
+			} else if (node.literalText() != null) {
+				return literal(node, open);
+			} else if (node instanceof Flags) {
+				this.flags = ProgCompiler.applyFlags(this.flags, ((Flags) node).mask);
+				return open;
+			} else if (node instanceof Quantifier) {
+				return quantifier((Quantifier) node, open);
+			} else if (node instanceof Group) {
+				return group((Group) node, open);
+			} else if (node instanceof Alternation) {
+				Set<String> prefixes = new LinkedHashSet<String>();
+				for (RegExNode branch : ((Alternation) node).branches) {
+					// Flags turned on in a branch stay on in the next.
+					prefixes.addAll(extend(branch, open));
+				}
+				return prefixes;
+			}
+			CodePointSet set = ProgCompiler.charSet(node, this.flags);
+			if (set == null) {
+				// Back references and verbatim text may match anything.
+				return stop(open);
+			}
+			if ((this.flags & Pattern.CASE_INSENSITIVE) != 0) {
+				// java.util.regex also ignores the case of properties like
+				// \p{Lu}.
+				set = CharSets.caseFold(set, true);
+			}
+			return append(open, set);
+		}
+
+		private Set<String> literal(RegExNode node, Set<String> open) {
+			String text = node.literalText();
+			if ((this.flags & Pattern.COMMENTS) != 0 && node instanceof Literal) {
+				for (int i = 0; i < text.length(); i++) {
+					if (Character.isWhitespace(text.charAt(i)) || text.charAt(i) == '#') {
+						// Comments mode drops unescaped white space and
+						// comments.
+						return stop(open);
+					}
+				}
+			}
+			Set<String> prefixes = open;
+			for (int i = 0; i < text.length() && !prefixes.isEmpty();) {
+				int c = text.codePointAt(i);
+				prefixes = append(prefixes, ProgCompiler.caseFold(CodePointSet.of(c), this.flags));
+				i += Character.charCount(c);
+			}
+			return prefixes;
+		}
+
+		private Set<String> group(Group group, Set<String> open) {
+			int saved = this.flags;
+			Set<String> prefixes;
+			switch (group.kind) {
+			case CAPTURE:
+			case NO_CAPTURE:
+			case ATOMIC:
+				prefixes = extend(group.child, open);
+				break;
+			case FLAGS:
+				this.flags = ProgCompiler.applyFlags(this.flags, group.flags);
+				prefixes = extend(group.child, open);
+				break;
+			default:
+				// Lookaround matches no text of its own.
+				prefixes = open;
+				break;
+			}
+			this.flags = saved;
+			return prefixes;
+		}
+
+		private Set<String> quantifier(Quantifier quantifier, Set<String> open) {
+			int min;
+			int max;
+			switch (quantifier.form) {
+			case OPTIONAL:
+				min = 0;
+				max = 1;
+				break;
+			case ZERO_OR_MORE:
+				min = 0;
+				max = Quantifier.UNBOUNDED;
+				break;
+			case ONE_OR_MORE:
+				min = 1;
+				max = Quantifier.UNBOUNDED;
+				break;
+			case EXACTLY:
+				min = quantifier.min;
+				max = quantifier.min;
+				break;
+			case AT_LEAST:
+				min = quantifier.min;
+				max = Quantifier.UNBOUNDED;
+				break;
+			default:
+				min = quantifier.min;
+				max = quantifier.max;
+				break;
+			}
+			// Every copy of the child starts with the same flags.
+			int flags = this.flags;
+			Set<String> prefixes = open;
+			for (int i = 0; i < min && !prefixes.isEmpty(); i++) {
+				if (i > MAX_LENGTH) {
+					// Copies that match no text would never end the prefixes.
+					return stop(prefixes);
+				}
+				this.flags = flags;
+				prefixes = extend(quantifier.child, prefixes);
+			}
+			// Each further copy adds the prefixes that it extends, until a copy
+			// adds none, as a loop may only add prefixes that it has not
+			// already added.
+			Set<String> all = new LinkedHashSet<String>(prefixes);
+			for (int i = min; (max == Quantifier.UNBOUNDED || i < max) && !prefixes.isEmpty(); i++) {
+				this.flags = flags;
+				prefixes = new LinkedHashSet<String>(extend(quantifier.child, prefixes));
+				prefixes.removeAll(all);
+				all.addAll(prefixes);
+			}
+			return all;
+		}
+
+		/**
+		 * Returns the prefixes of {@code open} each extended with each code
+		 * point of {@code set}.
+		 */
+		private Set<String> append(Set<String> open, CodePointSet set) {
+			int size = set.size();
+			if (size > MAX_SET_SIZE || this.done.size() + open.size() * size > MAX_PREFIXES) {
+				return stop(open);
+			}
+			Set<String> prefixes = new LinkedHashSet<String>();
+			for (String text : open) {
+				for (int i = 0; i < set.rangeCount(); i++) {
+					for (int c = set.min(i); c <= set.max(i); c++) {
+						String prefix = text + new String(Character.toChars(c));
+						if (prefix.length() >= MAX_LENGTH) {
+							this.done.add(prefix);
+						} else {
+							prefixes.add(prefix);
+						}
+					}
+				}
+			}
+			return prefixes;
+		}
+
+		/**
+		 * Ends the prefixes of {@code open}.
+		 *
+		 * @return no prefixes
+		 */
+		private Set<String> stop(Set<String> open) {
+			this.done.addAll(open);
+			return new LinkedHashSet<String>();
+		}
+	}
+
+	/**
+	 * Returns the prefixes searched for.
+	 *
+	 * @return the prefixes in lexicographical order
+	 */
+	String[] prefixes() {
+		return this.prefixes.clone();
+	}
+
+	/**
+	 * Returns the number of prefixes.
+	 *
+	 * @return the number of prefixes
+	 */
+	int prefixCount() {
+		return this.prefixes.length;
+	}
+
+	/**
+	 * Returns the first index at or after {@code from} where one of the
+	 * prefixes starts.
+	 *
+	 * @param input
+	 *            input to search
+	 * @param from
+	 *            index to search from
+	 * @return the index, or -1 if no prefix occurs in {@code input} from
+	 *         {@code from}
+	 */
+	int indexOf(CharSequence input, int from) {
+		if (this.prefixes.length == 1 && input instanceof String) {
+			String prefix = this.prefixes[0];
+			return prefix.length() == 1 ? ((String) input).indexOf(prefix.charAt(0), from)
+					: ((String) input).indexOf(prefix, from);
+		}
+		int last = input.length() - this.minLength;
+		if (this.minLength == 1) {
+			for (int i = from; i <= last; i++) {
+				if (this.firsts[input.charAt(i) & 0xFF] && startsAt(input, i)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		for (int i = from; i <= last;) {
+			if (this.firsts[input.charAt(i) & 0xFF] && startsAt(input, i)) {
+				return i;
+			}
+			i += this.shifts[input.charAt(i + this.minLength - 1) & 0xFF];
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns {@code true} if one of the prefixes starts at {@code index}.
+	 */
+	boolean startsAt(CharSequence input, int index) {
+		int length = input.length() - index;
+		for (String prefix : this.prefixes) {
+			if (prefix.length() <= length && regionMatches(input, index, prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean regionMatches(CharSequence input, int index, String prefix) {
+		for (int i = 0; i < prefix.length(); i++) {
+			if (input.charAt(index + i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(this.prefixes);
+	}
+}
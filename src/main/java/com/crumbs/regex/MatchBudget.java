@@ -0,0 +1,103 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.getString;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steps left to one match under a {@link MatchLimit}
+ * <p>
+ * Engines call {@link #step()} once per character they read. The call only
+ * increments a counter until it reaches the next checkpoint, where the limit
+ * of steps and, every {@link #CLOCK_INTERVAL} steps, the clock are checked.
+ * A budget belongs to one call and is not thread-safe.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class MatchBudget {
+
+	/**
+	 * number of steps between two readings of the clock
+	 */
+	static final long CLOCK_INTERVAL = 1 << 12;
+
+	private final long maxSteps;
+	private final long timeoutNanos;
+	private final long deadline;
+	private long steps;
+
+	/**
+	 * number of steps at which {@link #check()} runs next
+	 */
+	private long checkpoint;
+
+	/**
+	 * @param timeoutNanos
+	 *            timeout in nanoseconds, or -1 if there is none
+	 */
+	MatchBudget(long maxSteps, long timeoutNanos) {
+		this.maxSteps = maxSteps;
+		this.timeoutNanos = timeoutNanos;
+		this.deadline = timeoutNanos < 0 ? 0 : System.nanoTime() + timeoutNanos;
+		this.checkpoint = nextCheckpoint();
+	}
+
+	/**
+	 * Takes one step.
+	 *
+	 * @throws MatchLimitExceededException
+	 *             if the match exceeded its limit
+	 */
+	void step() {
+		if (++this.steps >= this.checkpoint) {
+			check();
+		}
+	}
+
+	/**
+	 * Returns the number of steps taken.
+	 *
+	 * @return the number of steps
+	 */
+	long steps() {
+		return this.steps;
+	}
+
+	private void check() {
+		if (this.steps > this.maxSteps) {
+			throw new MatchLimitExceededException(getString("match.limit.steps", String.valueOf(this.maxSteps)),
+					this.steps, false);
+		}
+		if (this.timeoutNanos >= 0 && System.nanoTime() - this.deadline >= 0) {
+			throw new MatchLimitExceededException(getString("match.limit.timeout",
+					String.valueOf(TimeUnit.NANOSECONDS.toMillis(this.timeoutNanos)), String.valueOf(this.steps)),
+					this.steps, true);
+		}
+		this.checkpoint = nextCheckpoint();
+	}
+
+	private long nextCheckpoint() {
+		long checkpoint = this.maxSteps == Long.MAX_VALUE ? Long.MAX_VALUE : this.maxSteps + 1;
+		if (this.timeoutNanos >= 0) {
+			checkpoint = Math.min(checkpoint, this.steps + CLOCK_INTERVAL);
+		}
+		return checkpoint;
+	}
+}
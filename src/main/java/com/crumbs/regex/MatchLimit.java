@@ -0,0 +1,188 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.illegalNullArg;
+import static com.crumbs.util.Logging.illegalOutsideSetArg;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limit on the work of one call of a {@link CompiledRegEx} method
+ * <p>
+ * A limit bounds the number of steps a match may take, where a step is one
+ * character the engine reads (a backtracking engine reads a character again
+ * each time it backtracks over it), and the time it may run. A match that
+ * exceeds its limit stops with a {@link MatchLimitExceededException}. The
+ * time is checked every few thousand steps, so a match may run a little
+ * past its timeout.
+ * </p>
+ * <p>
+ * A factory can give the regular expressions it compiles a default limit;
+ * see {@link JRegExBuilderFactory#JRegExBuilderFactory(RegExEngine, MatchLimit)}.
+ * Limits are immutable.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see CompiledRegEx#matches(CharSequence, MatchLimit)
+ */
+public final class MatchLimit {
+
+	/**
+	 * no limit at all
+	 */
+	public static final MatchLimit NONE = new MatchLimit(Long.MAX_VALUE, -1);
+
+	private final long maxSteps;
+
+	/**
+	 * timeout in nanoseconds, or -1 if there is none
+	 */
+	private final long timeoutNanos;
+
+	private MatchLimit(long maxSteps, long timeoutNanos) {
+		this.maxSteps = maxSteps;
+		this.timeoutNanos = timeoutNanos;
+	}
+
+	/**
+	 * Returns a limit of the specified number of steps.
+	 *
+	 * @param maxSteps
+	 *            greatest number of steps a match may take
+	 * @return a new limit without a timeout
+	 * @throws IllegalArgumentException
+	 *             if {@code maxSteps} is not positive
+	 */
+	public static MatchLimit ofSteps(long maxSteps) {
+		return NONE.withMaxSteps(maxSteps);
+	}
+
+	/**
+	 * Returns a limit of the specified time.
+	 *
+	 * @param timeout
+	 *            longest time a match may run
+	 * @param unit
+	 *            unit of {@code timeout}
+	 * @return a new limit without a limit of steps
+	 * @throws IllegalArgumentException
+	 *             if {@code timeout} is negative or {@code unit} is
+	 *             {@code null}
+	 */
+	public static MatchLimit ofTimeout(long timeout, TimeUnit unit) {
+		return NONE.withTimeout(timeout, unit);
+	}
+
+	/**
+	 * Returns this limit with the specified number of steps.
+	 *
+	 * @param maxSteps
+	 *            greatest number of steps a match may take
+	 * @return a new limit with the timeout of this one
+	 * @throws IllegalArgumentException
+	 *             if {@code maxSteps} is not positive
+	 */
+	public MatchLimit withMaxSteps(long maxSteps) {
+		if (maxSteps <= 0) {
+			throw illegalOutsideSetArg(long.class, "maxSteps", Long.valueOf(maxSteps), "[1,\u221E)");
+		}
+		return new MatchLimit(maxSteps, this.timeoutNanos);
+	}
+
+	/**
+	 * Returns this limit with the specified timeout.
+	 *
+	 * @param timeout
+	 *            longest time a match may run
+	 * @param unit
+	 *            unit of {@code timeout}
+	 * @return a new limit with the steps of this one
+	 * @throws IllegalArgumentException
+	 *             if {@code timeout} is negative or {@code unit} is
+	 *             {@code null}
+	 */
+	public MatchLimit withTimeout(long timeout, TimeUnit unit) {
+		if (timeout < 0) {
+			throw illegalOutsideSetArg(long.class, "timeout", Long.valueOf(timeout), "[0,\u221E)");
+		}
+		if (unit == null) {
+			throw illegalNullArg(TimeUnit.class, "unit");
+		}
+		return new MatchLimit(this.maxSteps, Math.min(unit.toNanos(timeout), Long.MAX_VALUE / 2));
+	}
+
+	/**
+	 * Returns the greatest number of steps a match may take.
+	 *
+	 * @return the limit of steps, or {@link Long#MAX_VALUE} if there is none
+	 */
+	public long maxSteps() {
+		return this.maxSteps;
+	}
+
+	/**
+	 * Returns the longest time a match may run.
+	 *
+	 * @param unit
+	 *            unit of the result
+	 * @return the timeout, or -1 if there is none
+	 * @throws IllegalArgumentException
+	 *             if {@code unit} is {@code null}
+	 */
+	public long timeout(TimeUnit unit) {
+		if (unit == null) {
+			throw illegalNullArg(TimeUnit.class, "unit");
+		}
+		return this.timeoutNanos < 0 ? -1 : unit.convert(this.timeoutNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Starts the budget of one match.
+	 *
+	 * @return the budget, or {@code null} if there is no limit
+	 */
+	MatchBudget start() {
+		if (this.maxSteps == Long.MAX_VALUE && this.timeoutNanos < 0) {
+			return null;
+		}
+		return new MatchBudget(this.maxSteps, this.timeoutNanos);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof MatchLimit)) {
+			return false;
+		}
+		MatchLimit other = (MatchLimit) obj;
+		return this.maxSteps == other.maxSteps && this.timeoutNanos == other.timeoutNanos;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (31 * (this.maxSteps ^ this.maxSteps >>> 32) + (this.timeoutNanos ^ this.timeoutNanos >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return "MatchLimit[maxSteps=" + (this.maxSteps == Long.MAX_VALUE ? "none" : String.valueOf(this.maxSteps))
+				+ ", timeout=" + (this.timeoutNanos < 0 ? "none" : this.timeoutNanos + "ns") + "]";
+	}
+}
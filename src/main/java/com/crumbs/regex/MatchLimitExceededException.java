@@ -0,0 +1,58 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+/**
+ * Thrown when a match exceeds its {@link MatchLimit}
+ * <p>
+ * The match is abandoned: whether the input matches is unknown. The
+ * regular expression that threw it is unaffected and can be used again.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+public class MatchLimitExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long steps;
+	private final boolean timeout;
+
+	MatchLimitExceededException(String message, long steps, boolean timeout) {
+		super(message);
+		this.steps = steps;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Returns the number of steps the match took before it was abandoned.
+	 *
+	 * @return the number of steps
+	 */
+	public long steps() {
+		return this.steps;
+	}
+
+	/**
+	 * Returns {@code true} if the match ran out of time rather than steps.
+	 *
+	 * @return {@code true} if the match timed out
+	 */
+	public boolean isTimeout() {
+		return this.timeout;
+	}
+}
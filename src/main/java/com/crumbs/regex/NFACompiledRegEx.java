@@ -0,0 +1,66 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+/**
+ * Compiled regular expression matched by a {@link PikeVM}, in time linear in
+ * the length of the input
+ * <p>
+ * Machines are reused through a {@link SlotPool}. Inputs that the
+ * {@link RegExAnalysis} of the regular expression rules out are rejected
+ * without running a machine.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see RegExEngine#NFA
+ */
+final class NFACompiledRegEx extends CompiledRegEx {
+
+	private final Prog prog;
+	private final RegExAnalysis analysis;
+	private final SlotPool<PikeVM> machines = new SlotPool<PikeVM>();
+
+	NFACompiledRegEx(Prog prog, RegExAnalysis analysis, MatchLimit matchLimit) {
+		super(matchLimit);
+		this.prog = prog;
+		this.analysis = analysis;
+	}
+
+	Prog prog() {
+		return this.prog;
+	}
+
+	@Override
+	boolean search(CharSequence input, PikeVM.Anchor anchor, MatchBudget budget) {
+		if (anchor == PikeVM.Anchor.BOTH ? this.analysis.rejectsMatch(input) : this.analysis.rejectsFind(input)) {
+			return false;
+		}
+		if (anchor == PikeVM.Anchor.UNANCHORED && this.analysis.isAnchoredAtStart()) {
+			// A match can only start at the start of the input.
+			anchor = PikeVM.Anchor.START;
+		}
+		PikeVM machine = this.machines.poll();
+		if (machine == null) {
+			machine = new PikeVM(this.prog);
+		}
+		try {
+			return machine.search(input, 0, input.length(), anchor, null, budget);
+		} finally {
+			this.machines.offer(machine);
+		}
+	}
+}
@@ -22,5 +22,46 @@ package com.crumbs.regex;
  * @version 0.0, Aug 22, 2009
  */
 public enum POSIXCharacterClass {
-	Lower, Upper, ASCII, Alpha, Digit, Alnum, Punct, Graph, Print, Blank, Cntrl, XDigit, Space
+	Lower, Upper, ASCII, Alpha, Digit, Alnum, Punct, Graph, Print, Blank, Cntrl, XDigit, Space;
+
+	/**
+	 * Returns the US-ASCII characters of this class as {@code java.util.regex}
+	 * defines them, without asking {@code java.util.regex} about every code
+	 * point.
+	 * 
+	 * @return the set of code points of this class
+	 */
+	CodePointSet set() {
+		CodePointSet.Builder set = new CodePointSet.Builder();
+		switch (this) {
+		case Lower:
+			return set.add('a', 'z').build();
+		case Upper:
+			return set.add('A', 'Z').build();
+		case ASCII:
+			return set.add(0x00, 0x7F).build();
+		case Alpha:
+			return set.add('a', 'z').add('A', 'Z').build();
+		case Digit:
+			return set.add('0', '9').build();
+		case Alnum:
+			return set.add('a', 'z').add('A', 'Z').add('0', '9').build();
+		case Punct:
+			return set.add('!', '/').add(':', '@').add('[', '`').add('{', '~').build();
+		case Graph:
+			return set.add('!', '~').build();
+		case Print:
+			return set.add(' ', '~').build();
+		case Blank:
+			return set.add(' ').add('\t').build();
+		case Cntrl:
+			return set.add(0x00, 0x1F).add(0x7F).build();
+		case XDigit:
+			return set.add('0', '9').add('a', 'f').add('A', 'F').build();
+		case Space:
+			return set.add(' ').add('\t', '\r').build();
+		default:
+			throw new IllegalArgumentException(toString());
+		}
+	}
 }
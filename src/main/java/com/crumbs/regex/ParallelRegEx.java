@@ -0,0 +1,416 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.getString;
+import static com.crumbs.util.Logging.illegalNullArg;
+import static com.crumbs.util.Logging.illegalOutsideSetArg;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.MatchResult;
+
+/**
+ * Regular expression whose matches in a large input are found by many
+ * threads at once
+ * <p>
+ * {@link #findAll(CharSequence, ForkJoinPool)} splits the input into chunks
+ * of about {@link #chunkSize()} characters and searches each chunk on a
+ * {@link ForkJoinPool}, then stitches the matches of the chunks together in
+ * order. The result is the list of matches that repeated calls of
+ * {@link java.util.regex.Matcher#find()} would find.
+ * </p>
+ * <p>
+ * The matches of a chunk are those that start in it; the last of them may
+ * end in a later chunk. A chunk of a regular expression whose matches are at
+ * most {@link #maxMatchLength()} characters long reads at most that many
+ * characters past its end, and chunks are made at least 16 times as long so
+ * that this overlap stays small. A chunk of a regular expression with
+ * unbounded matches reads on until its last match ends, however far that
+ * is.
+ * </p>
+ * <p>
+ * A chunk is searched from its start, which is where the search of the whole
+ * input would resume only if the matches of the chunks before it end there
+ * or earlier. When stitching finds that a match of an earlier chunk ends
+ * past the start of a chunk, the chunk is searched again from the end of
+ * that match, but only until one of its matches ends where one the first
+ * search found does; from there on, the two searches agree and the rest of
+ * the matches of the first search are kept. The search that stitches the
+ * chunks runs on the calling thread and usually reads only a few characters
+ * of each chunk.
+ * </p>
+ * <p>
+ * Matches are found by an NFA simulation as with {@link RegExEngine#NFA},
+ * and regular expressions must only use the constructs that engine
+ * supports. Like the matches of that engine, they can end elsewhere than
+ * Java's when an iteration of a loop can match the empty string. A parallel
+ * regular expression is thread-safe.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+public final class ParallelRegEx {
+
+	/**
+	 * default number of characters of a chunk
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * smallest number of characters of a chunk
+	 */
+	public static final int MIN_CHUNK_SIZE = 1 << 10;
+
+	/**
+	 * number of times longer than the longest match a chunk is made
+	 */
+	private static final int OVERLAP_RATIO = 16;
+
+	private final Prog prog;
+	private final int maxMatchLength;
+	private final int chunkSize;
+	private final SlotPool<PikeVM> machines = new SlotPool<PikeVM>();
+
+	/**
+	 * Compiles the specified regular expression for searching in parallel.
+	 *
+	 * @param regEx
+	 *            regular expression to search for
+	 * @param flags
+	 *            match flags to compile the regular expression with, as in
+	 *            {@link RegExBuilder#compile(RegExMatchFlag...)}
+	 * @throws IllegalArgumentException
+	 *             if {@code regEx}, {@code flags}, or one of its items is
+	 *             {@code null}
+	 * @throws UnsupportedOperationException
+	 *             if the regular expression uses a construct that
+	 *             {@link RegExEngine#NFA} does not support
+	 */
+	public ParallelRegEx(RegExBuilder regEx, RegExMatchFlag... flags) {
+		if (regEx == null) {
+			throw illegalNullArg(RegExBuilder.class, "regEx");
+		}
+		int patternFlags = BaseRegExBuilder.patternFlags(flags);
+		RegExNode node = RegExOptimizer.optimize(BaseCommonBuilder.nodeOf(regEx), patternFlags);
+		this.prog = ProgCompiler.compile(node, patternFlags, RegExEngine.NFA.name());
+		this.maxMatchLength = this.prog.maxLength();
+		this.chunkSize = DEFAULT_CHUNK_SIZE;
+	}
+
+	private ParallelRegEx(Prog prog, int maxMatchLength, int chunkSize) {
+		this.prog = prog;
+		this.maxMatchLength = maxMatchLength;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Returns this regular expression with chunks of the specified size.
+	 *
+	 * @param chunkSize
+	 *            number of characters of a chunk; chunks are made longer
+	 *            if matches can be longer than a sixteenth of this
+	 * @return a new parallel regular expression
+	 * @throws IllegalArgumentException
+	 *             if {@code chunkSize} is less than {@link #MIN_CHUNK_SIZE}
+	 */
+	public ParallelRegEx withChunkSize(int chunkSize) {
+		if (chunkSize < MIN_CHUNK_SIZE) {
+			throw illegalOutsideSetArg(int.class, "chunkSize", Integer.valueOf(chunkSize),
+					"[" + MIN_CHUNK_SIZE + "," + Integer.MAX_VALUE + "]");
+		}
+		return new ParallelRegEx(this.prog, this.maxMatchLength, chunkSize);
+	}
+
+	/**
+	 * Returns the number of characters of a chunk, unless matches can be
+	 * longer than a sixteenth of it.
+	 *
+	 * @return the chunk size
+	 */
+	public int chunkSize() {
+		return this.chunkSize;
+	}
+
+	/**
+	 * Returns the greatest number of characters a match can span, which is
+	 * how far past its end the search of a chunk reads.
+	 *
+	 * @return the maximum length of a match, or -1 if it is unbounded
+	 */
+	public int maxMatchLength() {
+		return this.maxMatchLength;
+	}
+
+	/**
+	 * Finds every match of this regular expression in {@code input}, using
+	 * the common pool.
+	 *
+	 * @param input
+	 *            character sequence to search; must not change during the
+	 *            search
+	 * @return the matches in order; their groups are those of the regular
+	 *         expression
+	 * @throws IllegalArgumentException
+	 *             if {@code input} is {@code null}
+	 * @see ForkJoinPool#commonPool()
+	 */
+	public List<MatchResult> findAll(CharSequence input) {
+		return findAll(input, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Finds every match of this regular expression in {@code input}, using
+	 * the specified pool.
+	 *
+	 * @param input
+	 *            character sequence to search; must not change during the
+	 *            search, and is read by many threads at once
+	 * @param pool
+	 *            pool that searches the chunks
+	 * @return the matches in order; their groups are those of the regular
+	 *         expression
+	 * @throws IllegalArgumentException
+	 *             if {@code input} or {@code pool} is {@code null}
+	 */
+	public List<MatchResult> findAll(CharSequence input, ForkJoinPool pool) {
+		if (input == null) {
+			throw illegalNullArg(CharSequence.class, "input");
+		}
+		if (pool == null) {
+			throw illegalNullArg(ForkJoinPool.class, "pool");
+		}
+		long size = this.maxMatchLength < 0 ? this.chunkSize
+				: Math.max(this.chunkSize, (long) OVERLAP_RATIO * this.maxMatchLength);
+		int length = input.length();
+		int count = (int) Math.max(1, Math.min(length / size, Integer.MAX_VALUE - 1));
+		Chunk[] chunks = new Chunk[count];
+		int start = 0;
+		for (int i = 0; i < count; i++) {
+			int next = i == count - 1 ? length + 1 : (int) ((long) length * (i + 1) / count);
+			if (next > 0 && next < length && Character.isHighSurrogate(input.charAt(next - 1))
+					&& Character.isLowSurrogate(input.charAt(next))) {
+				// Matches start between code points, never inside one.
+				next++;
+			}
+			chunks[i] = new Chunk(start, next - 1);
+			start = next;
+		}
+		if (count == 1) {
+			chunks[0].search(this, input);
+		} else {
+			pool.invoke(new Search(input, chunks, 0, count));
+		}
+		return stitch(input, chunks);
+	}
+
+	/**
+	 * Joins the matches of the chunks, searching again where a match ends
+	 * past the start of the next chunk.
+	 */
+	private List<MatchResult> stitch(CharSequence input, Chunk[] chunks) {
+		List<MatchResult> matches = new ArrayList<MatchResult>();
+		int from = 0;
+		for (Chunk chunk : chunks) {
+			from = Math.max(from, chunk.start);
+			List<int[]> found = chunk.matches;
+			int i = 0;
+			while (from <= chunk.limit) {
+				// The first search of the chunk resumed at or before from and
+				// found match i next; if that starts at or after from, the
+				// search from from finds it too, and all the matches after it.
+				while (i < found.size() && resume(input, found.get(i)) <= from) {
+					i++;
+				}
+				if (i == found.size()) {
+					break;
+				}
+				if (found.get(i)[0] >= from) {
+					for (; i < found.size(); i++) {
+						matches.add(new Match(input, found.get(i)));
+					}
+					from = resume(input, found.get(found.size() - 1));
+					break;
+				}
+				int[] slots = chunk.next(this, input, from);
+				if (slots == null) {
+					break;
+				}
+				matches.add(new Match(input, slots));
+				from = resume(input, slots);
+			}
+		}
+		return Collections.unmodifiableList(matches);
+	}
+
+	/**
+	 * Returns the index at which the search resumes after a match, which is
+	 * one code point later if the match is empty.
+	 */
+	static int resume(CharSequence input, int[] slots) {
+		int end = slots[1];
+		if (end > slots[0]) {
+			return end;
+		}
+		return end < input.length() ? end + Character.charCount(Character.codePointAt(input, end)) : end + 1;
+	}
+
+	/**
+	 * Part of the input, with the matches that start in it as found by
+	 * searching from its start
+	 */
+	private static final class Chunk {
+		final int start;
+
+		/**
+		 * greatest index at which a match of this chunk starts
+		 */
+		final int limit;
+
+		final List<int[]> matches = new ArrayList<int[]>();
+
+		Chunk(int start, int limit) {
+			this.start = start;
+			this.limit = limit;
+		}
+
+		void search(ParallelRegEx regEx, CharSequence input) {
+			int from = this.start;
+			int[] slots;
+			while (from <= this.limit && (slots = next(regEx, input, from)) != null) {
+				this.matches.add(slots);
+				from = resume(input, slots);
+			}
+		}
+
+		/**
+		 * Returns the capture slots of the first match of this chunk from
+		 * {@code from}, or {@code null} if there is none.
+		 */
+		int[] next(ParallelRegEx regEx, CharSequence input, int from) {
+			PikeVM machine = regEx.machines.poll();
+			if (machine == null) {
+				machine = new PikeVM(regEx.prog);
+			}
+			try {
+				int[] slots = new int[regEx.prog.slotCount()];
+				return machine.search(input, from, this.limit, PikeVM.Anchor.UNANCHORED, slots, null) ? slots : null;
+			} finally {
+				regEx.machines.offer(machine);
+			}
+		}
+	}
+
+	/**
+	 * Task that searches a range of chunks, splitting it in halves
+	 */
+	private final class Search extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final CharSequence input;
+		private final Chunk[] chunks;
+		private final int from;
+		private final int to;
+
+		Search(CharSequence input, Chunk[] chunks, int from, int to) {
+			this.input = input;
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from == 1) {
+				this.chunks[this.from].search(ParallelRegEx.this, this.input);
+				return;
+			}
+			int middle = (this.from + this.to) >>> 1;
+			invokeAll(new Search(this.input, this.chunks, this.from, middle),
+					new Search(this.input, this.chunks, middle, this.to));
+		}
+	}
+
+	/**
+	 * Match and its groups, read from the input on demand
+	 */
+	private static final class Match implements MatchResult {
+		private final CharSequence input;
+		private final int[] slots;
+
+		Match(CharSequence input, int[] slots) {
+			this.input = input;
+			this.slots = slots;
+		}
+
+		@Override
+		public int start() {
+			return this.slots[0];
+		}
+
+		@Override
+		public int start(int group) {
+			return this.slots[2 * checkGroup(group)];
+		}
+
+		@Override
+		public int end() {
+			return this.slots[1];
+		}
+
+		@Override
+		public int end(int group) {
+			return this.slots[2 * checkGroup(group) + 1];
+		}
+
+		@Override
+		public String group() {
+			return group(0);
+		}
+
+		@Override
+		public String group(int group) {
+			int start = start(group);
+			return start < 0 ? null : this.input.subSequence(start, end(group)).toString();
+		}
+
+		@Override
+		public int groupCount() {
+			return this.slots.length / 2 - 1;
+		}
+
+		private int checkGroup(int group) {
+			if (group < 0 || group > groupCount()) {
+				throw new IndexOutOfBoundsException(getString("match.no.group", Integer.valueOf(group)));
+			}
+			return group;
+		}
+
+		@Override
+		public String toString() {
+			return "Match[" + start() + "," + end() + "]";
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ParallelRegEx[chunkSize=" + this.chunkSize + ", maxMatchLength=" + this.maxMatchLength + "]";
+	}
+}
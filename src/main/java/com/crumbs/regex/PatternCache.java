@@ -0,0 +1,303 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.illegalNullArg;
+import static com.crumbs.util.Logging.illegalOutsideSetArg;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded, thread-safe cache of compiled {@link Pattern}s keyed by regular
+ * expression and flags
+ * <p>
+ * The cache is split into independently locked segments so that threads
+ * compiling unrelated patterns rarely contend. Each segment evicts its least
+ * recently used patterns once it holds more than its share of either the
+ * maximum number of entries or the maximum weight, where the weight of a
+ * pattern is the length of its regular expression.
+ * </p>
+ * <p>
+ * Patterns are compiled outside of any lock; if two threads miss on the same
+ * key at the same time, both compile it, but only the first compiled pattern
+ * is kept and returned to both.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see RegExBuilder#compile(RegExMatchFlag...)
+ */
+public final class PatternCache {
+
+	private static final int SEGMENT_COUNT = 16;
+
+	private static final PatternCache SHARED = new PatternCache(4096, 1L << 22);
+
+	/**
+	 * Returns the process-wide cache used by
+	 * {@link RegExBuilder#compile(RegExMatchFlag...)}.
+	 *
+	 * @return the shared cache
+	 */
+	public static PatternCache shared() {
+		return SHARED;
+	}
+
+	private static final class Key {
+		final String regex;
+		final int flags;
+		final int hash;
+
+		Key(String regex, int flags) {
+			this.regex = regex;
+			this.flags = flags;
+			this.hash = 31 * regex.hashCode() + flags;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return this.hash == other.hash && this.flags == other.flags && this.regex.equals(other.regex);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+	/**
+	 * Least-recently-used map guarded by its own monitor
+	 */
+	private static final class Segment {
+		private final Map<Key, Pattern> patterns = new LinkedHashMap<Key, Pattern>(16, 0.75f, true);
+		private final int maxEntries;
+		private final long maxWeight;
+		private long weight;
+		private long hits;
+		private long misses;
+		private long evictions;
+
+		Segment(int maxEntries, long maxWeight) {
+			this.maxEntries = maxEntries;
+			this.maxWeight = maxWeight;
+		}
+
+		synchronized Pattern get(Key key) {
+			Pattern pattern = this.patterns.get(key);
+			if (pattern == null) {
+				this.misses++;
+			} else {
+				this.hits++;
+			}
+			return pattern;
+		}
+
+		synchronized Pattern putIfAbsent(Key key, Pattern pattern) {
+			Pattern existing = this.patterns.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			this.patterns.put(key, pattern);
+			this.weight += key.regex.length();
+			Iterator<Key> eldest = this.patterns.keySet().iterator();
+			// Never evict the pattern just added, even if it alone is heavier
+			// than the segment allows.
+			while (this.patterns.size() > 1
+					&& (this.patterns.size() > this.maxEntries || this.weight > this.maxWeight)) {
+				Key evicted = eldest.next();
+				eldest.remove();
+				this.weight -= evicted.regex.length();
+				this.evictions++;
+			}
+			return pattern;
+		}
+
+		synchronized void clear() {
+			this.patterns.clear();
+			this.weight = 0;
+		}
+	}
+
+	private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+	/**
+	 * Creates a cache holding at most {@code maxEntries} patterns whose
+	 * regular expressions are at most {@code maxWeight} characters long in
+	 * total.
+	 * <p>
+	 * Both bounds are divided evenly among the segments of the cache, and
+	 * each segment keeps at least one pattern.
+	 * </p>
+	 *
+	 * @param maxEntries
+	 *            maximum number of patterns
+	 * @param maxWeight
+	 *            maximum total length of the regular expressions
+	 * @throws IllegalArgumentException
+	 *             if {@code maxEntries} or {@code maxWeight} is not positive
+	 */
+	public PatternCache(int maxEntries, long maxWeight) {
+		if (maxEntries <= 0) {
+			throw illegalOutsideSetArg(int.class, "maxEntries", Integer.valueOf(maxEntries), "[1,\u221E)");
+		}
+		if (maxWeight <= 0) {
+			throw illegalOutsideSetArg(long.class, "maxWeight", Long.valueOf(maxWeight), "[1,\u221E)");
+		}
+		int segmentEntries = Math.max(1, maxEntries / SEGMENT_COUNT);
+		long segmentWeight = Math.max(1, maxWeight / SEGMENT_COUNT);
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			this.segments[i] = new Segment(segmentEntries, segmentWeight);
+		}
+	}
+
+	private Segment segmentFor(Key key) {
+		int h = key.hash;
+		h ^= h >>> 16;
+		return this.segments[h & (SEGMENT_COUNT - 1)];
+	}
+
+	/**
+	 * Returns the pattern compiled from {@code regex} and {@code flags},
+	 * compiling and caching it if necessary.
+	 *
+	 * @param regex
+	 *            regular expression to compile
+	 * @param flags
+	 *            match flags as in {@link Pattern#compile(String, int)}
+	 * @return the compiled pattern
+	 * @throws IllegalArgumentException
+	 *             if {@code regex} is {@code null} or if {@code flags} has
+	 *             undefined bits
+	 * @throws java.util.regex.PatternSyntaxException
+	 *             if {@code regex} is not a valid regular expression; invalid
+	 *             regular expressions are not cached
+	 */
+	public Pattern compile(String regex, int flags) {
+		if (regex == null) {
+			throw illegalNullArg(String.class, "regex");
+		}
+		Key key = new Key(regex, flags);
+		Segment segment = segmentFor(key);
+		Pattern pattern = segment.get(key);
+		if (pattern == null) {
+			pattern = segment.putIfAbsent(key, Pattern.compile(regex, flags));
+		}
+		return pattern;
+	}
+
+	/**
+	 * Removes all patterns from this cache; the statistics are kept.
+	 */
+	public void clear() {
+		for (Segment segment : this.segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of patterns in this cache.
+	 *
+	 * @return the number of cached patterns
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				size += segment.patterns.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the total length of the regular expressions in this cache.
+	 *
+	 * @return the weight of the cached patterns
+	 */
+	public long weight() {
+		long weight = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				weight += segment.weight;
+			}
+		}
+		return weight;
+	}
+
+	/**
+	 * Returns the number of calls to {@link #compile(String, int)} that found
+	 * their pattern in this cache.
+	 *
+	 * @return the number of cache hits
+	 */
+	public long hitCount() {
+		long hits = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				hits += segment.hits;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Returns the number of calls to {@link #compile(String, int)} that did
+	 * not find their pattern in this cache.
+	 *
+	 * @return the number of cache misses
+	 */
+	public long missCount() {
+		long misses = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				misses += segment.misses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * Returns the number of patterns evicted to keep this cache within its
+	 * bounds.
+	 *
+	 * @return the number of evictions
+	 */
+	public long evictionCount() {
+		long evictions = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				evictions += segment.evictions;
+			}
+		}
+		return evictions;
+	}
+
+	@Override
+	public String toString() {
+		return "PatternCache[size=" + size() + ", weight=" + weight() + ", hits=" + hitCount() + ", misses="
+				+ missCount() + ", evictions=" + evictionCount() + "]";
+	}
+}
@@ -0,0 +1,304 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.Arrays;
+
+/**
+ * Runs a {@link Prog} over an input by simulating all of its threads in
+ * lockstep
+ * <p>
+ * Each code point of the input is read once and each instruction runs at most
+ * once per code point, so a search takes O(<em>n</em>&middot;<em>m</em>) time
+ * for an input of length <em>n</em> and a program of size <em>m</em>,
+ * whatever the expression. Threads are kept in priority order, which gives
+ * leftmost-first matches and captures like those of a backtracking matcher.
+ * </p>
+ * <p>
+ * They can differ from those of {@code java.util.regex} when an iteration of
+ * a loop can match the empty string. Java leaves such a loop as soon as an
+ * iteration matches empty, while a thread that comes back to the start of a
+ * loop without having read anything is dropped here, as a lower priority
+ * thread already runs there; the match may then end elsewhere. For instance,
+ * <tt>(?:b??|b)*</tt> matches all of "bbb" here but only the empty string in
+ * Java.
+ * </p>
+ * <p>
+ * A machine holds the scratch space of a search and is not thread-safe; it
+ * can be reused for any number of searches of the same program.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class PikeVM {
+
+	/**
+	 * How much of the input a match must span
+	 */
+	enum Anchor {
+		/**
+		 * the match may start anywhere, as with
+		 * {@link java.util.regex.Matcher#find()}
+		 */
+		UNANCHORED,
+		/**
+		 * the match must start where the search starts, as with
+		 * {@link java.util.regex.Matcher#lookingAt()}
+		 */
+		START,
+		/**
+		 * the match must span the input, as with
+		 * {@link java.util.regex.Matcher#matches()}
+		 */
+		BOTH
+	}
+
+	/**
+	 * Sparse set of threads: program counters in priority order, each with
+	 * the capture slots of the thread
+	 */
+	private static final class Threads {
+		final int[] dense;
+		final int[] sparse;
+		final int[][] slots;
+		int size;
+
+		Threads(int programSize, int slotCount) {
+			this.dense = new int[programSize];
+			this.sparse = new int[programSize];
+			this.slots = new int[programSize][slotCount];
+		}
+
+		boolean contains(int pc) {
+			int i = this.sparse[pc];
+			return i < this.size && this.dense[i] == pc;
+		}
+
+		int add(int pc) {
+			this.sparse[pc] = this.size;
+			this.dense[this.size] = pc;
+			return this.size++;
+		}
+	}
+
+	private final Prog prog;
+	private Threads current;
+	private Threads next;
+
+	/**
+	 * stack of {@link #addThread} holding program counters to explore and,
+	 * as pairs of a negative slot {@code ~n} and a value, slots to restore
+	 */
+	private int[] stack;
+
+	private final int[] scratch;
+
+	PikeVM(Prog prog) {
+		this.prog = prog;
+		int slotCount = prog.slotCount();
+		this.current = new Threads(prog.size(), slotCount);
+		this.next = new Threads(prog.size(), slotCount);
+		this.stack = new int[Math.max(16, 2 * prog.size())];
+		this.scratch = new int[slotCount];
+	}
+
+	Prog prog() {
+		return this.prog;
+	}
+
+	/**
+	 * Searches {@code input} from {@code from} for the leftmost-first match.
+	 *
+	 * @param input
+	 *            input to search
+	 * @param from
+	 *            index at which the search starts
+	 * @param anchor
+	 *            how much of the input the match must span
+	 * @param slots
+	 *            capture slots receiving the match, or {@code null} if only
+	 *            whether there is a match matters; unmatched groups are -1
+	 * @return {@code true} if a match was found
+	 */
+	boolean search(CharSequence input, int from, Anchor anchor, int[] slots) {
+		return search(input, from, input.length(), anchor, slots, null);
+	}
+
+	/**
+	 * Searches {@code input} from {@code from} for the leftmost-first match
+	 * that starts no later than {@code limit}.
+	 * <p>
+	 * The match may end after {@code limit}, and is the same one an unlimited
+	 * search would find if that one starts no later than {@code limit}.
+	 * </p>
+	 *
+	 * @param input
+	 *            input to search
+	 * @param from
+	 *            index at which the search starts
+	 * @param limit
+	 *            greatest index at which the match may start
+	 * @param anchor
+	 *            how much of the input the match must span
+	 * @param slots
+	 *            capture slots receiving the match, or {@code null} if only
+	 *            whether there is a match matters; unmatched groups are -1
+	 * @param budget
+	 *            budget charged one step per code point read, or {@code null}
+	 * @return {@code true} if a match was found
+	 * @throws MatchLimitExceededException
+	 *             if the search exceeds {@code budget}
+	 */
+	boolean search(CharSequence input, int from, int limit, Anchor anchor, int[] slots, MatchBudget budget) {
+		final int[] op = this.prog.op;
+		final int[] arg = this.prog.arg;
+		final CharMatcher[] matchers = this.prog.matchers;
+		final LiteralPrefilter prefilter = this.prog.prefilter;
+		final int end = input.length();
+		final boolean earliest = slots == null && anchor != Anchor.BOTH;
+		Threads current = this.current;
+		Threads next = this.next;
+		current.size = 0;
+		boolean matched = false;
+		int pos = from;
+		while (true) {
+			if (!matched && pos <= limit && (pos == from || anchor == Anchor.UNANCHORED)) {
+				if (current.size == 0 && anchor == Anchor.UNANCHORED && prefilter != null) {
+					// No thread is running, so skip to where a match can start.
+					pos = prefilter.indexOf(input, pos);
+					if (pos < 0 || pos > limit) {
+						break;
+					}
+				}
+				Arrays.fill(this.scratch, -1);
+				addThread(current, 0, input, pos, this.scratch);
+			}
+			if (current.size == 0) {
+				break;
+			}
+			if (budget != null) {
+				budget.step();
+			}
+			int c = pos < end ? Character.codePointAt(input, pos) : -1;
+			int nextPos = pos < end ? pos + Character.charCount(c) : pos;
+			next.size = 0;
+			for (int i = 0; i < current.size; i++) {
+				int pc = current.dense[i];
+				switch (op[pc]) {
+				case Prog.MATCH:
+					if (anchor == Anchor.BOTH && pos != end) {
+						continue;
+					}
+					if (slots != null) {
+						System.arraycopy(current.slots[i], 0, slots, 0, slots.length);
+					}
+					matched = true;
+					// Threads after this one have lower priority; drop them.
+					i = current.size;
+					break;
+				case Prog.CHAR:
+					if (c == arg[pc]) {
+						addThread(next, pc + 1, input, nextPos, current.slots[i]);
+					}
+					break;
+				case Prog.SET:
+					if (c >= 0 && matchers[arg[pc]].matches(c)) {
+						addThread(next, pc + 1, input, nextPos, current.slots[i]);
+					}
+					break;
+				default:
+					break;
+				}
+			}
+			if (matched && earliest) {
+				break;
+			}
+			if (pos >= end) {
+				break;
+			}
+			Threads swap = current;
+			current = next;
+			next = swap;
+			pos = nextPos;
+		}
+		this.current = current;
+		this.next = next;
+		return matched;
+	}
+
+	/**
+	 * Adds the thread at {@code pc} and every thread reachable from it
+	 * without consuming input to {@code threads}, in priority order.
+	 *
+	 * @param slots
+	 *            capture slots of the thread; modified during the call but
+	 *            restored before it returns
+	 */
+	private void addThread(Threads threads, int pc0, CharSequence input, int pos, int[] slots) {
+		final int[] op = this.prog.op;
+		final int[] arg = this.prog.arg;
+		final int[] arg2 = this.prog.arg2;
+		int[] stack = this.stack;
+		int top = 0;
+		stack[top++] = pc0;
+		while (top > 0) {
+			int pc = stack[--top];
+			if (pc < 0) {
+				slots[~pc] = stack[--top];
+				continue;
+			}
+			while (!threads.contains(pc)) {
+				int t = threads.add(pc);
+				switch (op[pc]) {
+				case Prog.JMP:
+					pc = arg[pc];
+					continue;
+				case Prog.SPLIT:
+					if (top + 1 > stack.length) {
+						stack = this.stack = Arrays.copyOf(stack, stack.length * 2);
+					}
+					stack[top++] = arg2[pc];
+					pc = arg[pc];
+					continue;
+				case Prog.SAVE:
+					if (top + 2 > stack.length) {
+						stack = this.stack = Arrays.copyOf(stack, stack.length * 2);
+					}
+					int slot = arg[pc];
+					if (slot < slots.length) {
+						stack[top++] = slots[slot];
+						stack[top++] = ~slot;
+						slots[slot] = pos;
+					}
+					pc++;
+					continue;
+				case Prog.ASSERT:
+					if (Prog.assertion(arg[pc], input, pos)) {
+						pc++;
+						continue;
+					}
+					break;
+				default:
+					// CHAR, SET and MATCH wait for the next code point.
+					System.arraycopy(slots, 0, threads.slots[t], 0, slots.length);
+					break;
+				}
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,740 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.getString;
+import static com.crumbs.util.Logging.illegalArg;
+import static com.crumbs.util.Logging.illegalNullArg;
+import static com.crumbs.util.Logging.illegalNullArrayItemArg;
+import static com.crumbs.util.Logging.illegalOutsideSetArg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * DFA built ahead of time and kept in a binary image, which is written to a
+ * file once and mapped into memory on each start
+ * <p>
+ * An image holds every state of the automata of a regular expression, or of
+ * a set of regular expressions as with {@link RegExSet}, so a process that
+ * {@link #map(FileChannel) maps} it builds nothing: searches read the
+ * transitions straight from the mapped buffer, which is neither parsed nor
+ * copied, and processes that map the same file share its pages. Loading an
+ * image only checks its header and its CRC-32 checksum.
+ * </p>
+ * <p>
+ * An image is a sequence of big-endian 32-bit integers: a header of
+ * {@value #HEADER_LENGTH} bytes, then the tables, in this order.
+ * </p>
+ * <table border="1">
+ * <tr>
+ * <th>Header field</th>
+ * <th>Value</th>
+ * </tr>
+ * <tr>
+ * <td>magic</td>
+ * <td><tt>0x43524446</tt>, <tt>"CRDF"</tt></td>
+ * </tr>
+ * <tr>
+ * <td>version</td>
+ * <td>{@value #VERSION}</td>
+ * </tr>
+ * <tr>
+ * <td>length</td>
+ * <td>bytes in the image, header included</td>
+ * </tr>
+ * <tr>
+ * <td>checksum</td>
+ * <td>CRC-32 of the image without this field</td>
+ * </tr>
+ * <tr>
+ * <td>flags</td>
+ * <td>{@link java.util.regex.Pattern} flags of the regular expressions</td>
+ * </tr>
+ * <tr>
+ * <td>expressions</td>
+ * <td>number of regular expressions, <em>n</em></td>
+ * </tr>
+ * <tr>
+ * <td>classes</td>
+ * <td>number of classes of code points, <em>c</em></td>
+ * </tr>
+ * <tr>
+ * <td>assertions</td>
+ * <td>number of kinds of assertions, <em>k</em></td>
+ * </tr>
+ * <tr>
+ * <td>states</td>
+ * <td>number of states, <em>s</em></td>
+ * </tr>
+ * <tr>
+ * <td>accepts</td>
+ * <td>length of the accept table, <em>a</em></td>
+ * </tr>
+ * <tr>
+ * <td>starts</td>
+ * <td>start states of <tt>matches</tt>, <tt>lookingAt</tt> and
+ * <tt>find</tt>; -1 for an automaton the image does not hold</td>
+ * </tr>
+ * </table>
+ * <table border="1">
+ * <tr>
+ * <th>Table</th>
+ * <th>Length</th>
+ * <th>Content</th>
+ * </tr>
+ * <tr>
+ * <td>Latin-1 classes</td>
+ * <td>256</td>
+ * <td>class of each code point below 256</td>
+ * </tr>
+ * <tr>
+ * <td>bounds</td>
+ * <td><em>c</em></td>
+ * <td>first code point of each class</td>
+ * </tr>
+ * <tr>
+ * <td>assertions</td>
+ * <td><em>k</em></td>
+ * <td>kind of assertion of each bit of a mask</td>
+ * </tr>
+ * <tr>
+ * <td>state flags</td>
+ * <td><em>s</em></td>
+ * <td>1 for the states that hold a match</td>
+ * </tr>
+ * <tr>
+ * <td>accept starts</td>
+ * <td><em>s</em> + 1</td>
+ * <td>start of the matched expressions of each state in the accept table
+ * </td>
+ * </tr>
+ * <tr>
+ * <td>accepts</td>
+ * <td><em>a</em></td>
+ * <td>indexes of the expressions whose match each state holds</td>
+ * </tr>
+ * <tr>
+ * <td>next</td>
+ * <td><em>s</em> &middot; <em>c</em></td>
+ * <td>next state by state and class; all -1 for the states a search ends
+ * in</td>
+ * </tr>
+ * <tr>
+ * <td>resolved</td>
+ * <td><em>s</em> &middot; 2<sup><em>k</em></sup></td>
+ * <td>resolved state by state and mask of the assertions that hold; -1 for
+ * the states without pending assertions</td>
+ * </tr>
+ * </table>
+ * <p>
+ * A compiled DFA is immutable, and thread-safe as long as nothing writes to
+ * the buffer of its image.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see RegExEngine#DFA
+ */
+public final class PrecompiledDFA {
+
+	/**
+	 * version of the image format that this class writes and reads
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * maximum number of states of each automaton of
+	 * {@link #compile(RegExBuilder, RegExMatchFlag...)}
+	 */
+	public static final int DEFAULT_MAX_STATES = 1 << 16;
+
+	/**
+	 * number of bytes of the header of an image
+	 */
+	public static final int HEADER_LENGTH = 52;
+
+	private static final int MAGIC = 0x43524446;
+
+	// offsets of the header fields
+	private static final int MAGIC_AT = 0;
+	private static final int VERSION_AT = 4;
+	private static final int LENGTH_AT = 8;
+	private static final int CHECKSUM_AT = 12;
+	private static final int FLAGS_AT = 16;
+	private static final int EXPRESSIONS_AT = 20;
+	private static final int CLASSES_AT = 24;
+	private static final int KINDS_AT = 28;
+	private static final int STATES_AT = 32;
+	private static final int ACCEPTS_AT = 36;
+	private static final int STARTS_AT = 40;
+
+	/**
+	 * automata of an image, by index of their start state in the header
+	 */
+	private static final PikeVM.Anchor[] ANCHORS = { PikeVM.Anchor.BOTH, PikeVM.Anchor.START,
+			PikeVM.Anchor.UNANCHORED };
+
+	private static final int MATCH = 1;
+
+	private final ByteBuffer image;
+	private final int flags;
+	private final int expressionCount;
+	private final int classCount;
+	private final int maskCount;
+	private final int stateCount;
+	private final int[] starts = new int[ANCHORS.length];
+	private final int[] kinds;
+
+	// offsets of the tables
+	private final int latin1At;
+	private final int boundsAt;
+	private final int stateFlagsAt;
+	private final int acceptStartsAt;
+	private final int acceptsAt;
+	private final int nextAt;
+	private final int resolvedAt;
+
+	/**
+	 * @param image
+	 *            image whose checksum matches, starting at position 0 and
+	 *            limited to its length
+	 * @throws IllegalArgumentException
+	 *             if the header does not describe the tables
+	 */
+	private PrecompiledDFA(ByteBuffer image) {
+		this.image = image;
+		this.flags = image.getInt(FLAGS_AT);
+		this.expressionCount = image.getInt(EXPRESSIONS_AT);
+		this.classCount = image.getInt(CLASSES_AT);
+		int kindCount = image.getInt(KINDS_AT);
+		this.stateCount = image.getInt(STATES_AT);
+		int acceptCount = image.getInt(ACCEPTS_AT);
+		if (this.expressionCount < 1 || this.classCount < 1 || kindCount < 0
+				|| kindCount > Prog.NOT_WORD_BOUNDARY + 1 || this.stateCount < 1 || acceptCount < 0) {
+			throw illegalArg("dfa.image.invalid");
+		}
+		this.maskCount = 1 << kindCount;
+		for (int i = 0; i < this.starts.length; i++) {
+			this.starts[i] = image.getInt(STARTS_AT + 4 * i);
+			if (this.starts[i] < -1 || this.starts[i] >= this.stateCount) {
+				throw illegalArg("dfa.image.invalid");
+			}
+		}
+		this.latin1At = HEADER_LENGTH;
+		this.boundsAt = this.latin1At + 4 * 256;
+		long kindsAt = this.boundsAt + 4L * this.classCount;
+		long stateFlagsAt = kindsAt + 4L * kindCount;
+		long acceptStartsAt = stateFlagsAt + 4L * this.stateCount;
+		long acceptsAt = acceptStartsAt + 4L * (this.stateCount + 1);
+		long nextAt = acceptsAt + 4L * acceptCount;
+		long resolvedAt = nextAt + 4L * this.stateCount * this.classCount;
+		if (resolvedAt + 4L * this.stateCount * this.maskCount != image.limit()) {
+			throw illegalArg("dfa.image.invalid");
+		}
+		this.stateFlagsAt = (int) stateFlagsAt;
+		this.acceptStartsAt = (int) acceptStartsAt;
+		this.acceptsAt = (int) acceptsAt;
+		this.nextAt = (int) nextAt;
+		this.resolvedAt = (int) resolvedAt;
+		this.kinds = new int[kindCount];
+		for (int i = 0; i < kindCount; i++) {
+			this.kinds[i] = image.getInt((int) kindsAt + 4 * i);
+			if (this.kinds[i] < 0 || this.kinds[i] > Prog.NOT_WORD_BOUNDARY) {
+				throw illegalArg("dfa.image.invalid");
+			}
+		}
+	}
+
+	/**
+	 * Builds the DFAs of the specified regular expression, for
+	 * {@link #matches(CharSequence)}, {@link #lookingAt(CharSequence)} and
+	 * {@link #find(CharSequence)}.
+	 *
+	 * @param regEx
+	 *            regular expression to compile
+	 * @param flags
+	 *            match flags to compile the regular expression with, as in
+	 *            {@link RegExBuilder#compile(RegExMatchFlag...)}
+	 * @return the compiled DFA, whose image is on the heap
+	 * @throws IllegalArgumentException
+	 *             if {@code regEx}, {@code flags}, or one of its items is
+	 *             {@code null}
+	 * @throws UnsupportedOperationException
+	 *             if the regular expression uses a construct that
+	 *             {@link RegExEngine#DFA} does not support, or if a DFA has
+	 *             more than {@link #DEFAULT_MAX_STATES} states
+	 */
+	public static PrecompiledDFA compile(RegExBuilder regEx, RegExMatchFlag... flags) {
+		if (regEx == null) {
+			throw illegalNullArg(RegExBuilder.class, "regEx");
+		}
+		int patternFlags = BaseRegExBuilder.patternFlags(flags);
+		Prog prog = ProgCompiler.compile(RegExOptimizer.optimize(BaseCommonBuilder.nodeOf(regEx), patternFlags),
+				patternFlags, RegExEngine.DFA.name());
+		LazyDFA.Alphabet alphabet = new LazyDFA.Alphabet(prog);
+		DenseDFA[] dfas = new DenseDFA[ANCHORS.length];
+		for (int i = 0; i < dfas.length; i++) {
+			dfas[i] = materialize(prog, alphabet, ANCHORS[i], DEFAULT_MAX_STATES, false);
+		}
+		return new PrecompiledDFA(image(dfas, alphabet, 1, patternFlags));
+	}
+
+	/**
+	 * Builds the DFA of a set of regular expressions, for
+	 * {@link #findAll(CharSequence)} and {@link #find(CharSequence)}.
+	 *
+	 * @param regExes
+	 *            regular expressions of the set; the index of each in the list
+	 *            identifies it in search results
+	 * @param maxStates
+	 *            maximum number of states of the DFA
+	 * @param flags
+	 *            match flags to compile every regular expression with, as in
+	 *            {@link RegExBuilder#compile(RegExMatchFlag...)}
+	 * @return the compiled DFA, whose image is on the heap
+	 * @throws IllegalArgumentException
+	 *             if {@code regExes}, {@code flags}, or one of their items is
+	 *             {@code null}, if {@code regExes} is empty, or if
+	 *             {@code maxStates} is not positive
+	 * @throws UnsupportedOperationException
+	 *             if a regular expression uses a construct that
+	 *             {@link RegExEngine#DFA} does not support, or if the DFA has
+	 *             more than {@code maxStates} states
+	 */
+	public static PrecompiledDFA compileSet(List<? extends RegExBuilder> regExes, int maxStates,
+			RegExMatchFlag... flags) {
+		if (regExes == null) {
+			throw illegalNullArg(List.class, "regExes");
+		}
+		if (regExes.isEmpty()) {
+			throw illegalOutsideSetArg(int.class, "regExes.size()", Integer.valueOf(0), "[1,\u221E)");
+		}
+		if (maxStates <= 0) {
+			throw illegalOutsideSetArg(int.class, "maxStates", Integer.valueOf(maxStates), "[1,\u221E)");
+		}
+		int patternFlags = BaseRegExBuilder.patternFlags(flags);
+		RegExNode[] nodes = new RegExNode[regExes.size()];
+		for (int i = 0; i < nodes.length; i++) {
+			RegExBuilder regEx = regExes.get(i);
+			if (regEx == null) {
+				throw illegalNullArrayItemArg(List.class, "regExes");
+			}
+			nodes[i] = RegExOptimizer.optimize(BaseCommonBuilder.nodeOf(regEx), patternFlags);
+		}
+		Prog prog = ProgCompiler.compileSet(nodes, patternFlags, RegExEngine.DFA.name());
+		LazyDFA.Alphabet alphabet = new LazyDFA.Alphabet(prog);
+		DenseDFA[] dfas = new DenseDFA[ANCHORS.length];
+		dfas[2] = materialize(prog, alphabet, PikeVM.Anchor.UNANCHORED, maxStates, true);
+		return new PrecompiledDFA(image(dfas, alphabet, nodes.length, patternFlags));
+	}
+
+	private static DenseDFA materialize(Prog prog, LazyDFA.Alphabet alphabet, PikeVM.Anchor anchor, int maxStates,
+			boolean pastMatches) {
+		DenseDFA dfa = new LazyDFA(prog, alphabet, anchor, Long.MAX_VALUE, new DFAStats()).materialize(maxStates,
+				pastMatches);
+		if (dfa == null) {
+			throw new UnsupportedOperationException(getString("dfa.too.many.states", String.valueOf(maxStates)));
+		}
+		return dfa;
+	}
+
+	/**
+	 * Returns the image of {@code dfas}, whose states are numbered one
+	 * automaton after the other.
+	 *
+	 * @param dfas
+	 *            automata by index of their start state, {@code null} for
+	 *            those the image does not hold
+	 */
+	private static ByteBuffer image(DenseDFA[] dfas, LazyDFA.Alphabet alphabet, int expressionCount, int flags) {
+		final int classCount = alphabet.classCount();
+		final int maskCount = 1 << alphabet.kinds.length;
+		int[] starts = new int[dfas.length];
+		int stateCount = 0;
+		int acceptCount = 0;
+		for (int i = 0; i < dfas.length; i++) {
+			starts[i] = dfas[i] == null ? -1 : stateCount;
+			for (int s = 0; dfas[i] != null && s < dfas[i].stateCount(); s++) {
+				acceptCount += dfas[i].matches[s].length;
+			}
+			stateCount += dfas[i] == null ? 0 : dfas[i].stateCount();
+		}
+		long length = HEADER_LENGTH + 4L * (256 + classCount + alphabet.kinds.length + stateCount
+				+ stateCount + 1 + acceptCount + (long) stateCount * classCount + (long) stateCount * maskCount);
+		if (length > Integer.MAX_VALUE) {
+			throw new UnsupportedOperationException(getString("dfa.too.many.states", String.valueOf(stateCount)));
+		}
+		ByteBuffer image = ByteBuffer.allocate((int) length);
+		image.putInt(MAGIC).putInt(VERSION).putInt((int) length).putInt(0).putInt(flags).putInt(expressionCount)
+				.putInt(classCount).putInt(alphabet.kinds.length).putInt(stateCount).putInt(acceptCount);
+		for (int start : starts) {
+			image.putInt(start);
+		}
+		for (int c = 0; c < 256; c++) {
+			image.putInt(alphabet.classOf(c));
+		}
+		for (int cls = 0; cls < classCount; cls++) {
+			image.putInt(alphabet.representative(cls));
+		}
+		for (int kind : alphabet.kinds) {
+			image.putInt(kind);
+		}
+		for (DenseDFA dfa : dfas) {
+			for (int s = 0; dfa != null && s < dfa.stateCount(); s++) {
+				image.putInt(dfa.match[s] ? MATCH : 0);
+			}
+		}
+		int accept = 0;
+		for (DenseDFA dfa : dfas) {
+			for (int s = 0; dfa != null && s < dfa.stateCount(); s++) {
+				image.putInt(accept);
+				accept += dfa.matches[s].length;
+			}
+		}
+		image.putInt(accept);
+		for (DenseDFA dfa : dfas) {
+			for (int s = 0; dfa != null && s < dfa.stateCount(); s++) {
+				for (int index : dfa.matches[s]) {
+					image.putInt(index);
+				}
+			}
+		}
+		for (int i = 0; i < dfas.length; i++) {
+			for (int s = 0; dfas[i] != null && s < dfas[i].stateCount(); s++) {
+				for (int cls = 0; cls < classCount; cls++) {
+					image.putInt(dfas[i].next[s] == null ? -1 : starts[i] + dfas[i].next[s][cls]);
+				}
+			}
+		}
+		for (int i = 0; i < dfas.length; i++) {
+			for (int s = 0; dfas[i] != null && s < dfas[i].stateCount(); s++) {
+				for (int mask = 0; mask < maskCount; mask++) {
+					image.putInt(dfas[i].resolved[s] == null ? -1 : starts[i] + dfas[i].resolved[s][mask]);
+				}
+			}
+		}
+		image.putInt(CHECKSUM_AT, checksum(image));
+		image.clear();
+		return image;
+	}
+
+	/**
+	 * Returns the CRC-32 of {@code image} without its checksum field.
+	 */
+	private static int checksum(ByteBuffer image) {
+		CRC32 crc = new CRC32();
+		ByteBuffer bytes = image.duplicate();
+		bytes.position(0);
+		bytes.limit(CHECKSUM_AT);
+		crc.update(bytes);
+		bytes.limit(image.limit());
+		bytes.position(CHECKSUM_AT + 4);
+		crc.update(bytes);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Returns the compiled DFA whose image starts at the position of
+	 * {@code buffer}, without copying the image.
+	 *
+	 * @param buffer
+	 *            buffer holding an image, such as a file mapped into memory;
+	 *            nothing may write to the image while the DFA is in use
+	 * @return the compiled DFA
+	 * @throws IllegalArgumentException
+	 *             if {@code buffer} is {@code null} or does not hold an image
+	 *             of version {@link #VERSION}, or if the checksum of the image
+	 *             does not match its content
+	 */
+	public static PrecompiledDFA load(ByteBuffer buffer) {
+		if (buffer == null) {
+			throw illegalNullArg(ByteBuffer.class, "buffer");
+		}
+		ByteBuffer image = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+		if (image.limit() < HEADER_LENGTH || image.getInt(MAGIC_AT) != MAGIC) {
+			throw illegalArg("dfa.image.invalid");
+		}
+		int version = image.getInt(VERSION_AT);
+		if (version != VERSION) {
+			throw illegalArg("dfa.image.version", String.valueOf(version), String.valueOf(VERSION));
+		}
+		int length = image.getInt(LENGTH_AT);
+		if (length < HEADER_LENGTH || length > image.limit()) {
+			throw illegalArg("dfa.image.truncated", String.valueOf(length), String.valueOf(image.limit()));
+		}
+		image.limit(length);
+		if (checksum(image) != image.getInt(CHECKSUM_AT)) {
+			throw illegalArg("dfa.image.checksum");
+		}
+		return new PrecompiledDFA(image);
+	}
+
+	/**
+	 * Maps the file of {@code channel} into memory and returns the compiled
+	 * DFA whose image it holds.
+	 *
+	 * @param channel
+	 *            channel of a file written by
+	 *            {@link #writeTo(WritableByteChannel)}, open for reading
+	 * @return the compiled DFA
+	 * @throws IOException
+	 *             if the file cannot be mapped
+	 * @throws IllegalArgumentException
+	 *             if {@code channel} is {@code null}, or as
+	 *             {@link #load(ByteBuffer)} throws it
+	 */
+	public static PrecompiledDFA map(FileChannel channel) throws IOException {
+		if (channel == null) {
+			throw illegalNullArg(FileChannel.class, "channel");
+		}
+		return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+	}
+
+	/**
+	 * Writes the image of this DFA to {@code channel}.
+	 *
+	 * @param channel
+	 *            channel to write to
+	 * @throws IOException
+	 *             if the image cannot be written
+	 * @throws IllegalArgumentException
+	 *             if {@code channel} is {@code null}
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		if (channel == null) {
+			throw illegalNullArg(WritableByteChannel.class, "channel");
+		}
+		ByteBuffer bytes = this.image.duplicate();
+		bytes.clear();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+	}
+
+	/**
+	 * Returns the number of regular expressions of this DFA.
+	 *
+	 * @return 1 for a regular expression, the size of the set for a set
+	 */
+	public int size() {
+		return this.expressionCount;
+	}
+
+	/**
+	 * Returns the {@link java.util.regex.Pattern} flags the regular
+	 * expressions were compiled with.
+	 *
+	 * @return the flags
+	 */
+	public int flags() {
+		return this.flags;
+	}
+
+	/**
+	 * Returns the number of states of the automata of this DFA.
+	 *
+	 * @return the number of states
+	 */
+	public int stateCount() {
+		return this.stateCount;
+	}
+
+	/**
+	 * Returns the number of bytes of the image of this DFA.
+	 *
+	 * @return the length of the image
+	 */
+	public int imageLength() {
+		return this.image.limit();
+	}
+
+	/**
+	 * Returns {@code true} if the whole of {@code input} matches.
+	 *
+	 * @param input
+	 *            character sequence to match
+	 * @return {@code true} if the input matches
+	 * @throws IllegalArgumentException
+	 *             if {@code input} is {@code null}
+	 * @throws UnsupportedOperationException
+	 *             if this DFA was compiled from a set
+	 * @see CompiledRegEx#matches(CharSequence)
+	 */
+	public boolean matches(CharSequence input) {
+		return search(input, 0, "matches");
+	}
+
+	/**
+	 * Returns {@code true} if a prefix of {@code input} matches.
+	 *
+	 * @param input
+	 *            character sequence to match
+	 * @return {@code true} if a prefix of the input matches
+	 * @throws IllegalArgumentException
+	 *             if {@code input} is {@code null}
+	 * @throws UnsupportedOperationException
+	 *             if this DFA was compiled from a set
+	 * @see CompiledRegEx#lookingAt(CharSequence)
+	 */
+	public boolean lookingAt(CharSequence input) {
+		return search(input, 1, "lookingAt");
+	}
+
+	/**
+	 * Returns {@code true} if some subsequence of {@code input} matches one
+	 * of the regular expressions.
+	 *
+	 * @param input
+	 *            character sequence to search
+	 * @return {@code true} if there is a match
+	 * @throws IllegalArgumentException
+	 *             if {@code input} is {@code null}
+	 * @see CompiledRegEx#find(CharSequence)
+	 */
+	public boolean find(CharSequence input) {
+		return search(input, 2, "find");
+	}
+
+	/**
+	 * Returns the indexes of the regular expressions that match some
+	 * subsequence of {@code input}, reading the input once.
+	 *
+	 * @param input
+	 *            character sequence to search
+	 * @return the indexes in ascending order
+	 * @throws IllegalArgumentException
+	 *             if {@code input} is {@code null}
+	 * @see RegExSet#find(CharSequence)
+	 */
+	public int[] findAll(CharSequence input) {
+		if (input == null) {
+			throw illegalNullArg(CharSequence.class, "input");
+		}
+		final ByteBuffer image = this.image;
+		final int end = input.length();
+		boolean[] matched = new boolean[this.expressionCount];
+		int found = 0;
+		int pos = 0;
+		int state = this.starts[2];
+		while (found < matched.length) {
+			state = resolve(state, input, pos);
+			int last = image.getInt(this.acceptStartsAt + 4 * state + 4);
+			for (int i = image.getInt(this.acceptStartsAt + 4 * state); i < last; i++) {
+				int index = image.getInt(this.acceptsAt + 4 * i);
+				if (!matched[index]) {
+					matched[index] = true;
+					found++;
+				}
+			}
+			int row = this.nextAt + 4 * state * this.classCount;
+			if (pos >= end || image.getInt(row) < 0) {
+				break;
+			}
+			int c = Character.codePointAt(input, pos);
+			state = image.getInt(row + 4 * classOf(c));
+			pos += Character.charCount(c);
+		}
+		int[] indexes = new int[found];
+		for (int i = 0, n = 0; n < found; i++) {
+			if (matched[i]) {
+				indexes[n++] = i;
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Searches {@code input} with automaton {@code automaton} of the header.
+	 *
+	 * @param method
+	 *            name of the public method, for the exception of an
+	 *            automaton that the image does not hold
+	 */
+	private boolean search(CharSequence input, int automaton, String method) {
+		if (input == null) {
+			throw illegalNullArg(CharSequence.class, "input");
+		}
+		if (this.starts[automaton] < 0) {
+			throw new UnsupportedOperationException(getString("dfa.image.no.automaton", method));
+		}
+		final ByteBuffer image = this.image;
+		final boolean both = ANCHORS[automaton] == PikeVM.Anchor.BOTH;
+		final int end = input.length();
+		int pos = 0;
+		int state = this.starts[automaton];
+		while (true) {
+			state = resolve(state, input, pos);
+			if ((image.getInt(this.stateFlagsAt + 4 * state) & MATCH) != 0 && (!both || pos == end)) {
+				return true;
+			}
+			int row = this.nextAt + 4 * state * this.classCount;
+			if (pos >= end || image.getInt(row) < 0) {
+				return false;
+			}
+			int c = Character.codePointAt(input, pos);
+			state = image.getInt(row + 4 * classOf(c));
+			pos += Character.charCount(c);
+		}
+	}
+
+	/**
+	 * Returns {@code state} with its assertions resolved against those that
+	 * hold at {@code pos}.
+	 */
+	private int resolve(int state, CharSequence input, int pos) {
+		int at = this.resolvedAt + 4 * state * this.maskCount;
+		if (this.image.getInt(at) < 0) {
+			return state;
+		}
+		int mask = 0;
+		for (int i = 0; i < this.kinds.length; i++) {
+			if (Prog.assertion(this.kinds[i], input, pos)) {
+				mask |= 1 << i;
+			}
+		}
+		return this.image.getInt(at + 4 * mask);
+	}
+
+	private int classOf(int c) {
+		if (c < 256) {
+			return this.image.getInt(this.latin1At + 4 * c);
+		}
+		// the last class that starts at or before c
+		int low = 0;
+		int high = this.classCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (this.image.getInt(this.boundsAt + 4 * mid) <= c) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	@Override
+	public String toString() {
+		return "PrecompiledDFA[regExes=" + this.expressionCount + ", states=" + this.stateCount + ", bytes="
+				+ this.image.limit() + "]";
+	}
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+/**
+ * Thompson NFA compiled from an expression tree
+ * <p>
+ * A program is an array of instructions. Each instruction has an opcode and
+ * up to two integer arguments:
+ * </p>
+ * <ul>
+ * <li>{@link #CHAR} <em>c</em>: consume code point <em>c</em></li>
+ * <li>{@link #SET} <em>s</em>: consume a code point in {@code sets[s]}</li>
+ * <li>{@link #SPLIT} <em>x</em>, <em>y</em>: continue at both <em>x</em> and
+ * <em>y</em>, preferring <em>x</em></li>
+ * <li>{@link #JMP} <em>x</em>: continue at <em>x</em></li>
+ * <li>{@link #SAVE} <em>n</em>: record the current position in capture slot
+ * <em>n</em></li>
+ * <li>{@link #ASSERT} <em>k</em>: continue only if zero-width assertion
+ * <em>k</em> holds at the current position</li>
+ * <li>{@link #MATCH} <em>i</em>: expression <em>i</em> matched; <em>i</em>
+ * is 0 unless the program was compiled from a set of expressions</li>
+ * </ul>
+ * <p>
+ * Capture slots {@code 2 * g} and {@code 2 * g + 1} hold the start and end of
+ * group <em>g</em>; group 0 is the whole match. A program has no state of its
+ * own and can be run by any number of threads.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see ProgCompiler
+ * @see PikeVM
+ */
+final class Prog {
+
+	static final int CHAR = 0;
+	static final int SET = 1;
+	static final int SPLIT = 2;
+	static final int JMP = 3;
+	static final int SAVE = 4;
+	static final int ASSERT = 5;
+	static final int MATCH = 6;
+
+	/**
+	 * <tt>\A</tt> and <tt>^</tt> without {@link java.util.regex.Pattern#MULTILINE}
+	 */
+	static final int BEGIN_TEXT = 0;
+	/**
+	 * <tt>\z</tt>
+	 */
+	static final int END_TEXT = 1;
+	/**
+	 * <tt>\Z</tt> and <tt>$</tt> without {@link java.util.regex.Pattern#MULTILINE}
+	 */
+	static final int END_TEXT_OR_TERMINATOR = 2;
+	static final int END_TEXT_OR_TERMINATOR_UNIX = 3;
+	/**
+	 * <tt>^</tt> with {@link java.util.regex.Pattern#MULTILINE}
+	 */
+	static final int BEGIN_LINE = 4;
+	static final int BEGIN_LINE_UNIX = 5;
+	/**
+	 * <tt>$</tt> with {@link java.util.regex.Pattern#MULTILINE}
+	 */
+	static final int END_LINE = 6;
+	static final int END_LINE_UNIX = 7;
+	static final int WORD_BOUNDARY = 8;
+	static final int NOT_WORD_BOUNDARY = 9;
+
+	final int[] op;
+	final int[] arg;
+	final int[] arg2;
+	final CodePointSet[] sets;
+
+	/**
+	 * compiled membership tests of {@link #sets}, by the same index
+	 */
+	final CharMatcher[] matchers;
+
+	/**
+	 * number of capture groups, not counting group 0
+	 */
+	final int groupCount;
+
+	/**
+	 * prefilter for the literal prefixes of every match, or {@code null} if
+	 * matches need not start with a literal
+	 */
+	final LiteralPrefilter prefilter;
+
+	Prog(int[] op, int[] arg, int[] arg2, CodePointSet[] sets, int groupCount) {
+		this.op = op;
+		this.arg = arg;
+		this.arg2 = arg2;
+		this.sets = sets;
+		this.matchers = new CharMatcher[sets.length];
+		for (int i = 0; i < sets.length; i++) {
+			this.matchers[i] = sets[i].matcher();
+		}
+		this.groupCount = groupCount;
+		this.prefilter = LiteralPrefilter.of(this);
+	}
+
+	int size() {
+		return this.op.length;
+	}
+
+	int slotCount() {
+		return 2 * (this.groupCount + 1);
+	}
+
+	/**
+	 * Returns the greatest number of {@code char}s a match can span.
+	 * <p>
+	 * A loop of the program counts as unbounded even if it consumes nothing,
+	 * as in <tt>(a?)*</tt>, so the result is an upper bound.
+	 * </p>
+	 *
+	 * @return the maximum length of a match, or -1 if it is unbounded
+	 */
+	int maxLength() {
+		int size = size();
+		// Depth-first search from instruction 0 that finds the instructions
+		// in postorder, so each one comes after those it continues at.
+		int[] order = new int[size];
+		int ordered = 0;
+		byte[] state = new byte[size];
+		int[] stack = new int[2 * size];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = 0;
+		state[0] = 1;
+		while (top > 0) {
+			int pc = stack[top - 2];
+			int edge = stack[top - 1]++;
+			int next;
+			if (this.op[pc] == MATCH) {
+				next = -1;
+			} else if (edge == 0) {
+				next = this.op[pc] == JMP ? this.arg[pc] : this.op[pc] == SPLIT ? this.arg[pc] : pc + 1;
+			} else if (edge == 1 && this.op[pc] == SPLIT) {
+				next = this.arg2[pc];
+			} else {
+				next = -1;
+			}
+			if (next < 0) {
+				state[pc] = 2;
+				order[ordered++] = pc;
+				top -= 2;
+			} else if (state[next] == 1) {
+				return -1;
+			} else if (state[next] == 0) {
+				state[next] = 1;
+				stack[top++] = next;
+				stack[top++] = 0;
+			}
+		}
+		int[] length = new int[size];
+		for (int i = 0; i < ordered; i++) {
+			int pc = order[i];
+			switch (this.op[pc]) {
+			case MATCH:
+				length[pc] = 0;
+				break;
+			case JMP:
+				length[pc] = length[this.arg[pc]];
+				break;
+			case SPLIT:
+				length[pc] = Math.max(length[this.arg[pc]], length[this.arg2[pc]]);
+				break;
+			case CHAR:
+				length[pc] = Character.charCount(this.arg[pc]) + length[pc + 1];
+				break;
+			case SET:
+				CodePointSet set = this.sets[this.arg[pc]];
+				boolean supplementary = !set.isEmpty()
+						&& set.max(set.rangeCount() - 1) > Character.MAX_VALUE;
+				length[pc] = (supplementary ? 2 : 1) + length[pc + 1];
+				break;
+			default:
+				length[pc] = length[pc + 1];
+				break;
+			}
+		}
+		return length[0];
+	}
+
+	/**
+	 * Returns {@code true} if assertion {@code kind} holds at {@code index}
+	 * of {@code input}, with the meaning {@code java.util.regex} gives it.
+	 *
+	 * @param kind
+	 *            one of the assertion constants of this class
+	 * @param input
+	 *            input being matched
+	 * @param index
+	 *            position between two characters of {@code input}
+	 * @return {@code true} if the assertion holds
+	 */
+	static boolean assertion(int kind, CharSequence input, int index) {
+		int end = input.length();
+		switch (kind) {
+		case BEGIN_TEXT:
+			return index == 0;
+		case END_TEXT:
+			return index == end;
+		case END_TEXT_OR_TERMINATOR:
+			if (index == end) {
+				return true;
+			}
+			if (index == end - 1) {
+				char c = input.charAt(index);
+				return isLineTerminator(c) && !(c == '\n' && index > 0 && input.charAt(index - 1) == '\r');
+			}
+			return index == end - 2 && input.charAt(index) == '\r' && input.charAt(index + 1) == '\n';
+		case END_TEXT_OR_TERMINATOR_UNIX:
+			return index == end || (index == end - 1 && input.charAt(index) == '\n');
+		case BEGIN_LINE:
+			// Like Perl, Java does not match ^ at the end of the input, not
+			// even of an empty input.
+			if (index == end) {
+				return false;
+			}
+			if (index == 0) {
+				return true;
+			}
+			char before = input.charAt(index - 1);
+			return isLineTerminator(before) && !(before == '\r' && input.charAt(index) == '\n');
+		case BEGIN_LINE_UNIX:
+			return index < end && (index == 0 || input.charAt(index - 1) == '\n');
+		case END_LINE:
+			if (index == end) {
+				return true;
+			}
+			char next = input.charAt(index);
+			return isLineTerminator(next) && !(next == '\n' && index > 0 && input.charAt(index - 1) == '\r');
+		case END_LINE_UNIX:
+			return index == end || input.charAt(index) == '\n';
+		case WORD_BOUNDARY:
+			return isWordBefore(input, index) != isWordAt(input, index);
+		case NOT_WORD_BOUNDARY:
+			return isWordBefore(input, index) == isWordAt(input, index);
+		default:
+			throw new IllegalArgumentException(Integer.toString(kind));
+		}
+	}
+
+	static boolean isLineTerminator(int c) {
+		return c == '\n' || c == '\r' || c == 0x85 || (c | 1) == 0x2029;
+	}
+
+	/**
+	 * Returns {@code true} if {@code c} is a word character for <tt>\b</tt>,
+	 * which unlike <tt>\w</tt> includes all letters and digits.
+	 */
+	private static boolean isWord(int c) {
+		return c == '_' || Character.isLetterOrDigit(c);
+	}
+
+	private static boolean isWordBefore(CharSequence input, int index) {
+		if (index == 0) {
+			return false;
+		}
+		int c = Character.codePointBefore(input, index);
+		return isWord(c) || (Character.getType(c) == Character.NON_SPACING_MARK
+				&& hasBaseCharacter(input, index - Character.charCount(c)));
+	}
+
+	private static boolean isWordAt(CharSequence input, int index) {
+		if (index == input.length()) {
+			return false;
+		}
+		int c = Character.codePointAt(input, index);
+		return isWord(c) || (Character.getType(c) == Character.NON_SPACING_MARK && hasBaseCharacter(input, index));
+	}
+
+	/**
+	 * Returns {@code true} if the non-spacing marks ending at {@code index}
+	 * follow a letter or digit, which makes them part of a word.
+	 */
+	private static boolean hasBaseCharacter(CharSequence input, int index) {
+		for (int i = index; i > 0;) {
+			int c = Character.codePointBefore(input, i);
+			if (Character.isLetterOrDigit(c)) {
+				return true;
+			}
+			if (Character.getType(c) != Character.NON_SPACING_MARK) {
+				return false;
+			}
+			i -= Character.charCount(c);
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder();
+		for (int pc = 0; pc < this.op.length; pc++) {
+			out.append(pc).append(": ");
+			switch (this.op[pc]) {
+			case CHAR:
+				out.append("char ").appendCodePoint(this.arg[pc]);
+				break;
+			case SET:
+				out.append("set ").append(this.sets[this.arg[pc]]);
+				break;
+			case SPLIT:
+				out.append("split ").append(this.arg[pc]).append(", ").append(this.arg2[pc]);
+				break;
+			case JMP:
+				out.append("jmp ").append(this.arg[pc]);
+				break;
+			case SAVE:
+				out.append("save ").append(this.arg[pc]);
+				break;
+			case ASSERT:
+				out.append("assert ").append(this.arg[pc]);
+				break;
+			case MATCH:
+				out.append("match ").append(this.arg[pc]);
+				break;
+			}
+			out.append('\n');
+		}
+		return out.toString();
+	}
+}
@@ -0,0 +1,552 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.getString;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.crumbs.regex.RegExNode.Alternation;
+import com.crumbs.regex.RegExNode.Boundary;
+import com.crumbs.regex.RegExNode.CharClass;
+import com.crumbs.regex.RegExNode.ClassChar;
+import com.crumbs.regex.RegExNode.ClassRange;
+import com.crumbs.regex.RegExNode.ClassSet;
+import com.crumbs.regex.RegExNode.Concat;
+import com.crumbs.regex.RegExNode.Escape;
+import com.crumbs.regex.RegExNode.Flags;
+import com.crumbs.regex.RegExNode.Fragment;
+import com.crumbs.regex.RegExNode.Group;
+import com.crumbs.regex.RegExNode.Property;
+import com.crumbs.regex.RegExNode.Quantifier;
+import com.crumbs.regex.RegExNode.Shorthand;
+
+/**
+ * Compiles an expression tree into a {@link Prog}
+ * <p>
+ * The compiler gives each construct the meaning {@code java.util.regex} gives
+ * its Java rendering, including match flags turned on or off inside the
+ * expression. Constructs that need backtracking (back references,
+ * lookaround, atomic groups, and possessive quantifiers), <tt>\G</tt>, text
+ * appended verbatim, comments, and comments mode cannot be compiled into an
+ * automaton and are rejected with an {@link UnsupportedOperationException}.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class ProgCompiler {
+
+	/**
+	 * largest program compiled; counted repetitions are expanded, so
+	 * <tt>(?:...){1000}</tt> can easily exceed it
+	 */
+	static final int MAX_SIZE = 1 << 20;
+
+	private int[] op = new int[64];
+	private int[] arg = new int[64];
+	private int[] arg2 = new int[64];
+	private int size;
+
+	private CodePointSet[] sets = new CodePointSet[8];
+	private int setCount;
+	private final Map<CodePointSet, Integer> setIndexes = new HashMap<CodePointSet, Integer>();
+
+	/**
+	 * {@link Pattern} flags in effect at the node being compiled
+	 */
+	private int flags;
+
+	/**
+	 * number of capture groups opened so far
+	 */
+	private int groupCount;
+
+	private final String engine;
+
+	private ProgCompiler(int flags, String engine) {
+		this.flags = flags;
+		this.engine = engine;
+	}
+
+	/**
+	 * Compiles {@code node} into a program that records the whole match in
+	 * capture slots 0 and 1.
+	 *
+	 * @param node
+	 *            expression tree
+	 * @param flags
+	 *            {@link Pattern} flags
+	 * @param engine
+	 *            name of the engine reported by unsupported constructs
+	 * @return the compiled program
+	 * @throws UnsupportedOperationException
+	 *             if {@code node} uses a construct an automaton cannot
+	 *             express
+	 */
+	static Prog compile(RegExNode node, int flags, String engine) {
+		ProgCompiler compiler = new ProgCompiler(flags, engine);
+		if ((flags & Pattern.COMMENTS) != 0) {
+			throw compiler.unsupported("Pattern.COMMENTS");
+		}
+		compiler.emit(Prog.SAVE, 0, 0);
+		compiler.compile(node);
+		compiler.emit(Prog.SAVE, 1, 0);
+		compiler.emit(Prog.MATCH, 0, 0);
+		return compiler.build();
+	}
+
+	/**
+	 * Compiles {@code nodes} into one program that matches where any of them
+	 * matches. The {@link Prog#MATCH} instruction of each node has the index
+	 * of the node as its argument, and only the whole match is recorded, in
+	 * capture slots 0 and 1.
+	 *
+	 * @param nodes
+	 *            expression trees, at least one
+	 * @param flags
+	 *            {@link Pattern} flags
+	 * @param engine
+	 *            name of the engine reported by unsupported constructs
+	 * @return the compiled program
+	 * @throws UnsupportedOperationException
+	 *             if a node uses a construct an automaton cannot express
+	 */
+	static Prog compileSet(RegExNode[] nodes, int flags, String engine) {
+		ProgCompiler compiler = new ProgCompiler(flags, engine);
+		if ((flags & Pattern.COMMENTS) != 0) {
+			throw compiler.unsupported("Pattern.COMMENTS");
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			int split = i < nodes.length - 1 ? compiler.emit(Prog.SPLIT, compiler.size + 1, 0) : -1;
+			compiler.flags = flags;
+			compiler.groupCount = 0;
+			compiler.emit(Prog.SAVE, 0, 0);
+			compiler.compile(nodes[i]);
+			compiler.emit(Prog.SAVE, 1, 0);
+			compiler.emit(Prog.MATCH, i, 0);
+			if (split >= 0) {
+				compiler.arg2[split] = compiler.size;
+			}
+		}
+		// Groups of different nodes share numbers, so none is recorded.
+		compiler.groupCount = 0;
+		return compiler.build();
+	}
+
+	private Prog build() {
+		return new Prog(Arrays.copyOf(this.op, this.size), Arrays.copyOf(this.arg, this.size),
+				Arrays.copyOf(this.arg2, this.size), Arrays.copyOf(this.sets, this.setCount), this.groupCount);
+	}
+
+	UnsupportedOperationException unsupported(Object construct) {
+		return new UnsupportedOperationException(getString("unsupported.construct", construct, this.engine));
+	}
+
+	private int emit(int opcode, int argument, int argument2) {
+		if (this.size == this.op.length) {
+			if (this.size >= MAX_SIZE) {
+				throw unsupported("a program of more than " + MAX_SIZE + " instructions");
+			}
+			int capacity = this.size * 2;
+			this.op = Arrays.copyOf(this.op, capacity);
+			this.arg = Arrays.copyOf(this.arg, capacity);
+			this.arg2 = Arrays.copyOf(this.arg2, capacity);
+		}
+		this.op[this.size] = opcode;
+		this.arg[this.size] = argument;
+		this.arg2[this.size] = argument2;
+		return this.size++;
+	}
+
+	private void emitSet(CodePointSet set) {
+		int single = set.single();
+		if (single >= 0) {
+			emit(Prog.CHAR, single, 0);
+			return;
+		}
+		Integer index = this.setIndexes.get(set);
+		if (index == null) {
+			if (this.setCount == this.sets.length) {
+				this.sets = Arrays.copyOf(this.sets, this.setCount * 2);
+			}
+			index = Integer.valueOf(this.setCount);
+			this.sets[this.setCount++] = set;
+			this.setIndexes.put(set, index);
+		}
+		emit(Prog.SET, index.intValue(), 0);
+	}
+
+	private boolean has(int flag) {
+		return (this.flags & flag) != 0;
+	}
+
+	private void compile(RegExNode node) {
+		if (node == RegExNode.EMPTY) {
+			return;
+		}
+		if (node instanceof Fragment) {
+			compile(((Fragment) node).child);
+		} else if (node instanceof Concat) {
+			for (RegExNode child : ((Concat) node).children) {
+				compile(child);
+			}
+		} else if (node.literalText() != null) {
+			literal(node.literalText());
+		} else if (node instanceof Escape || node instanceof Shorthand || node instanceof Property
+				|| node instanceof CharClass) {
+			emitSet(charSet(node));
+		} else if (node instanceof Boundary) {
+			boundary((Boundary) node);
+		} else if (node instanceof Quantifier) {
+			quantifier((Quantifier) node);
+		} else if (node instanceof Group) {
+			group((Group) node);
+		} else if (node instanceof Alternation) {
+			alternation(((Alternation) node).branches);
+		} else if (node instanceof Flags) {
+			this.flags = applyFlags(((Flags) node).mask);
+		} else {
+			throw unsupported(node.toString());
+		}
+	}
+
+	private void literal(String text) {
+		for (int i = 0; i < text.length();) {
+			int c = text.codePointAt(i);
+			emitSet(caseFold(CodePointSet.of(c), this.flags));
+			i += Character.charCount(c);
+		}
+	}
+
+	/**
+	 * Returns {@code set} with the case variants of its members under
+	 * {@link Pattern} flags {@code flags}.
+	 */
+	static CodePointSet caseFold(CodePointSet set, int flags) {
+		if ((flags & Pattern.CASE_INSENSITIVE) == 0) {
+			return set;
+		}
+		return CharSets.caseFold(set, (flags & Pattern.UNICODE_CASE) != 0);
+	}
+
+	private CodePointSet charSet(RegExNode node) {
+		CodePointSet set = charSet(node, this.flags);
+		if (set == null) {
+			throw unsupported(node.toString());
+		}
+		return set;
+	}
+
+	/**
+	 * Returns the set of code points matched by a node that matches one
+	 * character under {@link Pattern} flags {@code flags}.
+	 *
+	 * @return the set of code points, or {@code null} if {@code node} does
+	 *         not match one character of a set known before matching
+	 */
+	static CodePointSet charSet(RegExNode node, int flags) {
+		if (node instanceof Escape) {
+			return caseFold(CodePointSet.of(((Escape) node).codePoint), flags);
+		} else if (node instanceof ClassChar) {
+			return caseFold(CodePointSet.of(((ClassChar) node).c), flags);
+		} else if (node instanceof ClassRange) {
+			ClassRange range = (ClassRange) node;
+			return caseFold(CodePointSet.range(range.min, range.max), flags);
+		} else if (node instanceof ClassSet) {
+			return caseFold(((ClassSet) node).set, flags);
+		} else if (node instanceof Shorthand) {
+			if (node == Shorthand.ANY_CHAR) {
+				if ((flags & Pattern.DOTALL) != 0) {
+					return CodePointSet.ALL;
+				}
+				return (flags & Pattern.UNIX_LINES) != 0 ? CharSets.NOT_LINE_FEED : CharSets.NOT_LINE_TERMINATORS;
+			}
+			return CharSets.shorthand((Shorthand) node);
+		} else if (node instanceof Property) {
+			return CharSets.property((Property) node);
+		} else if (node instanceof CharClass) {
+			CharClass charClass = (CharClass) node;
+			CodePointSet set = members(charClass.members, flags);
+			CodePointSet operand = charClass.operator == CharClass.Operator.NONE ? CodePointSet.EMPTY
+					: members(charClass.operand, flags);
+			if (set == null || operand == null) {
+				return null;
+			}
+			switch (charClass.operator) {
+			case UNION:
+				set = set.union(operand);
+				break;
+			case INTERSECTION:
+				set = set.intersection(operand);
+				break;
+			case DIFFERENCE:
+				set = set.minus(operand);
+				break;
+			default:
+				break;
+			}
+			return charClass.negated ? set.complement() : set;
+		} else if (node instanceof Fragment) {
+			return charSet(((Fragment) node).child, flags);
+		} else if (node.literalText() != null && node.literalText().codePointCount(0, node.literalText().length()) == 1) {
+			return caseFold(CodePointSet.of(node.literalText().codePointAt(0)), flags);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the union of the members of a character class, or
+	 * {@code null} if one of them is not a set of code points.
+	 */
+	private static CodePointSet members(RegExNode members, int flags) {
+		if (members == RegExNode.EMPTY) {
+			return CodePointSet.EMPTY;
+		}
+		if (members instanceof Concat) {
+			CodePointSet.Builder builder = new CodePointSet.Builder();
+			for (RegExNode member : ((Concat) members).children) {
+				CodePointSet set = members(member, flags);
+				if (set == null) {
+					return null;
+				}
+				builder.add(set);
+			}
+			return builder.build();
+		}
+		if (members instanceof Fragment) {
+			return members(((Fragment) members).child, flags);
+		}
+		return charSet(members, flags);
+	}
+
+	private void boundary(Boundary boundary) {
+		int kind = assertionKind(boundary, this.flags);
+		if (kind < 0) {
+			throw unsupported(boundary.text);
+		}
+		emit(Prog.ASSERT, kind, 0);
+	}
+
+	/**
+	 * Returns the {@link Prog#ASSERT} kind of {@code boundary} under
+	 * {@link Pattern} flags {@code flags}.
+	 *
+	 * @return the assertion kind, or -1 if no assertion of a program
+	 *         expresses {@code boundary}
+	 */
+	static int assertionKind(Boundary boundary, int flags) {
+		boolean unix = (flags & Pattern.UNIX_LINES) != 0;
+		boolean multiline = (flags & Pattern.MULTILINE) != 0;
+		if (boundary == Boundary.LINE_START) {
+			return !multiline ? Prog.BEGIN_TEXT : unix ? Prog.BEGIN_LINE_UNIX : Prog.BEGIN_LINE;
+		} else if (boundary == Boundary.LINE_END) {
+			if (multiline) {
+				return unix ? Prog.END_LINE_UNIX : Prog.END_LINE;
+			}
+			return unix ? Prog.END_TEXT_OR_TERMINATOR_UNIX : Prog.END_TEXT_OR_TERMINATOR;
+		} else if (boundary == Boundary.INPUT_START) {
+			return Prog.BEGIN_TEXT;
+		} else if (boundary == Boundary.INPUT_END) {
+			return unix ? Prog.END_TEXT_OR_TERMINATOR_UNIX : Prog.END_TEXT_OR_TERMINATOR;
+		} else if (boundary == Boundary.INPUT_END_STRICT) {
+			return Prog.END_TEXT;
+		} else if (boundary == Boundary.WORD_BOUNDARY) {
+			return Prog.WORD_BOUNDARY;
+		} else if (boundary == Boundary.NOT_WORD_BOUNDARY) {
+			return Prog.NOT_WORD_BOUNDARY;
+		}
+		return -1;
+	}
+
+	private void group(Group group) {
+		int saved = this.flags;
+		switch (group.kind) {
+		case CAPTURE:
+			int slot = 2 * ++this.groupCount;
+			emit(Prog.SAVE, slot, 0);
+			compile(group.child);
+			emit(Prog.SAVE, slot + 1, 0);
+			break;
+		case NO_CAPTURE:
+			compile(group.child);
+			break;
+		case FLAGS:
+			this.flags = applyFlags(group.flags);
+			compile(group.child);
+			break;
+		default:
+			throw unsupported(group.kind.open + "...)");
+		}
+		// Flags turned on or off inside of a group end with the group.
+		this.flags = saved;
+	}
+
+	private int applyFlags(int mask) {
+		int flags = applyFlags(this.flags, mask);
+		if ((flags & Pattern.COMMENTS) != 0) {
+			throw unsupported("(?x)");
+		}
+		return flags;
+	}
+
+	/**
+	 * Returns {@link Pattern} flags {@code flags} with the flags of
+	 * {@code mask} (see {@link Flags#mask}) turned on or off.
+	 */
+	static int applyFlags(int flags, int mask) {
+		int result = flags;
+		for (RegExMatchFlag f : RegExMatchFlag.values()) {
+			if ((mask & Flags.bit(f)) != 0) {
+				int flag = BaseRegExBuilder.patternFlag(f);
+				result = f.isOn() ? result | flag : result & ~flag;
+			}
+		}
+		return result;
+	}
+
+	private void alternation(RegExNode[] branches) {
+		int[] jumps = new int[branches.length - 1];
+		for (int i = 0; i < branches.length - 1; i++) {
+			int split = emit(Prog.SPLIT, this.size + 1, 0);
+			compile(branches[i]);
+			jumps[i] = emit(Prog.JMP, 0, 0);
+			this.arg2[split] = this.size;
+		}
+		compile(branches[branches.length - 1]);
+		for (int jump : jumps) {
+			this.arg[jump] = this.size;
+		}
+	}
+
+	private void quantifier(Quantifier quantifier) {
+		if (quantifier.mode == Quantifier.Mode.POSSESSIVE) {
+			throw unsupported(quantifier.toString());
+		}
+		boolean greedy = quantifier.mode == Quantifier.Mode.GREEDY;
+		int min;
+		int max;
+		switch (quantifier.form) {
+		case OPTIONAL:
+			min = 0;
+			max = 1;
+			break;
+		case ZERO_OR_MORE:
+			min = 0;
+			max = Quantifier.UNBOUNDED;
+			break;
+		case ONE_OR_MORE:
+			min = 1;
+			max = Quantifier.UNBOUNDED;
+			break;
+		case EXACTLY:
+			min = quantifier.min;
+			max = quantifier.min;
+			break;
+		case AT_LEAST:
+			min = quantifier.min;
+			max = Quantifier.UNBOUNDED;
+			break;
+		default:
+			min = quantifier.min;
+			max = quantifier.max;
+			break;
+		}
+		// Every copy of the child opens the same capture groups and leaves
+		// the same flags behind, so each copy starts from the same state.
+		int groups = this.groupCount;
+		int flags = this.flags;
+		int copies = 0;
+		if (max == Quantifier.UNBOUNDED) {
+			for (; copies < min - 1; copies++) {
+				copy(quantifier.child, groups, flags);
+			}
+			if (min > 0) {
+				// x+: x, then loop back to x
+				int loop = this.size;
+				copy(quantifier.child, groups, flags);
+				split(loop, this.size + 1, greedy);
+			} else {
+				// x*: split into x and out, x jumps back to the split
+				int split = emit(Prog.SPLIT, 0, 0);
+				copy(quantifier.child, groups, flags);
+				emit(Prog.JMP, split, 0);
+				setSplit(split, split + 1, this.size, greedy);
+			}
+		} else {
+			for (; copies < min; copies++) {
+				copy(quantifier.child, groups, flags);
+			}
+			// x{0,n}: (?:x(?:x...)?)? so that the copies are tried in order
+			int optional = max - min;
+			int[] splits = new int[optional];
+			for (int i = 0; i < optional; i++) {
+				splits[i] = emit(Prog.SPLIT, 0, 0);
+				copy(quantifier.child, groups, flags);
+			}
+			for (int split : splits) {
+				setSplit(split, split + 1, this.size, greedy);
+			}
+			if (min == 0 && max == 0) {
+				// x{0} still numbers the groups of x.
+				this.groupCount = groups + countGroups(quantifier.child);
+			}
+		}
+	}
+
+	private void copy(RegExNode child, int groups, int flags) {
+		this.groupCount = groups;
+		this.flags = flags;
+		compile(child);
+	}
+
+	private void split(int preferred, int other, boolean greedy) {
+		int split = emit(Prog.SPLIT, 0, 0);
+		setSplit(split, preferred, other, greedy);
+	}
+
+	private void setSplit(int split, int body, int exit, boolean greedy) {
+		this.arg[split] = greedy ? body : exit;
+		this.arg2[split] = greedy ? exit : body;
+	}
+
+	private static int countGroups(RegExNode node) {
+		if (node instanceof Group) {
+			Group group = (Group) node;
+			return (group.kind == Group.Kind.CAPTURE ? 1 : 0) + countGroups(group.child);
+		} else if (node instanceof Concat) {
+			int count = 0;
+			for (RegExNode child : ((Concat) node).children) {
+				count += countGroups(child);
+			}
+			return count;
+		} else if (node instanceof Alternation) {
+			int count = 0;
+			for (RegExNode branch : ((Alternation) node).branches) {
+				count += countGroups(branch);
+			}
+			return count;
+		} else if (node instanceof Quantifier) {
+			return countGroups(((Quantifier) node).child);
+		} else if (node instanceof Fragment) {
+			return countGroups(((Fragment) node).child);
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+/**
+ * Facts about the matches of a regular expression found without matching it
+ * <p>
+ * An analysis describes every match of the regular expression, as found by
+ * any method of {@link java.util.regex.Matcher} or {@link CompiledRegEx}.
+ * Each fact is safe but may not be the tightest one: constructs whose
+ * matches cannot be bounded before matching, such as back references and
+ * text appended verbatim, are taken to match any text. Lengths count
+ * {@code char}s, so a supplementary character counts twice.
+ * </p>
+ * <p>
+ * The engines of {@link RegExEngine} use these facts to reject inputs that
+ * cannot match, such as ones shorter than {@link #minLength()}, before
+ * matching them.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see RegExBuilder#analyze(RegExMatchFlag...)
+ */
+public final class RegExAnalysis {
+
+	private final int minLength;
+	private final int maxLength;
+	private final CodePointSet first;
+	private final CodePointSet last;
+	private final boolean startAnchored;
+	private final boolean endAnchored;
+	private final boolean backReferences;
+	private final boolean lookaround;
+	private final boolean previousMatchEnd;
+
+	RegExAnalysis(int minLength, int maxLength, CodePointSet first, CodePointSet last, boolean startAnchored,
+			boolean endAnchored, boolean backReferences, boolean lookaround, boolean previousMatchEnd) {
+		this.minLength = minLength;
+		this.maxLength = maxLength;
+		this.first = first;
+		this.last = last;
+		this.startAnchored = startAnchored;
+		this.endAnchored = endAnchored;
+		this.backReferences = backReferences;
+		this.lookaround = lookaround;
+		this.previousMatchEnd = previousMatchEnd;
+	}
+
+	/**
+	 * Returns the least number of characters a match spans.
+	 *
+	 * @return the minimum length of a match
+	 */
+	public int minLength() {
+		return this.minLength;
+	}
+
+	/**
+	 * Returns the greatest number of characters a match spans.
+	 *
+	 * @return the maximum length of a match, or -1 if it is unbounded
+	 */
+	public int maxLength() {
+		return this.maxLength;
+	}
+
+	/**
+	 * Returns {@code true} if every match starts at the start of the input,
+	 * as when every branch starts with <tt>\A</tt>, or with <tt>^</tt>
+	 * outside of multiline mode.
+	 *
+	 * @return {@code true} if the regular expression is anchored at the start
+	 * @see RegExBuilder#matchInputStart()
+	 * @see RegExBuilder#matchLineStart()
+	 */
+	public boolean isAnchoredAtStart() {
+		return this.startAnchored;
+	}
+
+	/**
+	 * Returns {@code true} if every match ends at the end of the input or
+	 * before a line terminator at its end, as when every branch ends with
+	 * <tt>\z</tt>, <tt>\Z</tt>, or <tt>$</tt> outside of multiline mode.
+	 *
+	 * @return {@code true} if the regular expression is anchored at the end
+	 * @see RegExBuilder#matchInputEnd()
+	 * @see RegExBuilder#matchLineEnd()
+	 */
+	public boolean isAnchoredAtEnd() {
+		return this.endAnchored;
+	}
+
+	/**
+	 * Returns {@code true} if the regular expression may contain back
+	 * references, which no automaton engine supports.
+	 *
+	 * @return {@code true} if there may be back references
+	 */
+	public boolean hasBackReferences() {
+		return this.backReferences;
+	}
+
+	/**
+	 * Returns {@code true} if the regular expression may contain lookahead
+	 * or lookbehind, which no automaton engine supports.
+	 *
+	 * @return {@code true} if there may be lookaround
+	 */
+	public boolean hasLookaround() {
+		return this.lookaround;
+	}
+
+	/**
+	 * Returns {@code true} if the regular expression may contain <tt>\G</tt>,
+	 * which matches where a matcher starts searching, so that a search cannot
+	 * skip ahead to where a match can start.
+	 *
+	 * @see RegExBuilder#previousMatchEnd()
+	 */
+	boolean hasPreviousMatchEnd() {
+		return this.previousMatchEnd;
+	}
+
+	/**
+	 * Returns {@code true} if a nonempty match can start with the specified
+	 * code point.
+	 *
+	 * @param codePoint
+	 *            code point to test
+	 * @return {@code true} if a match can start with {@code codePoint}
+	 */
+	public boolean canStartWith(int codePoint) {
+		return this.first.contains(codePoint);
+	}
+
+	/**
+	 * Returns {@code true} if a nonempty match can end with the specified
+	 * code point.
+	 *
+	 * @param codePoint
+	 *            code point to test
+	 * @return {@code true} if a match can end with {@code codePoint}
+	 */
+	public boolean canEndWith(int codePoint) {
+		return this.last.contains(codePoint);
+	}
+
+	/**
+	 * Returns a character class in Java syntax of the code points a nonempty
+	 * match can start with.
+	 *
+	 * @return the possible first characters of a match
+	 */
+	public String firstChars() {
+		return render(this.first);
+	}
+
+	/**
+	 * Returns a character class in Java syntax of the code points a nonempty
+	 * match can end with.
+	 *
+	 * @return the possible last characters of a match
+	 */
+	public String lastChars() {
+		return render(this.last);
+	}
+
+	private static String render(CodePointSet set) {
+		if (set.isEmpty()) {
+			return "[^" + new RegExNode.ClassSet(CodePointSet.ALL).toString(Dialect.JAVA) + "]";
+		}
+		return "[" + new RegExNode.ClassSet(set).toString(Dialect.JAVA) + "]";
+	}
+
+	/**
+	 * Returns {@code true} if the whole of {@code input} cannot match.
+	 *
+	 * @see CompiledRegEx#matches(CharSequence)
+	 */
+	boolean rejectsMatch(CharSequence input) {
+		int length = input.length();
+		if (length < this.minLength || this.maxLength >= 0 && length > this.maxLength) {
+			return true;
+		}
+		return length > 0 && (!this.first.contains(Character.codePointAt(input, 0))
+				|| !this.last.contains(Character.codePointBefore(input, length)));
+	}
+
+	/**
+	 * Returns {@code true} if no part of {@code input} can match.
+	 *
+	 * @see CompiledRegEx#find(CharSequence)
+	 */
+	boolean rejectsFind(CharSequence input) {
+		return input.length() < this.minLength;
+	}
+
+	/**
+	 * Returns the index of the first code point of {@code input} at or after
+	 * {@code from} that a nonempty match can start with, or -1 if there is
+	 * none. Only meaningful when matches are never empty.
+	 */
+	int indexOfFirst(CharSequence input, int from) {
+		int end = input.length() - this.minLength;
+		for (int i = from; i <= end;) {
+			int c = Character.codePointAt(input, i);
+			if (this.first.contains(c)) {
+				return i;
+			}
+			i += Character.charCount(c);
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns {@code true} if every code point can start a match, so that
+	 * {@link #indexOfFirst(CharSequence, int)} skips nothing.
+	 */
+	boolean startsWithAny() {
+		return this.minLength == 0 || this.first.equals(CodePointSet.ALL);
+	}
+
+	@Override
+	public String toString() {
+		return "RegExAnalysis[length=" + this.minLength + ".." + (this.maxLength < 0 ? "" : this.maxLength)
+				+ ", first=" + firstChars() + ", last=" + lastChars() + ", anchored="
+				+ (this.startAnchored ? "^" : "") + (this.endAnchored ? "$" : "") + ", backReferences="
+				+ this.backReferences + ", lookaround=" + this.lookaround + "]";
+	}
+}
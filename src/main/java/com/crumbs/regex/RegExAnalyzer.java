@@ -0,0 +1,373 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.regex.Pattern;
+
+import com.crumbs.regex.RegExNode.Alternation;
+import com.crumbs.regex.RegExNode.BackReference;
+import com.crumbs.regex.RegExNode.Boundary;
+import com.crumbs.regex.RegExNode.Concat;
+import com.crumbs.regex.RegExNode.Flags;
+import com.crumbs.regex.RegExNode.Fragment;
+import com.crumbs.regex.RegExNode.Group;
+import com.crumbs.regex.RegExNode.Literal;
+import com.crumbs.regex.RegExNode.Quantifier;
+import com.crumbs.regex.RegExNode.Raw;
+
+/**
+ * Finds facts about the matches of an expression tree without matching it
+ * <p>
+ * The analyzer gives each construct the meaning {@code java.util.regex}
+ * gives its Java rendering, as {@link ProgCompiler} does, but it accepts
+ * every construct: those whose matches it cannot bound, such as back
+ * references and text appended verbatim, are taken to match any text, so
+ * every fact holds of every match even when it is not the tightest one.
+ * Lengths count {@code char}s, not code points.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see RegExAnalysis
+ */
+final class RegExAnalyzer {
+
+	/**
+	 * Facts about the matches of one node
+	 */
+	private static final class Facts {
+		int min;
+
+		/**
+		 * greatest length of a match, or -1 if it is unbounded
+		 */
+		int max;
+
+		/**
+		 * code points a nonempty match can start with
+		 */
+		CodePointSet first;
+
+		/**
+		 * code points a nonempty match can end with
+		 */
+		CodePointSet last;
+
+		boolean startAnchored;
+		boolean endAnchored;
+
+		Facts(int min, int max, CodePointSet first, CodePointSet last) {
+			this.min = min;
+			this.max = max;
+			this.first = first;
+			this.last = last;
+		}
+	}
+
+	/**
+	 * {@link Pattern} flags whose effect on the whole expression the
+	 * analyzer does not follow
+	 */
+	private static final int OPAQUE_FLAGS = Pattern.LITERAL | Pattern.CANON_EQ;
+
+	/**
+	 * {@link Pattern} flags in effect at the node being analyzed
+	 */
+	private int flags;
+
+	private boolean backReferences;
+	private boolean lookaround;
+	private boolean previousMatchEnd;
+
+	private RegExAnalyzer(int flags) {
+		this.flags = flags;
+	}
+
+	/**
+	 * Analyzes the matches of {@code node}.
+	 *
+	 * @param node
+	 *            expression tree
+	 * @param flags
+	 *            {@link Pattern} flags
+	 * @return the facts about its matches
+	 */
+	static RegExAnalysis analyze(RegExNode node, int flags) {
+		RegExAnalyzer analyzer = new RegExAnalyzer(flags);
+		Facts facts = (flags & OPAQUE_FLAGS) != 0 ? unknown() : analyzer.facts(node);
+		if ((flags & OPAQUE_FLAGS) != 0) {
+			analyzer.backReferences = true;
+			analyzer.lookaround = true;
+			analyzer.previousMatchEnd = true;
+		}
+		return new RegExAnalysis(facts.min, facts.max, facts.first, facts.last, facts.startAnchored,
+				facts.endAnchored, analyzer.backReferences, analyzer.lookaround, analyzer.previousMatchEnd);
+	}
+
+	private static Facts unknown() {
+		return new Facts(0, -1, CodePointSet.ALL, CodePointSet.ALL);
+	}
+
+	private static Facts empty() {
+		return new Facts(0, 0, CodePointSet.EMPTY, CodePointSet.EMPTY);
+	}
+
+	private boolean has(int flag) {
+		return (this.flags & flag) != 0;
+	}
+
+	private Facts facts(RegExNode node) {
+		if (node == RegExNode.EMPTY) {
+			return empty();
+		} else if (node instanceof Fragment) {
+			return facts(((Fragment) node).child);
+		} else if (node instanceof Concat) {
+			return concat(((Concat) node).children);
+		} else if (node.literalText() != null) {
+			return literal(node);
+		} else if (node instanceof Boundary) {
+			return boundary((Boundary) node);
+		} else if (node instanceof Quantifier) {
+			return quantifier((Quantifier) node);
+		} else if (node instanceof Group) {
+			return group((Group) node);
+		} else if (node instanceof Alternation) {
+			return alternation(((Alternation) node).branches);
+		} else if (node instanceof Flags) {
+			this.flags = ProgCompiler.applyFlags(this.flags, ((Flags) node).mask);
+			return empty();
+		} else if (node instanceof BackReference) {
+			this.backReferences = true;
+			return unknown();
+		} else if (node instanceof Raw) {
+			// Verbatim text may hold any construct.
+			this.backReferences = true;
+			this.lookaround = true;
+			this.previousMatchEnd = true;
+			return unknown();
+		}
+		CodePointSet set = ProgCompiler.charSet(node, this.flags);
+		if (set == null) {
+			return unknown();
+		}
+		set = caseFold(set);
+		return new Facts(length(set, false), length(set, true), set, set);
+	}
+
+	/**
+	 * Returns {@code set} with every case variant of its members if case is
+	 * ignored. {@code java.util.regex} also ignores the case of properties
+	 * like <tt>\p{Lu}</tt>, so the variants are added to every set.
+	 */
+	private CodePointSet caseFold(CodePointSet set) {
+		return has(Pattern.CASE_INSENSITIVE) ? CharSets.caseFold(set, true) : set;
+	}
+
+	/**
+	 * Returns the least or greatest number of {@code char}s of a member of
+	 * {@code set}.
+	 */
+	private static int length(CodePointSet set, boolean max) {
+		if (set.isEmpty()) {
+			return 1;
+		}
+		int c = max ? set.max(set.rangeCount() - 1) : set.min(0);
+		return Character.charCount(c);
+	}
+
+	private Facts literal(RegExNode node) {
+		String text = node.literalText();
+		if (has(Pattern.COMMENTS) && node instanceof Literal) {
+			for (int i = 0; i < text.length(); i++) {
+				if (Character.isWhitespace(text.charAt(i)) || text.charAt(i) == '#') {
+					// Comments mode drops unescaped white space and comments.
+					return unknown();
+				}
+			}
+		}
+		if (text.length() == 0) {
+			return empty();
+		}
+		Facts facts = new Facts(0, 0, null, null);
+		for (int i = 0; i < text.length();) {
+			int c = text.codePointAt(i);
+			CodePointSet set = caseFold(CodePointSet.of(c));
+			facts.min += length(set, false);
+			facts.max += length(set, true);
+			if (facts.first == null) {
+				facts.first = set;
+			}
+			facts.last = set;
+			i += Character.charCount(c);
+		}
+		return facts;
+	}
+
+	private Facts boundary(Boundary boundary) {
+		Facts facts = empty();
+		this.previousMatchEnd |= boundary == Boundary.PREVIOUS_MATCH_END;
+		boolean multiline = has(Pattern.MULTILINE);
+		facts.startAnchored = boundary == Boundary.INPUT_START || boundary == Boundary.LINE_START && !multiline;
+		facts.endAnchored = boundary == Boundary.INPUT_END || boundary == Boundary.INPUT_END_STRICT
+				|| boundary == Boundary.LINE_END && !multiline;
+		return facts;
+	}
+
+	private Facts concat(RegExNode[] children) {
+		Facts[] parts = new Facts[children.length];
+		Facts facts = empty();
+		for (int i = 0; i < children.length; i++) {
+			parts[i] = facts(children[i]);
+			facts.min = add(facts.min, parts[i].min);
+			facts.max = facts.max < 0 || parts[i].max < 0 ? -1 : add(facts.max, parts[i].max);
+		}
+		// A match starts with the first part that matches text, and is
+		// anchored if an anchor comes before any part that can match text.
+		for (Facts part : parts) {
+			facts.first = facts.first.union(part.first);
+			if (part.min > 0) {
+				break;
+			}
+		}
+		for (Facts part : parts) {
+			if (part.startAnchored || part.max != 0) {
+				facts.startAnchored = part.startAnchored;
+				break;
+			}
+		}
+		for (int i = parts.length - 1; i >= 0; i--) {
+			facts.last = facts.last.union(parts[i].last);
+			if (parts[i].min > 0) {
+				break;
+			}
+		}
+		for (int i = parts.length - 1; i >= 0; i--) {
+			if (parts[i].endAnchored || parts[i].max != 0) {
+				facts.endAnchored = parts[i].endAnchored;
+				break;
+			}
+		}
+		return facts;
+	}
+
+	private Facts alternation(RegExNode[] branches) {
+		int flags = this.flags;
+		Facts facts = null;
+		for (RegExNode branch : branches) {
+			// Flags turned on in a branch end with it.
+			this.flags = flags;
+			Facts branchFacts = facts(branch);
+			if (facts == null) {
+				facts = branchFacts;
+				continue;
+			}
+			facts.min = Math.min(facts.min, branchFacts.min);
+			facts.max = facts.max < 0 || branchFacts.max < 0 ? -1 : Math.max(facts.max, branchFacts.max);
+			facts.first = facts.first.union(branchFacts.first);
+			facts.last = facts.last.union(branchFacts.last);
+			facts.startAnchored &= branchFacts.startAnchored;
+			facts.endAnchored &= branchFacts.endAnchored;
+		}
+		this.flags = flags;
+		return facts;
+	}
+
+	private Facts group(Group group) {
+		int saved = this.flags;
+		Facts facts;
+		switch (group.kind) {
+		case CAPTURE:
+		case NO_CAPTURE:
+		case ATOMIC:
+			facts = facts(group.child);
+			break;
+		case FLAGS:
+			this.flags = ProgCompiler.applyFlags(this.flags, group.flags);
+			facts = facts(group.child);
+			break;
+		default:
+			// Lookaround matches no text of its own.
+			this.lookaround = true;
+			facts(group.child);
+			facts = empty();
+			break;
+		}
+		this.flags = saved;
+		return facts;
+	}
+
+	private Facts quantifier(Quantifier quantifier) {
+		int min;
+		int max;
+		switch (quantifier.form) {
+		case OPTIONAL:
+			min = 0;
+			max = 1;
+			break;
+		case ZERO_OR_MORE:
+			min = 0;
+			max = Quantifier.UNBOUNDED;
+			break;
+		case ONE_OR_MORE:
+			min = 1;
+			max = Quantifier.UNBOUNDED;
+			break;
+		case EXACTLY:
+			min = quantifier.min;
+			max = quantifier.min;
+			break;
+		case AT_LEAST:
+			min = quantifier.min;
+			max = Quantifier.UNBOUNDED;
+			break;
+		default:
+			min = quantifier.min;
+			max = quantifier.max;
+			break;
+		}
+		int saved = this.flags;
+		Facts child = facts(quantifier.child);
+		this.flags = saved;
+		if (max == 0) {
+			return empty();
+		}
+		Facts facts = new Facts(multiply(child.min, min), 0, child.first, child.last);
+		if (child.max == 0) {
+			facts.max = 0;
+		} else if (child.max < 0 || max == Quantifier.UNBOUNDED) {
+			facts.max = -1;
+		} else {
+			facts.max = multiply(child.max, max);
+		}
+		facts.startAnchored = min > 0 && child.startAnchored;
+		facts.endAnchored = min > 0 && child.endAnchored;
+		return facts;
+	}
+
+	/**
+	 * Adds lengths, saturating at {@link Integer#MAX_VALUE}.
+	 */
+	private static int add(int a, int b) {
+		return (int) Math.min((long) a + b, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Multiplies lengths, saturating at {@link Integer#MAX_VALUE}.
+	 */
+	private static int multiply(int a, int b) {
+		return (int) Math.min((long) a * b, Integer.MAX_VALUE);
+	}
+}
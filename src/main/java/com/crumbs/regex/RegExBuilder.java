@@ -15,6 +15,9 @@
  */
 package com.crumbs.regex;
 
+import java.util.List;
+import java.util.regex.Pattern;
+
 /**
  * Interface for regular-expression builders
  * 
@@ -42,6 +45,125 @@ public interface RegExBuilder extends CommonBuilder<RegExBuilder> {
 	 */
 	RegExBuilder re(RegExBuilder regEx, RegExBuilder... regExN);
 
+	/**
+	 * Appends each fragment specified to the regular expression.
+	 * <p>
+	 * The result is the same as appending the builders that were frozen, but
+	 * the fragments are shared instead of copied, and their renderings are
+	 * computed only once.
+	 * </p>
+	 *
+	 * @param fragment
+	 *            fragment to append to this regular expression builder
+	 * @param fragmentN
+	 *            other fragments to be appended to this regular expression
+	 *            builder
+	 * @return {@code this} RegExBuilder or a {@code new} one
+	 * @throws IllegalArgumentException
+	 *             if {@code fragment}, {@code fragmentN}, or one of the items
+	 *             in {@code fragmentN} is {@code null}
+	 * @see #freeze()
+	 */
+	RegExBuilder fragment(RegExFragment fragment, RegExFragment... fragmentN);
+
+	/**
+	 * Returns an immutable, thread-safe snapshot of the regular expression
+	 * built so far.
+	 * <p>
+	 * Later changes to this builder do not affect the returned fragment.
+	 * Structurally identical fragments share memory; see
+	 * {@link RegExFragment}.
+	 * </p>
+	 *
+	 * @return a fragment of the regular expression built so far
+	 */
+	RegExFragment freeze();
+
+	/**
+	 * Returns the regular expression built so far compiled with the specified
+	 * match flags.
+	 * <p>
+	 * Patterns are cached by regular expression and flags in the
+	 * {@link PatternCache#shared() shared} {@link PatternCache}, so
+	 * identical builders share one compiled pattern. Flags that turn a match
+	 * flag off only cancel the opposite flag given earlier; match flags are
+	 * off by default.
+	 * </p>
+	 *
+	 * @param flags
+	 *            match flags to compile the pattern with
+	 * @return the compiled pattern
+	 * @throws IllegalArgumentException
+	 *             if {@code flags} or one of its items is {@code null}
+	 * @throws java.util.regex.PatternSyntaxException
+	 *             if the regular expression is not valid
+	 */
+	Pattern compile(RegExMatchFlag... flags);
+
+	/**
+	 * Returns the regular expression built so far compiled with the specified
+	 * match flags into a {@link CompiledRegEx} that any number of threads can
+	 * use at once.
+	 * <p>
+	 * The flags are interpreted as in {@link #compile(RegExMatchFlag...)}.
+	 * The regular expression is compiled for the {@link RegExEngine} of the
+	 * factory that created this builder, {@link RegExEngine#JAVA} by default.
+	 * </p>
+	 *
+	 * @param flags
+	 *            match flags to compile the regular expression with
+	 * @return the compiled regular expression
+	 * @throws IllegalArgumentException
+	 *             if {@code flags} or one of its items is {@code null}
+	 * @throws java.util.regex.PatternSyntaxException
+	 *             if the regular expression is not valid
+	 * @throws UnsupportedOperationException
+	 *             if the engine does not support a construct of the regular
+	 *             expression
+	 */
+	CompiledRegEx compileRegEx(RegExMatchFlag... flags);
+
+	/**
+	 * Returns facts about the matches of the regular expression built so far
+	 * with the specified match flags, such as their minimum and maximum
+	 * lengths and the characters they can start with.
+	 * <p>
+	 * The flags are interpreted as in {@link #compile(RegExMatchFlag...)}.
+	 * Every construct is analyzed, whatever the engine.
+	 * </p>
+	 *
+	 * @param flags
+	 *            match flags the regular expression is compiled with
+	 * @return the analysis of the regular expression
+	 * @throws IllegalArgumentException
+	 *             if {@code flags} or one of its items is {@code null}
+	 */
+	RegExAnalysis analyze(RegExMatchFlag... flags);
+
+	/**
+	 * Returns the parts of the regular expression built so far on which a
+	 * backtracking matcher can take time that grows faster than linearly
+	 * with the length of its input, such as nested loops like
+	 * <tt>(a+)+</tt>.
+	 * <p>
+	 * The flags are interpreted as in {@link #compile(RegExMatchFlag...)}.
+	 * Each risk names the sub-builder at fault and an input that makes a
+	 * match slow, so that a pattern can be rejected before it is used, for
+	 * example in a test that asserts that the list is empty. The
+	 * {@link BacktrackingRisk#kind() kind} of a risk is for the
+	 * {@code java.util.regex} that {@link #compile(RegExMatchFlag...)} uses,
+	 * and may be {@link BacktrackingRisk.Kind#LINEAR linear} there.
+	 * </p>
+	 *
+	 * @param flags
+	 *            match flags the regular expression is compiled with
+	 * @return the risks found, outer parts first; an empty list if there is
+	 *         none
+	 * @throws IllegalArgumentException
+	 *             if {@code flags} or one of its items is {@code null}
+	 */
+	List<BacktrackingRisk> backtrackingRisks(RegExMatchFlag... flags);
+
 	/**
 	 * Appends {@code obj.toString()} to the regular expression, escaping all
 	 * special characters as needed.
@@ -73,7 +195,7 @@ public interface RegExBuilder extends CommonBuilder<RegExBuilder> {
 	RegExBuilder re(Object obj, Object... objN);
 
 	/**
-	 * Calls {@code regEx(Byte.valueOf(number))}.
+	 * Equivalent to {@code re(Byte.valueOf(number))}.
 	 * <p>
 	 * This is a convenience method.
 	 * </p>
@@ -86,7 +208,7 @@ public interface RegExBuilder extends CommonBuilder<RegExBuilder> {
 	RegExBuilder re(byte number);
 
 	/**
-	 * Calls {@code regEx(Short.valueOf(number))}.
+	 * Equivalent to {@code re(Short.valueOf(number))}.
 	 * <p>
 	 * This is a convenience method.
 	 * </p>
@@ -99,7 +221,7 @@ public interface RegExBuilder extends CommonBuilder<RegExBuilder> {
 	RegExBuilder re(short number);
 
 	/**
-	 * Calls {@code regEx(Integer.valueOf(integer))}.
+	 * Equivalent to {@code re(Integer.valueOf(integer))}.
 	 * <p>
 	 * This is a convenience method.
 	 * </p>
@@ -112,7 +234,7 @@ public interface RegExBuilder extends CommonBuilder<RegExBuilder> {
 	RegExBuilder re(int integer);
 
 	/**
-	 * Calls {@code regEx(Long.valueOf(number))}.
+	 * Equivalent to {@code re(Long.valueOf(number))}.
 	 * <p>
 	 * This is a convenience method.
 	 * </p>
@@ -125,7 +247,7 @@ public interface RegExBuilder extends CommonBuilder<RegExBuilder> {
 	RegExBuilder re(long number);
 
 	/**
-	 * Calls {@code regEx(Float.valueOf(number))}.
+	 * Equivalent to {@code re(Float.valueOf(number))}.
 	 * <p>
 	 * This is a convenience method. If the decimal separator {@code .} is part
 	 * of the number, it is escaped.
@@ -139,7 +261,7 @@ public interface RegExBuilder extends CommonBuilder<RegExBuilder> {
 	RegExBuilder re(float number);
 
 	/**
-	 * Calls {@code regEx(Double.valueOf(number))}.
+	 * Equivalent to {@code re(Double.valueOf(number))}.
 	 * <p>
 	 * This is a convenience method. If the decimal separator {@code .} is part
 	 * of the number, it is escaped.
@@ -153,7 +275,7 @@ public interface RegExBuilder extends CommonBuilder<RegExBuilder> {
 	RegExBuilder re(double number);
 
 	/**
-	 * Calls {@code regEx(Boolean.valueOf(primitive))}.
+	 * Equivalent to {@code re(Boolean.valueOf(primitive))}.
 	 * <p>
 	 * This is a convenience method.
 	 * </p>
@@ -166,7 +288,7 @@ public interface RegExBuilder extends CommonBuilder<RegExBuilder> {
 	RegExBuilder re(boolean primitive);
 
 	/**
-	 * Calls {@code regEx(Character.valueOf(character))}.
+	 * Equivalent to {@code re(Character.valueOf(character))}.
 	 * <p>
 	 * This is a convenience method.
 	 * </p>
@@ -419,11 +541,62 @@ public interface RegExBuilder extends CommonBuilder<RegExBuilder> {
 
 	RegExBuilder notCharClass(CharClassBuilder charClass);
 
-	// TODO documentation
+	/**
+	 * Appends a character class matching the characters of either
+	 * {@code charClass0} or {@code charClass1} to the regular expression.
+	 * <p>
+	 * The union is computed when the pattern is built and appended as the
+	 * fewest characters and ranges, as with
+	 * {@link CharClassBuilder#union(CharClassBuilder)}. If a class contains
+	 * text appended verbatim, Java's nested class <tt>[</tt><em>A</em>
+	 * <tt>[</tt><em>B</em><tt>]]</tt> is appended instead.
+	 * </p>
+	 * 
+	 * @param charClass0
+	 *            first character class
+	 * @param charClass1
+	 *            second character class
+	 * @return {@code this} RegExBuilder or a {@code new} one
+	 */
 	RegExBuilder union(CharClassBuilder charClass0, CharClassBuilder charClass1);
 
+	/**
+	 * Appends a character class matching the characters of both
+	 * {@code charClass0} and {@code charClass1} to the regular expression.
+	 * <p>
+	 * The intersection is computed when the pattern is built, as with
+	 * {@link #union(CharClassBuilder, CharClassBuilder)}; Java's
+	 * <tt>[</tt><em>A</em><tt>&amp;&amp;[</tt><em>B</em><tt>]]</tt> is the
+	 * fallback.
+	 * </p>
+	 * 
+	 * @param charClass0
+	 *            first character class
+	 * @param charClass1
+	 *            second character class
+	 * @return {@code this} RegExBuilder or a {@code new} one
+	 */
 	RegExBuilder intersection(CharClassBuilder charClass0, CharClassBuilder charClass1);
 
+	/**
+	 * Appends a character class matching the characters of
+	 * {@code charClass0} that are not in {@code charClass1} to the regular
+	 * expression.
+	 * <p>
+	 * The difference is computed when the pattern is built, as with
+	 * {@link #union(CharClassBuilder, CharClassBuilder)}; Java's
+	 * <tt>[</tt><em>A</em><tt>&amp;&amp;[^</tt><em>B</em><tt>]]</tt> is the
+	 * fallback.
+	 * </p>
+	 * 
+	 * @param charClass0
+	 *            character class to take characters from
+	 * @param charClass1
+	 *            character class of the characters to leave out
+	 * @return {@code this} RegExBuilder or a {@code new} one
+	 */
+	RegExBuilder difference(CharClassBuilder charClass0, CharClassBuilder charClass1);
+
 	// =================
 	// Boundary Matchers
 	// =================
@@ -814,4 +987,36 @@ public interface RegExBuilder extends CommonBuilder<RegExBuilder> {
 	 * @return non-{@code null} code snippet
 	 */
 	String asCode();
+
+	/**
+	 * Returns the Java source of a class that matches the regular expression
+	 * built thusfar with the specified match flags, without compiling a
+	 * regular expression at run time.
+	 * <p>
+	 * The flags are interpreted as in {@link #compile(RegExMatchFlag...)}.
+	 * The class has static <tt>matches</tt>, <tt>lookingAt</tt> and
+	 * <tt>find</tt> methods that take a {@link CharSequence} and return what
+	 * the methods of the same names of {@link java.util.regex.Matcher} would,
+	 * and depends on nothing but the JDK. Its DFAs are built when the source
+	 * is generated, for example by a build step that writes it to a source
+	 * directory, so that loading the class costs no more than copying its
+	 * tables. The regular expression must be supported by
+	 * {@link RegExEngine#DFA}.
+	 * </p>
+	 *
+	 * @param className
+	 *            fully qualified name of the class, such as
+	 *            <tt>com.example.Dates</tt>
+	 * @param flags
+	 *            match flags to compile the regular expression with
+	 * @return non-{@code null} source of a compilation unit
+	 * @throws IllegalArgumentException
+	 *             if {@code className} is {@code null} or not a fully
+	 *             qualified class name, or if {@code flags} or one of its
+	 *             items is {@code null}
+	 * @throws UnsupportedOperationException
+	 *             if {@link RegExEngine#DFA} does not support a construct of
+	 *             the regular expression, or if its DFA has too many states
+	 */
+	String asCode(String className, RegExMatchFlag... flags);
 }
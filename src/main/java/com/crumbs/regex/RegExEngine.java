@@ -0,0 +1,130 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.regex.Pattern;
+
+/**
+ * Engine that {@link RegExBuilder#compileRegEx(RegExMatchFlag...)} compiles
+ * regular expressions for
+ * <p>
+ * A {@link RegExBuilderFactory} selects the engine of the builders it
+ * creates; see {@link JRegExBuilderFactory#JRegExBuilderFactory(RegExEngine)}.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+public enum RegExEngine {
+	/**
+	 * Java's backtracking {@code java.util.regex} engine, which supports every
+	 * construct but can take exponential time on some expressions
+	 * <p>
+	 * An alternation of literals, such as a keyword list, is matched by an
+	 * Aho-Corasick automaton instead, with the same results.
+	 * </p>
+	 */
+	JAVA {
+		@Override
+		CompiledRegEx compile(BaseRegExBuilder builder, int flags) {
+			CompiledRegEx literals = AhoCorasickCompiledRegEx.of(builder.toNode(), flags, builder.matchLimit());
+			if (literals != null) {
+				return literals;
+			}
+			Pattern pattern = PatternCache.shared().compile(builder.javaString(flags), flags);
+			return new JCompiledRegEx(pattern, LiteralPrefilter.of(builder.optimizedNode(flags), flags),
+					builder.analysis(flags), builder.matchLimit());
+		}
+	},
+
+	/**
+	 * Thompson NFA simulation, which matches in O(<em>n</em>&middot;
+	 * <em>m</em>) time for an input of length <em>n</em> and an expression of
+	 * size <em>m</em>
+	 * <p>
+	 * Matches are the same as Java's unless an iteration of a loop can match
+	 * the empty string: Java leaves the loop when an iteration matches empty,
+	 * so a match of <tt>(?:b??|b)*</tt> is always empty in Java, while here it
+	 * still starts at the leftmost position but may end elsewhere. Back
+	 * references, lookaround, atomic groups, possessive quantifiers,
+	 * <tt>\G</tt>, comments, and text appended verbatim are not supported. As
+	 * with {@link #JAVA}, an alternation of literals is matched by an
+	 * Aho-Corasick automaton.
+	 * </p>
+	 */
+	NFA {
+		@Override
+		CompiledRegEx compile(BaseRegExBuilder builder, int flags) {
+			CompiledRegEx literals = AhoCorasickCompiledRegEx.of(builder.toNode(), flags, builder.matchLimit());
+			if (literals != null) {
+				return literals;
+			}
+			return new NFACompiledRegEx(ProgCompiler.compile(builder.optimizedNode(flags), flags, name()),
+					builder.analysis(flags), builder.matchLimit());
+		}
+	},
+
+	/**
+	 * Lazily built DFA, which supports the same constructs as {@link #NFA}
+	 * and matches in time linear in the length of the input with a single
+	 * table lookup per code point once its state cache is warm
+	 * <p>
+	 * Regular expressions compiled for this engine are
+	 * {@link DFACompiledRegEx}s, which report on their state caches.
+	 * </p>
+	 */
+	DFA {
+		@Override
+		CompiledRegEx compile(BaseRegExBuilder builder, int flags) {
+			return new DFACompiledRegEx(ProgCompiler.compile(builder.optimizedNode(flags), flags, name()),
+					builder.analysis(flags), DFACompiledRegEx.DEFAULT_CACHE_BUDGET, builder.matchLimit());
+		}
+	},
+
+	/**
+	 * {@link #DFA} compiled to a JVM class per regular expression, which the
+	 * JIT turns into specialized machine code, for the regular expressions
+	 * that are searched the most
+	 * <p>
+	 * The first search of a regular expression builds its whole DFA and
+	 * generates the class, which is defined as a hidden class on Java 15 and
+	 * later. A regular expression whose DFA has too many states is matched as
+	 * with {@link #DFA}. The same constructs as with {@link #DFA} are
+	 * supported.
+	 * </p>
+	 */
+	BYTECODE {
+		@Override
+		CompiledRegEx compile(BaseRegExBuilder builder, int flags) {
+			return new BytecodeCompiledRegEx(ProgCompiler.compile(builder.optimizedNode(flags), flags, name()),
+					builder.analysis(flags), builder.matchLimit());
+		}
+	};
+
+	/**
+	 * Compiles the regular expression of {@code builder} for this engine.
+	 *
+	 * @param builder
+	 *            builder of the regular expression
+	 * @param flags
+	 *            {@link java.util.regex.Pattern} flags
+	 * @return the compiled regular expression
+	 * @throws UnsupportedOperationException
+	 *             if this engine does not support a construct of the regular
+	 *             expression
+	 */
+	abstract CompiledRegEx compile(BaseRegExBuilder builder, int flags);
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.crumbs.regex.RegExNode.Fragment;
+
+/**
+ * Immutable, thread-safe snapshot of a regular expression returned by
+ * {@link RegExBuilder#freeze()}
+ * <p>
+ * A fragment is meant to be built once and reused many times with
+ * {@link RegExBuilder#fragment(RegExFragment, RegExFragment...)}. Unlike appending a
+ * builder, appending a fragment neither copies nor re-renders it: the
+ * rendering of a fragment in each regular-expression dialect is computed the
+ * first time it is needed and then shared by every regular expression the
+ * fragment is part of.
+ * </p>
+ * <p>
+ * Fragments are hash-consed: structurally identical fragments, and
+ * structurally identical parts of fragments, share one instance held in a
+ * weak table, so large libraries of patterns share both memory and rendering
+ * work. Entries of the table disappear once no fragment refers to them.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+public final class RegExFragment {
+
+	/**
+	 * Table of canonical nodes
+	 * <p>
+	 * Each node is mapped to a weak reference to its canonical instance, so
+	 * neither keys nor values keep an entry alive.
+	 * </p>
+	 */
+	static final class Interner {
+		private final Map<RegExNode, WeakReference<RegExNode>> table = new WeakHashMap<RegExNode, WeakReference<RegExNode>>();
+
+		/**
+		 * Returns the canonical node structurally equal to {@code node}; the
+		 * children of a canonical node are canonical.
+		 *
+		 * @param node
+		 *            node to intern
+		 * @return the canonical node equal to {@code node}
+		 */
+		synchronized RegExNode intern(RegExNode node) {
+			WeakReference<RegExNode> reference = this.table.get(node);
+			RegExNode canonical = reference == null ? null : reference.get();
+			if (canonical == null) {
+				canonical = node.internChildren(this);
+				this.table.put(canonical, new WeakReference<RegExNode>(canonical));
+			}
+			return canonical;
+		}
+
+		/**
+		 * Interns each of the specified nodes.
+		 *
+		 * @param nodes
+		 *            nodes to intern
+		 * @return {@code nodes} if each node is canonical or else a copy of
+		 *         {@code nodes} holding the canonical nodes
+		 */
+		synchronized RegExNode[] intern(RegExNode[] nodes) {
+			RegExNode[] canonical = nodes;
+			for (int i = 0; i < nodes.length; i++) {
+				RegExNode node = intern(nodes[i]);
+				if (node != nodes[i]) {
+					if (canonical == nodes) {
+						canonical = nodes.clone();
+					}
+					canonical[i] = node;
+				}
+			}
+			return canonical;
+		}
+	}
+
+	private static final Interner INTERNER = new Interner();
+
+	private final Fragment fragment;
+	private final Dialect dialect;
+
+	private RegExFragment(Fragment fragment, Dialect dialect) {
+		this.fragment = fragment;
+		this.dialect = dialect;
+	}
+
+	/**
+	 * Returns a fragment for the specified tree.
+	 *
+	 * @param node
+	 *            tree to freeze
+	 * @param dialect
+	 *            dialect {@link #toString()} renders
+	 * @return a fragment sharing the canonical instance of {@code node}
+	 */
+	static RegExFragment freeze(RegExNode node, Dialect dialect) {
+		RegExNode canonical = INTERNER.intern(node instanceof Fragment ? node : new Fragment(node));
+		return new RegExFragment((Fragment) canonical, dialect);
+	}
+
+	/**
+	 * Returns the node to append when this fragment is appended to a
+	 * builder.
+	 *
+	 * @return the shared fragment node or {@link RegExNode#EMPTY} if this
+	 *         fragment is empty
+	 */
+	RegExNode node() {
+		return this.fragment.child == RegExNode.EMPTY ? RegExNode.EMPTY : this.fragment;
+	}
+
+	/**
+	 * Returns {@code true} if {@code obj} is a fragment of the same regular
+	 * expression rendered in the same dialect.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof RegExFragment)) {
+			return false;
+		}
+		RegExFragment other = (RegExFragment) obj;
+		return this.dialect == other.dialect && this.fragment.equals(other.fragment);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * this.fragment.hashCode() + this.dialect.index;
+	}
+
+	/**
+	 * Returns the regular expression of this fragment in the dialect of the
+	 * builder that froze it.
+	 * <p>
+	 * The string is computed once; later calls return the same instance.
+	 * </p>
+	 */
+	@Override
+	public String toString() {
+		return this.fragment.rendering(this.dialect);
+	}
+}
@@ -0,0 +1,1494 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.regex.BaseRegExBuilder.isOneGroup;
+import static com.crumbs.regex.BaseRegExBuilder.isRegExUnit;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable node of a regular-expression tree.
+ * <p>
+ * {@link RegExBuilder} and {@link CharClassBuilder} realizations append nodes
+ * instead of text. Because nodes never change once created, a node can be
+ * shared by any number of builders, and questions such as "is this a regular
+ * expression unit?" are answered by the node itself in constant time instead
+ * of by re-scanning rendered text. Text is produced only when the tree is
+ * rendered, in one pass, for a particular {@link Dialect}.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+abstract class RegExNode {
+
+	/**
+	 * cached {@link #hashCode()} or 0 if it has not been computed yet
+	 */
+	private int hash;
+
+	/**
+	 * Appends the text of this node in the specified {@code dialect} to
+	 * {@code out}.
+	 *
+	 * @param dialect
+	 *            syntax to render
+	 * @param out
+	 *            buffer receiving the rendering
+	 */
+	abstract void render(Dialect dialect, StringBuilder out);
+
+	/**
+	 * Returns {@code true} if a quantifier can directly follow this node
+	 * without surrounding the node by a no-capture group.
+	 *
+	 * @return {@code true} if this node is one regular expression unit
+	 * @see BaseRegExBuilder#isRegExUnit(String)
+	 */
+	boolean isUnit() {
+		return false;
+	}
+
+	/**
+	 * Returns {@code true} if this node renders as one parenthesized group.
+	 *
+	 * @return {@code true} if this node is one group
+	 * @see BaseRegExBuilder#isOneGroup(String)
+	 */
+	boolean isGroup() {
+		return false;
+	}
+
+	/**
+	 * Returns the text this node matches literally, or {@code null} if this
+	 * node is not a literal.
+	 *
+	 * @return the literal text of this node
+	 */
+	String literalText() {
+		return null;
+	}
+
+	/**
+	 * Returns the rendering of this node in the specified {@code dialect}.
+	 *
+	 * @param dialect
+	 *            syntax to render
+	 * @return the text of this node
+	 */
+	final String toString(Dialect dialect) {
+		StringBuilder out = new StringBuilder();
+		render(dialect, out);
+		return out.toString();
+	}
+
+	@Override
+	public String toString() {
+		return toString(Dialect.JAVA);
+	}
+
+	/**
+	 * Returns a hash code consistent with structural equality.
+	 * <p>
+	 * Nodes with children compute their hash code from the hash codes of
+	 * their children, so the hash code is computed once and cached.
+	 * </p>
+	 */
+	@Override
+	public final int hashCode() {
+		int h = this.hash;
+		if (h == 0) {
+			h = hash();
+			this.hash = h == 0 ? 1 : h;
+		}
+		return h;
+	}
+
+	/**
+	 * Computes {@link #hashCode()}.
+	 * <p>
+	 * Nodes that are only ever shared constants keep identity semantics.
+	 * Other nodes override this method and {@link #equals(Object)} so that
+	 * structurally identical trees are equal.
+	 * </p>
+	 *
+	 * @return the hash code of this node
+	 */
+	int hash() {
+		return System.identityHashCode(this);
+	}
+
+	/**
+	 * Returns a node equal to this node whose children are the canonical
+	 * instances held by {@code interner}.
+	 * <p>
+	 * Nodes without children return themselves.
+	 * </p>
+	 *
+	 * @param interner
+	 *            table of canonical nodes
+	 * @return this node or a copy sharing canonical children
+	 */
+	RegExNode internChildren(RegExFragment.Interner interner) {
+		return this;
+	}
+
+	/**
+	 * The empty regular expression
+	 */
+	static final RegExNode EMPTY = new RegExNode() {
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			// nothing to render
+		}
+
+		@Override
+		boolean isUnit() {
+			return true;
+		}
+	};
+
+	/**
+	 * Text appended verbatim (see {@link BaseCommonBuilder#t(String)})
+	 */
+	static final class Raw extends RegExNode {
+		final String text;
+
+		Raw(String text) {
+			this.text = text;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			out.append(this.text);
+		}
+
+		@Override
+		boolean isUnit() {
+			return isRegExUnit(this.text);
+		}
+
+		@Override
+		boolean isGroup() {
+			return isOneGroup(this.text);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Raw)) {
+				return false;
+			}
+			Raw other = (Raw) obj;
+			return this.text.equals(other.text);
+		}
+
+		@Override
+		int hash() {
+			return this.text.hashCode();
+		}
+	}
+
+	/**
+	 * Characters escaped by {@link #escape(CharSequence, int, int, StringBuilder)}
+	 * indexed by character
+	 */
+	private static final boolean[] special = new boolean[128];
+
+	static {
+		// Java thinks { is a special character
+		for (char c : "\\[^$.|?*+(){".toCharArray()) {
+			special[c] = true;
+		}
+	}
+
+	/**
+	 * Appends the characters of {@code text} from {@code start} (inclusive) to
+	 * {@code end} (exclusive) to {@code out}, preceding each special character
+	 * by a backslash.
+	 * <p>
+	 * The special characters are <tt>\ [ ^ $ . | ? * + ( ) {</tt>.
+	 * </p>
+	 *
+	 * @param text
+	 *            text to escape
+	 * @param start
+	 *            index of the first character to escape
+	 * @param end
+	 *            index after the last character to escape
+	 * @param out
+	 *            buffer receiving the escaped text
+	 */
+	static void escape(CharSequence text, int start, int end, StringBuilder out) {
+		int copied = start;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < 128 && special[c]) {
+				out.append(text, copied, i).append('\\');
+				copied = i;
+			}
+		}
+		out.append(text, copied, end);
+	}
+
+	/**
+	 * Text matched literally whose special characters are escaped when
+	 * rendered (see {@link RegExBuilder#re(Object, Object...)})
+	 */
+	static final class Literal extends RegExNode {
+		static final Literal TRUE = new Literal("true");
+		static final Literal FALSE = new Literal("false");
+
+		final String text;
+
+		Literal(String text) {
+			this.text = text;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			escape(this.text, 0, this.text.length(), out);
+		}
+
+		@Override
+		boolean isUnit() {
+			return this.text.codePointCount(0, this.text.length()) <= 1;
+		}
+
+		@Override
+		String literalText() {
+			return this.text;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Literal)) {
+				return false;
+			}
+			Literal other = (Literal) obj;
+			return this.text.equals(other.text);
+		}
+
+		@Override
+		int hash() {
+			return 31 * this.text.hashCode() + 1;
+		}
+	}
+
+	/**
+	 * One character matched literally (see {@link RegExBuilder#re(char)})
+	 * <p>
+	 * Nodes for ASCII characters are shared.
+	 * </p>
+	 */
+	static final class CharLiteral extends RegExNode {
+		private static final CharLiteral[] ascii = new CharLiteral[128];
+
+		static {
+			for (char c = 0; c < ascii.length; c++) {
+				ascii[c] = new CharLiteral(c);
+			}
+		}
+
+		final char c;
+
+		private CharLiteral(char c) {
+			this.c = c;
+		}
+
+		static CharLiteral of(char c) {
+			return c < ascii.length ? ascii[c] : new CharLiteral(c);
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			if (this.c < 128 && special[this.c]) {
+				out.append('\\');
+			}
+			out.append(this.c);
+		}
+
+		@Override
+		boolean isUnit() {
+			return true;
+		}
+
+		@Override
+		String literalText() {
+			return String.valueOf(this.c);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CharLiteral)) {
+				return false;
+			}
+			CharLiteral other = (CharLiteral) obj;
+			return this.c == other.c;
+		}
+
+		@Override
+		int hash() {
+			return this.c;
+		}
+	}
+
+	/**
+	 * Number matched literally (see {@link RegExBuilder#re(int)} and
+	 * {@link RegExBuilder#re(double)})
+	 * <p>
+	 * The number is kept unboxed and is written straight into the rendering;
+	 * the decimal separator is escaped.
+	 * </p>
+	 */
+	static final class NumberLiteral extends RegExNode {
+		private final long integral;
+
+		private final double decimal;
+
+		/**
+		 * {@code 'J'} for integral numbers, {@code 'F'} for floats, and
+		 * {@code 'D'} for doubles
+		 */
+		private final char type;
+
+		NumberLiteral(long integral) {
+			this(integral, 0, 'J');
+		}
+
+		NumberLiteral(float decimal) {
+			this(0, decimal, 'F');
+		}
+
+		NumberLiteral(double decimal) {
+			this(0, decimal, 'D');
+		}
+
+		private NumberLiteral(long integral, double decimal, char type) {
+			this.integral = integral;
+			this.decimal = decimal;
+			this.type = type;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			int start = out.length();
+			switch (this.type) {
+			case 'J':
+				out.append(this.integral);
+				return;
+			case 'F':
+				out.append((float) this.decimal);
+				break;
+			default:
+				out.append(this.decimal);
+				break;
+			}
+			for (int i = start; i < out.length(); i++) {
+				if (out.charAt(i) == '.') {
+					out.insert(i, '\\');
+					return;
+				}
+			}
+		}
+
+		@Override
+		boolean isUnit() {
+			return this.type == 'J' && 0 <= this.integral && this.integral <= 9;
+		}
+
+		@Override
+		String literalText() {
+			switch (this.type) {
+			case 'J':
+				return Long.toString(this.integral);
+			case 'F':
+				return Float.toString((float) this.decimal);
+			default:
+				return Double.toString(this.decimal);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof NumberLiteral)) {
+				return false;
+			}
+			NumberLiteral other = (NumberLiteral) obj;
+			return this.type == other.type && this.integral == other.integral
+					&& Double.compare(this.decimal, other.decimal) == 0;
+		}
+
+		@Override
+		int hash() {
+			return 31 * (31 * this.type + (int) (this.integral ^ (this.integral >>> 32))) + Double.valueOf(this.decimal).hashCode();
+		}
+	}
+
+	/**
+	 * Text matched literally inside of <tt>\Q</tt> and <tt>\E</tt> (see
+	 * {@link RegExBuilder#quote(Object)})
+	 */
+	static final class Quote extends RegExNode {
+		final String text;
+
+		Quote(String text) {
+			this.text = text;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			// \E is written as \\E\QE so that it is matched
+			out.append("\\Q");
+			int copied = 0;
+			int i = this.text.indexOf("\\E");
+			while (i >= 0) {
+				out.append(this.text, copied, i).append("\\\\E\\QE");
+				copied = i + 2;
+				i = this.text.indexOf("\\E", copied);
+			}
+			out.append(this.text, copied, this.text.length()).append("\\E");
+		}
+
+		@Override
+		String literalText() {
+			return this.text;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Quote)) {
+				return false;
+			}
+			Quote other = (Quote) obj;
+			return this.text.equals(other.text);
+		}
+
+		@Override
+		int hash() {
+			return 31 * this.text.hashCode() + 2;
+		}
+	}
+
+	/**
+	 * One character written as an escape sequence like <tt>\t</tt>,
+	 * <tt>\x41</tt>, or <tt>\cJ</tt>
+	 */
+	static final class Escape extends RegExNode {
+		static final Escape BELL = new Escape('a', 0x07);
+		static final Escape TAB = new Escape('t', '\t');
+		static final Escape LINE_FEED = new Escape('n', '\n');
+		static final Escape VERTICAL_TAB = new Escape('v', 0x0B);
+		static final Escape FORM_FEED = new Escape('f', '\f');
+		static final Escape CARRIAGE_RETURN = new Escape('r', '\r');
+		static final Escape ESCAPE = new Escape('e', 0x1B);
+
+		private static final char[] digits = "0123456789ABCDEF".toCharArray();
+
+		/**
+		 * letter following the backslash
+		 */
+		final char letter;
+
+		final int codePoint;
+
+		/**
+		 * radix of the digits following {@link #letter}, or 0 if there are no
+		 * digits
+		 */
+		private final int radix;
+
+		/**
+		 * minimum number of digits
+		 */
+		private final int width;
+
+		Escape(char letter, int codePoint) {
+			this(letter, codePoint, 0, 0);
+		}
+
+		Escape(char letter, int codePoint, int radix, int width) {
+			this.letter = letter;
+			this.codePoint = codePoint;
+			this.radix = radix;
+			this.width = width;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			out.append('\\').append(this.letter);
+			if (this.letter == 'c') {
+				out.append((char) (this.codePoint ^ 64));
+			} else if (this.radix > 0) {
+				int shift = this.radix == 16 ? 4 : 3;
+				int n = 1;
+				while (n < this.width || (this.codePoint >>> (shift * n)) != 0) {
+					n++;
+				}
+				for (int i = n - 1; i >= 0; i--) {
+					out.append(digits[(this.codePoint >>> (shift * i)) & (this.radix - 1)]);
+				}
+			}
+		}
+
+		@Override
+		boolean isUnit() {
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Escape)) {
+				return false;
+			}
+			Escape other = (Escape) obj;
+			return this.letter == other.letter && this.codePoint == other.codePoint && this.radix == other.radix
+					&& this.width == other.width;
+		}
+
+		@Override
+		int hash() {
+			return 31 * (31 * this.letter + this.codePoint) + this.width;
+		}
+	}
+
+	/**
+	 * One character in a character class, escaped if it is special inside of a
+	 * character class
+	 * <p>
+	 * Nodes for ASCII characters are shared.
+	 * </p>
+	 */
+	static final class ClassChar extends RegExNode {
+		private static final ClassChar[] ascii = new ClassChar[128];
+
+		static {
+			for (char c = 0; c < ascii.length; c++) {
+				ascii[c] = new ClassChar(c);
+			}
+		}
+
+		final char c;
+
+		private ClassChar(char c) {
+			this.c = c;
+		}
+
+		static ClassChar of(char c) {
+			return c < ascii.length ? ascii[c] : new ClassChar(c);
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			// TODO when should a special character be escaped?
+			switch (this.c) {
+			case ']':
+			case '\\':
+			case '^':
+			case '-':
+				out.append('\\');
+				break;
+			default:
+				break;
+			}
+			out.append(this.c);
+		}
+
+		@Override
+		boolean isUnit() {
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ClassChar)) {
+				return false;
+			}
+			ClassChar other = (ClassChar) obj;
+			return this.c == other.c;
+		}
+
+		@Override
+		int hash() {
+			return 31 * this.c + 3;
+		}
+	}
+
+	/**
+	 * Range <em>min</em><tt>-</tt><em>max</em> inside of a character class
+	 */
+	static final class ClassRange extends RegExNode {
+		final char min;
+
+		final char max;
+
+		ClassRange(char min, char max) {
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			out.append(this.min).append('-').append(this.max);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ClassRange)) {
+				return false;
+			}
+			ClassRange other = (ClassRange) obj;
+			return this.min == other.min && this.max == other.max;
+		}
+
+		@Override
+		int hash() {
+			return 31 * this.min + this.max;
+		}
+	}
+
+	/**
+	 * Members of a character class computed when the pattern is built (see
+	 * {@link CharClassBuilder#intersection(CharClassBuilder)}), rendered as the
+	 * fewest characters and ranges
+	 * <p>
+	 * Printable US-ASCII characters are rendered as themselves, escaped if
+	 * they are special inside of a character class; other characters are
+	 * rendered as hexadecimal escapes.
+	 * </p>
+	 */
+	static final class ClassSet extends RegExNode {
+		final CodePointSet set;
+
+		ClassSet(CodePointSet set) {
+			this.set = set;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			for (int r = 0; r < this.set.rangeCount(); r++) {
+				int min = this.set.min(r);
+				int max = this.set.max(r);
+				member(min, dialect, out);
+				if (max > min + 1) {
+					out.append('-');
+				}
+				if (max > min) {
+					member(max, dialect, out);
+				}
+			}
+		}
+
+		private static void member(int codePoint, Dialect dialect, StringBuilder out) {
+			if (codePoint > ' ' && codePoint < 0x7F) {
+				// Vim reads \[ inside of a collection as two characters.
+				if ("]\\^-".indexOf(codePoint) >= 0
+						|| dialect == Dialect.JAVA && (codePoint == '[' || codePoint == '&')) {
+					out.append('\\');
+				}
+				out.append((char) codePoint);
+			} else if (codePoint <= 0xFF) {
+				hex('x', codePoint, 2, out);
+			} else if (codePoint <= 0xFFFF) {
+				hex('u', codePoint, 4, out);
+			} else if (dialect == Dialect.VIM) {
+				hex('U', codePoint, 8, out);
+			} else {
+				out.append("\\x{").append(Integer.toHexString(codePoint).toUpperCase()).append('}');
+			}
+		}
+
+		private static void hex(char letter, int codePoint, int width, StringBuilder out) {
+			out.append('\\').append(letter);
+			for (int i = width - 1; i >= 0; i--) {
+				out.append(Escape.digits[(codePoint >>> (4 * i)) & 0xF]);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ClassSet)) {
+				return false;
+			}
+			return this.set.equals(((ClassSet) obj).set);
+		}
+
+		@Override
+		int hash() {
+			return 31 * this.set.hashCode() + 9;
+		}
+	}
+
+	/**
+	 * Predefined character class like <tt>.</tt>, <tt>\d</tt>, or <tt>\W</tt>
+	 */
+	static final class Shorthand extends RegExNode {
+		static final Shorthand ANY_CHAR = new Shorthand(".");
+		static final Shorthand DIGIT = new Shorthand("\\d");
+		static final Shorthand NOT_DIGIT = new Shorthand("\\D");
+		static final Shorthand WHITESPACE = new Shorthand("\\s");
+		static final Shorthand NOT_WHITESPACE = new Shorthand("\\S");
+		static final Shorthand WORD_CHARACTER = new Shorthand("\\w");
+		static final Shorthand NOT_WORD_CHARACTER = new Shorthand("\\W");
+
+		final String text;
+
+		private Shorthand(String text) {
+			this.text = text;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			out.append(this.text);
+		}
+
+		@Override
+		boolean isUnit() {
+			return true;
+		}
+	}
+
+	/**
+	 * Unicode block, category, or script, or POSIX character class,
+	 * <tt>\p{</tt><em>name</em><tt>}</tt> or <tt>\P{</tt><em>name</em>
+	 * <tt>}</tt>
+	 */
+	static final class Property extends RegExNode {
+		/**
+		 * a {@link UnicodeBlock}, {@link UnicodeCharacterProperty},
+		 * {@link UnicodeScript}, or {@link POSIXCharacterClass}
+		 */
+		final Enum<?> property;
+
+		final boolean negated;
+
+		Property(Enum<?> property, boolean negated) {
+			this.property = property;
+			this.negated = negated;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			out.append(this.negated ? "\\P{" : "\\p{");
+			if (dialect == Dialect.JAVA && this.property instanceof UnicodeScript) {
+				// java.util.regex knows scripts by their underscored names
+				out.append("Is").append(((UnicodeScript) this.property).javaName());
+			} else {
+				out.append(this.property);
+			}
+			out.append('}');
+		}
+
+		@Override
+		boolean isUnit() {
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Property)) {
+				return false;
+			}
+			Property other = (Property) obj;
+			return this.property == other.property && this.negated == other.negated;
+		}
+
+		@Override
+		int hash() {
+			return 31 * this.property.hashCode() + (this.negated ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Bracketed character class, <tt>[</tt><em>members</em><tt>]</tt> or
+	 * <tt>[^</tt><em>members</em><tt>]</tt>, optionally followed by the union
+	 * or intersection with another class
+	 */
+	static final class CharClass extends RegExNode {
+		enum Operator {
+			NONE(""), UNION("["), INTERSECTION("&&["), DIFFERENCE("&&[^");
+
+			final String text;
+
+			Operator(String text) {
+				this.text = text;
+			}
+		}
+
+		final boolean negated;
+
+		final RegExNode members;
+
+		final Operator operator;
+
+		final RegExNode operand;
+
+		CharClass(boolean negated, RegExNode members) {
+			this(negated, members, Operator.NONE, null);
+		}
+
+		CharClass(boolean negated, RegExNode members, Operator operator, RegExNode operand) {
+			this.negated = negated;
+			this.members = members;
+			this.operator = operator;
+			this.operand = operand;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			out.append(this.negated ? "[^" : "[");
+			this.members.render(dialect, out);
+			if (this.operator != Operator.NONE) {
+				out.append(this.operator.text);
+				this.operand.render(dialect, out);
+				out.append(']');
+			}
+			out.append(']');
+		}
+
+		@Override
+		boolean isUnit() {
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CharClass)) {
+				return false;
+			}
+			CharClass other = (CharClass) obj;
+			return this.negated == other.negated && this.operator == other.operator
+					&& this.members.equals(other.members)
+					&& (this.operand == null ? other.operand == null : this.operand.equals(other.operand));
+		}
+
+		@Override
+		int hash() {
+			return 31 * (31 * (31 * this.members.hashCode() + (this.operand == null ? 0 : this.operand.hashCode()))
+					+ this.operator.hashCode()) + (this.negated ? 1 : 0);
+		}
+
+		@Override
+		RegExNode internChildren(RegExFragment.Interner interner) {
+			RegExNode members = interner.intern(this.members);
+			RegExNode operand = this.operand == null ? null : interner.intern(this.operand);
+			if (members == this.members && operand == this.operand) {
+				return this;
+			}
+			return new CharClass(this.negated, members, this.operator, operand);
+		}
+	}
+
+	/**
+	 * Zero-width boundary matcher like <tt>^</tt>, <tt>\A</tt>, or
+	 * <tt>\b</tt>
+	 */
+	static final class Boundary extends RegExNode {
+		static final Boundary LINE_START = new Boundary("^");
+		static final Boundary LINE_END = new Boundary("$");
+		static final Boundary INPUT_START = new Boundary("\\A");
+		static final Boundary INPUT_END = new Boundary("\\Z");
+		static final Boundary INPUT_END_STRICT = new Boundary("\\z");
+		static final Boundary WORD_BOUNDARY = new Boundary("\\b");
+		static final Boundary NOT_WORD_BOUNDARY = new Boundary("\\B");
+		static final Boundary PREVIOUS_MATCH_END = new Boundary("\\G");
+
+		final String text;
+
+		private Boundary(String text) {
+			this.text = text;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			out.append(this.text);
+		}
+
+		@Override
+		boolean isUnit() {
+			return true;
+		}
+	}
+
+	/**
+	 * Quantified expression like <em>X</em><tt>*</tt> or <em>X</em>
+	 * <tt>{2,5}?</tt>
+	 * <p>
+	 * If <em>X</em> is not a {@link #isUnit() unit}, it is rendered inside of a
+	 * no-capture group.
+	 * </p>
+	 */
+	static final class Quantifier extends RegExNode {
+		/**
+		 * How the quantifier is spelled
+		 */
+		enum Form {
+			OPTIONAL, ZERO_OR_MORE, ONE_OR_MORE, EXACTLY, AT_LEAST, BETWEEN
+		}
+
+		enum Mode {
+			GREEDY, LAZY, POSSESSIVE
+		}
+
+		/**
+		 * Value of {@link #max} for quantifiers without an upper bound
+		 */
+		static final int UNBOUNDED = -1;
+
+		final RegExNode child;
+
+		final Form form;
+
+		final Mode mode;
+
+		final int min;
+
+		final int max;
+
+		Quantifier(RegExNode child, Form form, Mode mode, int min, int max) {
+			this.child = child;
+			this.form = form;
+			this.mode = mode;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			if (this.child.isUnit()) {
+				this.child.render(dialect, out);
+			} else {
+				out.append("(?:");
+				this.child.render(dialect, out);
+				out.append(')');
+			}
+			dialect.quantifier(this, out);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Quantifier)) {
+				return false;
+			}
+			Quantifier other = (Quantifier) obj;
+			return this.form == other.form && this.mode == other.mode && this.min == other.min
+					&& this.max == other.max && this.child.equals(other.child);
+		}
+
+		@Override
+		int hash() {
+			return 31 * (31 * (31 * (31 * this.child.hashCode() + this.form.hashCode()) + this.mode.hashCode()) + this.min)
+					+ this.max;
+		}
+
+		@Override
+		RegExNode internChildren(RegExFragment.Interner interner) {
+			RegExNode child = interner.intern(this.child);
+			return child == this.child ? this : new Quantifier(child, this.form, this.mode, this.min, this.max);
+		}
+	}
+
+	/**
+	 * Parenthesized group like <tt>(</tt><em>X</em><tt>)</tt>, <tt>(?:</tt>
+	 * <em>X</em><tt>)</tt>, or <tt>(?=</tt><em>X</em><tt>)</tt>
+	 */
+	static final class Group extends RegExNode {
+		enum Kind {
+			CAPTURE("("),
+			NO_CAPTURE("(?:"),
+			ATOMIC("(?>"),
+			POSITIVE_LOOKAHEAD("(?="),
+			NEGATIVE_LOOKAHEAD("(?!"),
+			POSITIVE_LOOKBEHIND("(?<="),
+			NEGATIVE_LOOKBEHIND("(?<!"),
+			/**
+			 * no-capture group with match flags, <tt>(?</tt><em>flags</em>
+			 * <tt>:</tt><em>X</em><tt>)</tt>
+			 */
+			FLAGS("(?");
+
+			final String open;
+
+			Kind(String open) {
+				this.open = open;
+			}
+		}
+
+		final Kind kind;
+
+		final RegExNode child;
+
+		/**
+		 * flags of a {@link Kind#FLAGS} group (see {@link Flags#mask}) and 0
+		 * otherwise
+		 */
+		final int flags;
+
+		Group(Kind kind, RegExNode child) {
+			this(kind, child, 0);
+		}
+
+		Group(Kind kind, RegExNode child, int flags) {
+			this.kind = kind;
+			this.child = child;
+			this.flags = flags;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			out.append(this.kind.open);
+			if (this.kind == Kind.FLAGS) {
+				Flags.render(this.flags, out);
+				out.append(':');
+			}
+			this.child.render(dialect, out);
+			out.append(')');
+		}
+
+		@Override
+		boolean isUnit() {
+			return true;
+		}
+
+		@Override
+		boolean isGroup() {
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Group)) {
+				return false;
+			}
+			Group other = (Group) obj;
+			return this.kind == other.kind && this.flags == other.flags && this.child.equals(other.child);
+		}
+
+		@Override
+		int hash() {
+			return 31 * (31 * this.child.hashCode() + this.kind.hashCode()) + this.flags;
+		}
+
+		@Override
+		RegExNode internChildren(RegExFragment.Interner interner) {
+			RegExNode child = interner.intern(this.child);
+			return child == this.child ? this : new Group(this.kind, child, this.flags);
+		}
+	}
+
+	/**
+	 * Branches <em>X</em><tt>|</tt><em>Y</em><tt>|</tt>... of an alternation
+	 * <p>
+	 * Alternations only appear as the child of a {@link Group}.
+	 * </p>
+	 */
+	static final class Alternation extends RegExNode {
+		final RegExNode[] branches;
+
+		Alternation(RegExNode[] branches) {
+			this.branches = branches;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			for (int i = 0; i < this.branches.length; i++) {
+				if (i > 0) {
+					out.append('|');
+				}
+				this.branches[i].render(dialect, out);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Alternation)) {
+				return false;
+			}
+			Alternation other = (Alternation) obj;
+			return Arrays.equals(this.branches, other.branches);
+		}
+
+		@Override
+		int hash() {
+			return Arrays.hashCode(this.branches) + 4;
+		}
+
+		@Override
+		RegExNode internChildren(RegExFragment.Interner interner) {
+			RegExNode[] branches = interner.intern(this.branches);
+			return branches == this.branches ? this : new Alternation(branches);
+		}
+	}
+
+	/**
+	 * Match flags turned on or off for the rest of the enclosing group,
+	 * <tt>(?</tt><em>flags</em><tt>)</tt>
+	 */
+	static final class Flags extends RegExNode {
+		private static final RegExMatchFlag[] allFlags = RegExMatchFlag.values();
+
+		/**
+		 * one bit per {@link RegExMatchFlag}, {@code 1 << flag.ordinal()}, for
+		 * each flag turned on or off
+		 */
+		final int mask;
+
+		Flags(int mask) {
+			this.mask = mask;
+		}
+
+		/**
+		 * Returns the bit of the specified flag in a flag mask.
+		 *
+		 * @param flag
+		 *            flag whose bit is returned
+		 * @return the bit of {@code flag}
+		 */
+		static int bit(RegExMatchFlag flag) {
+			return 1 << flag.ordinal();
+		}
+
+		/**
+		 * Appends the flags turned on followed by <tt>-</tt> and the flags
+		 * turned off to {@code out}.
+		 *
+		 * @param mask
+		 *            flags to render
+		 * @param out
+		 *            buffer receiving the rendering
+		 */
+		static void render(int mask, StringBuilder out) {
+			boolean hasOffFlag = false;
+			for (RegExMatchFlag flag : allFlags) {
+				if ((mask & bit(flag)) != 0) {
+					if (flag.isOn()) {
+						out.append(flag.toChar());
+					} else {
+						hasOffFlag = true;
+					}
+				}
+			}
+			if (hasOffFlag) {
+				out.append('-');
+				for (RegExMatchFlag flag : allFlags) {
+					if ((mask & bit(flag)) != 0 && !flag.isOn()) {
+						out.append(flag.toChar());
+					}
+				}
+			}
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			out.append("(?");
+			render(this.mask, out);
+			out.append(')');
+		}
+
+		@Override
+		boolean isUnit() {
+			return true;
+		}
+
+		@Override
+		boolean isGroup() {
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Flags)) {
+				return false;
+			}
+			Flags other = (Flags) obj;
+			return this.mask == other.mask;
+		}
+
+		@Override
+		int hash() {
+			return 31 * this.mask + 5;
+		}
+	}
+
+	/**
+	 * Back reference to a numbered capture group
+	 * <p>
+	 * References to groups 10 and above are put in a no-capture group so that
+	 * the digits following the backslash are not misread.
+	 * </p>
+	 */
+	static final class BackReference extends RegExNode {
+		final int group;
+
+		BackReference(int group) {
+			this.group = group;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			if (this.group < 10) {
+				out.append('\\').append(this.group);
+			} else {
+				out.append("(?:\\").append(this.group).append(')');
+			}
+		}
+
+		@Override
+		boolean isUnit() {
+			return true;
+		}
+
+		@Override
+		boolean isGroup() {
+			return this.group >= 10;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof BackReference)) {
+				return false;
+			}
+			BackReference other = (BackReference) obj;
+			return this.group == other.group;
+		}
+
+		@Override
+		int hash() {
+			return 31 * this.group + 6;
+		}
+	}
+
+	/**
+	 * Comment <tt>#</tt> <em>X</em> <em>newLine</em>
+	 */
+	static final class Comment extends RegExNode {
+		final String text;
+
+		Comment(String text) {
+			this.text = text;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			out.append("# ").append(this.text).append(System.getProperty("line.separator"));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Comment)) {
+				return false;
+			}
+			Comment other = (Comment) obj;
+			return this.text.equals(other.text);
+		}
+
+		@Override
+		int hash() {
+			return 31 * this.text.hashCode() + 7;
+		}
+	}
+
+	/**
+	 * Sequence of nodes matched one after another
+	 */
+	static final class Concat extends RegExNode {
+		final RegExNode[] children;
+
+		private Concat(RegExNode[] children) {
+			this.children = children;
+		}
+
+		/**
+		 * Returns a node for the specified sequence of nodes.
+		 * <p>
+		 * The empty sequence is {@link RegExNode#EMPTY}, and a sequence of one
+		 * node is that node.
+		 * </p>
+		 *
+		 * @param nodes
+		 *            nodes to concatenate; the list is copied
+		 * @return a node matching each of {@code nodes} in turn
+		 */
+		static RegExNode of(List<RegExNode> nodes) {
+			switch (nodes.size()) {
+			case 0:
+				return EMPTY;
+			case 1:
+				return nodes.get(0);
+			default:
+				return new Concat(nodes.toArray(new RegExNode[nodes.size()]));
+			}
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			for (RegExNode child : this.children) {
+				child.render(dialect, out);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Concat)) {
+				return false;
+			}
+			Concat other = (Concat) obj;
+			return Arrays.equals(this.children, other.children);
+		}
+
+		@Override
+		int hash() {
+			return Arrays.hashCode(this.children);
+		}
+
+		@Override
+		RegExNode internChildren(RegExFragment.Interner interner) {
+			RegExNode[] children = interner.intern(this.children);
+			return children == this.children ? this : new Concat(children);
+		}
+	}
+
+	/**
+	 * Frozen subtree whose rendering in each dialect is computed once
+	 * <p>
+	 * Fragments are created by {@link RegExFragment} around interned subtrees
+	 * and may be shared by any number of trees and threads. Renderings are
+	 * cached without synchronization: two threads may both render a fragment
+	 * the first time, but they produce equal immutable strings.
+	 * </p>
+	 */
+	static final class Fragment extends RegExNode {
+		final RegExNode child;
+		private final String[] renderings = new String[Dialect.COUNT];
+
+		Fragment(RegExNode child) {
+			this.child = child;
+		}
+
+		/**
+		 * Returns the rendering of this fragment in {@code dialect}.
+		 *
+		 * @param dialect
+		 *            dialect to render
+		 * @return the cached rendering
+		 */
+		String rendering(Dialect dialect) {
+			String rendering = this.renderings[dialect.index];
+			if (rendering == null) {
+				rendering = this.child.toString(dialect);
+				this.renderings[dialect.index] = rendering;
+			}
+			return rendering;
+		}
+
+		@Override
+		void render(Dialect dialect, StringBuilder out) {
+			out.append(rendering(dialect));
+		}
+
+		@Override
+		boolean isUnit() {
+			return this.child.isUnit();
+		}
+
+		@Override
+		boolean isGroup() {
+			return this.child.isGroup();
+		}
+
+		@Override
+		String literalText() {
+			return this.child.literalText();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Fragment)) {
+				return false;
+			}
+			return this.child.equals(((Fragment) obj).child);
+		}
+
+		@Override
+		int hash() {
+			return 31 * this.child.hashCode() + 8;
+		}
+
+		@Override
+		RegExNode internChildren(RegExFragment.Interner interner) {
+			RegExNode child = interner.intern(this.child);
+			return child == this.child ? this : new Fragment(child);
+		}
+	}
+}
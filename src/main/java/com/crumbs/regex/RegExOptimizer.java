@@ -0,0 +1,755 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.crumbs.regex.RegExNode.Alternation;
+import com.crumbs.regex.RegExNode.Boundary;
+import com.crumbs.regex.RegExNode.CharClass;
+import com.crumbs.regex.RegExNode.CharLiteral;
+import com.crumbs.regex.RegExNode.ClassChar;
+import com.crumbs.regex.RegExNode.ClassRange;
+import com.crumbs.regex.RegExNode.ClassSet;
+import com.crumbs.regex.RegExNode.Comment;
+import com.crumbs.regex.RegExNode.Concat;
+import com.crumbs.regex.RegExNode.Escape;
+import com.crumbs.regex.RegExNode.Flags;
+import com.crumbs.regex.RegExNode.Fragment;
+import com.crumbs.regex.RegExNode.Group;
+import com.crumbs.regex.RegExNode.Literal;
+import com.crumbs.regex.RegExNode.NumberLiteral;
+import com.crumbs.regex.RegExNode.Property;
+import com.crumbs.regex.RegExNode.Quantifier;
+import com.crumbs.regex.RegExNode.Raw;
+import com.crumbs.regex.RegExNode.Shorthand;
+
+/**
+ * Rewrites expression trees so that backtracking matchers try fewer
+ * alternatives
+ * <p>
+ * Consecutive branches of an alternation that start with the same character
+ * matcher are factored into one branch, as a trie would, so that
+ * <tt>1[6-9]|1[0-2]</tt> becomes <tt>1(?:[6-9]|[0-2])</tt>. Consecutive
+ * branches that end with the same character matcher are factored likewise,
+ * and consecutive branches that each match one character of a literal or of
+ * a plain character class are merged into one class, so that the example
+ * becomes <tt>1[0-26-9]</tt>. Branches that share nothing, like
+ * <tt>29|30</tt>, are left alone.
+ * </p>
+ * <p>
+ * The rewritten tree matches what the original tree matches with the same
+ * leftmost-first preference and the same group numbers. Only nodes that match
+ * in at most one way at a position, single characters and zero-width
+ * assertions, are moved out of branches, so the order in which a backtracking
+ * matcher tries the remaining alternatives does not change; capture groups
+ * are never moved; and only adjacent branches are combined. Trees containing
+ * text appended verbatim or comments mode are returned unchanged, as are
+ * alternations whose branches turn match flags on or off.
+ * </p>
+ * <p>
+ * For the Java rendering only, {@link #possessify(RegExNode, int)} also
+ * makes a greedy quantifier of one character matcher possessive when the
+ * text that must follow it cannot start with a character the matcher
+ * matches, as in <tt>"[^"]*"</tt>. Giving such a character back could only
+ * make the match fail where it failed anyway, so the matcher need not
+ * remember where to give characters back.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class RegExOptimizer {
+
+	/**
+	 * {@link Pattern} flags under which the rendering of a literal does not
+	 * mean the same thing once it is moved
+	 */
+	private static final int UNSAFE_FLAGS = Pattern.COMMENTS | Pattern.LITERAL | Pattern.CANON_EQ;
+
+	private static final int COMMENTS = Flags.bit(RegExMatchFlag.TURN_ON_COMMENTS);
+
+	/**
+	 * Code points a match of a node can start with, and whether the match
+	 * can be empty
+	 */
+	private static final class First {
+		/**
+		 * what follows the end of the whole expression, which can be anything
+		 */
+		static final First END = new First(CodePointSet.EMPTY, true);
+
+		final CodePointSet set;
+		final boolean nullable;
+
+		First(CodePointSet set, boolean nullable) {
+			this.set = set;
+			this.nullable = nullable;
+		}
+
+		/**
+		 * Returns what a match of this node followed by {@code next} can
+		 * start with.
+		 */
+		First then(First next) {
+			return this.nullable ? new First(this.set.union(next.set), next.nullable) : this;
+		}
+	}
+
+	private RegExOptimizer() {
+		// static methods only
+	}
+
+	/**
+	 * Returns a tree matching what {@code node} matches with alternations
+	 * factored as described above.
+	 *
+	 * @param node
+	 *            expression tree
+	 * @param flags
+	 *            {@link Pattern} flags the tree is compiled with
+	 * @return the rewritten tree, or {@code node} if it cannot be rewritten
+	 */
+	static RegExNode optimize(RegExNode node, int flags) {
+		if ((flags & UNSAFE_FLAGS) != 0 || !isSafe(node)) {
+			return node;
+		}
+		RegExNode optimized = rewrite(node, flags, false);
+		if (optimized instanceof Group) {
+			Group group = (Group) optimized;
+			// A group around the whole expression groups nothing.
+			if (group.kind == Group.Kind.NO_CAPTURE && !(group.child instanceof Alternation)
+					&& !hasFlags(sequence(group.child))) {
+				return group.child;
+			}
+		}
+		return optimized;
+	}
+
+	/**
+	 * Returns a tree matching what {@code node} matches, in the same ways, in
+	 * which greedy quantifiers of one character matcher are possessive when
+	 * giving back a character cannot lead to a match.
+	 * <p>
+	 * Only {@code java.util.regex} supports possessive quantifiers, so the
+	 * result is for the Java rendering. A quantifier followed by the end of
+	 * the expression, or inside of lookaround or an atomic group, is left
+	 * alone, as are trees that turn match flags on or off.
+	 * </p>
+	 *
+	 * @param node
+	 *            expression tree
+	 * @param flags
+	 *            {@link Pattern} flags the tree is compiled with
+	 * @return the rewritten tree, or {@code node} if it cannot be rewritten
+	 */
+	static RegExNode possessify(RegExNode node, int flags) {
+		if ((flags & UNSAFE_FLAGS) != 0 || !isSafe(node) || changesFlags(node)) {
+			return node;
+		}
+		return possessify(node, First.END, flags);
+	}
+
+	/**
+	 * @param follow
+	 *            what the text after a match of {@code node} can start with
+	 */
+	private static RegExNode possessify(RegExNode node, First follow, int flags) {
+		if (node instanceof Fragment) {
+			RegExNode child = ((Fragment) node).child;
+			RegExNode r = possessify(child, follow, flags);
+			return r == child ? node : r;
+		} else if (node instanceof Concat) {
+			RegExNode[] children = ((Concat) node).children;
+			RegExNode[] rewritten = new RegExNode[children.length];
+			boolean changed = false;
+			for (int i = children.length - 1; i >= 0; i--) {
+				rewritten[i] = possessify(children[i], follow, flags);
+				changed |= rewritten[i] != children[i];
+				follow = first(children[i], flags).then(follow);
+			}
+			return changed ? Concat.of(Arrays.asList(rewritten)) : node;
+		} else if (node instanceof Alternation) {
+			RegExNode[] branches = ((Alternation) node).branches;
+			RegExNode[] rewritten = new RegExNode[branches.length];
+			boolean changed = false;
+			for (int i = 0; i < branches.length; i++) {
+				rewritten[i] = possessify(branches[i], follow, flags);
+				changed |= rewritten[i] != branches[i];
+			}
+			return changed ? new Alternation(rewritten) : node;
+		} else if (node instanceof Group) {
+			Group group = (Group) node;
+			// Nothing after lookaround or an atomic group backtracks into it,
+			// so its child is followed by the end of a match.
+			First childFollow = group.kind == Group.Kind.CAPTURE || group.kind == Group.Kind.NO_CAPTURE ? follow
+					: First.END;
+			RegExNode child = possessify(group.child, childFollow, flags);
+			return child == group.child ? node : new Group(group.kind, child, group.flags);
+		} else if (node instanceof Quantifier) {
+			return possessify((Quantifier) node, follow, flags);
+		}
+		return node;
+	}
+
+	private static RegExNode possessify(Quantifier quantifier, First follow, int flags) {
+		CodePointSet set = oneChar(quantifier.child, flags);
+		if (set != null) {
+			if (quantifier.mode != Quantifier.Mode.GREEDY || quantifier.min == quantifier.max || follow.nullable
+					|| !set.intersection(follow.set).isEmpty()) {
+				return quantifier;
+			}
+			return new Quantifier(quantifier.child, quantifier.form, Quantifier.Mode.POSSESSIVE, quantifier.min,
+					quantifier.max);
+		}
+		First childFollow = follow;
+		if (quantifier.max != 1) {
+			// Each iteration but the last is followed by another one.
+			childFollow = new First(first(quantifier.child, flags).set.union(follow.set), follow.nullable);
+		}
+		RegExNode child = possessify(quantifier.child, childFollow, flags);
+		return child == quantifier.child ? quantifier
+				: new Quantifier(child, quantifier.form, quantifier.mode, quantifier.min, quantifier.max);
+	}
+
+	/**
+	 * Returns what a match of {@code node} can start with. Sets are widened
+	 * to every case variant when case is ignored, as
+	 * {@code java.util.regex} ignores the case of properties too, and nodes
+	 * whose matches are not known before matching can start with anything.
+	 */
+	private static First first(RegExNode node, int flags) {
+		if (node == RegExNode.EMPTY || node instanceof Boundary || node instanceof Comment) {
+			return First.END;
+		} else if (node instanceof Fragment) {
+			return first(((Fragment) node).child, flags);
+		} else if (node instanceof Concat) {
+			First first = First.END;
+			RegExNode[] children = ((Concat) node).children;
+			for (int i = children.length - 1; i >= 0; i--) {
+				first = first(children[i], flags).then(first);
+			}
+			return first;
+		} else if (node.literalText() != null) {
+			String text = node.literalText();
+			if (text.isEmpty()) {
+				return First.END;
+			}
+			return new First(ProgCompiler.caseFold(CodePointSet.of(text.codePointAt(0)), flags), false);
+		} else if (node instanceof Alternation) {
+			CodePointSet set = CodePointSet.EMPTY;
+			boolean nullable = false;
+			for (RegExNode branch : ((Alternation) node).branches) {
+				First first = first(branch, flags);
+				set = set.union(first.set);
+				nullable |= first.nullable;
+			}
+			return new First(set, nullable);
+		} else if (node instanceof Group) {
+			Group group = (Group) node;
+			return group.kind == Group.Kind.CAPTURE || group.kind == Group.Kind.NO_CAPTURE
+					|| group.kind == Group.Kind.ATOMIC ? first(group.child, flags) : First.END;
+		} else if (node instanceof Quantifier) {
+			Quantifier quantifier = (Quantifier) node;
+			if (quantifier.max == 0) {
+				return First.END;
+			}
+			First first = first(quantifier.child, flags);
+			return new First(first.set, first.nullable || quantifier.min == 0);
+		}
+		CodePointSet set = ProgCompiler.charSet(node, flags);
+		if (set == null) {
+			return new First(CodePointSet.ALL, true);
+		}
+		return new First(hasProperty(node) ? fold(set, flags) : set, false);
+	}
+
+	/**
+	 * Returns the characters {@code node} matches if it matches one
+	 * character, or {@code null}.
+	 */
+	private static CodePointSet oneChar(RegExNode node, int flags) {
+		while (node instanceof Fragment) {
+			node = ((Fragment) node).child;
+		}
+		String text = node.literalText();
+		if (!isCharClass(node) && (text == null || text.codePointCount(0, text.length()) != 1)) {
+			return null;
+		}
+		First first = first(node, flags);
+		return first.nullable ? null : first.set;
+	}
+
+	/**
+	 * Returns {@code set} with every case variant of its members if case is
+	 * ignored. {@link ProgCompiler#charSet(RegExNode, int)} already folds
+	 * characters and ranges as the flags say, but {@code java.util.regex}
+	 * ignores the case of properties like <tt>\p{Lu}</tt> beyond ASCII even
+	 * without {@link Pattern#UNICODE_CASE}, so sets with properties are
+	 * folded again.
+	 */
+	private static CodePointSet fold(CodePointSet set, int flags) {
+		return (flags & Pattern.CASE_INSENSITIVE) != 0 ? CharSets.caseFold(set, true) : set;
+	}
+
+	/**
+	 * Returns {@code true} if the character class {@code node} has a
+	 * property among its members.
+	 */
+	private static boolean hasProperty(RegExNode node) {
+		if (node instanceof Property) {
+			return true;
+		} else if (node instanceof Fragment) {
+			return hasProperty(((Fragment) node).child);
+		} else if (node instanceof CharClass) {
+			CharClass charClass = (CharClass) node;
+			return hasProperty(charClass.members) || hasProperty(charClass.operand);
+		} else if (node instanceof Concat) {
+			for (RegExNode child : ((Concat) node).children) {
+				if (hasProperty(child)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns {@code true} if {@code node} turns match flags on or off.
+	 */
+	private static boolean changesFlags(RegExNode node) {
+		if (node instanceof Flags) {
+			return true;
+		} else if (node instanceof Group) {
+			Group group = (Group) node;
+			return group.kind == Group.Kind.FLAGS || changesFlags(group.child);
+		} else if (node instanceof Quantifier) {
+			return changesFlags(((Quantifier) node).child);
+		} else if (node instanceof Fragment) {
+			return changesFlags(((Fragment) node).child);
+		} else if (node instanceof Concat || node instanceof Alternation) {
+			for (RegExNode child : node instanceof Concat ? ((Concat) node).children
+					: ((Alternation) node).branches) {
+				if (changesFlags(child)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns {@code true} if {@code node} contains a capture group.
+	 */
+	private static boolean captures(RegExNode node) {
+		if (node instanceof Group) {
+			Group group = (Group) node;
+			return group.kind == Group.Kind.CAPTURE || captures(group.child);
+		} else if (node instanceof Quantifier) {
+			return captures(((Quantifier) node).child);
+		} else if (node instanceof Fragment) {
+			return captures(((Fragment) node).child);
+		} else if (node instanceof Concat) {
+			return captures(Arrays.asList(((Concat) node).children));
+		} else if (node instanceof Alternation) {
+			return captures(Arrays.asList(((Alternation) node).branches));
+		}
+		return false;
+	}
+
+	private static boolean captures(List<RegExNode> nodes) {
+		for (RegExNode node : nodes) {
+			if (captures(node)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns {@code false} if {@code node} contains text appended verbatim,
+	 * whose structure is unknown, or turns on comments mode, in which moving
+	 * a literal can change its meaning.
+	 */
+	private static boolean isSafe(RegExNode node) {
+		if (node instanceof Raw) {
+			return false;
+		} else if (node instanceof Flags) {
+			return (((Flags) node).mask & COMMENTS) == 0;
+		} else if (node instanceof Group) {
+			Group group = (Group) node;
+			return (group.flags & COMMENTS) == 0 && isSafe(group.child);
+		} else if (node instanceof Quantifier) {
+			return isSafe(((Quantifier) node).child);
+		} else if (node instanceof Fragment) {
+			return isSafe(((Fragment) node).child);
+		} else if (node instanceof Concat) {
+			return isSafe(((Concat) node).children);
+		} else if (node instanceof Alternation) {
+			return isSafe(((Alternation) node).branches);
+		}
+		return true;
+	}
+
+	private static boolean isSafe(RegExNode[] nodes) {
+		for (RegExNode node : nodes) {
+			if (!isSafe(node)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Rewrites {@code node}; {@code nested} is {@code true} inside a
+	 * quantifier or a capture group.
+	 */
+	private static RegExNode rewrite(RegExNode node, int flags, boolean nested) {
+		if (node instanceof Group) {
+			return rewrite((Group) node, flags, nested);
+		} else if (node instanceof Quantifier) {
+			Quantifier quantifier = (Quantifier) node;
+			RegExNode child = rewrite(quantifier.child, flags, true);
+			return child == quantifier.child ? node
+					: new Quantifier(child, quantifier.form, quantifier.mode, quantifier.min, quantifier.max);
+		} else if (node instanceof Concat) {
+			RegExNode[] children = ((Concat) node).children;
+			List<RegExNode> rewritten = new ArrayList<RegExNode>(children.length);
+			boolean changed = false;
+			for (RegExNode child : children) {
+				RegExNode r = rewrite(child, flags, nested);
+				changed |= r != child;
+				rewritten.add(r);
+			}
+			return changed ? Concat.of(rewritten) : node;
+		} else if (node instanceof Fragment) {
+			RegExNode child = ((Fragment) node).child;
+			RegExNode r = rewrite(child, flags, nested);
+			return r == child ? node : r;
+		}
+		return node;
+	}
+
+	private static RegExNode rewrite(Group group, int flags, boolean nested) {
+		nested |= group.kind == Group.Kind.CAPTURE;
+		RegExNode child = group.child;
+		while (child instanceof Fragment) {
+			child = ((Fragment) child).child;
+		}
+		if (!(child instanceof Alternation)) {
+			RegExNode r = rewrite(child, flags, nested);
+			return r == child ? group : new Group(group.kind, r, group.flags);
+		}
+		RegExNode[] branches = ((Alternation) child).branches;
+		List<List<RegExNode>> sequences = new ArrayList<List<RegExNode>>(branches.length);
+		boolean changesFlags = false;
+		for (RegExNode branch : branches) {
+			List<RegExNode> sequence = sequence(rewrite(branch, flags, nested));
+			changesFlags |= hasFlags(sequence);
+			sequences.add(sequence);
+		}
+		// Flags turned on in one branch stay on in the next.
+		List<List<RegExNode>> factored = changesFlags ? sequences : factor(sequences, flags, nested);
+		if (factored.size() == 1) {
+			List<RegExNode> sequence = factored.get(0);
+			if (group.kind == Group.Kind.NO_CAPTURE && sequence.size() == 1 && isCharClass(sequence.get(0))) {
+				return sequence.get(0);
+			}
+			return new Group(group.kind, node(sequence), group.flags);
+		}
+		return new Group(group.kind, alternation(factored), group.flags);
+	}
+
+	/**
+	 * Returns the branches of an alternation with common prefixes and
+	 * suffixes factored out and single characters merged into classes.
+	 * {@code nested} is {@code true} if the alternation is inside a
+	 * quantifier or a capture group.
+	 */
+	private static List<List<RegExNode>> factor(List<List<RegExNode>> branches, int flags, boolean nested) {
+		// A branch equal to an earlier branch never matches where the
+		// earlier branch did not, but dropping one with capture groups would
+		// renumber the groups after it. Nor are branches that may match
+		// nothing dropped inside a quantifier or capture group:
+		// java.util.regex repeats a group of one empty branch, as in (|)*,
+		// differently than one of two, and captures differently.
+		List<List<RegExNode>> distinct = new ArrayList<List<RegExNode>>(branches.size());
+		for (List<RegExNode> branch : branches) {
+			if (!distinct.contains(branch) || captures(branch)
+					|| nested && first(node(branch), flags).nullable) {
+				distinct.add(branch);
+			}
+		}
+		return mergeChars(factorSuffixes(factorPrefixes(distinct, flags, nested), flags, nested));
+	}
+
+	private static List<List<RegExNode>> factorPrefixes(List<List<RegExNode>> branches, int flags,
+			boolean nested) {
+		List<List<RegExNode>> factored = new ArrayList<List<RegExNode>>(branches.size());
+		int i = 0;
+		while (i < branches.size()) {
+			List<RegExNode> first = branches.get(i);
+			int j = i + 1;
+			if (!first.isEmpty() && isMovable(first.get(0))) {
+				while (j < branches.size() && !branches.get(j).isEmpty()
+						&& branches.get(j).get(0).equals(first.get(0))) {
+					j++;
+				}
+			}
+			if (j == i + 1) {
+				factored.add(first);
+			} else {
+				List<List<RegExNode>> run = branches.subList(i, j);
+				int length = 1;
+				while (length < first.size() && isMovable(first.get(length)) && sharePrefix(run, length + 1)) {
+					length++;
+				}
+				List<List<RegExNode>> rests = new ArrayList<List<RegExNode>>(run.size());
+				for (List<RegExNode> branch : run) {
+					rests.add(branch.subList(length, branch.size()));
+				}
+				List<RegExNode> merged = new ArrayList<RegExNode>(first.subList(0, length));
+				merged.addAll(alternative(factor(rests, flags, nested)));
+				factored.add(merged);
+			}
+			i = j;
+		}
+		return factored;
+	}
+
+	private static boolean sharePrefix(List<List<RegExNode>> run, int length) {
+		List<RegExNode> first = run.get(0);
+		for (List<RegExNode> branch : run) {
+			if (branch.size() < length || !branch.get(length - 1).equals(first.get(length - 1))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List<List<RegExNode>> factorSuffixes(List<List<RegExNode>> branches, int flags,
+			boolean nested) {
+		List<List<RegExNode>> factored = new ArrayList<List<RegExNode>>(branches.size());
+		int i = 0;
+		while (i < branches.size()) {
+			List<RegExNode> first = branches.get(i);
+			int j = i + 1;
+			if (!first.isEmpty() && isMovable(last(first, 1))) {
+				while (j < branches.size() && !branches.get(j).isEmpty()
+						&& last(branches.get(j), 1).equals(last(first, 1))) {
+					j++;
+				}
+			}
+			if (j == i + 1) {
+				factored.add(first);
+			} else {
+				List<List<RegExNode>> run = branches.subList(i, j);
+				int length = 1;
+				while (length < first.size() && isMovable(last(first, length + 1)) && shareSuffix(run, length + 1)) {
+					length++;
+				}
+				List<List<RegExNode>> rests = new ArrayList<List<RegExNode>>(run.size());
+				for (List<RegExNode> branch : run) {
+					rests.add(branch.subList(0, branch.size() - length));
+				}
+				List<RegExNode> merged = new ArrayList<RegExNode>(alternative(factor(rests, flags, nested)));
+				merged.addAll(first.subList(first.size() - length, first.size()));
+				factored.add(merged);
+			}
+			i = j;
+		}
+		return factored;
+	}
+
+	private static boolean shareSuffix(List<List<RegExNode>> run, int length) {
+		List<RegExNode> first = run.get(0);
+		for (List<RegExNode> branch : run) {
+			if (branch.size() < length || !last(branch, length).equals(last(first, length))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the {@code n}th node from the end of {@code sequence}, starting
+	 * at 1.
+	 */
+	private static RegExNode last(List<RegExNode> sequence, int n) {
+		return sequence.get(sequence.size() - n);
+	}
+
+	/**
+	 * Merges runs of consecutive branches that each match one character into
+	 * character classes.
+	 */
+	private static List<List<RegExNode>> mergeChars(List<List<RegExNode>> branches) {
+		List<List<RegExNode>> merged = new ArrayList<List<RegExNode>>(branches.size());
+		int i = 0;
+		while (i < branches.size()) {
+			int j = i;
+			CodePointSet.Builder chars = new CodePointSet.Builder();
+			while (j < branches.size() && branches.get(j).size() == 1) {
+				CodePointSet set = chars(branches.get(j).get(0));
+				if (set == null) {
+					break;
+				}
+				chars.add(set);
+				j++;
+			}
+			if (j - i > 1) {
+				List<RegExNode> branch = new ArrayList<RegExNode>(1);
+				branch.add(new CharClass(false, new ClassSet(chars.build())));
+				merged.add(branch);
+				i = j;
+			} else {
+				merged.add(branches.get(i++));
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Returns the characters a literal character or a character class of
+	 * characters and ranges matches, or {@code null} for other nodes.
+	 */
+	private static CodePointSet chars(RegExNode node) {
+		if (node instanceof Literal) {
+			String text = ((Literal) node).text;
+			return text.codePointCount(0, text.length()) == 1 ? CodePointSet.of(text.codePointAt(0)) : null;
+		}
+		if (!(node instanceof CharClass)) {
+			return null;
+		}
+		CharClass charClass = (CharClass) node;
+		if (charClass.negated || charClass.operator != CharClass.Operator.NONE) {
+			return null;
+		}
+		RegExNode[] members = charClass.members instanceof Concat ? ((Concat) charClass.members).children
+				: new RegExNode[] { charClass.members };
+		CodePointSet.Builder chars = new CodePointSet.Builder();
+		for (RegExNode member : members) {
+			if (member instanceof ClassChar) {
+				chars.add(CodePointSet.of(((ClassChar) member).c));
+			} else if (member instanceof ClassRange) {
+				chars.add(CodePointSet.range(((ClassRange) member).min, ((ClassRange) member).max));
+			} else if (member instanceof ClassSet) {
+				chars.add(((ClassSet) member).set);
+			} else {
+				return null;
+			}
+		}
+		return chars.build();
+	}
+
+	/**
+	 * Returns the nodes matched in turn by {@code node} with literals split
+	 * into one node per character.
+	 */
+	private static List<RegExNode> sequence(RegExNode node) {
+		List<RegExNode> sequence = new ArrayList<RegExNode>();
+		addSequence(node, sequence);
+		return sequence;
+	}
+
+	private static void addSequence(RegExNode node, List<RegExNode> sequence) {
+		if (node == RegExNode.EMPTY) {
+			return;
+		} else if (node instanceof Concat) {
+			for (RegExNode child : ((Concat) node).children) {
+				addSequence(child, sequence);
+			}
+		} else if (node instanceof Fragment) {
+			addSequence(((Fragment) node).child, sequence);
+		} else if (node instanceof Literal || node instanceof CharLiteral || node instanceof NumberLiteral) {
+			String text = node.literalText();
+			for (int i = 0; i < text.length(); i = text.offsetByCodePoints(i, 1)) {
+				sequence.add(new Literal(text.substring(i, text.offsetByCodePoints(i, 1))));
+			}
+		} else {
+			sequence.add(node);
+		}
+	}
+
+	/**
+	 * Returns the node matching each node of {@code sequence} in turn, joining
+	 * adjacent literals.
+	 */
+	private static RegExNode node(List<RegExNode> sequence) {
+		List<RegExNode> nodes = new ArrayList<RegExNode>(sequence.size());
+		StringBuilder text = new StringBuilder();
+		for (RegExNode node : sequence) {
+			if (node instanceof Literal) {
+				text.append(((Literal) node).text);
+				continue;
+			}
+			if (text.length() > 0) {
+				nodes.add(new Literal(text.toString()));
+				text.setLength(0);
+			}
+			nodes.add(node);
+		}
+		if (text.length() > 0) {
+			nodes.add(new Literal(text.toString()));
+		}
+		return Concat.of(nodes);
+	}
+
+	private static Alternation alternation(List<List<RegExNode>> branches) {
+		RegExNode[] nodes = new RegExNode[branches.size()];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = node(branches.get(i));
+		}
+		return new Alternation(nodes);
+	}
+
+	/**
+	 * Returns the sequence matching any of {@code branches}.
+	 */
+	private static List<RegExNode> alternative(List<List<RegExNode>> branches) {
+		if (branches.size() == 1) {
+			return branches.get(0);
+		}
+		List<RegExNode> sequence = new ArrayList<RegExNode>(1);
+		sequence.add(new Group(Group.Kind.NO_CAPTURE, alternation(branches)));
+		return sequence;
+	}
+
+	private static boolean hasFlags(List<RegExNode> sequence) {
+		for (RegExNode node : sequence) {
+			if (node instanceof Flags) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns {@code true} if {@code node} matches in at most one way at any
+	 * position: one character or a zero-width assertion.
+	 */
+	private static boolean isMovable(RegExNode node) {
+		return node instanceof Literal || isCharClass(node) || node instanceof Boundary;
+	}
+
+	private static boolean isCharClass(RegExNode node) {
+		return node instanceof CharClass || node instanceof Escape || node instanceof Shorthand
+				|| node instanceof Property;
+	}
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.illegalNullArg;
+import static com.crumbs.util.Logging.illegalNullArrayItemArg;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Set of regular expressions searched for together in one pass over the
+ * input
+ * <p>
+ * The regular expressions are compiled into one automaton, so finding which
+ * of them match an input reads the input once, however many regular
+ * expressions there are, instead of once per regular expression. The
+ * automaton is a lazily built DFA with a bounded state cache, as with
+ * {@link RegExEngine#DFA}, and regular expressions must only use the
+ * constructs that engine supports.
+ * </p>
+ * <p>
+ * Spans are found by a second search for each regular expression that
+ * matched, so they cost extra only for the regular expressions that match.
+ * The second search is an NFA simulation as with {@link RegExEngine#NFA},
+ * and like the matches of that engine, a span can end elsewhere than Java's
+ * when an iteration of a loop can match the empty string.
+ * </p>
+ * <p>
+ * A set is thread-safe.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+public final class RegExSet {
+
+	/**
+	 * budget of a state cache in bytes; the states of a set tend to be large
+	 */
+	static final long CACHE_BUDGET = 8 * DFACompiledRegEx.DEFAULT_CACHE_BUDGET;
+
+	private final Prog prog;
+	private final Prog[] progs;
+	private final LazyDFA.Alphabet alphabet;
+	private final SlotPool<LazyDFA> automata = new SlotPool<LazyDFA>();
+	private final SlotPool<PikeVM>[] machines;
+	private final DFAStats stats = new DFAStats();
+
+	/**
+	 * Compiles the specified regular expressions into a set.
+	 *
+	 * @param regExes
+	 *            regular expressions of the set; the index of each in the list
+	 *            identifies it in search results
+	 * @param flags
+	 *            match flags to compile every regular expression with, as in
+	 *            {@link RegExBuilder#compile(RegExMatchFlag...)}
+	 * @throws IllegalArgumentException
+	 *             if {@code regExes}, {@code flags}, or one of their items is
+	 *             {@code null}
+	 * @throws UnsupportedOperationException
+	 *             if a regular expression uses a construct that
+	 *             {@link RegExEngine#DFA} does not support
+	 */
+	public RegExSet(List<? extends RegExBuilder> regExes, RegExMatchFlag... flags) {
+		if (regExes == null) {
+			throw illegalNullArg(List.class, "regExes");
+		}
+		int patternFlags = BaseRegExBuilder.patternFlags(flags);
+		RegExNode[] nodes = new RegExNode[regExes.size()];
+		this.progs = new Prog[nodes.length];
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		SlotPool<PikeVM>[] machines = new SlotPool[nodes.length];
+		this.machines = machines;
+		for (int i = 0; i < nodes.length; i++) {
+			RegExBuilder regEx = regExes.get(i);
+			if (regEx == null) {
+				throw illegalNullArrayItemArg(List.class, "regExes");
+			}
+			nodes[i] = RegExOptimizer.optimize(BaseCommonBuilder.nodeOf(regEx), patternFlags);
+			this.progs[i] = ProgCompiler.compile(nodes[i], patternFlags, RegExEngine.DFA.name());
+			this.machines[i] = new SlotPool<PikeVM>();
+		}
+		if (nodes.length == 0) {
+			this.prog = null;
+			this.alphabet = null;
+		} else {
+			this.prog = ProgCompiler.compileSet(nodes, patternFlags, RegExEngine.DFA.name());
+			this.alphabet = new LazyDFA.Alphabet(this.prog);
+		}
+	}
+
+	/**
+	 * Returns the number of regular expressions in this set.
+	 *
+	 * @return the size of this set
+	 */
+	public int size() {
+		return this.progs.length;
+	}
+
+	/**
+	 * Returns the indexes of the regular expressions that match some
+	 * subsequence of {@code input}.
+	 *
+	 * @param input
+	 *            character sequence to search
+	 * @return the indexes in ascending order
+	 * @throws IllegalArgumentException
+	 *             if {@code input} is {@code null}
+	 * @see CompiledRegEx#find(CharSequence)
+	 */
+	public int[] find(CharSequence input) {
+		boolean[] matched = matched(input);
+		int[] indexes = new int[matched.length];
+		int n = 0;
+		for (int i = 0; i < matched.length; i++) {
+			if (matched[i]) {
+				indexes[n++] = i;
+			}
+		}
+		return Arrays.copyOf(indexes, n);
+	}
+
+	/**
+	 * Returns the leftmost match of each regular expression in {@code input}
+	 * as {@link java.util.regex.Matcher#find()} would find it.
+	 *
+	 * @param input
+	 *            character sequence to search
+	 * @return an array of twice the size of this set holding the start and
+	 *         the end of the match of regular expression <em>i</em> at
+	 *         indexes <em>2i</em> and <em>2i + 1</em>, or -1 and -1 if it
+	 *         does not match
+	 * @throws IllegalArgumentException
+	 *             if {@code input} is {@code null}
+	 */
+	public int[] findSpans(CharSequence input) {
+		boolean[] matched = matched(input);
+		int[] spans = new int[2 * matched.length];
+		Arrays.fill(spans, -1);
+		int[] slots = new int[2];
+		for (int i = 0; i < matched.length; i++) {
+			if (matched[i] && search(i, input, slots)) {
+				spans[2 * i] = slots[0];
+				spans[2 * i + 1] = slots[1];
+			}
+		}
+		return spans;
+	}
+
+	private boolean[] matched(CharSequence input) {
+		if (input == null) {
+			throw illegalNullArg(CharSequence.class, "input");
+		}
+		boolean[] matched = new boolean[this.progs.length];
+		if (this.prog == null) {
+			return matched;
+		}
+		LazyDFA automaton = this.automata.poll();
+		if (automaton == null) {
+			automaton = new LazyDFA(this.prog, this.alphabet, PikeVM.Anchor.UNANCHORED, CACHE_BUDGET, this.stats);
+		}
+		int found;
+		try {
+			found = automaton.searchAll(input, matched);
+		} finally {
+			if (!this.automata.offer(automaton)) {
+				automaton.discard();
+			}
+		}
+		if (found == LazyDFA.GAVE_UP) {
+			// The cache thrashed; search for each regular expression instead.
+			this.stats.fallbackCount.incrementAndGet();
+			Arrays.fill(matched, false);
+			for (int i = 0; i < matched.length; i++) {
+				matched[i] = search(i, input, null);
+			}
+		}
+		return matched;
+	}
+
+	private boolean search(int index, CharSequence input, int[] slots) {
+		PikeVM machine = this.machines[index].poll();
+		if (machine == null) {
+			machine = new PikeVM(this.progs[index]);
+		}
+		try {
+			return machine.search(input, 0, PikeVM.Anchor.UNANCHORED, slots);
+		} finally {
+			this.machines[index].offer(machine);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RegExSet[regExes=" + size() + ", " + this.stats + "]";
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Small lock-free pool of reusable objects
+ * <p>
+ * Objects are kept in a fixed array of slots instead of a
+ * {@link ThreadLocal}: {@link #poll()} takes an object out of a slot with a
+ * compare-and-set and {@link #offer(Object)} puts it back into a free slot.
+ * A caller that finds no object creates one, and an object that finds no free
+ * slot is dropped. The pool is therefore bounded no matter how many threads,
+ * virtual or not, use it, and a thread holds an object only while it uses it.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @param <T>
+ *            type of the pooled objects
+ */
+final class SlotPool<T> {
+
+	/**
+	 * number of slots probed before giving up
+	 */
+	private static final int PROBES = 4;
+
+	private static final int SLOT_COUNT = slotCount();
+
+	private static int slotCount() {
+		int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) << 1;
+		return Math.min(n, 64);
+	}
+
+	private final AtomicReferenceArray<T> slots = new AtomicReferenceArray<T>(SLOT_COUNT);
+
+	/**
+	 * Returns the first slot to probe for the current thread so that threads
+	 * tend to use different slots.
+	 */
+	private static int firstSlot() {
+		long id = Thread.currentThread().getId();
+		return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & (SLOT_COUNT - 1);
+	}
+
+	/**
+	 * Takes an object out of this pool.
+	 *
+	 * @return a pooled object or {@code null} if none was found
+	 */
+	T poll() {
+		int first = firstSlot();
+		for (int i = 0; i < PROBES && i < SLOT_COUNT; i++) {
+			int slot = (first + i) & (SLOT_COUNT - 1);
+			T object = this.slots.get(slot);
+			if (object != null && this.slots.compareAndSet(slot, object, null)) {
+				return object;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns an object to this pool, or drops it if the pool is full.
+	 *
+	 * @param object
+	 *            object that is no longer used
+	 * @return {@code true} if the object was pooled, {@code false} if it was
+	 *         dropped
+	 */
+	boolean offer(T object) {
+		int first = firstSlot();
+		for (int i = 0; i < PROBES && i < SLOT_COUNT; i++) {
+			int slot = (first + i) & (SLOT_COUNT - 1);
+			if (this.slots.get(slot) == null && this.slots.compareAndSet(slot, null, object)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,480 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.getString;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Finds the matches of a {@link StreamingRegEx} in a stream of characters
+ * <p>
+ * Each call of {@link #find()} finds the next match as
+ * {@link java.util.regex.Matcher#find()} would in the whole input, with
+ * positions counted in characters from the start of the stream. The input is
+ * read into a ring buffer and run through an NFA simulation like
+ * {@link PikeVM}, one code point at a time, so a match may span any number of
+ * reads. Characters stay in the buffer only while a match candidate that
+ * started at or before them is alive, or while assertions may look back at
+ * them; the buffer never grows. As with {@link RegExEngine#NFA}, a match can
+ * end elsewhere than Java's when an iteration of a loop can match the empty
+ * string.
+ * </p>
+ * <p>
+ * A candidate longer than the buffer has to give up its oldest characters.
+ * Its match is still found with the right bounds, but {@link #group()} can
+ * no longer return its text, and if the next search would start in the
+ * dropped characters, it starts at the oldest character kept instead.
+ * </p>
+ * <p>
+ * A matcher is not thread-safe.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see StreamingRegEx#matcher(Reader)
+ */
+public final class StreamMatcher implements Closeable {
+
+	/**
+	 * characters kept before the current position for assertions, which look
+	 * back at the code point before it and, for <tt>\b</tt>, at the letter or
+	 * digit before non-spacing marks
+	 */
+	private static final int HISTORY = 64;
+
+	/**
+	 * characters needed from the current position: its code point, then the
+	 * three characters that assertions look at from the position after it
+	 */
+	private static final int LOOKAHEAD = 5;
+
+	/**
+	 * Sparse set of threads: program counters in priority order, each with
+	 * the position at which its match candidate started
+	 */
+	private static final class Threads {
+		final int[] dense;
+		final int[] sparse;
+		final long[] starts;
+		int size;
+
+		Threads(int programSize) {
+			this.dense = new int[programSize];
+			this.sparse = new int[programSize];
+			this.starts = new long[programSize];
+		}
+
+		boolean contains(int pc) {
+			int i = this.sparse[pc];
+			return i < this.size && this.dense[i] == pc;
+		}
+
+		int add(int pc) {
+			this.sparse[pc] = this.size;
+			this.dense[this.size] = pc;
+			return this.size++;
+		}
+	}
+
+	/**
+	 * The buffered characters, from position {@link StreamMatcher#base}
+	 * <p>
+	 * Until the end of the input is read, the length is that of the buffered
+	 * characters, and {@link StreamMatcher#fill} keeps enough characters after
+	 * the current position that assertions never take it for the end.
+	 * </p>
+	 */
+	private final class Window implements CharSequence {
+		@Override
+		public int length() {
+			return StreamMatcher.this.count;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= StreamMatcher.this.count) {
+				throw new IndexOutOfBoundsException(Integer.toString(index));
+			}
+			return StreamMatcher.this.buffer[(StreamMatcher.this.head + index) & StreamMatcher.this.mask];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			StringBuilder out = new StringBuilder(end - start);
+			for (int i = start; i < end; i++) {
+				out.append(charAt(i));
+			}
+			return out;
+		}
+
+		@Override
+		public String toString() {
+			return subSequence(0, length()).toString();
+		}
+	}
+
+	private final Prog prog;
+	private final Reader reader;
+
+	/**
+	 * ring buffer of a power-of-two size
+	 */
+	private final char[] buffer;
+	private final int mask;
+	private final Window window = new Window();
+
+	/**
+	 * position of the oldest buffered character
+	 */
+	private long base;
+
+	/**
+	 * index in {@link #buffer} of the oldest buffered character
+	 */
+	private int head;
+
+	/**
+	 * number of buffered characters
+	 */
+	private int count;
+
+	private boolean eof;
+
+	private Threads current;
+	private Threads next;
+
+	/**
+	 * stack of {@link #addThread} holding program counters to explore
+	 */
+	private final int[] stack;
+
+	/**
+	 * position at which the next search starts, or -1 if there are no more
+	 * matches
+	 */
+	private long from;
+
+	private long start = -1;
+	private long end = -1;
+
+	StreamMatcher(Prog prog, Reader reader, int bufferSize) {
+		this.prog = prog;
+		this.reader = reader;
+		this.buffer = new char[bufferSize];
+		this.mask = bufferSize - 1;
+		this.current = new Threads(prog.size());
+		this.next = new Threads(prog.size());
+		this.stack = new int[prog.size() + 1];
+	}
+
+	/**
+	 * Finds the next match of the regular expression.
+	 *
+	 * @return {@code true} if a match was found
+	 * @throws IOException
+	 *             if reading the input fails
+	 * @see java.util.regex.Matcher#find()
+	 */
+	public boolean find() throws IOException {
+		this.start = -1;
+		this.end = -1;
+		if (this.from < 0) {
+			return false;
+		}
+		final int[] op = this.prog.op;
+		final int[] arg = this.prog.arg;
+		final CharMatcher[] matchers = this.prog.matchers;
+		final LiteralPrefilter prefilter = this.prog.prefilter;
+		Threads current = this.current;
+		Threads next = this.next;
+		current.size = 0;
+		boolean matched = false;
+		long matchStart = -1;
+		long matchEnd = -1;
+		long pos = this.from;
+		if (pos < this.base) {
+			// A candidate that outgrew the buffer dropped the characters
+			// where this search starts; start where assertions can still
+			// look back.
+			pos = this.base + Math.min(HISTORY, this.count);
+		}
+		while (true) {
+			fill(pos, pos + LOOKAHEAD, matched ? matchStart : pos, current);
+			if (!matched) {
+				if (current.size == 0 && prefilter != null) {
+					// No thread is running, so skip to where a match can start.
+					int i = prefilter.indexOf(this.window, (int) (pos - this.base));
+					if (i < 0) {
+						if (this.eof) {
+							break;
+						}
+						// A prefix may start in the last characters; read on.
+						pos = Math.max(pos, this.base + this.count - LiteralPrefilter.MAX_LENGTH - 1);
+						fill(pos, this.base + this.count + 1, pos, current);
+						continue;
+					}
+					pos = this.base + i;
+					fill(pos, pos + LOOKAHEAD, pos, current);
+				}
+				addThread(current, 0, pos, pos);
+			}
+			if (current.size == 0) {
+				break;
+			}
+			int index = (int) (pos - this.base);
+			boolean atEnd = index >= this.count;
+			int c = atEnd ? -1 : codePointAt(index);
+			long nextPos = atEnd ? pos : pos + Character.charCount(c);
+			next.size = 0;
+			for (int i = 0; i < current.size; i++) {
+				int pc = current.dense[i];
+				switch (op[pc]) {
+				case Prog.MATCH:
+					matched = true;
+					matchStart = current.starts[i];
+					matchEnd = pos;
+					// Threads after this one have lower priority; drop them.
+					i = current.size;
+					break;
+				case Prog.CHAR:
+					if (c == arg[pc]) {
+						addThread(next, pc + 1, nextPos, current.starts[i]);
+					}
+					break;
+				case Prog.SET:
+					if (c >= 0 && matchers[arg[pc]].matches(c)) {
+						addThread(next, pc + 1, nextPos, current.starts[i]);
+					}
+					break;
+				default:
+					break;
+				}
+			}
+			if (atEnd) {
+				break;
+			}
+			Threads swap = current;
+			current = next;
+			next = swap;
+			pos = nextPos;
+		}
+		this.current = current;
+		this.next = next;
+		if (!matched) {
+			this.from = -1;
+			return false;
+		}
+		this.start = matchStart;
+		this.end = matchEnd;
+		if (matchEnd > matchStart) {
+			this.from = matchEnd;
+		} else {
+			// Search again one code point later so as not to find the same
+			// empty match.
+			current.size = 0;
+			fill(matchEnd, matchEnd + LOOKAHEAD, matchStart, current);
+			int index = (int) (matchEnd - this.base);
+			if (index < 0) {
+				// The next search starts in dropped characters anyway.
+				this.from = matchEnd + 1;
+			} else {
+				this.from = index < this.count ? matchEnd + Character.charCount(codePointAt(index)) : -1;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the position of the first character of the match.
+	 *
+	 * @return the start of the match
+	 * @throws IllegalStateException
+	 *             if the last call of {@link #find()} found no match
+	 * @see java.util.regex.Matcher#start()
+	 */
+	public long start() {
+		checkMatch();
+		return this.start;
+	}
+
+	/**
+	 * Returns the position after the last character of the match.
+	 *
+	 * @return the end of the match
+	 * @throws IllegalStateException
+	 *             if the last call of {@link #find()} found no match
+	 * @see java.util.regex.Matcher#end()
+	 */
+	public long end() {
+		checkMatch();
+		return this.end;
+	}
+
+	/**
+	 * Returns the text of the match.
+	 *
+	 * @return the characters from {@link #start()} to {@link #end()}
+	 * @throws IllegalStateException
+	 *             if the last call of {@link #find()} found no match, or if
+	 *             the match was too long for the buffer to keep its text
+	 * @see java.util.regex.Matcher#group()
+	 */
+	public String group() {
+		checkMatch();
+		if (this.start < this.base) {
+			throw new IllegalStateException(getString("stream.match.dropped", Long.valueOf(this.start),
+					Long.valueOf(this.end), Integer.valueOf(this.buffer.length)));
+		}
+		return this.window.subSequence((int) (this.start - this.base), (int) (this.end - this.base)).toString();
+	}
+
+	/**
+	 * Closes the input.
+	 *
+	 * @throws IOException
+	 *             if closing the input fails
+	 */
+	@Override
+	public void close() throws IOException {
+		this.reader.close();
+	}
+
+	private void checkMatch() {
+		if (this.start < 0) {
+			throw new IllegalStateException(getString("stream.no.match"));
+		}
+	}
+
+	/**
+	 * Reads until the buffer reaches {@code limit} or the end of the input,
+	 * dropping the characters before {@code keep}, the start of every
+	 * thread, and the history of {@code pos} when the buffer is full.
+	 *
+	 * @param pos
+	 *            current position
+	 * @param limit
+	 *            position to read up to, exclusive
+	 * @param keep
+	 *            oldest position to keep if possible
+	 * @param threads
+	 *            running threads, whose candidates are kept if possible
+	 */
+	private void fill(long pos, long limit, long keep, Threads threads) throws IOException {
+		while (!this.eof && this.base + this.count < limit) {
+			if (this.count == this.buffer.length) {
+				for (int i = 0; i < threads.size; i++) {
+					keep = Math.min(keep, threads.starts[i]);
+				}
+				long dropTo = Math.min(keep, pos - HISTORY);
+				if (dropTo <= this.base) {
+					// A candidate outgrew the buffer and loses its text.
+					dropTo = pos - HISTORY;
+				}
+				int drop = (int) (dropTo - this.base);
+				this.head = (this.head + drop) & this.mask;
+				this.base = dropTo;
+				this.count -= drop;
+			}
+			int tail = (this.head + this.count) & this.mask;
+			int n = this.reader.read(this.buffer, tail,
+					Math.min(this.buffer.length - this.count, this.buffer.length - tail));
+			if (n < 0) {
+				this.eof = true;
+			} else {
+				this.count += n;
+			}
+		}
+	}
+
+	private int codePointAt(int index) {
+		char c = this.buffer[(this.head + index) & this.mask];
+		if (Character.isHighSurrogate(c) && index + 1 < this.count) {
+			char low = this.buffer[(this.head + index + 1) & this.mask];
+			if (Character.isLowSurrogate(low)) {
+				return Character.toCodePoint(c, low);
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Adds the thread at {@code pc0} and every thread reachable from it
+	 * without consuming input to {@code threads}, in priority order.
+	 *
+	 * @param start
+	 *            position at which the match candidate of the thread started
+	 */
+	private void addThread(Threads threads, int pc0, long pos, long start) {
+		final int[] op = this.prog.op;
+		final int[] arg = this.prog.arg;
+		final int[] arg2 = this.prog.arg2;
+		final int[] stack = this.stack;
+		int top = 0;
+		stack[top++] = pc0;
+		while (top > 0) {
+			int pc = stack[--top];
+			while (!threads.contains(pc)) {
+				int t = threads.add(pc);
+				threads.starts[t] = start;
+				switch (op[pc]) {
+				case Prog.JMP:
+					pc = arg[pc];
+					continue;
+				case Prog.SPLIT:
+					stack[top++] = arg2[pc];
+					pc = arg[pc];
+					continue;
+				case Prog.SAVE:
+					// Only the bounds of the whole match are kept: the start of
+					// the candidate and the position of MATCH.
+					pc++;
+					continue;
+				case Prog.ASSERT:
+					if (assertion(arg[pc], pos)) {
+						pc++;
+						continue;
+					}
+					break;
+				default:
+					// CHAR, SET and MATCH wait for the next code point.
+					break;
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns {@code true} if assertion {@code kind} holds at position
+	 * {@code pos} of the whole input. Once characters are dropped, the buffer
+	 * no longer starts at the start of the input, but it keeps the
+	 * characters before {@code pos} that the other assertions look back at.
+	 */
+	private boolean assertion(int kind, long pos) {
+		if (kind == Prog.BEGIN_TEXT) {
+			return pos == 0;
+		}
+		return Prog.assertion(kind, this.window, (int) (pos - this.base));
+	}
+
+	@Override
+	public String toString() {
+		return "StreamMatcher[position=" + (this.base + this.count) + ", bufferSize=" + this.buffer.length + "]";
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.illegalNullArg;
+import static com.crumbs.util.Logging.illegalOutsideSetArg;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Regular expression searched for in streams of characters too large to read
+ * into memory
+ * <p>
+ * Where {@link CompiledRegEx} needs the whole input as a
+ * {@link CharSequence}, a {@link StreamMatcher} reads its input through a
+ * ring buffer of {@link #bufferSize()} characters and finds matches, even
+ * ones that span many reads, with memory bounded by the size of the buffer
+ * rather than of the input. Matches are found by an NFA simulation as with
+ * {@link RegExEngine#NFA}, and regular expressions must only use the
+ * constructs that engine supports.
+ * </p>
+ * <p>
+ * A streaming regular expression is thread-safe; its matchers are not.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+public final class StreamingRegEx {
+
+	/**
+	 * default size of the buffer of a matcher in characters
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * smallest size of the buffer of a matcher in characters
+	 */
+	public static final int MIN_BUFFER_SIZE = 256;
+
+	private final Prog prog;
+	private final int bufferSize;
+
+	/**
+	 * Compiles the specified regular expression for searching streams.
+	 *
+	 * @param regEx
+	 *            regular expression to search for
+	 * @param flags
+	 *            match flags to compile the regular expression with, as in
+	 *            {@link RegExBuilder#compile(RegExMatchFlag...)}
+	 * @throws IllegalArgumentException
+	 *             if {@code regEx}, {@code flags}, or one of its items is
+	 *             {@code null}
+	 * @throws UnsupportedOperationException
+	 *             if the regular expression uses a construct that
+	 *             {@link RegExEngine#NFA} does not support
+	 */
+	public StreamingRegEx(RegExBuilder regEx, RegExMatchFlag... flags) {
+		if (regEx == null) {
+			throw illegalNullArg(RegExBuilder.class, "regEx");
+		}
+		int patternFlags = BaseRegExBuilder.patternFlags(flags);
+		RegExNode node = RegExOptimizer.optimize(BaseCommonBuilder.nodeOf(regEx), patternFlags);
+		this.prog = ProgCompiler.compile(node, patternFlags, RegExEngine.NFA.name());
+		this.bufferSize = DEFAULT_BUFFER_SIZE;
+	}
+
+	private StreamingRegEx(Prog prog, int bufferSize) {
+		this.prog = prog;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Returns this regular expression with matchers of the specified buffer
+	 * size.
+	 * <p>
+	 * The buffer holds the text of the match being found, so the text of a
+	 * match longer than the buffer cannot be returned by
+	 * {@link StreamMatcher#group()}, though its bounds are still found.
+	 * </p>
+	 *
+	 * @param bufferSize
+	 *            number of characters of the input each matcher keeps;
+	 *            rounded up to a power of two
+	 * @return a new streaming regular expression
+	 * @throws IllegalArgumentException
+	 *             if {@code bufferSize} is less than {@link #MIN_BUFFER_SIZE}
+	 *             or greater than 2<sup>30</sup>
+	 */
+	public StreamingRegEx withBufferSize(int bufferSize) {
+		if (bufferSize < MIN_BUFFER_SIZE || bufferSize > 1 << 30) {
+			throw illegalOutsideSetArg(int.class, "bufferSize", Integer.valueOf(bufferSize),
+					"[" + MIN_BUFFER_SIZE + "," + (1 << 30) + "]");
+		}
+		return new StreamingRegEx(this.prog, Integer.highestOneBit(bufferSize - 1) << 1);
+	}
+
+	/**
+	 * Returns the number of characters of the input each matcher keeps.
+	 *
+	 * @return the buffer size
+	 */
+	public int bufferSize() {
+		return this.bufferSize;
+	}
+
+	/**
+	 * Returns a matcher that searches the characters of {@code reader}.
+	 *
+	 * @param reader
+	 *            input to search; closed by {@link StreamMatcher#close()}
+	 * @return a new matcher
+	 * @throws IllegalArgumentException
+	 *             if {@code reader} is {@code null}
+	 */
+	public StreamMatcher matcher(Reader reader) {
+		if (reader == null) {
+			throw illegalNullArg(Reader.class, "reader");
+		}
+		return new StreamMatcher(this.prog, reader, this.bufferSize);
+	}
+
+	/**
+	 * Returns a matcher that searches the bytes of {@code in} decoded with
+	 * {@code charset}.
+	 *
+	 * @param in
+	 *            input to search; closed by {@link StreamMatcher#close()}
+	 * @param charset
+	 *            character set of the input
+	 * @return a new matcher
+	 * @throws IllegalArgumentException
+	 *             if {@code in} or {@code charset} is {@code null}
+	 */
+	public StreamMatcher matcher(InputStream in, Charset charset) {
+		if (in == null) {
+			throw illegalNullArg(InputStream.class, "in");
+		}
+		if (charset == null) {
+			throw illegalNullArg(Charset.class, "charset");
+		}
+		return matcher(new InputStreamReader(in, charset));
+	}
+
+	/**
+	 * Returns a matcher that searches the bytes of {@code channel} decoded
+	 * with {@code charset}, such as the contents of a
+	 * {@link java.nio.channels.FileChannel}.
+	 *
+	 * @param channel
+	 *            input to search; closed by {@link StreamMatcher#close()}
+	 * @param charset
+	 *            character set of the input
+	 * @return a new matcher
+	 * @throws IllegalArgumentException
+	 *             if {@code channel} or {@code charset} is {@code null}
+	 */
+	public StreamMatcher matcher(ReadableByteChannel channel, Charset charset) {
+		if (channel == null) {
+			throw illegalNullArg(ReadableByteChannel.class, "channel");
+		}
+		if (charset == null) {
+			throw illegalNullArg(Charset.class, "charset");
+		}
+		// Replace malformed input as InputStreamReader does.
+		return matcher(Channels.newReader(channel, charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE), -1));
+	}
+
+	@Override
+	public String toString() {
+		return "StreamingRegEx[bufferSize=" + this.bufferSize + "]";
+	}
+}
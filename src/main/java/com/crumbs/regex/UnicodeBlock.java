@@ -96,7 +96,7 @@ public enum UnicodeBlock {
 	InSupplemental_Arrows_A("InSupplemental_Arrows-A"),
 	InBraille_Patterns,
 	InSupplemental_Arrows_B("InSupplemental_Arrows-B"),
-	InMiscellaneous_Mathematical_Symbols_B("InMiscellaneous_Mathematical_Symbols-"),
+	InMiscellaneous_Mathematical_Symbols_B("InMiscellaneous_Mathematical_Symbols-B"),
 	InSupplemental_Mathematical_Operators,
 	InMiscellaneous_Symbols_and_Arrows,
 	InCJK_Radicals_Supplement,
@@ -143,6 +143,27 @@ public enum UnicodeBlock {
 		this.name = name;
 	}
 
+	/**
+	 * Returns the Java block of this block.
+	 * <p>
+	 * {@link Character.UnicodeBlock#forName(String)} knows some blocks only by
+	 * their names with spaces, like <tt>Greek and Coptic</tt>.
+	 * </p>
+	 * 
+	 * @return the block {@link Character.UnicodeBlock#of(int)} returns for
+	 *         the members of this block
+	 * @throws IllegalArgumentException
+	 *             if Java does not know this block
+	 */
+	Character.UnicodeBlock block() {
+		String name = toString().substring("In".length());
+		try {
+			return Character.UnicodeBlock.forName(name);
+		} catch (IllegalArgumentException e) {
+			return Character.UnicodeBlock.forName(name.replace('_', ' '));
+		}
+	}
+
 	@Override
 	public String toString() {
 		return this.name == null ? name() : this.name;
@@ -112,6 +112,146 @@ public enum UnicodeCharacterProperty {
 		this.name = name;
 	}
 
+	/**
+	 * Returns the general categories this property matches, one bit
+	 * {@code 1 << type} for each {@link Character#getType(int) type}.
+	 * 
+	 * @return the mask of the categories of this property
+	 */
+	int categories() {
+		switch (this) {
+		case L:
+		case Letter:
+			return bits(Character.UPPERCASE_LETTER, Character.LOWERCASE_LETTER, Character.TITLECASE_LETTER,
+					Character.MODIFIER_LETTER, Character.OTHER_LETTER);
+		case Ll:
+		case Lowercase_Letter:
+			return bits(Character.LOWERCASE_LETTER);
+		case Lu:
+		case Uppercase_Letter:
+			return bits(Character.UPPERCASE_LETTER);
+		case Lt:
+		case Titlecase_Letter:
+			return bits(Character.TITLECASE_LETTER);
+		case LAmpersand:
+		case LetterAmpersand:
+			return bits(Character.UPPERCASE_LETTER, Character.LOWERCASE_LETTER, Character.TITLECASE_LETTER);
+		case Lm:
+		case Modifier_Letter:
+			return bits(Character.MODIFIER_LETTER);
+		case Lo:
+		case Other_Letter:
+			return bits(Character.OTHER_LETTER);
+		case M:
+		case Mark:
+			return bits(Character.NON_SPACING_MARK, Character.COMBINING_SPACING_MARK, Character.ENCLOSING_MARK);
+		case Mn:
+		case Non_Spacing_Mark:
+			return bits(Character.NON_SPACING_MARK);
+		case Mc:
+		case Spacing_Combining_Mark:
+			return bits(Character.COMBINING_SPACING_MARK);
+		case Me:
+		case Enclosing_Mark:
+			return bits(Character.ENCLOSING_MARK);
+		case Z:
+		case Separator:
+			return bits(Character.SPACE_SEPARATOR, Character.LINE_SEPARATOR, Character.PARAGRAPH_SEPARATOR);
+		case Zs:
+		case Space_Separator:
+			return bits(Character.SPACE_SEPARATOR);
+		case Zl:
+		case Line_Separator:
+			return bits(Character.LINE_SEPARATOR);
+		case Zp:
+		case Paragraph_Separator:
+			return bits(Character.PARAGRAPH_SEPARATOR);
+		case S:
+		case Symbol:
+			return bits(Character.MATH_SYMBOL, Character.CURRENCY_SYMBOL, Character.MODIFIER_SYMBOL,
+					Character.OTHER_SYMBOL);
+		case Sm:
+		case Math_Symbol:
+			return bits(Character.MATH_SYMBOL);
+		case Sc:
+		case Currency_Symbol:
+			return bits(Character.CURRENCY_SYMBOL);
+		case Sk:
+		case Modifier_Symbol:
+			return bits(Character.MODIFIER_SYMBOL);
+		case So:
+		case Other_Symbol:
+			return bits(Character.OTHER_SYMBOL);
+		case N:
+		case Number:
+			return bits(Character.DECIMAL_DIGIT_NUMBER, Character.LETTER_NUMBER, Character.OTHER_NUMBER);
+		case Nd:
+		case Decimal_Digit_Number:
+			return bits(Character.DECIMAL_DIGIT_NUMBER);
+		case Nl:
+		case Letter_Number:
+			return bits(Character.LETTER_NUMBER);
+		case No:
+		case Other_Number:
+			return bits(Character.OTHER_NUMBER);
+		case P:
+		case Punctuation:
+			return bits(Character.DASH_PUNCTUATION, Character.START_PUNCTUATION, Character.END_PUNCTUATION,
+					Character.INITIAL_QUOTE_PUNCTUATION, Character.FINAL_QUOTE_PUNCTUATION,
+					Character.CONNECTOR_PUNCTUATION, Character.OTHER_PUNCTUATION);
+		case Pd:
+		case Dash_Punctuation:
+			return bits(Character.DASH_PUNCTUATION);
+		case Ps:
+		case Open_Punctuation:
+			return bits(Character.START_PUNCTUATION);
+		case Pe:
+		case Close_Punctuation:
+			return bits(Character.END_PUNCTUATION);
+		case Pi:
+		case Initial_Punctuation:
+			return bits(Character.INITIAL_QUOTE_PUNCTUATION);
+		case Pf:
+		case Final_Punctuation:
+			return bits(Character.FINAL_QUOTE_PUNCTUATION);
+		case Pc:
+		case Connector_Punctuation:
+			return bits(Character.CONNECTOR_PUNCTUATION);
+		case Po:
+		case Other_Punctuation:
+			return bits(Character.OTHER_PUNCTUATION);
+		case C:
+		case Other:
+			return bits(Character.CONTROL, Character.FORMAT, Character.PRIVATE_USE, Character.SURROGATE,
+					Character.UNASSIGNED);
+		case Cc:
+		case Control:
+			return bits(Character.CONTROL);
+		case Cf:
+		case Format:
+			return bits(Character.FORMAT);
+		case Co:
+		case Private_Use:
+			return bits(Character.PRIVATE_USE);
+		case Cs:
+		case Surrogate:
+			return bits(Character.SURROGATE);
+		case Cn:
+		case Unassigned:
+			return bits(Character.UNASSIGNED);
+		default:
+			throw new IllegalArgumentException(toString());
+		}
+	}
+
+	private static int bits(byte... types) {
+		int bits = 0;
+		for (byte type : types) {
+			bits |= 1 << type;
+		}
+		return bits;
+	}
+
 	@Override
 	public String toString() {
 		return this.name == null ? name() : this.name;
@@ -67,4 +67,25 @@ public enum UnicodeScript {
 	Thai,
 	Tibetan,
 	Yi;
+
+	/**
+	 * Returns the name {@code java.util.regex} and
+	 * {@link Character.UnicodeScript#forName(String)} know this script by,
+	 * which separates words by underscores.
+	 * 
+	 * @return the Java name of this script
+	 */
+	String javaName() {
+		return name().replaceAll("([a-z])([A-Z])", "$1_$2");
+	}
+
+	/**
+	 * Returns the Java script of this script.
+	 * 
+	 * @return the script {@link Character.UnicodeScript#of(int)} returns for
+	 *         the members of this script
+	 */
+	Character.UnicodeScript script() {
+		return Character.UnicodeScript.forName(javaName());
+	}
 }
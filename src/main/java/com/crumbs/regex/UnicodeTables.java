@@ -0,0 +1,310 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact two-stage tables of the Unicode general category, script, and
+ * block of every code point
+ * <p>
+ * A table splits the code points into chunks of 256. The first stage maps a
+ * chunk to the offset of its values in the second stage, and chunks with the
+ * same values, like the many unassigned or private use chunks, share one copy,
+ * so a table takes tens of kilobytes rather than the megabytes of one value
+ * per code point. Looking up a code point reads two arrays.
+ * </p>
+ * <p>
+ * Each table is built from {@link Character} the first time it is used, by
+ * the holder class that keeps it, so patterns that do not use Unicode
+ * properties never pay for them.
+ * </p>
+ * 
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class UnicodeTables {
+
+	private static final int SHIFT = 8;
+
+	private static final int CHUNK = 1 << SHIFT;
+
+	private static final int CHUNKS = (Character.MAX_CODE_POINT + 1) >>> SHIFT;
+
+	private UnicodeTables() {
+	}
+
+	/**
+	 * Value of each code point, stored in two stages
+	 */
+	static final class Table {
+
+		/**
+		 * offset in {@link #values} of the values of each chunk
+		 */
+		private final int[] index = new int[CHUNKS];
+
+		private final char[] values;
+
+		/**
+		 * one more than the greatest value
+		 */
+		private final int size;
+
+		Table(Values values) {
+			Map<String, Integer> offsets = new HashMap<String, Integer>();
+			char[] chunk = new char[CHUNK];
+			char[] stage2 = new char[CHUNK * 16];
+			int length = 0;
+			int size = 0;
+			for (int i = 0; i < CHUNKS; i++) {
+				for (int c = 0; c < CHUNK; c++) {
+					chunk[c] = values.get((i << SHIFT) + c);
+					size = Math.max(size, chunk[c] + 1);
+				}
+				String key = new String(chunk);
+				Integer offset = offsets.get(key);
+				if (offset == null) {
+					offset = Integer.valueOf(length);
+					offsets.put(key, offset);
+					if (length + CHUNK > stage2.length) {
+						stage2 = Arrays.copyOf(stage2, 2 * stage2.length);
+					}
+					System.arraycopy(chunk, 0, stage2, length, CHUNK);
+					length += CHUNK;
+				}
+				this.index[i] = offset.intValue();
+			}
+			this.values = Arrays.copyOf(stage2, length);
+			this.size = size;
+		}
+
+		/**
+		 * Returns the value of a code point.
+		 * 
+		 * @param codePoint
+		 *            a code point
+		 * @return the value of {@code codePoint}
+		 */
+		int get(int codePoint) {
+			return this.values[this.index[codePoint >>> SHIFT] + (codePoint & (CHUNK - 1))];
+		}
+
+		/**
+		 * Returns the code points whose value is one of those selected.
+		 * <p>
+		 * Each distinct chunk is scanned once, and chunks whose values are all
+		 * selected or all not selected are added or skipped whole.
+		 * </p>
+		 * 
+		 * @param values
+		 *            the selected values
+		 * @return the set of code points with a selected value
+		 */
+		CodePointSet select(int... values) {
+			boolean[] selected = new boolean[this.size];
+			for (int value : values) {
+				if (value < this.size) {
+					selected[value] = true;
+				}
+			}
+			Map<Integer, Boolean> uniform = new HashMap<Integer, Boolean>();
+			CodePointSet.Builder builder = new CodePointSet.Builder();
+			for (int i = 0; i < CHUNKS; i++) {
+				int offset = this.index[i];
+				int base = i << SHIFT;
+				Boolean all = uniform.get(offset);
+				if (all == null) {
+					all = uniform(offset, selected);
+					uniform.put(offset, all);
+				}
+				if (all == Boolean.TRUE) {
+					builder.add(base, base + CHUNK - 1);
+				} else if (all == null) {
+					for (int c = 0; c < CHUNK; c++) {
+						if (selected[this.values[offset + c]]) {
+							builder.add(base + c);
+						}
+					}
+				}
+				// a chunk with no selected value adds nothing
+			}
+			return builder.build();
+		}
+
+		private Boolean uniform(int offset, boolean[] selected) {
+			boolean first = selected[this.values[offset]];
+			for (int c = 1; c < CHUNK; c++) {
+				if (selected[this.values[offset + c]] != first) {
+					return null;
+				}
+			}
+			return Boolean.valueOf(first);
+		}
+	}
+
+	/**
+	 * Source of the values of a {@link Table}
+	 */
+	interface Values {
+		char get(int codePoint);
+	}
+
+	/**
+	 * {@link Character#getType(int)} of every code point
+	 */
+	private static final class Categories {
+		static final Table TABLE = new Table(new Values() {
+			@Override
+			public char get(int codePoint) {
+				return (char) Character.getType(codePoint);
+			}
+		});
+	}
+
+	/**
+	 * {@link Character.UnicodeScript#of(int)} of every code point, by ordinal
+	 */
+	private static final class Scripts {
+		static final Table TABLE = new Table(new Values() {
+			@Override
+			public char get(int codePoint) {
+				return (char) Character.UnicodeScript.of(codePoint).ordinal();
+			}
+		});
+	}
+
+	/**
+	 * {@link Character.UnicodeBlock#of(int)} of every code point, by the
+	 * position in {@link #BLOCKS} plus one, or zero for no block
+	 */
+	private static final class Blocks {
+		static final List<Character.UnicodeBlock> BLOCKS = new ArrayList<Character.UnicodeBlock>();
+
+		static final Table TABLE = new Table(new Values() {
+			private Character.UnicodeBlock last;
+
+			private char lastValue;
+
+			@Override
+			public char get(int codePoint) {
+				Character.UnicodeBlock block = Character.UnicodeBlock.of(codePoint);
+				if (block == null) {
+					return 0;
+				} else if (block != this.last) {
+					int i = BLOCKS.indexOf(block);
+					if (i < 0) {
+						BLOCKS.add(block);
+						i = BLOCKS.size() - 1;
+					}
+					this.last = block;
+					this.lastValue = (char) (i + 1);
+				}
+				return this.lastValue;
+			}
+		});
+	}
+
+	/**
+	 * Returns the general category of a code point.
+	 * 
+	 * @param codePoint
+	 *            a code point
+	 * @return the same value as {@link Character#getType(int)}
+	 */
+	static int category(int codePoint) {
+		return Categories.TABLE.get(codePoint);
+	}
+
+	/**
+	 * Returns the code points of the general categories of a property.
+	 * 
+	 * @param property
+	 *            a general category or group of categories
+	 * @return the set of code points in {@code property}
+	 */
+	static CodePointSet categories(UnicodeCharacterProperty property) {
+		int mask = property.categories();
+		int[] types = new int[Integer.bitCount(mask)];
+		for (int type = 0, i = 0; i < types.length; type++) {
+			if ((mask & (1 << type)) != 0) {
+				types[i++] = type;
+			}
+		}
+		return Categories.TABLE.select(types);
+	}
+
+	/**
+	 * Returns the script of a code point.
+	 * 
+	 * @param codePoint
+	 *            a code point
+	 * @return the same value as {@link Character.UnicodeScript#of(int)}
+	 */
+	static Character.UnicodeScript script(int codePoint) {
+		return Character.UnicodeScript.values()[Scripts.TABLE.get(codePoint)];
+	}
+
+	/**
+	 * Returns the code points of a script.
+	 * 
+	 * @param script
+	 *            a script
+	 * @return the set of code points in {@code script}
+	 */
+	static CodePointSet script(UnicodeScript script) {
+		return Scripts.TABLE.select(script.script().ordinal());
+	}
+
+	/**
+	 * Returns the block of a code point.
+	 * 
+	 * @param codePoint
+	 *            a code point
+	 * @return the same value as {@link Character.UnicodeBlock#of(int)}
+	 */
+	static Character.UnicodeBlock block(int codePoint) {
+		int value = Blocks.TABLE.get(codePoint);
+		return value == 0 ? null : Blocks.BLOCKS.get(value - 1);
+	}
+
+	/**
+	 * Returns the code points of a block.
+	 * 
+	 * @param block
+	 *            a block
+	 * @return the set of code points in {@code block}
+	 * @throws UnsupportedOperationException
+	 *             if Java does not know {@code block}
+	 */
+	static CodePointSet block(UnicodeBlock block) {
+		Character.UnicodeBlock javaBlock;
+		try {
+			javaBlock = block.block();
+		} catch (IllegalArgumentException e) {
+			UnsupportedOperationException unsupported = new UnsupportedOperationException(block.toString());
+			unsupported.initCause(e);
+			throw unsupported;
+		}
+		Table table = Blocks.TABLE;
+		int i = Blocks.BLOCKS.indexOf(javaBlock);
+		return i < 0 ? CodePointSet.EMPTY : table.select(i + 1);
+	}
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.getString;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lowers a {@link Prog} over code points to one over the bytes of their
+ * UTF-8 encodings
+ * <p>
+ * Each {@link Prog#CHAR} becomes the instructions of the bytes of its code
+ * point. Each {@link Prog#SET} becomes the byte sequences of its code points:
+ * a range of code points of the same encoded length splits into sequences of
+ * byte ranges, like U+0080 to U+07FF into
+ * <tt>[\xC2-\xDF][\x80-\xBF]</tt>, and the sequences are merged into a trie
+ * on their leading byte ranges, so a large class such as
+ * <tt>\p{L}</tt> takes hundreds of instructions rather than thousands.
+ * Other instructions are copied, with their targets moved to where the
+ * instructions they jump to were lowered.
+ * </p>
+ * <p>
+ * Surrogate code points have no UTF-8 encoding and match nothing, and so do
+ * malformed bytes, which no sequence contains.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+final class Utf8Compiler {
+
+	/**
+	 * greatest code point encoded in 1, 2, 3 and 4 bytes
+	 */
+	private static final int[] MAX_CODE_POINTS = { 0x7F, 0x7FF, 0xFFFF, Character.MAX_CODE_POINT };
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final Prog prog;
+	private final String engine;
+
+	private int[] op = new int[64];
+	private int[] arg = new int[64];
+	private int[] arg2 = new int[64];
+
+	/**
+	 * whether {@link #arg} and {@link #arg2} of each instruction are targets
+	 * in the lowered program rather than in {@link #prog}
+	 */
+	private boolean[] lowered = new boolean[64];
+	private int size;
+
+	private final List<CodePointSet> sets = new ArrayList<CodePointSet>();
+	private final Map<CodePointSet, Integer> setIndexes = new HashMap<CodePointSet, Integer>();
+
+	private Utf8Compiler(Prog prog, String engine) {
+		this.prog = prog;
+		this.engine = engine;
+	}
+
+	/**
+	 * Lowers {@code prog} to bytes.
+	 *
+	 * @param prog
+	 *            program over code points
+	 * @param engine
+	 *            name of the engine reported if the program grows too large
+	 * @return the program over UTF-8 bytes, whose sets only hold values up to
+	 *         255
+	 * @throws UnsupportedOperationException
+	 *             if the lowered program has more than
+	 *             {@link ProgCompiler#MAX_SIZE} instructions
+	 */
+	static Prog compile(Prog prog, String engine) {
+		return new Utf8Compiler(prog, engine).lower();
+	}
+
+	private Prog lower() {
+		int[] starts = new int[this.prog.size() + 1];
+		for (int pc = 0; pc < this.prog.size(); pc++) {
+			starts[pc] = this.size;
+			switch (this.prog.op[pc]) {
+			case Prog.CHAR:
+				int c = this.prog.arg[pc];
+				if (c >= 0xD800 && c <= 0xDFFF) {
+					emit(Prog.SET, set(CodePointSet.EMPTY), 0, true);
+				} else {
+					for (byte b : new String(Character.toChars(c)).getBytes(UTF_8)) {
+						emit(Prog.CHAR, b & 0xFF, 0, true);
+					}
+				}
+				break;
+			case Prog.SET:
+				List<int[]> sequences = sequences(this.prog.sets[this.prog.arg[pc]]);
+				if (sequences.isEmpty()) {
+					emit(Prog.SET, set(CodePointSet.EMPTY), 0, true);
+				} else {
+					emitTrie(sequences, 0, pc + 1);
+				}
+				break;
+			case Prog.SPLIT:
+			case Prog.JMP:
+				emit(this.prog.op[pc], this.prog.arg[pc], this.prog.arg2[pc], false);
+				break;
+			default:
+				emit(this.prog.op[pc], this.prog.arg[pc], this.prog.arg2[pc], true);
+				break;
+			}
+		}
+		starts[this.prog.size()] = this.size;
+		for (int pc = 0; pc < this.size; pc++) {
+			if (!this.lowered[pc]) {
+				this.arg[pc] = starts[this.arg[pc]];
+				this.arg2[pc] = this.op[pc] == Prog.SPLIT ? starts[this.arg2[pc]] : 0;
+			}
+		}
+		return new Prog(Arrays.copyOf(this.op, this.size), Arrays.copyOf(this.arg, this.size),
+				Arrays.copyOf(this.arg2, this.size), this.sets.toArray(new CodePointSet[this.sets.size()]),
+				this.prog.groupCount);
+	}
+
+	/**
+	 * Emits the alternatives of {@code sequences}, which share their first
+	 * {@code depth} byte ranges, then jumps to instruction {@code next} of the
+	 * original program.
+	 */
+	private void emitTrie(List<int[]> sequences, int depth, int next) {
+		// Group the sequences by their range at depth, keeping their order.
+		Map<Long, List<int[]>> groups = new LinkedHashMap<Long, List<int[]>>();
+		for (int[] sequence : sequences) {
+			Long key = Long.valueOf(((long) sequence[2 * depth] << 8) | sequence[2 * depth + 1]);
+			List<int[]> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<int[]>();
+				groups.put(key, group);
+			}
+			group.add(sequence);
+		}
+		int remaining = groups.size();
+		for (List<int[]> group : groups.values()) {
+			int split = --remaining > 0 ? emit(Prog.SPLIT, this.size + 1, 0, true) : -1;
+			int[] first = group.get(0);
+			int min = first[2 * depth];
+			int max = first[2 * depth + 1];
+			if (min == max) {
+				emit(Prog.CHAR, min, 0, true);
+			} else {
+				emit(Prog.SET, set(CodePointSet.range(min, max)), 0, true);
+			}
+			if (2 * (depth + 1) < first.length) {
+				emitTrie(group, depth + 1, next);
+			} else {
+				// The original program goes on at next, lowered later.
+				emit(Prog.JMP, next, 0, false);
+			}
+			if (split >= 0) {
+				this.arg2[split] = this.size;
+			}
+		}
+	}
+
+	/**
+	 * Returns the UTF-8 byte sequences of the code points of {@code set}, each
+	 * as the inclusive bounds of its byte ranges, in the order of their code
+	 * points.
+	 *
+	 * @param set
+	 *            set of code points
+	 * @return sequences of 1 to 4 byte ranges matching exactly the encodings
+	 *         of the code points of {@code set} other than surrogates
+	 */
+	static List<int[]> sequences(CodePointSet set) {
+		List<int[]> sequences = new ArrayList<int[]>();
+		for (int r = 0; r < set.rangeCount(); r++) {
+			int min = set.min(r);
+			int max = set.max(r);
+			// Surrogates have no encoding.
+			if (min < 0xD800 && max >= 0xD800) {
+				addSequences(min, 0xD7FF, sequences);
+				min = 0xE000;
+			} else if (min >= 0xD800 && min <= 0xDFFF) {
+				min = 0xE000;
+			}
+			if (min <= max) {
+				addSequences(min, max, sequences);
+			}
+		}
+		return sequences;
+	}
+
+	private static void addSequences(int min, int max, List<int[]> sequences) {
+		for (int length = 1; length <= MAX_CODE_POINTS.length; length++) {
+			int lo = length == 1 ? 0 : MAX_CODE_POINTS[length - 2] + 1;
+			int hi = MAX_CODE_POINTS[length - 1];
+			if (min <= hi && max >= lo) {
+				addAligned(Math.max(min, lo), Math.min(max, hi), length, sequences);
+			}
+		}
+	}
+
+	/**
+	 * Splits a range of code points of one encoded length until every byte
+	 * after the first varies over a whole range independently of the others.
+	 */
+	private static void addAligned(int min, int max, int length, List<int[]> sequences) {
+		for (int i = 1; i < length; i++) {
+			int mask = (1 << (6 * i)) - 1;
+			if ((min & ~mask) != (max & ~mask)) {
+				if ((min & mask) != 0) {
+					addAligned(min, min | mask, length, sequences);
+					addAligned((min | mask) + 1, max, length, sequences);
+					return;
+				}
+				if ((max & mask) != mask) {
+					addAligned(min, (max & ~mask) - 1, length, sequences);
+					addAligned(max & ~mask, max, length, sequences);
+					return;
+				}
+			}
+		}
+		byte[] lo = new String(Character.toChars(min)).getBytes(UTF_8);
+		byte[] hi = new String(Character.toChars(max)).getBytes(UTF_8);
+		int[] sequence = new int[2 * length];
+		for (int i = 0; i < length; i++) {
+			sequence[2 * i] = lo[i] & 0xFF;
+			sequence[2 * i + 1] = hi[i] & 0xFF;
+		}
+		sequences.add(sequence);
+	}
+
+	private int set(CodePointSet set) {
+		Integer index = this.setIndexes.get(set);
+		if (index == null) {
+			index = Integer.valueOf(this.sets.size());
+			this.sets.add(set);
+			this.setIndexes.put(set, index);
+		}
+		return index.intValue();
+	}
+
+	private int emit(int opcode, int argument, int argument2, boolean isLowered) {
+		if (this.size == this.op.length) {
+			if (this.size >= ProgCompiler.MAX_SIZE) {
+				throw new UnsupportedOperationException(getString("unsupported.construct",
+						"a program of more than " + ProgCompiler.MAX_SIZE + " instructions", this.engine));
+			}
+			int capacity = this.size * 2;
+			this.op = Arrays.copyOf(this.op, capacity);
+			this.arg = Arrays.copyOf(this.arg, capacity);
+			this.arg2 = Arrays.copyOf(this.arg2, capacity);
+			this.lowered = Arrays.copyOf(this.lowered, capacity);
+		}
+		this.op[this.size] = opcode;
+		this.arg[this.size] = argument;
+		this.arg2[this.size] = argument2;
+		this.lowered[this.size] = isLowered;
+		return this.size++;
+	}
+}
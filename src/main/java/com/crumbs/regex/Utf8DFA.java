@@ -0,0 +1,336 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deterministic automaton over the bytes of UTF-8 text that finds where the
+ * leftmost-first match of a program lowered by {@link Utf8Compiler} ends
+ * <p>
+ * Unlike a {@link LazyDFA}, which only tells whether there is a match, a
+ * state here is the list of instructions a {@link PikeVM} would run at some
+ * position in priority order. Instructions after a {@link Prog#MATCH} are
+ * dropped, and once a state has matched no new match is started, so the
+ * automaton follows exactly the threads that can still replace the match
+ * with one the NFA would prefer, and the last position at which a state
+ * matched is where the NFA's match ends. The start of the match is then
+ * found by a {@link Utf8ReverseDFA}.
+ * </p>
+ * <p>
+ * States are built as the input needs them. Where the threads of a state go
+ * past an assertion depends on the position, so such a state keeps the
+ * instructions its threads start at, and its threads are followed once the
+ * assertions that hold at the position are known, in one pass as a
+ * {@link PikeVM} follows them. Following them on from the assertions
+ * instead, as {@link LazyDFA} does, tells whether there is a match but not
+ * always which one the NFA prefers. When the cache reaches its budget it is
+ * flushed and the search goes on; the search never gives up, as there is no
+ * other engine over bytes to fall back on.
+ * </p>
+ * <p>
+ * An automaton is not thread-safe.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see Utf8RegEx
+ */
+final class Utf8DFA {
+
+	/**
+	 * Ordered list of instructions: {@link Prog#CHAR}, {@link Prog#SET} and
+	 * {@link Prog#MATCH} instructions, or, for a state with pending
+	 * assertions, the instructions its threads start at
+	 */
+	private static final class State {
+		final int[] pcs;
+
+		/**
+		 * whether a match may still start, which stops once a state matched
+		 */
+		final boolean seeding;
+		final boolean match;
+		final boolean pending;
+		final int hash;
+
+		/**
+		 * next states by class of the consumed byte; for states without
+		 * pending assertions
+		 */
+		State[] next;
+
+		/**
+		 * resolved states by mask of the assertions that hold; for states with
+		 * pending assertions
+		 */
+		State[] resolved;
+
+		State(int[] pcs, boolean seeding, boolean pending, Prog prog) {
+			this.pcs = pcs;
+			this.seeding = seeding;
+			boolean match = false;
+			for (int pc : pcs) {
+				match |= prog.op[pc] == Prog.MATCH;
+			}
+			this.match = match && !pending;
+			this.pending = pending;
+			this.hash = 31 * Arrays.hashCode(pcs) + (seeding ? 1 : 0) + (pending ? 2 : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof State)) {
+				return false;
+			}
+			State other = (State) obj;
+			return this.seeding == other.seeding && this.pending == other.pending
+					&& Arrays.equals(this.pcs, other.pcs);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+	private final Prog prog;
+	private final LazyDFA.Alphabet alphabet;
+	private final int[] classes = new int[256];
+	private final long budget;
+
+	private final Map<State, State> states = new HashMap<State, State>();
+	private long size;
+	private State start;
+	private int flushes;
+
+	// scratch space of closure
+	private final int[] dense;
+	private final int[] sparse;
+	private int count;
+	private final int[] stack;
+	private final int[] kernel;
+
+	/**
+	 * @param prog
+	 *            program over bytes
+	 * @param alphabet
+	 *            alphabet of {@code prog}
+	 * @param budget
+	 *            maximum number of bytes of states to cache
+	 */
+	Utf8DFA(Prog prog, LazyDFA.Alphabet alphabet, long budget) {
+		this.prog = prog;
+		this.alphabet = alphabet;
+		for (int b = 0; b < this.classes.length; b++) {
+			this.classes[b] = alphabet.classOf(b);
+		}
+		this.budget = budget;
+		this.dense = new int[prog.size()];
+		this.sparse = new int[prog.size()];
+		this.stack = new int[prog.size() + 1];
+		this.kernel = new int[prog.size() + 1];
+	}
+
+	/**
+	 * Returns where the leftmost-first match found from {@code from} ends.
+	 *
+	 * @param input
+	 *            input to search
+	 * @param from
+	 *            offset at which matches may start
+	 * @return the end of the match, or -1 if there is none
+	 */
+	long matchEnd(ByteInput input, long from) {
+		final long end = input.length();
+		final int[] classes = this.classes;
+		if (this.start == null) {
+			this.kernel[0] = 0;
+			this.start = closure(1, true);
+		}
+		State state = this.start;
+		long pos = from;
+		long matchEnd = -1;
+		while (true) {
+			State resolved = state.pending ? resolve(state, input, pos) : state;
+			if (resolved.match) {
+				matchEnd = pos;
+			}
+			if (pos >= end || (resolved.pcs.length == 0 && !resolved.seeding)) {
+				return matchEnd;
+			}
+			int cls = classes[input.get(pos)];
+			State next = resolved.next == null ? null : resolved.next[cls];
+			state = next == null ? step(resolved, cls) : next;
+			pos++;
+		}
+	}
+
+	private State resolve(State state, ByteInput input, long pos) {
+		int mask = 0;
+		int[] kinds = this.alphabet.kinds;
+		for (int i = 0; i < kinds.length; i++) {
+			if (input.assertion(kinds[i], pos)) {
+				mask |= 1 << i;
+			}
+		}
+		if (state.resolved != null && state.resolved[mask] != null) {
+			return state.resolved[mask];
+		}
+		this.count = 0;
+		for (int pc : state.pcs) {
+			addClosure(pc, true, mask);
+		}
+		int flushes = this.flushes;
+		State resolved = intern(state.seeding);
+		if (flushes == this.flushes) {
+			// A flush drops every state, so only a state that survived it
+			// can record the transition.
+			if (state.resolved == null) {
+				state.resolved = new State[1 << kinds.length];
+			}
+			state.resolved[mask] = resolved;
+		}
+		return resolved;
+	}
+
+	private State step(State state, int cls) {
+		final int[] op = this.prog.op;
+		final int[] arg = this.prog.arg;
+		int b = this.alphabet.representative(cls);
+		int n = 0;
+		for (int pc : state.pcs) {
+			if (op[pc] == Prog.MATCH) {
+				// Instructions after a match have lower priority.
+				break;
+			}
+			if (op[pc] == Prog.CHAR ? arg[pc] == b : op[pc] == Prog.SET && this.prog.matchers[arg[pc]].matches(b)) {
+				this.kernel[n++] = pc + 1;
+			}
+		}
+		boolean seeding = state.seeding && !state.match;
+		if (seeding) {
+			this.kernel[n++] = 0;
+		}
+		int flushes = this.flushes;
+		State next = closure(n, seeding);
+		if (flushes == this.flushes) {
+			if (state.next == null) {
+				state.next = new State[this.alphabet.classCount()];
+			}
+			state.next[cls] = next;
+		}
+		return next;
+	}
+
+	/**
+	 * Returns the state of the threads that start at the first {@code n}
+	 * instructions of {@code kernel}, in priority order.
+	 */
+	private State closure(int n, boolean seeding) {
+		this.count = 0;
+		for (int i = 0; i < n; i++) {
+			addClosure(this.kernel[i], false, 0);
+		}
+		for (int i = 0; i < this.count; i++) {
+			if (this.prog.op[this.dense[i]] == Prog.ASSERT) {
+				return intern(Arrays.copyOf(this.kernel, n), seeding, true);
+			}
+		}
+		return intern(seeding);
+	}
+
+	/**
+	 * Appends the instructions reachable from {@code pc0} without consuming
+	 * input to the scratch list, in priority order.
+	 *
+	 * @param resolving
+	 *            {@code true} to follow the assertions in {@code mask} and
+	 *            drop the others, {@code false} to keep assertions pending
+	 */
+	private void addClosure(int pc0, boolean resolving, int mask) {
+		final int[] op = this.prog.op;
+		final int[] arg = this.prog.arg;
+		final int[] stack = this.stack;
+		int top = 0;
+		stack[top++] = pc0;
+		while (top > 0) {
+			int pc = stack[--top];
+			while (true) {
+				int i = this.sparse[pc];
+				if (i < this.count && this.dense[i] == pc) {
+					break;
+				}
+				this.sparse[pc] = this.count;
+				this.dense[this.count++] = pc;
+				if (op[pc] == Prog.JMP) {
+					pc = arg[pc];
+				} else if (op[pc] == Prog.SPLIT) {
+					stack[top++] = this.prog.arg2[pc];
+					pc = arg[pc];
+				} else if (op[pc] == Prog.SAVE) {
+					pc++;
+				} else if (op[pc] == Prog.ASSERT && resolving && (mask & this.alphabet.bit(arg[pc])) != 0) {
+					pc++;
+				} else {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the state of the instructions in the scratch list that consume
+	 * input or match, building it if it is not in the cache.
+	 */
+	private State intern(boolean seeding) {
+		final int[] op = this.prog.op;
+		int n = 0;
+		int[] pcs = new int[this.count];
+		for (int i = 0; i < this.count; i++) {
+			int pc = this.dense[i];
+			if (op[pc] == Prog.CHAR || op[pc] == Prog.SET || op[pc] == Prog.MATCH) {
+				pcs[n++] = pc;
+			}
+		}
+		return intern(Arrays.copyOf(pcs, n), seeding, false);
+	}
+
+	/**
+	 * Returns the state of {@code pcs}, building it if it is not in the
+	 * cache.
+	 */
+	private State intern(int[] pcs, boolean seeding, boolean pending) {
+		State state = new State(pcs, seeding, pending, this.prog);
+		State cached = this.states.get(state);
+		if (cached != null) {
+			return cached;
+		}
+		long cost = 96 + 4L * pcs.length
+				+ 8L * (pending ? 1 << this.alphabet.kinds.length : this.alphabet.classCount());
+		if (this.size + cost > this.budget && !this.states.isEmpty()) {
+			this.states.clear();
+			this.size = 0;
+			this.start = null;
+			this.flushes++;
+		}
+		this.states.put(state, state);
+		this.size += cost;
+		return state;
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.getString;
+
+/**
+ * Finds the matches of a {@link Utf8RegEx} in UTF-8 bytes
+ * <p>
+ * Each call of {@link #find()} finds the next match as
+ * {@link java.util.regex.Matcher#find()} would in the decoded text, and
+ * reports it by the byte offsets of its bounds.
+ * </p>
+ * <p>
+ * A matcher is not thread-safe.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see Utf8RegEx#matcher(java.nio.ByteBuffer)
+ * @see Utf8RegEx#matcher(java.nio.channels.FileChannel)
+ */
+public final class Utf8Matcher {
+
+	private final Utf8RegEx regEx;
+	private final ByteInput input;
+
+	/**
+	 * offset at which the next search starts, or -1 if there are no more
+	 * matches
+	 */
+	private long from;
+
+	private long start = -1;
+	private long end = -1;
+
+	Utf8Matcher(Utf8RegEx regEx, ByteInput input) {
+		this.regEx = regEx;
+		this.input = input;
+	}
+
+	/**
+	 * Finds the next match of the regular expression.
+	 *
+	 * @return {@code true} if a match was found
+	 * @see java.util.regex.Matcher#find()
+	 */
+	public boolean find() {
+		this.start = -1;
+		this.end = -1;
+		if (this.from < 0) {
+			return false;
+		}
+		Utf8DFA forward = this.regEx.pollForward();
+		long matchEnd;
+		try {
+			matchEnd = forward.matchEnd(this.input, this.from);
+		} finally {
+			this.regEx.offerForward(forward);
+		}
+		if (matchEnd < 0) {
+			this.from = -1;
+			return false;
+		}
+		Utf8ReverseDFA reverse = this.regEx.pollReverse();
+		long matchStart;
+		try {
+			matchStart = reverse.matchStart(this.input, matchEnd, this.from);
+		} finally {
+			this.regEx.offerReverse(reverse);
+		}
+		this.start = matchStart;
+		this.end = matchEnd;
+		if (matchEnd > matchStart) {
+			this.from = matchEnd;
+		} else if (matchEnd < this.input.length()) {
+			// Search again one code point later so as not to find the same
+			// empty match.
+			long next = matchEnd + 1;
+			while (next < this.input.length() && (this.input.get(next) & 0xC0) == 0x80
+					&& next - matchEnd < 4) {
+				next++;
+			}
+			this.from = next;
+		} else {
+			this.from = -1;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the byte offset of the start of the match.
+	 *
+	 * @return the start of the match
+	 * @throws IllegalStateException
+	 *             if the last call of {@link #find()} found no match
+	 * @see java.util.regex.Matcher#start()
+	 */
+	public long start() {
+		checkMatch();
+		return this.start;
+	}
+
+	/**
+	 * Returns the byte offset after the end of the match.
+	 *
+	 * @return the end of the match
+	 * @throws IllegalStateException
+	 *             if the last call of {@link #find()} found no match
+	 * @see java.util.regex.Matcher#end()
+	 */
+	public long end() {
+		checkMatch();
+		return this.end;
+	}
+
+	private void checkMatch() {
+		if (this.start < 0) {
+			throw new IllegalStateException(getString("stream.no.match"));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Utf8Matcher[length=" + this.input.length() + "]";
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import static com.crumbs.util.Logging.illegalNullArg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Regular expression searched for in UTF-8 bytes, such as memory-mapped
+ * files, without decoding them
+ * <p>
+ * The regular expression is compiled as for {@link RegExEngine#DFA} and
+ * then lowered by {@link Utf8Compiler} to a program over bytes, where each
+ * character class, including Unicode blocks, categories, and scripts,
+ * becomes the UTF-8 byte sequences of its members. Matches are found by two
+ * lazily built DFAs over the bytes: {@link Utf8DFA} reads forward to where
+ * a match ends and {@link Utf8ReverseDFA} reads back to where it starts.
+ * Matches are the same as those {@link java.util.regex.Matcher#find()}
+ * finds in the decoded text, reported as byte offsets, except that
+ * malformed bytes match nothing, not even <tt>.</tt>, and that, as with
+ * {@link RegExEngine#NFA}, a match can end elsewhere than Java's when an
+ * iteration of a loop can match the empty string.
+ * </p>
+ * <p>
+ * A UTF-8 regular expression is thread-safe; its matchers are not.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ */
+public final class Utf8RegEx {
+
+	private final Prog prog;
+	private final LazyDFA.Alphabet alphabet;
+	private final SlotPool<Utf8DFA> forward = new SlotPool<Utf8DFA>();
+	private final SlotPool<Utf8ReverseDFA> reverse = new SlotPool<Utf8ReverseDFA>();
+
+	/**
+	 * Compiles the specified regular expression for searching UTF-8 bytes.
+	 *
+	 * @param regEx
+	 *            regular expression to search for
+	 * @param flags
+	 *            match flags to compile the regular expression with, as in
+	 *            {@link RegExBuilder#compile(RegExMatchFlag...)}
+	 * @throws IllegalArgumentException
+	 *             if {@code regEx}, {@code flags}, or one of its items is
+	 *             {@code null}
+	 * @throws UnsupportedOperationException
+	 *             if the regular expression uses a construct that
+	 *             {@link RegExEngine#DFA} does not support
+	 */
+	public Utf8RegEx(RegExBuilder regEx, RegExMatchFlag... flags) {
+		if (regEx == null) {
+			throw illegalNullArg(RegExBuilder.class, "regEx");
+		}
+		int patternFlags = BaseRegExBuilder.patternFlags(flags);
+		RegExNode node = RegExOptimizer.optimize(BaseCommonBuilder.nodeOf(regEx), patternFlags);
+		String engine = RegExEngine.DFA.name();
+		this.prog = Utf8Compiler.compile(ProgCompiler.compile(node, patternFlags, engine), engine);
+		this.alphabet = new LazyDFA.Alphabet(this.prog);
+	}
+
+	/**
+	 * Returns a matcher that searches the remaining bytes of {@code bytes}.
+	 *
+	 * @param bytes
+	 *            UTF-8 bytes to search; offsets count from its position, and
+	 *            the buffer is not modified
+	 * @return a new matcher
+	 * @throws IllegalArgumentException
+	 *             if {@code bytes} is {@code null}
+	 */
+	public Utf8Matcher matcher(ByteBuffer bytes) {
+		if (bytes == null) {
+			throw illegalNullArg(ByteBuffer.class, "bytes");
+		}
+		return new Utf8Matcher(this, ByteInput.of(bytes));
+	}
+
+	/**
+	 * Returns a matcher that searches the bytes of a file, which is mapped
+	 * into memory rather than read.
+	 *
+	 * @param channel
+	 *            UTF-8 file to search; it may be larger than 2 GB
+	 * @return a new matcher
+	 * @throws IllegalArgumentException
+	 *             if {@code channel} is {@code null}
+	 * @throws IOException
+	 *             if the file cannot be mapped
+	 * @see FileChannel#map(FileChannel.MapMode, long, long)
+	 */
+	public Utf8Matcher matcher(FileChannel channel) throws IOException {
+		if (channel == null) {
+			throw illegalNullArg(FileChannel.class, "channel");
+		}
+		return new Utf8Matcher(this, ByteInput.of(channel));
+	}
+
+	Utf8DFA pollForward() {
+		Utf8DFA automaton = this.forward.poll();
+		return automaton == null
+				? new Utf8DFA(this.prog, this.alphabet, DFACompiledRegEx.DEFAULT_CACHE_BUDGET) : automaton;
+	}
+
+	void offerForward(Utf8DFA automaton) {
+		this.forward.offer(automaton);
+	}
+
+	Utf8ReverseDFA pollReverse() {
+		Utf8ReverseDFA automaton = this.reverse.poll();
+		return automaton == null
+				? new Utf8ReverseDFA(this.prog, this.alphabet, DFACompiledRegEx.DEFAULT_CACHE_BUDGET) : automaton;
+	}
+
+	void offerReverse(Utf8ReverseDFA automaton) {
+		this.reverse.offer(automaton);
+	}
+
+	@Override
+	public String toString() {
+		return "Utf8RegEx[instructions=" + this.prog.size() + "]";
+	}
+}
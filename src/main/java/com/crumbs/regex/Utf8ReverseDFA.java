@@ -0,0 +1,318 @@
+/**
+ * Copyright 2009 Creemama
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crumbs.regex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deterministic automaton that runs a program lowered by
+ * {@link Utf8Compiler} backward from where a match ends, to find where it
+ * starts
+ * <p>
+ * A state is the set of instructions from which the program can reach
+ * {@link Prog#MATCH} over the bytes after the current position, up to the
+ * end of the match. Reading the byte before the position leads to the
+ * instructions that consume it into one of those; the program's first
+ * instruction in a state means a match starts at the position. The
+ * leftmost-first match ending at a given offset starts at the leftmost such
+ * position, since the NFA prefers the match that starts first, so the
+ * search goes back until the state is empty.
+ * </p>
+ * <p>
+ * Assertions hold or fail at a position whichever way the input is read, and
+ * are resolved lazily as in {@link LazyDFA}.
+ * </p>
+ * <p>
+ * An automaton is not thread-safe.
+ * </p>
+ *
+ * @author Chris Topher
+ * @version 0.0, Oct 17, 2026
+ * @see Utf8DFA
+ */
+final class Utf8ReverseDFA {
+
+	/**
+	 * Set of instructions, each of which, at the position of the state, can
+	 * reach the end of the match
+	 */
+	private static final class State {
+		final int[] pcs;
+
+		/**
+		 * whether the set holds the first instruction of the program
+		 */
+		final boolean start;
+
+		/**
+		 * whether the set holds an instruction after an assertion that is not
+		 * resolved yet
+		 */
+		final boolean pending;
+		final int hash;
+		State[] next;
+		State[] resolved;
+
+		State(int[] pcs, boolean pending) {
+			this.pcs = pcs;
+			this.start = pcs.length > 0 && pcs[0] == 0;
+			this.pending = pending;
+			this.hash = 31 * Arrays.hashCode(pcs) + (pending ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof State)) {
+				return false;
+			}
+			State other = (State) obj;
+			return this.pending == other.pending && Arrays.equals(this.pcs, other.pcs);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+	private final Prog prog;
+	private final LazyDFA.Alphabet alphabet;
+	private final int[] classes = new int[256];
+	private final long budget;
+
+	/**
+	 * instructions that continue at each instruction without consuming
+	 * input, other than through an assertion
+	 */
+	private final int[][] predecessors;
+
+	private final Map<State, State> states = new HashMap<State, State>();
+	private long size;
+	private State start;
+	private int flushes;
+
+	// scratch space of closure
+	private final int[] dense;
+	private final int[] sparse;
+	private int count;
+	private final int[] stack;
+
+	Utf8ReverseDFA(Prog prog, LazyDFA.Alphabet alphabet, long budget) {
+		this.prog = prog;
+		this.alphabet = alphabet;
+		for (int b = 0; b < this.classes.length; b++) {
+			this.classes[b] = alphabet.classOf(b);
+		}
+		this.budget = budget;
+		int[] counts = new int[prog.size()];
+		for (int pc = 0; pc < prog.size(); pc++) {
+			for (int target : epsilonTargets(pc)) {
+				counts[target]++;
+			}
+		}
+		this.predecessors = new int[prog.size()][];
+		for (int pc = 0; pc < prog.size(); pc++) {
+			this.predecessors[pc] = new int[counts[pc]];
+			counts[pc] = 0;
+		}
+		for (int pc = 0; pc < prog.size(); pc++) {
+			for (int target : epsilonTargets(pc)) {
+				this.predecessors[target][counts[target]++] = pc;
+			}
+		}
+		this.dense = new int[prog.size()];
+		this.sparse = new int[prog.size()];
+		// Each instruction is pushed once per instruction that continues at
+		// it: at most twice per instruction, and once more after an assertion.
+		this.stack = new int[3 * prog.size() + 1];
+	}
+
+	private int[] epsilonTargets(int pc) {
+		switch (this.prog.op[pc]) {
+		case Prog.JMP:
+			return new int[] { this.prog.arg[pc] };
+		case Prog.SPLIT:
+			return new int[] { this.prog.arg[pc], this.prog.arg2[pc] };
+		case Prog.SAVE:
+			return new int[] { pc + 1 };
+		default:
+			return new int[0];
+		}
+	}
+
+	/**
+	 * Returns where the leftmost match that ends at {@code end} starts.
+	 *
+	 * @param input
+	 *            input searched
+	 * @param end
+	 *            end of a match
+	 * @param from
+	 *            least offset at which the match may start
+	 * @return the start of the match, or -1 if no match ends at {@code end}
+	 */
+	long matchStart(ByteInput input, long end, long from) {
+		final int[] classes = this.classes;
+		if (this.start == null) {
+			this.count = 0;
+			for (int pc = 0; pc < this.prog.size(); pc++) {
+				if (this.prog.op[pc] == Prog.MATCH) {
+					addClosure(pc, false, 0);
+				}
+			}
+			this.start = intern(true);
+		}
+		State state = this.start;
+		long pos = end;
+		long matchStart = -1;
+		while (true) {
+			State resolved = state.pending ? resolve(state, input, pos) : state;
+			if (resolved.start) {
+				matchStart = pos;
+			}
+			if (pos <= from || resolved.pcs.length == 0) {
+				return matchStart;
+			}
+			int cls = classes[input.get(pos - 1)];
+			State next = resolved.next == null ? null : resolved.next[cls];
+			state = next == null ? step(resolved, cls) : next;
+			pos--;
+		}
+	}
+
+	private State resolve(State state, ByteInput input, long pos) {
+		int mask = 0;
+		int[] kinds = this.alphabet.kinds;
+		for (int i = 0; i < kinds.length; i++) {
+			if (input.assertion(kinds[i], pos)) {
+				mask |= 1 << i;
+			}
+		}
+		if (state.resolved != null && state.resolved[mask] != null) {
+			return state.resolved[mask];
+		}
+		this.count = 0;
+		for (int pc : state.pcs) {
+			addClosure(pc, true, mask);
+		}
+		int flushes = this.flushes;
+		State resolved = intern(false);
+		if (flushes == this.flushes) {
+			if (state.resolved == null) {
+				state.resolved = new State[1 << kinds.length];
+			}
+			state.resolved[mask] = resolved;
+		}
+		return resolved;
+	}
+
+	private State step(State state, int cls) {
+		final int[] op = this.prog.op;
+		final int[] arg = this.prog.arg;
+		int b = this.alphabet.representative(cls);
+		this.count = 0;
+		for (int pc : state.pcs) {
+			int before = pc - 1;
+			if (before >= 0 && (op[before] == Prog.CHAR ? arg[before] == b
+					: op[before] == Prog.SET && this.prog.matchers[arg[before]].matches(b))) {
+				addClosure(before, false, 0);
+			}
+		}
+		int flushes = this.flushes;
+		State next = intern(true);
+		if (flushes == this.flushes) {
+			if (state.next == null) {
+				state.next = new State[this.alphabet.classCount()];
+			}
+			state.next[cls] = next;
+		}
+		return next;
+	}
+
+	/**
+	 * Adds the instructions that reach {@code pc0} without consuming input to
+	 * the scratch set.
+	 *
+	 * @param resolving
+	 *            {@code true} to go back through the assertions in
+	 *            {@code mask}, {@code false} to leave assertions for later
+	 */
+	private void addClosure(int pc0, boolean resolving, int mask) {
+		final int[] op = this.prog.op;
+		final int[] arg = this.prog.arg;
+		final int[] stack = this.stack;
+		int top = 0;
+		stack[top++] = pc0;
+		while (top > 0) {
+			int pc = stack[--top];
+			int i = this.sparse[pc];
+			if (i < this.count && this.dense[i] == pc) {
+				continue;
+			}
+			this.sparse[pc] = this.count;
+			this.dense[this.count++] = pc;
+			for (int predecessor : this.predecessors[pc]) {
+				stack[top++] = predecessor;
+			}
+			if (resolving && pc > 0 && op[pc - 1] == Prog.ASSERT && (mask & this.alphabet.bit(arg[pc - 1])) != 0) {
+				stack[top++] = pc - 1;
+			}
+		}
+	}
+
+	/**
+	 * Returns the state of the instructions in the scratch set, building it
+	 * if it is not in the cache.
+	 *
+	 * @param pending
+	 *            whether the assertions before the instructions are still to
+	 *            be resolved
+	 */
+	private State intern(boolean pending) {
+		final int[] op = this.prog.op;
+		int n = 0;
+		boolean asserts = false;
+		int[] pcs = new int[this.count];
+		for (int i = 0; i < this.count; i++) {
+			int pc = this.dense[i];
+			// Keep the instructions that can go back further: the start, and
+			// those after a byte or an assertion.
+			if (pc == 0 || op[pc - 1] == Prog.CHAR || op[pc - 1] == Prog.SET || op[pc - 1] == Prog.ASSERT) {
+				pcs[n++] = pc;
+				asserts |= pc > 0 && op[pc - 1] == Prog.ASSERT;
+			}
+		}
+		pcs = Arrays.copyOf(pcs, n);
+		Arrays.sort(pcs);
+		State state = new State(pcs, pending && asserts);
+		State cached = this.states.get(state);
+		if (cached != null) {
+			return cached;
+		}
+		long cost = 96 + 4L * n + 8L * (state.pending ? 1 << this.alphabet.kinds.length : this.alphabet.classCount());
+		if (this.size + cost > this.budget && !this.states.isEmpty()) {
+			this.states.clear();
+			this.size = 0;
+			this.start = null;
+			this.flushes++;
+		}
+		this.states.put(state, state);
+		this.size += cost;
+		return state;
+	}
+}
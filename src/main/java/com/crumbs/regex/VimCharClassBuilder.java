@@ -25,4 +25,9 @@ public class VimCharClassBuilder extends BaseCharClassBuilder {
 	protected VimCharClassBuilder thiz() {
 		return this;
 	}
+
+	@Override
+	Dialect dialect() {
+		return Dialect.VIM;
+	}
 }
@@ -15,8 +15,6 @@
  */
 package com.crumbs.regex;
 
-import static com.crumbs.util.Logging.illegalOutsideSetArg;
-
 /**
  * @author Chris Topher
  * @version 0.0, May 6, 2012
@@ -34,44 +32,8 @@ public class VimRegExBuilder extends BaseRegExBuilder {
 	}
 
 	@Override
-	public RegExBuilder optional(RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).t("\\=");
-	}
-
-	@Override
-	public RegExBuilder oneOrMore(RegExBuilder regEx, RegExBuilder... regExN) {
-		return uGroup(regEx, regExN).t("\\+");
-	}
-
-	@Override
-	protected RegExBuilder repeat(int nTimes) {
-		if (nTimes < 0) {
-			throw illegalOutsideSetArg( //
-					int.class, "nTimes", new Integer(nTimes), "[0,\u221E)");
-		}
-		return u("\\{").u(nTimes).t("}");
-	}
-
-	@Override
-	protected RegExBuilder repeatAtLeast(int nTimes) {
-		return u("\\{").u(nTimes).t(",}");
-	}
-
-	@Override
-	protected RegExBuilder repeat(int nTimes, int toMTimes) {
-		if (nTimes < 0) {
-			throw illegalOutsideSetArg( //
-					int.class, "nTimes", new Integer(nTimes), "[0,\u221E)");
-		}
-		if (toMTimes < 0) {
-			throw illegalOutsideSetArg( //
-					int.class, "toMTimes", new Integer(toMTimes), "[0,\u221E)");
-		}
-		if (nTimes > toMTimes) {
-			throw illegalOutsideSetArg( //
-					int.class, "nTimes", new Integer(nTimes), "[0,toMTimes]=[0," + toMTimes + "]");
-		}
-		return u("\\{").u(nTimes).u(",").u(toMTimes).t("}");
+	Dialect dialect() {
+		return Dialect.VIM;
 	}
 
 	@Override
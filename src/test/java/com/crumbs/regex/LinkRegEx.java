@@ -26,7 +26,8 @@ public class LinkRegEx extends RegExExample {
 	public static void main(String[] args) {
 		final LinkRegEx re = new LinkRegEx(new JRegExBuilderFactory());
 
-		final Pattern pattern = Pattern.compile(re.create().toString(), Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+		final Pattern pattern = re.create().compile(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE,
+				RegExMatchFlag.TURN_ON_MULTILINE);
 		final Matcher matcher = pattern
 				.matcher("<html ><Link rel=\"alternate\" type=\"application/rss+xml\" title=\"Engadget\" href=\"http://www.engadget.com/rss.xml\">");
 
@@ -47,19 +48,19 @@ public class LinkRegEx extends RegExExample {
 		// type\s*=\s*"?application/rss\\+(xml|atom)"?
 		// href\s*=\s*(?:"[^"]+"|)
 
-		final RegExBuilder oneOrMoreWhitespace = r().oneOrMore(r().whitespace());
+		final RegExFragment oneOrMoreWhitespace = r().oneOrMore(r().whitespace()).freeze();
 		final RegExBuilder attributeName = r().oneOrMore(r().charClass(c().range('a', 'z').c('-')));
 
 		final RegExBuilder genericQuotedValue = r().re("\"").zeroOrMore(r().notCharClass(c().c('"'))).re("\"");
 		final RegExBuilder quotedValue = r().re("\"").group(r().zeroOrMore(r().notCharClass(c().c('"')))).re("\"");
 
-		final RegExBuilder genericAttribute = r().re(oneOrMoreWhitespace).re(attributeName).re("=")
+		final RegExBuilder genericAttribute = r().fragment(oneOrMoreWhitespace).re(attributeName).re("=")
 				.re(genericQuotedValue);
-		final RegExBuilder href = r().re(oneOrMoreWhitespace).re("href=").re(quotedValue);
+		final RegExBuilder href = r().fragment(oneOrMoreWhitespace).re("href=").re(quotedValue);
 
 		final RegExBuilder xmlOrAtom = r().orNoCaptureGroup(r().re("xml"), r().re("atom"));
 		final RegExBuilder typeValue = r().re("application/rss+").re(xmlOrAtom);
-		final RegExBuilder type = r().re(oneOrMoreWhitespace).re("type=\"").re(typeValue).re("\"");
+		final RegExBuilder type = r().fragment(oneOrMoreWhitespace).re("type=\"").re(typeValue).re("\"");
 
 		final RegExBuilder attributes = r().zeroOrMore(r().orNoCaptureGroup(href, genericAttribute)).re(type)
 				.zeroOrMoreLazy(r().orNoCaptureGroup(href, genericAttribute));
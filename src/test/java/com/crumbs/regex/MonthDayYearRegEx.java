@@ -34,7 +34,7 @@ public class MonthDayYearRegEx extends RegExExample {
 		final MonthDayYearRegEx re = new MonthDayYearRegEx(new JRegExBuilderFactory());
 
 		final RegExBuilder builder = re.create();
-		final Pattern pattern = Pattern.compile(builder.toString());
+		final Pattern pattern = builder.compile();
 		System.out.println(builder.asCode());
 		System.out.println(pattern);
 		System.out.println(pattern.matcher("01.1.02").matches());
@@ -22,9 +22,17 @@ import static java.util.regex.Pattern.DOTALL;
 import static java.util.regex.Pattern.UNIX_LINES;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.junit.Assert;
@@ -266,6 +274,1918 @@ public class RegExBuilderImplTest {
 				.toString());
 	}
 
+	@Test
+	public void nodeTreeTest() {
+		JRegExBuilder inner = new JRegExBuilder();
+		inner.re("ab");
+		JRegExBuilder outer = new JRegExBuilder();
+		outer.optional(inner);
+		assertEquals("(?:ab)?", outer.toString());
+
+		// appending to a builder does not change the builders it was
+		// previously appended to
+		inner.re("c");
+		assertEquals("(?:ab)?", outer.toString());
+		assertEquals("abc", inner.toString());
+
+		// the same tree renders differently in each dialect
+		RegExBuilder vim = new VimRegExBuilder().optional(new VimRegExBuilder().re("ab"))
+				.repeat(2, new VimRegExBuilder().digit());
+		assertEquals("(?:ab)\\=\\d\\{2}", vim.toString());
+
+		// deeply nested builders are not re-scanned at each level
+		RegExBuilder nested = new JRegExBuilder().re("x");
+		for (int i = 0; i < 2000; i++) {
+			nested = new JRegExBuilder().noCaptureGroup(nested, new JRegExBuilder().re("y"));
+		}
+		assertEquals(1 + 2000 * "(?:y)".length(), nested.toString().length());
+		assertTrue(nested.toString().startsWith("(?:(?:(?:"));
+		assertTrue(nested.toString().endsWith("y)y)y)"));
+	}
+
+	@Test
+	public void fragmentTest() {
+		RegExBuilder builder = new JRegExBuilder().oneOrMore(new JRegExBuilder().whitespace());
+		RegExFragment fragment = builder.freeze();
+		assertEquals("\\s+", fragment.toString());
+		assertTrue(fragment.toString() == fragment.toString());
+
+		// a fragment is a snapshot of its builder
+		builder.re("x");
+		assertEquals("\\s+", fragment.toString());
+
+		// structurally identical fragments share one interned tree
+		RegExFragment same = new JRegExBuilder().oneOrMore(new JRegExBuilder().whitespace()).freeze();
+		assertEquals(fragment, same);
+		assertTrue(fragment.node() == same.node());
+		assertTrue(fragment.toString() == same.toString());
+		assertFalse(fragment.equals(new JRegExBuilder().zeroOrMore(new JRegExBuilder().whitespace()).freeze()));
+
+		// appending a fragment renders the same as appending its builder
+		RegExBuilder ab = new JRegExBuilder().noCaptureGroup(new JRegExBuilder().re("a"), new JRegExBuilder().re("b"));
+		RegExFragment frozenAb = ab.freeze();
+		assertEquals(new JRegExBuilder().group(ab).oneOrMore(ab).toString(),
+				new JRegExBuilder().group(new JRegExBuilder().fragment(frozenAb))
+						.oneOrMore(new JRegExBuilder().fragment(frozenAb)).toString());
+		assertEquals("(ab)(?:ab)+", new JRegExBuilder().group(new JRegExBuilder().fragment(frozenAb))
+				.oneOrMore(new JRegExBuilder().fragment(frozenAb)).toString());
+		assertEquals("", new JRegExBuilder().fragment(new JRegExBuilder().freeze()).toString());
+
+		// the same fragment renders in the dialect of each builder
+		RegExFragment optional = new JRegExBuilder().optional(new JRegExBuilder().digit()).freeze();
+		assertEquals("\\d?", optional.toString());
+		assertEquals("\\d\\=", new VimRegExBuilder().fragment(optional).toString());
+		assertEquals("\\d\\=", new VimRegExBuilder().optional(new VimRegExBuilder().digit()).freeze().toString());
+
+		try {
+			new JRegExBuilder().fragment(fragment, (RegExFragment) null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void compileTest() {
+		RegExBuilder builder = new JRegExBuilder().oneOrMore(new JRegExBuilder().re("ab"));
+		Pattern pattern = builder.compile(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE);
+		assertEquals("(?:ab)+", pattern.pattern());
+		assertEquals(Pattern.CASE_INSENSITIVE, pattern.flags());
+		assertTrue(pattern.matcher("aBAb").matches());
+
+		// identical builders share one compiled pattern
+		assertTrue(pattern == new JRegExBuilder().oneOrMore(new JRegExBuilder().re("ab"))
+				.compile(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE));
+		assertFalse(pattern == builder.compile());
+		assertEquals(0, builder.compile(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE,
+				RegExMatchFlag.TURN_OFF_CASE_INSENSITIVE).flags());
+		assertEquals(DOTALL | UNIX_LINES,
+				builder.compile(RegExMatchFlag.TURN_ON_UNIX_LINES, RegExMatchFlag.TURN_ON_DOTALL).flags());
+
+		// a Vim builder compiles its Java rendering
+		RegExBuilder vim = new VimRegExBuilder().re("ab").optional(new VimRegExBuilder().digit());
+		assertEquals("ab\\d\\=", vim.toString());
+		assertEquals("ab\\d?", vim.compile().pattern());
+
+		// the optimized tree and its rendering are computed once per flags
+		// until the builder changes
+		JRegExBuilder memo = new JRegExBuilder();
+		memo.orNoCaptureGroup(new JRegExBuilder().re("ab"), new JRegExBuilder().re("ac"));
+		String javaString = memo.javaString(Pattern.CASE_INSENSITIVE);
+		assertTrue(javaString == memo.javaString(Pattern.CASE_INSENSITIVE));
+		assertTrue(memo.optimizedNode(0) == memo.optimizedNode(0));
+		assertTrue(memo.analysis(0) == memo.analysis(0));
+		assertFalse(memo.optimizedNode(0) == memo.optimizedNode(Pattern.CASE_INSENSITIVE));
+		memo.re("d");
+		assertEquals("(?:a[bc])d", memo.javaString(Pattern.CASE_INSENSITIVE));
+		assertTrue(memo.compile().matcher("acd").matches());
+
+		try {
+			builder.compile((RegExMatchFlag) null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		PatternCache cache = new PatternCache(16, 1L << 20);
+		assertTrue(cache.compile("a+", 0) == cache.compile("a+", 0));
+		assertEquals(1, cache.hitCount());
+		assertEquals(1, cache.missCount());
+		for (int i = 0; i < 100; i++) {
+			cache.compile("x" + i, 0);
+		}
+		assertTrue(cache.size() <= 16);
+		assertEquals(101 - cache.size(), cache.evictionCount());
+
+		// each pattern alone outweighs its share of the cache
+		cache = new PatternCache(1024, 16);
+		for (int i = 0; i < 100; i++) {
+			cache.compile("yy" + i, 0);
+		}
+		assertTrue(cache.size() <= 16);
+		assertTrue(cache.weight() <= 16 * "yy99".length());
+	}
+
+	@Test
+	public void compiledRegExTest() throws InterruptedException {
+		final CompiledRegEx regEx = new JRegExBuilder().oneOrMore(new JRegExBuilder().digit()).compileRegEx();
+		assertTrue(regEx.matches("123"));
+		assertFalse(regEx.matches("12a"));
+		assertTrue(regEx.find("ab12"));
+		assertFalse(regEx.find("abc"));
+		assertTrue(regEx.lookingAt("12a"));
+		assertFalse(regEx.lookingAt("a12"));
+		assertTrue(new JRegExBuilder().re("ab").compileRegEx(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE).matches("AB"));
+
+		try {
+			regEx.find(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		// one instance shared by many threads gives the same answers as one
+		// thread
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int seed = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 10000; i++) {
+						String digits = Integer.toString(seed * 10000 + i);
+						if (!regEx.matches(digits) || regEx.matches(digits + "x") || !regEx.find("x" + digits)) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+	}
+
+	@Test
+	public void nfaEngineTest() {
+		assertEngineAgreesWithJava(RegExEngine.NFA);
+	}
+
+	@Test
+	public void dfaEngineTest() {
+		assertEngineAgreesWithJava(RegExEngine.DFA);
+
+		final RegExBuilderFactory f = new JRegExBuilderFactory(RegExEngine.DFA);
+		final StringBuilder input = new StringBuilder();
+		for (int i = 0, seed = 1; i < 4000; i++, seed = seed * 1103515245 + 12345) {
+			input.append((seed >>> 16 & 1) == 0 ? 'a' : 'b');
+		}
+		input.append("aababababababc!");
+
+		// (a|b)*a(a|b){12}c needs a state per suffix of 13 letters, far
+		// more than a small cache holds
+		final RegExBuilder aOrB = f.createRegExBuilder().charClass("ab");
+		final DFACompiledRegEx regEx = (DFACompiledRegEx) f.createRegExBuilder().zeroOrMore(aOrB).re("a")
+				.repeat(12, aOrB).re("c").compileRegEx();
+		assertEquals(DFACompiledRegEx.DEFAULT_CACHE_BUDGET, regEx.cacheBudget());
+		assertTrue(regEx.find(input));
+		assertEquals(0, regEx.flushCount());
+		assertTrue(regEx.stateCount() > 0);
+		assertTrue(regEx.cacheSize() > 0);
+
+		// a full cache is flushed and the searches go on
+		final DFACompiledRegEx small = regEx.withCacheBudget(4096);
+		assertEquals(0, small.stateCount());
+		for (int i = 0; i < 100; i++) {
+			final String chunk = input.substring(i * 20, i * 20 + 20);
+			assertFalse(small.find(chunk));
+			assertTrue(small.find(chunk + "aababababababc"));
+		}
+		assertTrue(small.flushCount() > 0);
+		assertEquals(0, small.fallbackCount());
+		assertTrue(small.cacheSize() <= 4096);
+
+		// a cache too small to make progress falls back on the NFA
+		final DFACompiledRegEx tiny = regEx.withCacheBudget(1);
+		assertTrue(tiny.find(input));
+		assertFalse(tiny.matches(input));
+		assertTrue(tiny.fallbackCount() > 0);
+
+		try {
+			regEx.withCacheBudget(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void bytecodeEngineTest() {
+		assertEngineAgreesWithJava(RegExEngine.BYTECODE);
+
+		// random expressions, with word boundaries, against Java
+		final RegExBuilderFactory f = new JRegExBuilderFactory(RegExEngine.BYTECODE);
+		final java.util.Random random = new java.util.Random(23);
+		for (int round = 0; round < 200; round++) {
+			final RegExBuilder regEx = randomBranch(f, random, 2).re("ab1".charAt(round % 3));
+			final Pattern pattern = regEx.compile();
+			final BytecodeCompiledRegEx compiled = (BytecodeCompiledRegEx) regEx.compileRegEx();
+			for (int n = 0; n < 20; n++) {
+				final String input = randomString(random, "ab1 \ud835\udc00", random.nextInt(12));
+				final String message = format("{0} on \"{1}\"", pattern, input);
+				assertEquals(message, pattern.matcher(input).matches(), compiled.matches(input));
+				assertEquals(message, pattern.matcher(input).find(), compiled.find(input));
+				assertEquals(message, pattern.matcher(input).lookingAt(), compiled.lookingAt(input));
+			}
+			for (PikeVM.Anchor anchor : PikeVM.Anchor.values()) {
+				assertTrue(pattern.pattern(), compiled.generated(anchor) != null);
+			}
+		}
+
+		// the generated class runs the search of the dense automaton
+		final RegExBuilder word = f.createRegExBuilder().wordBoundary().re("ab")
+				.oneOrMore(f.createRegExBuilder().wordCharacter()).wordBoundary();
+		final Prog prog = ProgCompiler.compile(((BaseRegExBuilder) word).optimizedNode(0), 0, "BYTECODE");
+		final DenseDFA dense = new LazyDFA(prog, new LazyDFA.Alphabet(prog), PikeVM.Anchor.UNANCHORED,
+				Long.MAX_VALUE, new DFAStats()).materialize(BytecodeCompiledRegEx.MAX_STATES);
+		final GeneratedDFA generated = BytecodeCompiler.compile(dense);
+		for (String input : new String[] { "", "ab", "abc", "xabc", "x abc!", "cab", "ab\u00e9 abc" }) {
+			assertEquals(input, word.compile().matcher(input).find(), dense.search(input, null));
+			assertEquals(input, dense.search(input, null), generated.search(input, prog.prefilter, null));
+		}
+		assertNull(new LazyDFA(prog, new LazyDFA.Alphabet(prog), PikeVM.Anchor.UNANCHORED, Long.MAX_VALUE,
+				new DFAStats()).materialize(2));
+
+		// (a|b)*a(a|b){12}c has too many states, so the DFA matches it
+		final RegExBuilder aOrB = f.createRegExBuilder().charClass("ab");
+		final BytecodeCompiledRegEx large = (BytecodeCompiledRegEx) f.createRegExBuilder().zeroOrMore(aOrB).re("a")
+				.repeat(12, aOrB).re("c").compileRegEx();
+		assertTrue(large.find("babbbbbbbbbbbbc"));
+		assertFalse(large.find("baaaaaaaaaaaac"));
+		assertNull(large.generated(PikeVM.Anchor.UNANCHORED));
+	}
+
+	@Test
+	public void asCodeTest() throws Exception {
+		final RegExBuilderFactory f = new JRegExBuilderFactory();
+		final RegExBuilder[] regExes = new RegExBuilder[] {
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().digit()).re('-')
+						.repeat(2, 4, f.createRegExBuilder().charClass("ab")),
+				f.createRegExBuilder().wordBoundary().re("ab\u00e9").oneOrMore(f.createRegExBuilder().wordCharacter())
+						.wordBoundary(),
+				f.createRegExBuilder().matchLineStart().re("a").zeroOrMore(f.createRegExBuilder().anyChar())
+						.matchLineEnd(),
+				f.createRegExBuilder().matchInputStart().notDigit().matchInputEnd(),
+				f.createRegExBuilder().re("\"\\\n").notCharClass(' ', '\u00e9').matchInputEndStrict(),
+				new LinkRegEx(f).create() };
+		final RegExMatchFlag[][] flagSets = new RegExMatchFlag[][] { {},
+				{ RegExMatchFlag.TURN_ON_MULTILINE, RegExMatchFlag.TURN_ON_CASE_INSENSITIVE },
+				{ RegExMatchFlag.TURN_ON_MULTILINE, RegExMatchFlag.TURN_ON_UNIX_LINES } };
+		final String[] inputs = new String[] { "", "a", "12-ab", "x 12-bab3", "ab\u00e9c", "AB\u00c9",
+				"x ab\u00e9\u0301", "a\nb\n", "a\r\n", "b\na", "Q", "\"\\\nx", "\"\\\n\ud835\udc00", "\"\\\n\u00e9",
+				"<link href=\"x\" type=\"application/rss+xml\"/>", "<LINK rel=\"a\"  type=\"application/rss+atom\">" };
+
+		// a JRE has no compiler to build the generated classes with
+		final javax.tools.JavaCompiler javac = javax.tools.ToolProvider.getSystemJavaCompiler();
+		if (javac == null) {
+			return;
+		}
+		final java.io.File dir = java.nio.file.Files.createTempDirectory("asCode").toFile();
+		final List<String> paths = new ArrayList<String>();
+		try {
+			paths.add("-d");
+			paths.add(dir.getPath());
+			for (int i = 0; i < regExes.length; i++) {
+				for (int j = 0; j < flagSets.length; j++) {
+					final String source = regExes[i].asCode("generated.Matcher" + i + "_" + j, flagSets[j]);
+					final java.io.File file = new java.io.File(dir, "Matcher" + i + "_" + j + ".java");
+					final java.io.Writer out = new java.io.OutputStreamWriter(new java.io.FileOutputStream(file),
+							"US-ASCII");
+					try {
+						out.write(source);
+					} finally {
+						out.close();
+					}
+					paths.add(file.getPath());
+				}
+			}
+			assertEquals(0, javac.run(null, null, null, paths.toArray(new String[paths.size()])));
+
+			final java.net.URLClassLoader loader = new java.net.URLClassLoader(
+					new java.net.URL[] { dir.toURI().toURL() });
+			for (int i = 0; i < regExes.length; i++) {
+				for (int j = 0; j < flagSets.length; j++) {
+					final Pattern pattern = regExes[i].compile(flagSets[j]);
+					final Class<?> matcher = loader.loadClass("generated.Matcher" + i + "_" + j);
+					assertEquals(pattern.pattern(), matcher.getField("PATTERN").get(null));
+					assertEquals(pattern.flags(), matcher.getField("FLAGS").get(null));
+					for (String input : inputs) {
+						final String message = format("{0} on \"{1}\"", pattern, input);
+						assertEquals(message, pattern.matcher(input).matches(),
+								matcher.getMethod("matches", CharSequence.class).invoke(null, input));
+						assertEquals(message, pattern.matcher(input).lookingAt(),
+								matcher.getMethod("lookingAt", CharSequence.class).invoke(null, input));
+						assertEquals(message, pattern.matcher(input).find(),
+								matcher.getMethod("find", CharSequence.class).invoke(null, input));
+					}
+				}
+			}
+		} finally {
+			final java.io.File[] classes = new java.io.File(dir, "generated").listFiles();
+			for (int i = 0; classes != null && i < classes.length; i++) {
+				classes[i].delete();
+			}
+			new java.io.File(dir, "generated").delete();
+			for (String path : paths.subList(2, paths.size())) {
+				new java.io.File(path).delete();
+			}
+			dir.delete();
+		}
+
+		for (String className : new String[] { null, "", "1a", "a..b", "a.", "a-b" }) {
+			try {
+				regExes[0].asCode(className);
+				fail(className);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		try {
+			f.createRegExBuilder().group(f.createRegExBuilder().re("a")).backReference(1).asCode("a.B");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void precompiledDFATest() throws Exception {
+		final RegExBuilderFactory f = new JRegExBuilderFactory();
+		final RegExBuilder[] regExes = new RegExBuilder[] {
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().digit()).re('-')
+						.repeat(2, 4, f.createRegExBuilder().charClass("ab")),
+				f.createRegExBuilder().wordBoundary().re("ab\u00e9").oneOrMore(f.createRegExBuilder().wordCharacter())
+						.wordBoundary(),
+				f.createRegExBuilder().matchLineStart().re("a").zeroOrMore(f.createRegExBuilder().anyChar())
+						.matchLineEnd(),
+				f.createRegExBuilder().re("x").notCharClass(' ', '\u00e9').matchInputEndStrict(),
+				new LinkRegEx(f).create() };
+		final String[] inputs = new String[] { "", "a", "12-ab", "x 12-bab3", "ab\u00e9c", "AB\u00c9", "a\nb\n",
+				"b\na", "x\ud835\udc00", "x\u00e9", "<link href=\"x\" type=\"application/rss+xml\"/>" };
+		final java.io.File file = java.io.File.createTempFile("precompiled", ".dfa");
+		try {
+			for (RegExBuilder regEx : regExes) {
+				final Pattern pattern = regEx.compile(RegExMatchFlag.TURN_ON_MULTILINE);
+				final PrecompiledDFA compiled = PrecompiledDFA.compile(regEx, RegExMatchFlag.TURN_ON_MULTILINE);
+				final PrecompiledDFA mapped = writeAndMap(compiled, file);
+				assertEquals(compiled.toString(), mapped.toString());
+				assertEquals(pattern.flags(), mapped.flags());
+				for (String input : inputs) {
+					final String message = format("{0} on \"{1}\"", pattern, input);
+					assertEquals(message, pattern.matcher(input).matches(), mapped.matches(input));
+					assertEquals(message, pattern.matcher(input).lookingAt(), mapped.lookingAt(input));
+					assertEquals(message, pattern.matcher(input).find(), mapped.find(input));
+				}
+			}
+
+			final List<RegExBuilder> setRegExes = new ArrayList<RegExBuilder>(Arrays.asList(regExes));
+			setRegExes.add(f.createRegExBuilder().wordBoundary().re("error").wordBoundary());
+			for (int i = 0; i < 50; i++) {
+				setRegExes.add(f.createRegExBuilder().re("user").re(i).notDigit());
+			}
+			final RegExSet set = new RegExSet(setRegExes, RegExMatchFlag.TURN_ON_CASE_INSENSITIVE);
+			final PrecompiledDFA mapped = writeAndMap(PrecompiledDFA.compileSet(setRegExes,
+					PrecompiledDFA.DEFAULT_MAX_STATES, RegExMatchFlag.TURN_ON_CASE_INSENSITIVE), file);
+			assertEquals(setRegExes.size(), mapped.size());
+			final String[] setInputs = new String[] { "", "an error by user12 at 10:42-ab", "ERROR user49.",
+					"USER7x and user77y", "<link type=\"application/rss+xml\"/>" };
+			for (String input : setInputs) {
+				assertTrue(input, Arrays.equals(set.find(input), mapped.findAll(input)));
+				assertEquals(input, set.find(input).length > 0, mapped.find(input));
+			}
+			try {
+				mapped.matches("a");
+				fail();
+			} catch (UnsupportedOperationException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+
+		final PrecompiledDFA compiled = PrecompiledDFA.compile(regExes[0]);
+		final java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+		compiled.writeTo(java.nio.channels.Channels.newChannel(bytes));
+		final byte[] image = bytes.toByteArray();
+		assertEquals(compiled.imageLength(), image.length);
+		assertTrue(PrecompiledDFA.load(java.nio.ByteBuffer.wrap(image)).find("1-ab"));
+		final byte[][] corrupted = new byte[][] { image.clone(), image.clone(), Arrays.copyOf(image, 100) };
+		corrupted[0][image.length - 1] ^= 1;
+		corrupted[1][7] = 2;
+		for (byte[] bad : corrupted) {
+			try {
+				PrecompiledDFA.load(java.nio.ByteBuffer.wrap(bad));
+				fail();
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		try {
+			PrecompiledDFA.compileSet(Arrays.asList(f.createRegExBuilder().re("a").repeat(12,
+					f.createRegExBuilder().charClass("ab"))), 100);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			PrecompiledDFA.compileSet(new ArrayList<RegExBuilder>(), 100);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static PrecompiledDFA writeAndMap(PrecompiledDFA compiled, java.io.File file) throws Exception {
+		final java.io.RandomAccessFile out = new java.io.RandomAccessFile(file, "rw");
+		try {
+			out.setLength(0);
+			compiled.writeTo(out.getChannel());
+		} finally {
+			out.close();
+		}
+		final java.io.RandomAccessFile in = new java.io.RandomAccessFile(file, "r");
+		try {
+			return PrecompiledDFA.map(in.getChannel());
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void charMatcherTest() {
+		final java.util.Random random = new java.util.Random(14);
+		final List<CodePointSet> sets = new ArrayList<CodePointSet>(Arrays.asList(CodePointSet.EMPTY,
+				CodePointSet.ALL, CharSets.WORD, CharSets.NOT_LINE_TERMINATORS));
+		for (int i = 0; i < 50; i++) {
+			final CodePointSet.Builder builder = new CodePointSet.Builder();
+			for (int r = random.nextInt(8); r > 0; r--) {
+				final int min = random.nextInt(i % 2 == 0 ? 0x200 : 0x20000);
+				builder.add(min, min + random.nextInt(0x80));
+			}
+			sets.add(builder.build());
+		}
+		for (POSIXCharacterClass posix : POSIXCharacterClass.values()) {
+			final CodePointSet set = posix.set();
+			final Pattern pattern = Pattern.compile("\\p{" + posix + "}");
+			for (int c = 0; c < 0x400; c++) {
+				assertEquals(posix + " on " + c, pattern.matcher(new String(Character.toChars(c))).matches(),
+						set.contains(c));
+			}
+			sets.add(set);
+		}
+		final int[] edges = new int[] { 0x3F, 0x40, 0x7F, 0x80, 0xBF, 0xC0, 0xFF, 0x100, 0xFFFF, 0x10000,
+				Character.MAX_CODE_POINT };
+		for (CodePointSet set : sets) {
+			final CharMatcher matcher = set.matcher();
+			assertTrue(matcher == set.matcher());
+			for (int c = 0; c < 0x600; c++) {
+				assertEquals(set + " on " + c, set.contains(c), matcher.matches(c));
+			}
+			for (int i = 0; i < 2000; i++) {
+				final int c = random.nextInt(Character.MAX_CODE_POINT + 1);
+				assertEquals(set + " on " + c, set.contains(c), matcher.matches(c));
+			}
+			for (int c : edges) {
+				assertEquals(set + " on " + c, set.contains(c), matcher.matches(c));
+			}
+		}
+	}
+
+	@Test
+	public void unicodeTablesTest() {
+		final RegExBuilderFactory f = new JRegExBuilderFactory();
+		final java.util.Random random = new java.util.Random(15);
+		final int[] samples = new int[3000];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = i < 0x400 ? i * 7 : random.nextInt(Character.MAX_CODE_POINT + 1);
+		}
+		for (int c : samples) {
+			assertEquals(Character.getType(c), UnicodeTables.category(c));
+			assertEquals(Character.UnicodeScript.of(c), UnicodeTables.script(c));
+			assertEquals(Character.UnicodeBlock.of(c), UnicodeTables.block(c));
+		}
+		for (UnicodeCharacterProperty property : UnicodeCharacterProperty.values()) {
+			final CodePointSet set = CharSets.property(new RegExNode.Property(property, false));
+			for (int c : samples) {
+				assertEquals(property + " on " + c, (property.categories() & (1 << Character.getType(c))) != 0,
+						set.contains(c));
+			}
+			if (property.toString().length() == 2 && !property.toString().equals("L&")) {
+				final Pattern pattern = Pattern.compile(f.createRegExBuilder().unicode(property).toString());
+				for (int c : samples) {
+					assertEquals(property + " on " + c, pattern.matcher(new String(Character.toChars(c))).matches(),
+							set.contains(c));
+				}
+			}
+		}
+		for (UnicodeScript script : UnicodeScript.values()) {
+			final CodePointSet set = CharSets.property(new RegExNode.Property(script, false));
+			final Pattern pattern = Pattern.compile(f.createRegExBuilder().unicode(script).toString());
+			for (int c : samples) {
+				assertEquals(script + " on " + c, pattern.matcher(new String(Character.toChars(c))).matches(),
+						set.contains(c));
+			}
+		}
+		for (UnicodeBlock block : UnicodeBlock.values()) {
+			final Character.UnicodeBlock javaBlock;
+			try {
+				javaBlock = block.block();
+			} catch (IllegalArgumentException e) {
+				continue;
+			}
+			final CodePointSet set = CharSets.property(new RegExNode.Property(block, true));
+			for (int c : samples) {
+				assertEquals(block + " on " + c, Character.UnicodeBlock.of(c) != javaBlock, set.contains(c));
+			}
+		}
+
+		assertEquals("\\p{IsLatin}\\P{IsCanadian_Aboriginal}", f.createRegExBuilder().unicode(UnicodeScript.Latin)
+				.notUnicode(UnicodeScript.CanadianAboriginal).toString());
+		for (RegExEngine engine : new RegExEngine[] { RegExEngine.NFA, RegExEngine.DFA }) {
+			final RegExBuilder regEx = new JRegExBuilderFactory(engine).createRegExBuilder()
+					.oneOrMore(f.createRegExBuilder().unicode(UnicodeScript.Greek))
+					.unicode(UnicodeCharacterProperty.Letter);
+			assertTrue(regEx.compileRegEx().matches("\u03b1\u03b2z"));
+			assertFalse(regEx.compileRegEx().matches("\u03b1\u03b21"));
+			assertFalse(regEx.compileRegEx().matches("\u03b1b1"));
+		}
+	}
+
+	@Test
+	public void streamMatcherTest() throws java.io.IOException {
+		final RegExBuilderFactory f = new JRegExBuilderFactory(RegExEngine.NFA);
+		final java.util.Random random = new java.util.Random(16);
+		final List<RegExBuilder> regExes = new ArrayList<RegExBuilder>(Arrays.asList(
+				f.createRegExBuilder().re("ab").optional(f.createRegExBuilder().re("c")).re("d"),
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().charClass('a', 'b')),
+				f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().re('a')),
+				f.createRegExBuilder().matchLineStart().re("a").zeroOrMore(f.createRegExBuilder().anyChar())
+						.matchLineEnd(),
+				f.createRegExBuilder().wordBoundary().re('b').oneOrMore(f.createRegExBuilder().wordCharacter()),
+				f.createRegExBuilder().re("ba").zeroOrMoreLazy(f.createRegExBuilder().anyChar()).re("ab"),
+				f.createRegExBuilder().matchInputStart().re('a'),
+				f.createRegExBuilder().re('b').matchInputEnd()));
+		for (int i = 0; i < 40; i++) {
+			regExes.add(randomBranch(f, random, 2).re("ab1".charAt(i % 3)));
+		}
+		final RegExMatchFlag[][] flagSets = new RegExMatchFlag[][] { {},
+				{ RegExMatchFlag.TURN_ON_CASE_INSENSITIVE }, { RegExMatchFlag.TURN_ON_MULTILINE } };
+		for (RegExBuilder regEx : regExes) {
+			for (RegExMatchFlag[] flags : flagSets) {
+				final Pattern pattern = regEx.compile(flags);
+				final StreamingRegEx streaming = new StreamingRegEx(regEx, flags)
+						.withBufferSize(StreamingRegEx.MIN_BUFFER_SIZE);
+				for (int n = 0; n < 5; n++) {
+					final String input = randomString(random, "aab1B \n", random.nextInt(n == 0 ? 20 : 2000));
+					final String message = format("{0} on \"{1}\"", pattern, input);
+					final Matcher expected = pattern.matcher(input);
+					final StreamMatcher actual = streaming.matcher(new ChunkedReader(input, random));
+					while (expected.find()) {
+						assertTrue(message, actual.find());
+						assertEquals(message, expected.start(), actual.start());
+						assertEquals(message, expected.end(), actual.end());
+						if (expected.end() - expected.start() < 64) {
+							assertEquals(message, expected.group(), actual.group());
+						}
+					}
+					assertFalse(message, actual.find());
+					assertFalse(message, actual.find());
+				}
+			}
+		}
+
+		// a match longer than the buffer keeps its bounds but not its text
+		final StringBuilder longMatch = new StringBuilder("x");
+		for (int i = 0; i < 1000; i++) {
+			longMatch.append('a');
+		}
+		final StreamMatcher matcher = new StreamingRegEx(
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().re('a')).re('b')).withBufferSize(256)
+				.matcher(new java.io.StringReader(longMatch.append("b ab").toString()));
+		assertTrue(matcher.find());
+		assertEquals(1, matcher.start());
+		assertEquals(1002, matcher.end());
+		try {
+			matcher.group();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertTrue(matcher.find());
+		assertEquals("ab", matcher.group());
+		assertFalse(matcher.find());
+		try {
+			matcher.start();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		matcher.close();
+
+		// anchors at the start of the input hold only there, not at the start
+		// of the buffer once it is refilled
+		final StringBuilder lines = new StringBuilder();
+		for (int i = 0; i < 700; i++) {
+			lines.append(i % 100 == 99 ? '\n' : 'a');
+		}
+		final RegExBuilder[] anchored = new RegExBuilder[] {
+				f.createRegExBuilder().matchLineStart().zeroOrMore(f.createRegExBuilder().anyChar()).matchLineStart(),
+				f.createRegExBuilder().matchInputStart().zeroOrMore(f.createRegExBuilder().anyChar())
+						.matchInputStart(),
+				f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().re('a')).matchInputStart() };
+		for (RegExBuilder regEx : anchored) {
+			final Matcher expected = regEx.compile(RegExMatchFlag.TURN_ON_DOTALL).matcher(lines);
+			final StreamMatcher actual = new StreamingRegEx(regEx, RegExMatchFlag.TURN_ON_DOTALL).withBufferSize(256)
+					.matcher(new java.io.StringReader(lines.toString()));
+			while (expected.find()) {
+				assertTrue(regEx.toString(), actual.find());
+				assertEquals(regEx.toString(), expected.start(), actual.start());
+				assertEquals(regEx.toString(), expected.end(), actual.end());
+			}
+			assertFalse(regEx.toString(), actual.find());
+		}
+
+		// bytes decoded from streams and channels
+		final StreamingRegEx letters = new StreamingRegEx(
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().unicode(UnicodeCharacterProperty.L)));
+		final byte[] bytes = "12 \u00e9t\u00e9 \ud835\udc00\ud835\udc01!".getBytes(java.nio.charset.Charset.forName("UTF-8"));
+		StreamMatcher decoded = letters.matcher(new java.io.ByteArrayInputStream(bytes),
+				java.nio.charset.Charset.forName("UTF-8"));
+		assertTrue(decoded.find());
+		assertEquals("\u00e9t\u00e9", decoded.group());
+		assertTrue(decoded.find());
+		assertEquals(7, decoded.start());
+		assertEquals("\ud835\udc00\ud835\udc01", decoded.group());
+		assertFalse(decoded.find());
+		decoded = letters.matcher(java.nio.channels.Channels.newChannel(new java.io.ByteArrayInputStream(bytes)),
+				java.nio.charset.Charset.forName("UTF-8"));
+		assertTrue(decoded.find());
+		assertTrue(decoded.find());
+		assertEquals(11, decoded.end());
+
+		// an input far larger than the buffer
+		final Reader large = new Reader() {
+			private int left = 4000000;
+
+			@Override
+			public int read(char[] buffer, int offset, int length) {
+				if (this.left == 0) {
+					return -1;
+				}
+				final int n = Math.min(length, this.left);
+				for (int i = 0; i < n; i++) {
+					buffer[offset + i] = (this.left - i - 1) % 1000 == 0 ? 'x' : 'a';
+				}
+				this.left -= n;
+				return n;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		final StreamMatcher counter = new StreamingRegEx(f.createRegExBuilder().re("ax")).withBufferSize(256)
+				.matcher(large);
+		int count = 0;
+		while (counter.find()) {
+			count++;
+		}
+		assertEquals(4000, count);
+
+		try {
+			letters.withBufferSize(100);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			letters.matcher((Reader) null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new StreamingRegEx(f.createRegExBuilder().group(f.createRegExBuilder().re("a")).backReference(1));
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void utf8RegExTest() throws java.io.IOException {
+		final RegExBuilderFactory f = new JRegExBuilderFactory(RegExEngine.DFA);
+		final java.nio.charset.Charset utf8 = java.nio.charset.Charset.forName("UTF-8");
+		final java.util.Random random = new java.util.Random(18);
+		final List<RegExBuilder> regExes = new ArrayList<RegExBuilder>(Arrays.asList(
+				f.createRegExBuilder().re("\u00e9").oneOrMore(f.createRegExBuilder().re("\u20ac")),
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().notCharClass('a', ' ')),
+				f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().charClass('a', '\u00e9')),
+				f.createRegExBuilder().anyChar().re('b'),
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().unicode(UnicodeCharacterProperty.L)),
+				f.createRegExBuilder().unicode(UnicodeBlock.InCyrillic).optional(f.createRegExBuilder().re("\ud835\udc00")),
+				f.createRegExBuilder().matchLineStart().re("a").zeroOrMore(f.createRegExBuilder().anyChar())
+						.matchLineEnd(),
+				f.createRegExBuilder().wordBoundary().re('b').zeroOrMore(f.createRegExBuilder().wordCharacter()),
+				f.createRegExBuilder().re('b').matchInputEnd()));
+		for (int i = 0; i < 30; i++) {
+			regExes.add(randomBranch(f, random, 2).re("ab\u00e9".charAt(i % 3)));
+		}
+		// loops whose iterations read at least one character
+		for (int i = 0; i < 30; i++) {
+			final RegExBuilder body = randomBranch(f, random, 2).re("ab\u00e9".charAt(i % 3));
+			final RegExBuilder loop = i % 2 == 0 ? f.createRegExBuilder().zeroOrMore(body)
+					: f.createRegExBuilder().zeroOrMoreLazy(body);
+			regExes.add(f.createRegExBuilder().re(randomBranch(f, random, 1)).re(loop)
+					.re(randomBranch(f, random, 1)));
+		}
+		final String[] tokens = { "a", "b", "1", " ", "\n", "\u00e9", "\u00c9", "\u20ac", "\u0436", "\ud835\udc00" };
+		final RegExMatchFlag[][] flagSets = new RegExMatchFlag[][] { {},
+				{ RegExMatchFlag.TURN_ON_CASE_INSENSITIVE }, { RegExMatchFlag.TURN_ON_MULTILINE } };
+		for (RegExBuilder regEx : regExes) {
+			for (RegExMatchFlag[] flags : flagSets) {
+				final Pattern pattern = regEx.compile(flags);
+				final Utf8RegEx utf8RegEx = new Utf8RegEx(regEx, flags);
+				for (int n = 0; n < 5; n++) {
+					final StringBuilder text = new StringBuilder();
+					for (int length = random.nextInt(n == 0 ? 10 : 200); length > 0; length--) {
+						text.append(tokens[random.nextInt(tokens.length)]);
+					}
+					final String input = text.toString();
+					final String message = format("{0} on \"{1}\"", pattern, input);
+					final Matcher expected = pattern.matcher(input);
+					final Utf8Matcher actual = utf8RegEx.matcher(java.nio.ByteBuffer.wrap(input.getBytes(utf8)));
+					while (expected.find()) {
+						if (expected.start() < input.length() && Character.isLowSurrogate(input.charAt(expected.start()))) {
+							// java.util.regex finds empty matches inside surrogate pairs
+							continue;
+						}
+						assertTrue(message, actual.find());
+						assertEquals(message, input.substring(0, expected.start()).getBytes(utf8).length,
+								actual.start());
+						assertEquals(message, input.substring(0, expected.end()).getBytes(utf8).length, actual.end());
+					}
+					assertFalse(message, actual.find());
+					assertFalse(message, actual.find());
+				}
+			}
+		}
+
+		// a lazy quantifier before a word boundary in a loop, where the first
+		// match ends after "x"
+		final Utf8Matcher lazy = new Utf8RegEx(f.createRegExBuilder()
+				.oneOrMore(f.createRegExBuilder().optionalLazy(f.createRegExBuilder().re("x-")).wordBoundary())
+				.re('x')).matcher(java.nio.ByteBuffer.wrap("x-x".getBytes(utf8)));
+		assertTrue(lazy.find());
+		assertEquals(0, lazy.start());
+		assertEquals(1, lazy.end());
+		assertTrue(lazy.find());
+		assertEquals(2, lazy.start());
+		assertEquals(3, lazy.end());
+		assertFalse(lazy.find());
+
+		// loops that can match the empty string, with word boundaries, match as
+		// in the NFA
+		for (int i = 0; i < 100; i++) {
+			final RegExBuilder body = f.createRegExBuilder().re(randomBranch(f, random, 2));
+			final RegExBuilder loop = i % 2 == 0 ? f.createRegExBuilder().oneOrMore(body.wordBoundary())
+					: f.createRegExBuilder().oneOrMoreLazy(body.wordBoundary());
+			final RegExBuilder regEx = f.createRegExBuilder().re(loop).re(randomBranch(f, random, 1));
+			final Utf8RegEx utf8RegEx = new Utf8RegEx(regEx);
+			final ParallelRegEx parallel = new ParallelRegEx(regEx);
+			for (int n = 0; n < 10; n++) {
+				final String input = randomString(random, "ab1 -", random.nextInt(12));
+				final String message = format("{0} on \"{1}\"", regEx, input);
+				final Utf8Matcher actual = utf8RegEx.matcher(java.nio.ByteBuffer.wrap(input.getBytes(utf8)));
+				for (java.util.regex.MatchResult expected : parallel.findAll(input)) {
+					assertTrue(message, actual.find());
+					assertEquals(message, expected.start(), actual.start());
+					assertEquals(message, expected.end(), actual.end());
+				}
+				assertFalse(message, actual.find());
+			}
+		}
+
+		// a mapped file, with malformed bytes that match nothing
+		final java.io.File file = java.io.File.createTempFile("utf8", ".txt");
+		try {
+			final java.io.FileOutputStream out = new java.io.FileOutputStream(file);
+			try {
+				out.write("\u00e9t\u00e9 ".getBytes(utf8));
+				out.write(new byte[] { (byte) 0xC3, 'x', (byte) 0x80, (byte) 0xFF });
+				out.write(" \ud835\udc00\u00e9!".getBytes(utf8));
+			} finally {
+				out.close();
+			}
+			final java.io.RandomAccessFile channelFile = new java.io.RandomAccessFile(file, "r");
+			try {
+				final Utf8Matcher matcher = new Utf8RegEx(f.createRegExBuilder()
+						.oneOrMore(f.createRegExBuilder().notCharClass(' ', '!'))).matcher(channelFile.getChannel());
+				assertTrue(matcher.find());
+				assertEquals(0, matcher.start());
+				assertEquals(5, matcher.end());
+				assertTrue(matcher.find());
+				assertEquals(7, matcher.start());
+				assertEquals(8, matcher.end());
+				assertTrue(matcher.find());
+				assertEquals(11, matcher.start());
+				assertEquals(17, matcher.end());
+				assertFalse(matcher.find());
+				try {
+					matcher.end();
+					fail();
+				} catch (IllegalStateException e) {
+					// expected
+				}
+			} finally {
+				channelFile.close();
+			}
+		} finally {
+			file.delete();
+		}
+
+		try {
+			new Utf8RegEx(f.createRegExBuilder().re("a")).matcher((java.nio.ByteBuffer) null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new Utf8RegEx(f.createRegExBuilder().group(f.createRegExBuilder().re("a")).backReference(1));
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void parallelRegExTest() {
+		final RegExBuilderFactory f = new JRegExBuilderFactory(RegExEngine.NFA);
+		final java.util.Random random = new java.util.Random(19);
+		final List<RegExBuilder> regExes = new ArrayList<RegExBuilder>(Arrays.asList(
+				f.createRegExBuilder().re("ab").optional(f.createRegExBuilder().group(f.createRegExBuilder().re("c")))
+						.re("d"),
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().charClass('a', 'b')),
+				f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().re('a')),
+				f.createRegExBuilder().matchLineStart().re("a").zeroOrMore(f.createRegExBuilder().anyChar())
+						.matchLineEnd(),
+				f.createRegExBuilder().wordBoundary().re('b').oneOrMore(f.createRegExBuilder().wordCharacter()),
+				f.createRegExBuilder().re("ba").zeroOrMoreLazy(f.createRegExBuilder().anyChar()).re("ab"),
+				f.createRegExBuilder().group(f.createRegExBuilder().oneOrMore(f.createRegExBuilder().re('a')))
+						.group(f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().re('b'))),
+				f.createRegExBuilder().re('b').matchInputEnd()));
+		for (int i = 0; i < 20; i++) {
+			regExes.add(randomBranch(f, random, 2).re("ab1".charAt(i % 3)));
+		}
+		// loops whose iterations read at least one character match as in Java;
+		// Java can keep a group of a loop captured by an attempt that failed,
+		// so only their spans are compared
+		final int loops = regExes.size();
+		for (int i = 0; i < 20; i++) {
+			final RegExBuilder body = randomBranch(f, random, 2).re("ab1".charAt(i % 3));
+			final RegExBuilder loop = i % 2 == 0 ? f.createRegExBuilder().zeroOrMore(body)
+					: f.createRegExBuilder().zeroOrMoreLazy(body);
+			regExes.add(f.createRegExBuilder().re(randomBranch(f, random, 1)).re(loop)
+					.re(randomBranch(f, random, 1)));
+		}
+		final java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+		try {
+			for (int r = 0; r < regExes.size(); r++) {
+				final RegExBuilder regEx = regExes.get(r);
+				final Pattern pattern = regEx.compile();
+				final ParallelRegEx parallel = new ParallelRegEx(regEx).withChunkSize(ParallelRegEx.MIN_CHUNK_SIZE);
+				for (int n = 0; n < 3; n++) {
+					final String input = randomString(random, n == 2 ? "aaaaaaaab" : "aab1B \n",
+							random.nextInt(n == 0 ? 20 : 20000));
+					final String message = format("{0} on {1} characters", pattern, input.length());
+					final Matcher expected = pattern.matcher(input);
+					final List<java.util.regex.MatchResult> actual = parallel.findAll(input, pool);
+					int i = 0;
+					while (expected.find()) {
+						assertTrue(message, i < actual.size());
+						final java.util.regex.MatchResult match = actual.get(i++);
+						assertEquals(message, expected.groupCount(), match.groupCount());
+						for (int g = 0; g <= (r < loops ? expected.groupCount() : 0); g++) {
+							assertEquals(message, expected.start(g), match.start(g));
+							assertEquals(message, expected.end(g), match.end(g));
+							assertEquals(message, expected.group(g), match.group(g));
+						}
+					}
+					assertEquals(message, i, actual.size());
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(3, new ParallelRegEx(f.createRegExBuilder().re("ab").optional(f.createRegExBuilder().re('c')))
+				.maxMatchLength());
+		assertEquals(2, new ParallelRegEx(f.createRegExBuilder().unicode(UnicodeCharacterProperty.L))
+				.maxMatchLength());
+		assertEquals(-1, new ParallelRegEx(f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().re('a')))
+				.maxMatchLength());
+		final List<java.util.regex.MatchResult> common = new ParallelRegEx(f.createRegExBuilder().re("ab"))
+				.findAll("xabab");
+		assertEquals(2, common.size());
+		assertEquals(3, common.get(1).start());
+		try {
+			common.get(0).start(1);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			new ParallelRegEx(f.createRegExBuilder().re("a")).withChunkSize(100);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new ParallelRegEx(f.createRegExBuilder().re("a")).findAll(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void regExAnalysisTest() {
+		final RegExBuilderFactory f = new JRegExBuilderFactory();
+		RegExAnalysis analysis = f.createRegExBuilder().charClass('a', 'b').re("cd")
+				.optional(f.createRegExBuilder().re("\ud835\udc00")).analyze();
+		assertEquals(3, analysis.minLength());
+		assertEquals(5, analysis.maxLength());
+		assertTrue(analysis.canStartWith('a'));
+		assertFalse(analysis.canStartWith('c'));
+		assertFalse(analysis.canStartWith('A'));
+		assertTrue(analysis.canEndWith('d'));
+		assertTrue(analysis.canEndWith(0x1D400));
+		assertFalse(analysis.canEndWith('c'));
+		assertEquals("[ab]", analysis.firstChars());
+		assertFalse(analysis.isAnchoredAtStart());
+		assertFalse(analysis.hasBackReferences());
+		assertFalse(analysis.hasLookaround());
+		assertTrue(f.createRegExBuilder().re("ab").analyze(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE)
+				.canStartWith('A'));
+
+		analysis = f.createRegExBuilder().orNoCaptureGroup(f.createRegExBuilder().matchLineStart().re('a'),
+				f.createRegExBuilder().matchInputStart().oneOrMore(f.createRegExBuilder().digit())).matchLineEnd()
+				.analyze();
+		assertEquals(1, analysis.minLength());
+		assertEquals(-1, analysis.maxLength());
+		assertTrue(analysis.isAnchoredAtStart());
+		assertTrue(analysis.isAnchoredAtEnd());
+		assertEquals("[0-9a]", analysis.firstChars());
+		assertFalse(f.createRegExBuilder().matchLineStart().re('a').analyze(RegExMatchFlag.TURN_ON_MULTILINE)
+				.isAnchoredAtStart());
+		assertFalse(f.createRegExBuilder().optional(f.createRegExBuilder().re('a')).matchInputStart().analyze()
+				.isAnchoredAtStart());
+		assertTrue(f.createRegExBuilder().wordBoundary().matchInputStart().re('a').analyze().isAnchoredAtStart());
+
+		analysis = f.createRegExBuilder().group(f.createRegExBuilder().re('a')).positiveLookahead(
+				f.createRegExBuilder().re("bc")).backReference(1).analyze();
+		assertTrue(analysis.hasBackReferences());
+		assertTrue(analysis.hasLookaround());
+		assertEquals(1, analysis.minLength());
+		assertEquals(-1, analysis.maxLength());
+		assertTrue(analysis.canEndWith('z'));
+		analysis = f.createRegExBuilder().repeat(2, 3, f.createRegExBuilder().re("ab"))
+				.negativeLookbehind(f.createRegExBuilder().re('a')).analyze();
+		assertEquals(4, analysis.minLength());
+		assertEquals(6, analysis.maxLength());
+		assertEquals("[b]", analysis.lastChars());
+		assertEquals("[^\\x00-\\x{10FFFF}]", f.createRegExBuilder().matchLineEnd().analyze().firstChars());
+		// \G matches where the matcher starts, so find cannot skip ahead
+		for (RegExBuilder regEx : new RegExBuilder[] { f.createRegExBuilder().previousMatchEnd().charClass("ab"),
+				f.createRegExBuilder().previousMatchEnd().re("ab") }) {
+			final CompiledRegEx compiled = regEx.compileRegEx();
+			for (String input : new String[] { "xab", "abx", "" }) {
+				assertEquals(input, regEx.compile().matcher(input).find(), compiled.find(input));
+			}
+		}
+
+		// every match agrees with the analysis, and engines that reject
+		// inputs early still match as Java does
+		final java.util.Random random = new java.util.Random(20);
+		final RegExBuilderFactory[] factories = { f, new JRegExBuilderFactory(RegExEngine.NFA),
+				new JRegExBuilderFactory(RegExEngine.DFA) };
+		final RegExMatchFlag[][] flagSets = new RegExMatchFlag[][] { {},
+				{ RegExMatchFlag.TURN_ON_CASE_INSENSITIVE }, { RegExMatchFlag.TURN_ON_MULTILINE } };
+		for (int i = 0; i < 300; i++) {
+			final RegExBuilderFactory factory = factories[i % factories.length];
+			final RegExBuilder regEx = factory.createRegExBuilder();
+			if (i % 4 == 0) {
+				regEx.matchLineStart();
+			} else if (i % 4 == 1) {
+				regEx.matchInputStart();
+			}
+			regEx.re(randomBranch(factory, random, 2));
+			if (i % 5 == 0) {
+				regEx.matchLineEnd();
+			}
+			for (RegExMatchFlag[] flags : flagSets) {
+				final Pattern pattern = regEx.compile(flags);
+				final CompiledRegEx compiled = regEx.compileRegEx(flags);
+				analysis = regEx.analyze(flags);
+				for (int n = 0; n < 20; n++) {
+					final String input = randomString(random, "ab1B2 \n", random.nextInt(n < 10 ? 4 : 12));
+					final String message = format("{0} on \"{1}\" with {2}", pattern, input, analysis);
+					final Matcher expected = pattern.matcher(input);
+					assertEquals(message, expected.matches(), compiled.matches(input));
+					assertEquals(message, expected.lookingAt(), compiled.lookingAt(input));
+					assertEquals(message, expected.find(0), compiled.find(input));
+					expected.reset();
+					while (expected.find()) {
+						final int length = expected.end() - expected.start();
+						assertTrue(message, length >= analysis.minLength());
+						assertTrue(message, analysis.maxLength() < 0 || length <= analysis.maxLength());
+						assertTrue(message, !analysis.isAnchoredAtStart() || expected.start() == 0);
+						if (length > 0) {
+							assertTrue(message, analysis.canStartWith(input.codePointAt(expected.start())));
+							assertTrue(message, analysis.canEndWith(input.codePointBefore(expected.end())));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void matchLimitTest() {
+		final RegExBuilderFactory f = new JRegExBuilderFactory();
+		// (.*a){20}b backtracks through every way of splitting the a's.
+		RegExBuilder catastrophic = f.createRegExBuilder()
+				.repeat(20, f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().anyChar()).re('a')).re('b');
+		StringBuilder as = new StringBuilder();
+		for (int i = 0; i < 28; i++) {
+			as.append('a');
+		}
+		String input = as + "!b";
+		CompiledRegEx compiled = catastrophic.compileRegEx();
+		assertEquals(MatchLimit.NONE, compiled.matchLimit());
+		try {
+			compiled.find(input, MatchLimit.ofSteps(100000));
+			fail();
+		} catch (MatchLimitExceededException e) {
+			assertFalse(e.isTimeout());
+			assertEquals(100001, e.steps());
+		}
+		try {
+			compiled.find(input, MatchLimit.ofTimeout(50, TimeUnit.MILLISECONDS));
+			fail();
+		} catch (MatchLimitExceededException e) {
+			assertTrue(e.isTimeout());
+		}
+		assertTrue(f.createRegExBuilder().re("ab").compileRegEx().find("xxab", MatchLimit.ofSteps(100)));
+
+		// The linear engines stay within a limit proportional to the input.
+		for (RegExEngine engine : RegExEngine.values()) {
+			if (engine == RegExEngine.JAVA) {
+				continue;
+			}
+			CompiledRegEx linear = new JRegExBuilderFactory(engine).createRegExBuilder()
+					.repeat(20, f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().anyChar()).re('a'))
+					.re('b').compileRegEx();
+			assertFalse(engine.name(), linear.find(input, MatchLimit.ofSteps(1000)));
+			try {
+				linear.find(input, MatchLimit.ofSteps(10));
+				fail(engine.name());
+			} catch (MatchLimitExceededException e) {
+				assertEquals(engine.name(), 11, e.steps());
+			}
+			assertTrue(engine.name(), linear.matches(as + "b", MatchLimit.ofSteps(1000)));
+		}
+
+		// A factory sets the limit of the methods that are not given one.
+		MatchLimit limit = MatchLimit.ofSteps(1000).withTimeout(1, TimeUnit.MINUTES);
+		assertEquals(1000, limit.maxSteps());
+		assertEquals(60, limit.timeout(TimeUnit.SECONDS));
+		assertEquals(-1, MatchLimit.ofSteps(1).timeout(TimeUnit.SECONDS));
+		assertEquals(Long.MAX_VALUE, MatchLimit.ofTimeout(1, TimeUnit.SECONDS).maxSteps());
+		for (RegExBuilderFactory limited : new RegExBuilderFactory[] {
+				new JRegExBuilderFactory(RegExEngine.JAVA, limit),
+				new VimRegExBuilderFactory(RegExEngine.JAVA, limit) }) {
+			compiled = limited.createRegExBuilder()
+					.repeat(20, limited.createRegExBuilder().zeroOrMore(limited.createRegExBuilder().anyChar()).re('a'))
+					.re('b').compileRegEx();
+			assertEquals(limit, compiled.matchLimit());
+			try {
+				compiled.find(input);
+				fail();
+			} catch (MatchLimitExceededException e) {
+				assertFalse(e.isTimeout());
+			}
+			// A limit given to a method replaces the default one.
+			try {
+				compiled.find(input, MatchLimit.ofSteps(10));
+				fail();
+			} catch (MatchLimitExceededException e) {
+				assertEquals(11, e.steps());
+			}
+		}
+
+		// Keyword lists are limited too.
+		CompiledRegEx keywords = f.createRegExBuilder()
+				.orNoCaptureGroup(f.createRegExBuilder().re("foo"), f.createRegExBuilder().re("bar")).compileRegEx();
+		assertTrue(keywords.find("xxbar", MatchLimit.ofSteps(5)));
+		try {
+			keywords.find("xxxbar", MatchLimit.ofSteps(5));
+			fail();
+		} catch (MatchLimitExceededException e) {
+			// expected
+		}
+
+		try {
+			compiled.matches("a", null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new JRegExBuilderFactory(RegExEngine.NFA, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			MatchLimit.ofSteps(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			MatchLimit.ofTimeout(-1, TimeUnit.SECONDS);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void backtrackingRisksTest() {
+		final RegExBuilderFactory f = new JRegExBuilderFactory();
+		RegExBuilder nested = f.createRegExBuilder().oneOrMore(f.createRegExBuilder().re('a'));
+		List<BacktrackingRisk> risks = f.createRegExBuilder().re("id=").oneOrMore(nested).re(';')
+				.backtrackingRisks();
+		assertEquals(1, risks.size());
+		BacktrackingRisk risk = risks.get(0);
+		// Since Java 9, java.util.regex enters the greedy loop once per
+		// position, so it only costs as much as a+, or as much as one
+		// character for a body that matches texts of a few lengths.
+		final BacktrackingRisk.Kind remembered = BacktrackingAnalyzer.REMEMBERS_FAILED_LOOPS
+				? BacktrackingRisk.Kind.POLYNOMIAL : BacktrackingRisk.Kind.EXPONENTIAL;
+		final BacktrackingRisk.Kind linear = BacktrackingAnalyzer.REMEMBERS_FAILED_LOOPS
+				? BacktrackingRisk.Kind.LINEAR : BacktrackingRisk.Kind.EXPONENTIAL;
+		assertEquals(remembered, risk.kind());
+		assertEquals(BacktrackingRisk.Kind.EXPONENTIAL, risk.worstCaseKind());
+		assertEquals("(?:a+)+", risk.fragment());
+		assertEquals("id=", risk.prefix());
+		assertEquals("a", risk.pump());
+		assertEquals("id=aaaa!", risk.attackString(4));
+		assertFalse(Pattern.matches("id=(?:a+)+;", risk.attackString(20)));
+
+		risk = f.createRegExBuilder()
+				.zeroOrMore(f.createRegExBuilder().orNoCaptureGroup(f.createRegExBuilder().wordCharacter(),
+						f.createRegExBuilder().digit())).matchInputEnd().backtrackingRisks().get(0);
+		assertEquals(linear, risk.kind());
+		assertEquals(BacktrackingRisk.Kind.EXPONENTIAL, risk.worstCaseKind());
+		assertEquals("0", risk.pump());
+		RegExBuilder overlapping = f.createRegExBuilder()
+				.zeroOrMore(f.createRegExBuilder().orNoCaptureGroup(f.createRegExBuilder().re('a'),
+						f.createRegExBuilder().re('a').optional(f.createRegExBuilder().re('b'))))
+				.matchInputEnd();
+		risk = overlapping.backtrackingRisks().get(0);
+		assertEquals(linear, risk.kind());
+		if (BacktrackingAnalyzer.REMEMBERS_FAILED_LOOPS) {
+			assertEquals("LINEAR (EXPONENTIAL) (?:a|ab?)*: \"\" + \"a\"*n + \"!\"", risk.toString());
+			// The b gets the witness past the analysis of the compiled
+			// regular expression.
+			assertFalse(overlapping.compileRegEx().matches(risk.attackString(100) + "bb", MatchLimit.ofSteps(100000)));
+		}
+		// The body of a loop that is linear in Java may still be slow there.
+		risks = f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().orNoCaptureGroup(
+				f.createRegExBuilder().re('x').oneOrMore(f.createRegExBuilder().digit())
+						.oneOrMore(f.createRegExBuilder().digit()),
+				f.createRegExBuilder().re('x'), f.createRegExBuilder().re('x'))).re('b').backtrackingRisks();
+		assertEquals(BacktrackingRisk.Kind.POLYNOMIAL, risks.get(risks.size() - 1).kind());
+		assertEquals("\\d+\\d+", risks.get(risks.size() - 1).fragment());
+		assertEquals(remembered, f.createRegExBuilder().matchLineStart()
+				.zeroOrMore(f.createRegExBuilder().oneOrMore(f.createRegExBuilder().wordCharacter())
+						.optional(f.createRegExBuilder().whitespace())).matchLineEnd().backtrackingRisks().get(0)
+				.kind());
+
+		// Lazy loops, loops in loops, and loops of regular expressions with
+		// back references are not remembered.
+		assertEquals(BacktrackingRisk.Kind.EXPONENTIAL, f.createRegExBuilder().oneOrMoreLazy(nested).re('b')
+				.backtrackingRisks().get(0).kind());
+		assertEquals(BacktrackingRisk.Kind.EXPONENTIAL,
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().re('x').oneOrMore(nested)).re('b')
+						.backtrackingRisks().get(0).kind());
+		assertEquals(BacktrackingRisk.Kind.EXPONENTIAL,
+				f.createRegExBuilder().group(f.createRegExBuilder().re('x')).oneOrMore(nested).backReference(1)
+						.backtrackingRisks().get(0).kind());
+
+		// Overlapping alternatives of more than one character are pumped
+		// together.
+		risk = f.createRegExBuilder()
+				.zeroOrMore(f.createRegExBuilder().orNoCaptureGroup(f.createRegExBuilder().re("ab"),
+						f.createRegExBuilder().charClass('a', 'b').re('b'))).re('c').backtrackingRisks().get(0);
+		assertEquals(linear, risk.kind());
+		assertEquals(BacktrackingRisk.Kind.EXPONENTIAL, risk.worstCaseKind());
+		assertEquals("(?:ab|[ab]b)*", risk.fragment());
+		assertEquals("ab", risk.pump());
+		assertEquals("ababab!", risk.attackString(3));
+		risks = new LinkRegEx(f).create().backtrackingRisks();
+		assertEquals(2, risks.size());
+		risk = risks.get(0);
+		assertEquals(linear, risk.kind());
+		assertEquals(BacktrackingRisk.Kind.EXPONENTIAL, risk.worstCaseKind());
+		assertEquals("(?:\\s+href=\"([^\"]*)\"|\\s+[a-z\\-]+=\"[^\"]*\")*", risk.fragment());
+		assertEquals("<link", risk.prefix());
+		assertEquals(" href=\"\"", risk.pump());
+		// The lazy loop is slow in Java too; the > gets the witness past the
+		// analysis of the compiled regular expression.
+		risk = risks.get(1);
+		assertEquals(BacktrackingRisk.Kind.EXPONENTIAL, risk.kind());
+		assertEquals("(?:\\s+href=\"([^\"]*)\"|\\s+[a-z\\-]+=\"[^\"]*\")*?", risk.fragment());
+		try {
+			new LinkRegEx(f).create().compileRegEx().matches(risk.attackString(20) + ">",
+					MatchLimit.ofSteps(100000));
+			fail();
+		} catch (MatchLimitExceededException e) {
+			// expected
+		}
+
+		risk = f.createRegExBuilder().oneOrMore(f.createRegExBuilder().digit())
+				.optional(f.createRegExBuilder().re(',')).oneOrMore(f.createRegExBuilder().digit()).re(';')
+				.backtrackingRisks().get(0);
+		assertEquals(BacktrackingRisk.Kind.POLYNOMIAL, risk.kind());
+		assertEquals("\\d+,?\\d+", risk.fragment());
+
+		// A counted loop whose body matches texts of any length is slow on
+		// the witness even where Java remembers failed attempts; the b gets
+		// the witness past the analysis of the compiled regular expression.
+		RegExBuilder counted = f.createRegExBuilder()
+				.repeat(20, f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().anyChar()).re('a')).re('b');
+		risk = counted.backtrackingRisks().get(0);
+		assertEquals(BacktrackingRisk.Kind.POLYNOMIAL, risk.kind());
+		assertEquals("(?:.*a){20}", risk.fragment());
+		try {
+			counted.compileRegEx().find(risk.attackString(28) + "b", MatchLimit.ofSteps(100000));
+			fail();
+		} catch (MatchLimitExceededException e) {
+			// expected
+		}
+
+		// Case folding makes alternatives overlap.
+		RegExBuilder cases = f.createRegExBuilder()
+				.zeroOrMore(f.createRegExBuilder().orNoCaptureGroup(f.createRegExBuilder().re('A'),
+						f.createRegExBuilder().re('a')));
+		assertTrue(cases.backtrackingRisks().isEmpty());
+		assertEquals(1, cases.backtrackingRisks(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE).size());
+
+		for (RegExBuilder safe : new RegExBuilder[] {
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().charClass('a', 'z')).re('@')
+						.oneOrMore(f.createRegExBuilder().charClass('a', 'z')),
+				f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().orNoCaptureGroup(
+						f.createRegExBuilder().re('a'), f.createRegExBuilder().re('b'))),
+				f.createRegExBuilder().zeroOrMore(
+						f.createRegExBuilder().re('a').zeroOrMore(f.createRegExBuilder().re('b'))),
+				f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().optional(f.createRegExBuilder().re('a'))),
+				f.createRegExBuilder().oneOrMorePossessive(nested).re('b'),
+				// Text appended with re is escaped.
+				f.createRegExBuilder().re("(a+)+") }) {
+			assertEquals(safe.toString(), 0, safe.backtrackingRisks().size());
+		}
+	}
+
+	@Test
+	public void possessifyTest() {
+		final RegExBuilderFactory f = new JRegExBuilderFactory();
+		final RegExBuilder quoted = f.createRegExBuilder().re("\"")
+				.zeroOrMore(f.createRegExBuilder().notCharClass(f.createCharClassBuilder().c('"'))).re("\"");
+		assertEquals("\"[^\"]*\"", quoted.toString());
+		assertEquals("\"[^\"]*+\"", quoted.compile().pattern());
+		assertEquals("\\d++\\.\\d++;", f.createRegExBuilder().oneOrMore(f.createRegExBuilder().digit()).re('.')
+				.oneOrMore(f.createRegExBuilder().digit()).re(';').compile().pattern());
+		assertEquals("(?:\\d++,)*;", f.createRegExBuilder().zeroOrMore(
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().digit()).re(',')).re(';').compile().pattern());
+		// The last quantifier is followed by the end of the expression.
+		assertEquals("\\d*x?", f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().digit())
+				.optional(f.createRegExBuilder().re('x')).compile().pattern());
+		// Overlapping characters, ignored case and back references keep
+		// the quantifier greedy.
+		assertEquals("a*[ab]", f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().re('a'))
+				.orNoCaptureGroup(f.createRegExBuilder().re('b'), f.createRegExBuilder().re('a')).compile().pattern());
+		assertEquals("a*A", f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().re('a')).re('A')
+				.compile(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE).pattern());
+		// Only Unicode case folds k into the Kelvin sign, but properties
+		// ignore case beyond ASCII anyway.
+		final RegExBuilder kelvin = f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().re('k')).re("\u212a");
+		assertEquals("k*+\u212a", kelvin.compile(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE).pattern());
+		assertEquals("k*\u212a", kelvin.compile(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE,
+				RegExMatchFlag.TURN_ON_UNICODE_CASE).pattern());
+		final RegExBuilder upper = f.createRegExBuilder()
+				.zeroOrMore(f.createRegExBuilder().unicode(UnicodeCharacterProperty.Lu)).re("\u00e9");
+		assertEquals("\\p{Lu}*\u00e9", upper.compile(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE).pattern());
+		assertTrue(upper.compile(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE).matcher("A\u00e9").matches());
+		assertEquals("(\\d*)\\1",
+				f.createRegExBuilder().group(f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().digit()))
+						.backReference(1).compile().pattern());
+		// The other engines do not support possessive quantifiers.
+		assertTrue(new JRegExBuilderFactory(RegExEngine.NFA).createRegExBuilder().re(quoted).compileRegEx()
+				.matches("\"a\""));
+
+		// random quantified characters against their unoptimized renderings
+		final java.util.Random random = new java.util.Random(22);
+		final RegExBuilder[] atoms = new RegExBuilder[] { f.createRegExBuilder().re('a'),
+				f.createRegExBuilder().re('b'), f.createRegExBuilder().charClass('a', 'b'),
+				f.createRegExBuilder().notCharClass(f.createCharClassBuilder().c('a')),
+				f.createRegExBuilder().digit(), f.createRegExBuilder().wordBoundary() };
+		for (int round = 0; round < 400; round++) {
+			final RegExBuilder regEx = f.createRegExBuilder();
+			for (int i = 1 + random.nextInt(5); i > 0; i--) {
+				final RegExBuilder atom = atoms[random.nextInt(atoms.length)];
+				switch (random.nextInt(7)) {
+				case 0:
+					regEx.zeroOrMore(atom);
+					break;
+				case 1:
+					regEx.oneOrMore(atom);
+					break;
+				case 2:
+					regEx.optional(atom);
+					break;
+				case 3:
+					regEx.repeat(1, 2, atom);
+					break;
+				case 4:
+					regEx.zeroOrMore(f.createRegExBuilder().oneOrMore(atom).re(atoms[random.nextInt(2)]));
+					break;
+				case 5:
+					regEx.orGroup(f.createRegExBuilder().zeroOrMore(atom), atoms[random.nextInt(atoms.length)]);
+					break;
+				default:
+					regEx.re(atom);
+					break;
+				}
+			}
+			final RegExMatchFlag[] flags = round % 4 == 3
+					? new RegExMatchFlag[] { RegExMatchFlag.TURN_ON_CASE_INSENSITIVE } : new RegExMatchFlag[0];
+			final Pattern original = Pattern.compile(regEx.toString(), round % 4 == 3 ? Pattern.CASE_INSENSITIVE : 0);
+			final Pattern possessive = regEx.compile(flags);
+			for (int n = 0; n < 20; n++) {
+				final String input = randomString(random, "ab1A!", random.nextInt(10));
+				final String message = format("{0} as {1} on \"{2}\"", original, possessive, input);
+				final Matcher expected = original.matcher(input);
+				final Matcher actual = possessive.matcher(input);
+				assertEquals(message, expected.matches(), actual.matches());
+				assertEquals(message, expected.lookingAt(), actual.lookingAt());
+				expected.reset();
+				actual.reset();
+				while (expected.find()) {
+					assertTrue(message, actual.find());
+					for (int group = 0; group <= expected.groupCount(); group++) {
+						assertEquals(message, expected.start(group), actual.start(group));
+						assertEquals(message, expected.end(group), actual.end(group));
+					}
+				}
+				assertFalse(message, actual.find());
+			}
+		}
+	}
+
+	/**
+	 * Reader that returns its text in chunks of random lengths
+	 */
+	private static final class ChunkedReader extends Reader {
+		private final String text;
+		private final java.util.Random random;
+		private int position;
+
+		ChunkedReader(String text, java.util.Random random) {
+			this.text = text;
+			this.random = random;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			if (this.position == this.text.length()) {
+				return -1;
+			}
+			final int n = Math.min(Math.min(length, 1 + this.random.nextInt(40)), this.text.length() - this.position);
+			this.text.getChars(this.position, this.position + n, buffer, offset);
+			this.position += n;
+			return n;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	@Test
+	public void prefilterTest() {
+		final RegExBuilderFactory f = new JRegExBuilderFactory();
+		assertEquals("[abcd, abd]", prefixes(f.createRegExBuilder().re("ab")
+				.optional(f.createRegExBuilder().re("c")).re("d"), 0));
+		assertEquals("[abc, ac]", prefixes(f.createRegExBuilder().orGroup(f.createRegExBuilder().re("a"),
+				f.createRegExBuilder().re("ab")).re("c"), 0));
+		assertEquals("[x1, y1, z1]", prefixes(f.createRegExBuilder().charClass("xyz").re(1), 0));
+		assertEquals("[Ab, ab]", prefixes(f.createRegExBuilder().matchLineStart().quote("a")
+				.turnOnOffMatchFlags(RegExMatchFlag.TURN_OFF_CASE_INSENSITIVE).re("b"), Pattern.CASE_INSENSITIVE));
+		assertEquals(16, prefixes(new LinkRegEx(f).create(), Pattern.CASE_INSENSITIVE).split(",").length);
+		assertEquals("null", prefixes(f.createRegExBuilder().oneOrMore(f.createRegExBuilder().digit()), 0));
+		assertEquals("null", prefixes(f.createRegExBuilder().optional(f.createRegExBuilder().re("a")), 0));
+		assertEquals("null", prefixes(f.createRegExBuilder().anyChar().re("a"), 0));
+		// prefixes of the constructs that no program expresses
+		final RegExBuilder[] javaOnly = new RegExBuilder[] {
+				f.createRegExBuilder().group(f.createRegExBuilder().re("ab")).backReference(1),
+				f.createRegExBuilder().negativeLookbehind(f.createRegExBuilder().re('y')).re("xa")
+						.positiveLookahead(f.createRegExBuilder().re('b')),
+				f.createRegExBuilder().re('x').atomicGroup(f.createRegExBuilder().orNoCaptureGroup(
+						f.createRegExBuilder().re('a'), f.createRegExBuilder().re("ab")))
+						.oneOrMorePossessive(f.createRegExBuilder().re('c')),
+				f.createRegExBuilder().group(f.createRegExBuilder().re('a')).oneOrMore(
+						f.createRegExBuilder().backReference(1)) };
+		assertEquals("[ab]", treePrefixes(javaOnly[0], 0));
+		assertEquals("[xa]", treePrefixes(javaOnly[1], 0));
+		assertEquals("[xabc, xac]", treePrefixes(javaOnly[2], 0));
+		assertEquals("[a]", treePrefixes(javaOnly[3], 0));
+		assertEquals("null", treePrefixes(f.createRegExBuilder().group(f.createRegExBuilder().re('a'))
+				.backReference(1).re('b'), Pattern.LITERAL));
+		for (RegExBuilder regEx : javaOnly) {
+			final CompiledRegEx compiled = regEx.compileRegEx();
+			for (String input : new String[] { "", "zab", "abab", "yxab", "zxab", "xabcc", "xacc", "baa" }) {
+				assertEquals(regEx + " on " + input, regEx.compile().matcher(input).find(), compiled.find(input));
+			}
+		}
+
+		final StringBuilder sparse = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			sparse.append("<meta name=\"k").append(i).append("\">\n");
+		}
+		final String noLink = sparse.toString();
+		final String link = sparse.append("<LINK type=\"application/rss+xml\">").toString();
+		for (RegExEngine engine : RegExEngine.values()) {
+			final CompiledRegEx regEx = new LinkRegEx(new JRegExBuilderFactory(engine)).create()
+					.compileRegEx(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE);
+			assertFalse(engine.toString(), regEx.find(noLink));
+			assertTrue(engine.toString(), regEx.find(link));
+			assertFalse(engine.toString(), regEx.lookingAt(link));
+		}
+	}
+
+	@Test
+	public void regExSetTest() {
+		final RegExBuilderFactory f = new JRegExBuilderFactory();
+		final List<RegExBuilder> regExes = new ArrayList<RegExBuilder>();
+		regExes.add(new LinkRegEx(f).create());
+		regExes.add(f.createRegExBuilder().oneOrMore(f.createRegExBuilder().digit()));
+		regExes.add(f.createRegExBuilder().wordBoundary().re("error").wordBoundary());
+		regExes.add(f.createRegExBuilder().matchLineStart().re("WARN"));
+		regExes.add(f.createRegExBuilder().re("a").zeroOrMoreLazy(f.createRegExBuilder().anyChar()).re("z"));
+		for (int i = 0; i < 300; i++) {
+			regExes.add(f.createRegExBuilder().re("user").re(i).notDigit());
+		}
+		final RegExSet set = new RegExSet(regExes, RegExMatchFlag.TURN_ON_CASE_INSENSITIVE);
+		assertEquals(regExes.size(), set.size());
+
+		final String[] inputs = new String[] { "", "WARN user12 logged in at 10:42", "no errors by user299.",
+				"an error: user7x and user77y, a to z", "<link type=\"application/rss+xml\"/> warn" };
+		for (String input : inputs) {
+			final List<Integer> expected = new ArrayList<Integer>();
+			final int[] expectedSpans = new int[2 * regExes.size()];
+			Arrays.fill(expectedSpans, -1);
+			for (int i = 0; i < regExes.size(); i++) {
+				final Matcher matcher = regExes.get(i).compile(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE).matcher(input);
+				if (matcher.find()) {
+					expected.add(Integer.valueOf(i));
+					expectedSpans[2 * i] = matcher.start();
+					expectedSpans[2 * i + 1] = matcher.end();
+				}
+			}
+			final List<Integer> actual = new ArrayList<Integer>();
+			for (int i : set.find(input)) {
+				actual.add(Integer.valueOf(i));
+			}
+			assertEquals(input, expected, actual);
+			assertTrue(input, Arrays.equals(expectedSpans, set.findSpans(input)));
+		}
+
+		assertEquals(0, new RegExSet(new ArrayList<RegExBuilder>()).find("a").length);
+		try {
+			new RegExSet(Arrays.asList(f.createRegExBuilder().group(f.createRegExBuilder().re("a"))
+					.backReference(1)));
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			new RegExSet(Arrays.asList((RegExBuilder) null));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			set.find(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void ahoCorasickTest() {
+		final RegExBuilderFactory f = new JRegExBuilderFactory();
+		final RegExBuilder xmlOrAtom = f.createRegExBuilder().orNoCaptureGroup(f.createRegExBuilder().re("xml"),
+				f.createRegExBuilder().re("atom"), f.createRegExBuilder().re("rss+xml"));
+		assertTrue(xmlOrAtom.compileRegEx() instanceof AhoCorasickCompiledRegEx);
+		assertTrue(new JRegExBuilderFactory(RegExEngine.NFA).createRegExBuilder().re(xmlOrAtom).wordBoundary()
+				.compileRegEx() instanceof AhoCorasickCompiledRegEx);
+		assertFalse(f.createRegExBuilder().re("a").re(xmlOrAtom).compileRegEx() instanceof AhoCorasickCompiledRegEx);
+		assertFalse(xmlOrAtom.compileRegEx(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE,
+				RegExMatchFlag.TURN_ON_UNICODE_CASE) instanceof AhoCorasickCompiledRegEx);
+
+		// random keyword lists against java.util.regex
+		final java.util.Random random = new java.util.Random(17);
+		final String alphabet = "abAB \u00e9";
+		final int[] span = new int[2];
+		for (int round = 0; round < 300; round++) {
+			final RegExBuilder[] branches = new RegExBuilder[2 + random.nextInt(6)];
+			final String[] strings = new String[branches.length];
+			for (int i = 0; i < branches.length; i++) {
+				strings[i] = randomString(random, alphabet, 1 + random.nextInt(4));
+				branches[i] = f.createRegExBuilder().re(strings[i]);
+			}
+			RegExBuilder regEx = f.createRegExBuilder().orGroup(branches[0], branches[1],
+					Arrays.copyOfRange(branches, 2, branches.length));
+			if (round % 3 == 1) {
+				regEx = f.createRegExBuilder().wordBoundary().re(regEx).wordBoundary();
+			} else if (round % 3 == 2) {
+				regEx = f.createRegExBuilder().re(regEx).matchLineEnd();
+			}
+			final RegExMatchFlag[] flags = round % 2 == 0 ? new RegExMatchFlag[0]
+					: new RegExMatchFlag[] { RegExMatchFlag.TURN_ON_CASE_INSENSITIVE };
+			final Pattern pattern = regEx.compile(flags);
+			final CompiledRegEx compiled = regEx.compileRegEx(flags);
+			assertTrue(compiled instanceof AhoCorasickCompiledRegEx);
+			final AhoCorasick automaton = new AhoCorasick(strings, round % 2 != 0);
+			for (int n = 0; n < 20; n++) {
+				final String input = randomString(random, alphabet, random.nextInt(12));
+				final String message = format("{0} on \"{1}\"", pattern, input);
+				final Matcher matcher = pattern.matcher(input);
+				assertEquals(message, matcher.matches(), compiled.matches(input));
+				assertEquals(message, matcher.lookingAt(), compiled.lookingAt(input));
+				final boolean found = matcher.reset().find();
+				assertEquals(message, found, compiled.find(input));
+				if (round % 3 == 0) {
+					assertEquals(message, found,
+							automaton.find(input, 0, (AhoCorasick.Filter) compiled, span, null) >= 0);
+					if (found) {
+						assertEquals(message, matcher.start(), span[0]);
+						assertEquals(message, matcher.end(), span[1]);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void charClassSetTest() {
+		final RegExBuilderFactory f = new JRegExBuilderFactory();
+		assertEquals("[aeiou]", f.createRegExBuilder()
+				.intersection(f.createCharClassBuilder().range('a', 'z'), f.createCharClassBuilder().str("uoiea"))
+				.toString());
+		assertEquals("[b-df-hj-np-tv-z]", f.createRegExBuilder()
+				.difference(f.createCharClassBuilder().range('a', 'z'), f.createCharClassBuilder().str("aeiou"))
+				.toString());
+		assertEquals("[0-3Yx]", f.createRegExBuilder()
+				.union(f.createCharClassBuilder().range('0', '3'), f.createCharClassBuilder().c('x', 'Y')).toString());
+		assertEquals("[\\-\\[\\]\\^]", f.createRegExBuilder()
+				.charClass(f.createCharClassBuilder().c('^', '-').union(f.createCharClassBuilder().str("[]")))
+				.toString());
+		assertEquals("\\x00-/:-\\x{10FFFF}", f.createCharClassBuilder().digit().negate().toString());
+		assertEquals("\\x00-/:-\\U0010FFFF", new VimRegExBuilderFactory().createCharClassBuilder().digit().negate()
+				.toString());
+		assertEquals("a-ln-z\\xE9", f.createCharClassBuilder().range('a', 'z').c('\u00e9')
+				.difference(f.createCharClassBuilder().c('m')).toString());
+		// there is no empty class
+		final RegExBuilder empty = f.createRegExBuilder().intersection(f.createCharClassBuilder().range('a', 'c'),
+				f.createCharClassBuilder().range('x', 'z'));
+		assertEquals("[^\\x00-\\x{10FFFF}]", empty.toString());
+		assertFalse(empty.compile().matcher("abcxyz").find());
+		// text appended verbatim has no known set
+		assertEquals("[a-c&&[b]]", f.createRegExBuilder()
+				.intersection(new JCharClassBuilder().t("a-c"), f.createCharClassBuilder().c('b')).toString());
+		assertEquals("[a-c&&[^b]]",
+				f.createRegExBuilder().charClass(new JCharClassBuilder().t("a-c").difference(
+						f.createCharClassBuilder().c('b'))).toString());
+
+		// sets computed when built agree with java.util.regex
+		final CharClassBuilder[] classes = new CharClassBuilder[] { f.createCharClassBuilder().range('a', 'z'),
+				f.createCharClassBuilder().wordCharacter(), f.createCharClassBuilder().whitespace().digit(),
+				f.createCharClassBuilder().unicode(UnicodeCharacterProperty.L),
+				f.createCharClassBuilder().notUnicode(UnicodeCharacterProperty.L).c('q', '~', '^'),
+				f.createCharClassBuilder().range('\u00e0', '\u0180').notDigit() };
+		for (CharClassBuilder class0 : classes) {
+			for (CharClassBuilder class1 : classes) {
+				assertSameChars(f.createRegExBuilder().intersection(class0, class1).compile(),
+						Pattern.compile("[" + class0 + "&&[" + class1 + "]]"));
+				assertSameChars(f.createRegExBuilder().difference(class0, class1).compile(),
+						Pattern.compile("[" + class0 + "&&[^" + class1 + "]]"));
+				assertSameChars(f.createRegExBuilder().union(class0, class1).compile(),
+						Pattern.compile("[" + class0 + "[" + class1 + "]]"));
+			}
+			final CharClassBuilder negated = f.createCharClassBuilder().union(class0).negate();
+			assertSameChars(f.createRegExBuilder().charClass(negated).compile(), Pattern.compile("[^" + class0 + "]"));
+			assertSameChars(f.createRegExBuilder().charClass(negated).compileRegEx(), Pattern.compile("[^" + class0 + "]"));
+		}
+	}
+
+	private static void assertSameChars(Pattern actual, Pattern expected) {
+		for (int c = 0; c < 0x3000; c++) {
+			final String input = String.valueOf((char) c);
+			assertEquals(actual + " on " + c, expected.matcher(input).matches(), actual.matcher(input).matches());
+		}
+		assertEquals(actual.pattern(), expected.matcher("\ud835\udc00").matches(),
+				actual.matcher("\ud835\udc00").matches());
+	}
+
+	private static void assertSameChars(CompiledRegEx actual, Pattern expected) {
+		for (int c = 0; c < 0x3000; c += 7) {
+			final String input = String.valueOf((char) c);
+			assertEquals(expected + " on " + c, expected.matcher(input).matches(), actual.matches(input));
+		}
+	}
+
+	@Test
+	public void optimizerTest() {
+		final RegExBuilderFactory f = new JRegExBuilderFactory();
+		final RegExBuilder month = f.createRegExBuilder().orNoCaptureGroup(
+				f.createRegExBuilder().re('1').rangeClass('6', '9'), f.createRegExBuilder().re('1').rangeClass('0', '2'));
+		assertEquals("(?:1[6-9]|1[0-2])", month.toString());
+		assertEquals("1[0-26-9]", month.compile().pattern());
+		assertEquals("(?:29|30)",
+				f.createRegExBuilder().orNoCaptureGroup(f.createRegExBuilder().re(29), f.createRegExBuilder().re(30))
+						.compile().pattern());
+		assertEquals("(a(?:b[cd]|x))", f.createRegExBuilder().orGroup(f.createRegExBuilder().re("abc"),
+				f.createRegExBuilder().re("abd"), f.createRegExBuilder().re("ax")).compile().pattern());
+		assertEquals("[xy]a", f.createRegExBuilder().orNoCaptureGroup(f.createRegExBuilder().re("xa"),
+				f.createRegExBuilder().re("ya")).compile().pattern());
+		// flags turned on in a branch stay on in the following branches
+		assertEquals("x(?:a|(?i)b|a)", f.createRegExBuilder().re('x').orNoCaptureGroup(f.createRegExBuilder().re('a'),
+				f.createRegExBuilder().turnOnOffMatchFlags(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE).re('b'),
+				f.createRegExBuilder().re('a')).compile().pattern());
+		// capture groups stay where they are
+		assertEquals("(?:a(?:(b)|(c)))\\1", f.createRegExBuilder().orNoCaptureGroup(
+				f.createRegExBuilder().re('a').group(f.createRegExBuilder().re('b')),
+				f.createRegExBuilder().re('a').group(f.createRegExBuilder().re('c'))).backReference(1).compile()
+				.pattern());
+		// equal branches with capture groups are all kept
+		final RegExBuilder twice = f.createRegExBuilder().orNoCaptureGroup(
+				f.createRegExBuilder().group(f.createRegExBuilder().re('a')),
+				f.createRegExBuilder().group(f.createRegExBuilder().re('a'))).backReference(2);
+		assertEquals("(?:(a)|(a))\\2", twice.compile().pattern());
+		for (Pattern pattern : new Pattern[] { Pattern.compile(twice.toString()), twice.compile() }) {
+			assertEquals(2, pattern.matcher("").groupCount());
+			assertTrue(pattern.matcher("aa").matches());
+			assertFalse(pattern.matcher("a").matches());
+		}
+		assertEquals("(?:a|a|b)", f.createRegExBuilder().orNoCaptureGroup(f.createRegExBuilder().re('a'),
+				f.createRegExBuilder().re('a'), f.createRegExBuilder().re('b')).toString());
+		assertEquals("[ab]", f.createRegExBuilder().orNoCaptureGroup(f.createRegExBuilder().re('a'),
+				f.createRegExBuilder().re('a'), f.createRegExBuilder().re('b')).compile().pattern());
+		// equal empty branches are kept where dropping one changes what is
+		// captured
+		final RegExBuilder[] empties = new RegExBuilder[] {
+				f.createRegExBuilder().zeroOrMore(
+						f.createRegExBuilder().orGroup(f.createRegExBuilder(), f.createRegExBuilder())),
+				f.createRegExBuilder().notCharClass(f.createCharClassBuilder().range('a', 'b')).repeatAtLeast(0,
+						f.createRegExBuilder().orGroup(f.createRegExBuilder(), f.createRegExBuilder())),
+				f.createRegExBuilder().repeatAtLeast(0, f.createRegExBuilder().re('x'))
+						.repeatAtLeast(0,
+								f.createRegExBuilder().orGroup(f.createRegExBuilder(), f.createRegExBuilder()))
+						.re('x') };
+		for (RegExBuilder empty : empties) {
+			final Matcher expected = Pattern.compile(empty.toString()).matcher("cx");
+			final Matcher actual = empty.compile().matcher("cx");
+			assertEquals(empty.toString(), expected.find(), actual.find());
+			assertEquals(empty.toString(), expected.group(1), actual.group(1));
+			assertEquals(empty.toString(), "", actual.group(1));
+		}
+
+		// random alternations against their unoptimized renderings
+		final java.util.Random random = new java.util.Random(12);
+		for (int round = 0; round < 400; round++) {
+			final RegExBuilder[] branches = new RegExBuilder[2 + random.nextInt(5)];
+			for (int i = 0; i < branches.length; i++) {
+				branches[i] = randomBranch(f, random, 2);
+			}
+			RegExBuilder regEx = round % 2 == 0
+					? f.createRegExBuilder().orGroup(branches[0], branches[1],
+							Arrays.copyOfRange(branches, 2, branches.length))
+					: f.createRegExBuilder().orNoCaptureGroup(branches[0], branches[1],
+							Arrays.copyOfRange(branches, 2, branches.length));
+			if (round % 3 == 1) {
+				regEx = f.createRegExBuilder().re(regEx).oneOrMore(f.createRegExBuilder().re(regEx)).re('b');
+			} else if (round % 3 == 2) {
+				regEx = f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().re(regEx));
+			}
+			final RegExMatchFlag[] flags = round % 4 == 3
+					? new RegExMatchFlag[] { RegExMatchFlag.TURN_ON_CASE_INSENSITIVE } : new RegExMatchFlag[0];
+			final Pattern original = Pattern.compile(regEx.toString(), round % 4 == 3 ? Pattern.CASE_INSENSITIVE : 0);
+			final Pattern optimized = regEx.compile(flags);
+			assertEquals(optimized.pattern(), original.matcher("").groupCount(), optimized.matcher("").groupCount());
+			for (int n = 0; n < 20; n++) {
+				final String input = randomString(random, "ab1B2", random.nextInt(10));
+				final String message = format("{0} as {1} on \"{2}\"", original, optimized, input);
+				final Matcher expected = original.matcher(input);
+				final Matcher actual = optimized.matcher(input);
+				assertEquals(message, expected.matches(), actual.matches());
+				expected.reset();
+				actual.reset();
+				while (expected.find()) {
+					assertTrue(message, actual.find());
+					for (int group = 0; group <= expected.groupCount(); group++) {
+						assertEquals(message, expected.start(group), actual.start(group));
+						assertEquals(message, expected.end(group), actual.end(group));
+					}
+				}
+				assertFalse(message, actual.find());
+			}
+		}
+	}
+
+	private static RegExBuilder randomBranch(RegExBuilderFactory f, java.util.Random random, int depth) {
+		final RegExBuilder branch = f.createRegExBuilder();
+		final int length = random.nextInt(4);
+		for (int i = 0; i < length; i++) {
+			switch (random.nextInt(depth > 0 ? 8 : 6)) {
+			case 0:
+				branch.rangeClass('0', '2');
+				break;
+			case 1:
+				branch.charClass('a', 'b');
+				break;
+			case 2:
+				branch.wordBoundary();
+				break;
+			case 3:
+			case 4:
+			case 5:
+				branch.re("ab1".charAt(random.nextInt(3)));
+				break;
+			case 6:
+				branch.group(randomBranch(f, random, depth - 1));
+				break;
+			default:
+				branch.optional(f.createRegExBuilder().orNoCaptureGroup(randomBranch(f, random, depth - 1),
+						randomBranch(f, random, depth - 1)));
+				break;
+			}
+		}
+		return branch;
+	}
+
+	private static String randomString(java.util.Random random, String alphabet, int length) {
+		final StringBuilder string = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			string.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return string.toString();
+	}
+
+	private static String prefixes(RegExBuilder regEx, int flags) {
+		final LiteralPrefilter prefilter = ProgCompiler.compile(((BaseRegExBuilder) regEx).toNode(), flags,
+				"NFA").prefilter;
+		// the prefixes read off the tree are the same as those of the program
+		assertEquals(String.valueOf(prefilter), treePrefixes(regEx, flags));
+		return String.valueOf(prefilter);
+	}
+
+	private static String treePrefixes(RegExBuilder regEx, int flags) {
+		return String.valueOf(LiteralPrefilter.of(((BaseRegExBuilder) regEx).toNode(), flags));
+	}
+
+	private static void assertEngineAgreesWithJava(RegExEngine engine) {
+		final RegExBuilderFactory f = new JRegExBuilderFactory(engine);
+		final RegExBuilder[] regExes = new RegExBuilder[] {
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().digit()),
+				f.createRegExBuilder().re("ab").optional(f.createRegExBuilder().re("c")).re("d"),
+				f.createRegExBuilder().orGroup(f.createRegExBuilder().re("a"), f.createRegExBuilder().re("ab"))
+						.re("c"),
+				f.createRegExBuilder().zeroOrMoreLazy(f.createRegExBuilder().anyChar()).re("b"),
+				f.createRegExBuilder().repeat(2, 3, f.createRegExBuilder().charClass("ab")),
+				f.createRegExBuilder().repeatAtLeast(2, f.createRegExBuilder().group(
+						f.createRegExBuilder().optional(f.createRegExBuilder().re("a")))),
+				f.createRegExBuilder().matchLineStart().re("a").zeroOrMore(f.createRegExBuilder().anyChar())
+						.matchLineEnd(),
+				f.createRegExBuilder().matchInputStart().notDigit().matchInputEnd(),
+				f.createRegExBuilder().matchInputEndStrict(),
+				f.createRegExBuilder().wordBoundary().re("\u00e9").oneOrMore(f.createRegExBuilder().wordCharacter())
+						.wordBoundary(),
+				f.createRegExBuilder().notWordBoundary().re("b"),
+				f.createRegExBuilder().re("caf\u00e9").turnOnOffMatchFlags(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE)
+						.re("\u00c9"),
+				f.createRegExBuilder().noCaptureGroup(f.createRegExBuilder().re("x").anyChar(),
+						RegExMatchFlag.TURN_ON_DOTALL).re("y"),
+				f.createRegExBuilder().intersection(f.createCharClassBuilder().range('a', 'z'),
+						f.createCharClassBuilder().str("aeiou")),
+				f.createRegExBuilder().union(f.createCharClassBuilder().range('0', '3'),
+						f.createCharClassBuilder().c('x', 'Y')),
+				f.createRegExBuilder().oneOrMore(f.createRegExBuilder().unicode(UnicodeCharacterProperty.L)),
+				f.createRegExBuilder().notPOSIX(POSIXCharacterClass.Alnum).whitespace(),
+				f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().zeroOrMore(f.createRegExBuilder().re("a")))
+						.re("b"),
+				new LinkRegEx(f).create() };
+		final String[] inputs = new String[] { "", "a", "b", "ab", "abd", "abcd", "abc", "ac", "aab", "aaaa",
+				"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaac", "\u00e9t\u00e9", "caf\u00c9\u00c9", "CAF\u00c9\u00e9",
+				"x\ny", "x\ry", "a\nb\n", "a\r\n", "a\u2028", "\n", "\r\n", "1a", "Q", "babab", "01x3Y",
+				"\u00ba\t", "a\u0301b", "\ud835\udc00\ud835\udc01",
+				"<link href=\"x\" type=\"application/rss+xml\"/>",
+				"<LINK rel=\"a\"  type=\"application/rss+atom\">", "<link rel=\"a\"                        " };
+		final RegExMatchFlag[][] flagSets = new RegExMatchFlag[][] { {},
+				{ RegExMatchFlag.TURN_ON_CASE_INSENSITIVE },
+				{ RegExMatchFlag.TURN_ON_CASE_INSENSITIVE, RegExMatchFlag.TURN_ON_UNICODE_CASE },
+				{ RegExMatchFlag.TURN_ON_MULTILINE }, { RegExMatchFlag.TURN_ON_DOTALL },
+				{ RegExMatchFlag.TURN_ON_MULTILINE, RegExMatchFlag.TURN_ON_UNIX_LINES } };
+		for (RegExBuilder regEx : regExes) {
+			for (RegExMatchFlag[] flags : flagSets) {
+				final Pattern pattern = regEx.compile(flags);
+				final CompiledRegEx nfa = regEx.compileRegEx(flags);
+				for (String input : inputs) {
+					final String message = format("{0} on \"{1}\"", pattern, input);
+					assertEquals(message, pattern.matcher(input).matches(), nfa.matches(input));
+					assertEquals(message, pattern.matcher(input).find(), nfa.find(input));
+					assertEquals(message, pattern.matcher(input).lookingAt(), nfa.lookingAt(input));
+				}
+			}
+		}
+
+		// linear time where backtracking is exponential
+		final StringBuilder input = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			input.append('a');
+		}
+		assertFalse(regExes[17].compileRegEx().find(input));
+
+		final RegExBuilder[] unsupported = new RegExBuilder[] {
+				f.createRegExBuilder().group(f.createRegExBuilder().re("a")).backReference(1),
+				f.createRegExBuilder().positiveLookahead(f.createRegExBuilder().re("a")),
+				f.createRegExBuilder().atomicGroup(f.createRegExBuilder().re("a")),
+				f.createRegExBuilder().oneOrMorePossessive(f.createRegExBuilder().re("a")),
+				f.createRegExBuilder().previousMatchEnd(), ((JRegExBuilder) f.createRegExBuilder()).t("a+") };
+		for (RegExBuilder regEx : unsupported) {
+			try {
+				regEx.compileRegEx();
+				fail(regEx.toString());
+			} catch (UnsupportedOperationException e) {
+				// expected
+			}
+		}
+
+		try {
+			new JRegExBuilderFactory(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
 	@Test
 	public void regExTest() {
 		JRegExBuilder regEx = new JRegExBuilder();
@@ -422,6 +2342,27 @@ public class RegExBuilderImplTest {
 		testMatch(Pattern.compile(new JRegExBuilder().quote(str).toString()), str);
 	}
 
+	@Test
+	public void matchFlagsTest() {
+		assertEquals("(?i)", new JRegExBuilder().turnOnOffMatchFlags(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE)
+				.toString());
+
+		// a flag cancels its opposite specified earlier
+		assertEquals("(?s-im)", new JRegExBuilder().turnOnOffMatchFlags(RegExMatchFlag.TURN_ON_CASE_INSENSITIVE,
+				RegExMatchFlag.TURN_OFF_MULTILINE, RegExMatchFlag.TURN_ON_DOTALL,
+				RegExMatchFlag.TURN_OFF_CASE_INSENSITIVE).toString());
+
+		assertEquals("(?i-m:a)", new JRegExBuilder().noCaptureGroup(new JRegExBuilder().re('a'),
+				RegExMatchFlag.TURN_OFF_MULTILINE, RegExMatchFlag.TURN_ON_CASE_INSENSITIVE).toString());
+
+		try {
+			new JRegExBuilder().turnOnOffMatchFlags(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
 	@Test
 	public void charactersTest() {
 		Pattern pattern;